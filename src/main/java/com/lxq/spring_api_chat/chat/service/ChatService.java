@@ -3,6 +3,7 @@ package com.lxq.spring_api_chat.chat.service;
 import com.lxq.spring_api_chat.chat.dto.ChatRequest;
 import com.lxq.spring_api_chat.chat.dto.ChatResponse;
 import com.lxq.spring_api_chat.chat.dto.StreamChunk;
+import com.lxq.spring_api_chat.rag.service.DocumentRetrievalService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
@@ -10,8 +11,6 @@ import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
@@ -29,20 +28,20 @@ public class ChatService {
     private static final Logger log = LoggerFactory.getLogger(ChatService.class);
     private final ChatClient chatClient;
     private final ChatMemory chatMemory;
-    private final VectorStore vectorStore;
+    private final DocumentRetrievalService retrievalService;
     private final ChatModel chatModel;
 
     /**
-     * 构造函数注入 ChatModel、ChatMemory 和 VectorStore
+     * 构造函数注入 ChatModel、ChatMemory 和 DocumentRetrievalService
      * 创建带有记忆功能的 ChatClient
      *
      * @param chatModel Spring AI 提供的聊天模型
      * @param chatMemory 聊天记忆存储
-     * @param vectorStore 向量存储，用于RAG功能
+     * @param retrievalService 文档检索服务，用于RAG功能(向量/词法/混合检索)
      */
-    public ChatService(ChatModel chatModel, ChatMemory chatMemory, VectorStore vectorStore) {
+    public ChatService(ChatModel chatModel, ChatMemory chatMemory, DocumentRetrievalService retrievalService) {
         this.chatMemory = chatMemory;
-        this.vectorStore = vectorStore;
+        this.retrievalService = retrievalService;
         this.chatModel = chatModel;
 
         // 创建带有 Memory Advisor 的 ChatClient
@@ -259,13 +258,7 @@ public class ChatService {
         System.out.println("ChatService.chatWithRag - 使用会话ID: " + sessionId + ", 消息: " + request.message());
 
         // 1. 检索相关文档
-        List<Document> documents = vectorStore.similaritySearch(
-            SearchRequest.builder()
-                .query(request.message())
-                .topK(topK)
-                .similarityThreshold(similarityThreshold)
-                .build()
-        );
+        List<Document> documents = retrievalService.search(request.message(), topK, similarityThreshold);
 
         // 2. 构建上下文
         String context = buildContext(documents);
@@ -320,13 +313,7 @@ public class ChatService {
         System.out.println("ChatService.chatWithRagStream - 使用会话ID: " + sessionId + ", 消息: " + request.message());
 
         // 1. 检索相关文档
-        List<Document> documents = vectorStore.similaritySearch(
-            SearchRequest.builder()
-                .query(request.message())
-                .topK(topK)
-                .similarityThreshold(similarityThreshold)
-                .build()
-        );
+        List<Document> documents = retrievalService.search(request.message(), topK, similarityThreshold);
 
         // 2. 构建上下文
         String context = buildContext(documents);
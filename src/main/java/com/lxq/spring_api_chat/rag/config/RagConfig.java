@@ -1,16 +1,53 @@
 package com.lxq.spring_api_chat.rag.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.RateLimiter;
+import com.lxq.spring_api_chat.rag.embedding.CachingEmbeddingModel;
+import com.lxq.spring_api_chat.rag.embedding.CoalescingEmbeddingModel;
+import com.lxq.spring_api_chat.rag.embedding.EmbeddingCache;
+import com.lxq.spring_api_chat.rag.embedding.EmbeddingCoalescer;
+import com.lxq.spring_api_chat.rag.embedding.QueryCachingEmbeddingModel;
+import com.lxq.spring_api_chat.rag.embedding.QueryEmbeddingCache;
+import com.lxq.spring_api_chat.rag.embedding.QueryRoutingEmbeddingModel;
+import com.lxq.spring_api_chat.rag.embedding.RateLimitedEmbeddingModel;
+import com.lxq.spring_api_chat.rag.lexical.LexicalIndex;
+import com.lxq.spring_api_chat.rag.loader.ExtractedTextCache;
+import com.lxq.spring_api_chat.rag.service.DocumentIndexingService;
+import com.lxq.spring_api_chat.rag.service.DocumentWatcher;
+import com.lxq.spring_api_chat.rag.service.IndexJobService;
+import com.lxq.spring_api_chat.rag.service.IndexManifest;
+import com.lxq.spring_api_chat.rag.store.FlatVectorIndex;
+import com.lxq.spring_api_chat.rag.store.HnswVectorIndex;
+import com.lxq.spring_api_chat.rag.store.IndexedVectorStore;
+import com.lxq.spring_api_chat.rag.store.IvfPqVectorIndex;
+import com.lxq.spring_api_chat.rag.store.JsonStoreConverter;
+import com.lxq.spring_api_chat.rag.store.MergePolicy;
+import com.lxq.spring_api_chat.rag.store.QuantizedVectorIndex;
+import com.lxq.spring_api_chat.rag.store.SegmentFiles;
+import com.lxq.spring_api_chat.rag.store.ShardedVectorStore;
+import com.lxq.spring_api_chat.rag.store.VectorIndex;
+import com.lxq.spring_api_chat.rag.store.VectorStorage;
+import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * RAG配置类
@@ -19,9 +56,226 @@ import java.nio.file.Paths;
 @Configuration
 public class RagConfig {
 
+    /**
+     * 重建词法索引时每批写入的文档块数
+     */
+    private static final int LEXICAL_REBUILD_BATCH = 1024;
+
+    /**
+     * 词法索引在向量存储目录中的持久化文件名
+     */
+    private static final String LEXICAL_INDEX_FILE = "lexical-index.bin";
+
+    /**
+     * SimpleVectorStore 的JSON文件路径, 同时作为二进制格式的一次性转换来源
+     */
     @Value("${rag.vectorstore.path:data/vectorstore/simple-vector-store.json}")
     private String vectorStorePath;
 
+    /**
+     * 二进制段文件目录(flat/hnsw)
+     */
+    @Value("${rag.vectorstore.dir:data/vectorstore}")
+    private String vectorStoreDir;
+
+    /**
+     * 向量存储类型: simple(SimpleVectorStore) / flat(暴力检索) / hnsw(HNSW近似最近邻) / ivfpq(倒排文件 + 乘积量化)
+     */
+    @Value("${rag.vectorstore.type:flat}")
+    private String vectorStoreType;
+
+    @Value("${rag.vectorstore.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${rag.vectorstore.hnsw.ef-construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${rag.vectorstore.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
+    /**
+     * flat 类型的量化方式: none / int8 / fp16
+     */
+    @Value("${rag.vectorstore.quantization.type:none}")
+    private String quantizationType;
+
+    /**
+     * 量化粗排候选数相对于topK的倍数
+     */
+    @Value("${rag.vectorstore.quantization.rescore-factor:4}")
+    private int quantizationRescoreFactor;
+
+    /**
+     * int8 量化参数的训练样本数
+     */
+    @Value("${rag.vectorstore.quantization.training-size:1000}")
+    private int quantizationTrainingSize;
+
+    /**
+     * ivfpq 类型的聚类中心(倒排列表)数量
+     */
+    @Value("${rag.vectorstore.ivfpq.nlist:256}")
+    private int ivfPqNlist;
+
+    /**
+     * ivfpq 类型每次检索扫描的倒排列表数
+     */
+    @Value("${rag.vectorstore.ivfpq.nprobe:16}")
+    private int ivfPqNprobe;
+
+    /**
+     * ivfpq 类型的乘积量化分段数, 必须整除向量维度
+     */
+    @Value("${rag.vectorstore.ivfpq.subvectors:48}")
+    private int ivfPqSubvectors;
+
+    /**
+     * ivfpq 类型的训练样本数, 向量数达到该值时训练
+     */
+    @Value("${rag.vectorstore.ivfpq.training-size:10000}")
+    private int ivfPqTrainingSize;
+
+    /**
+     * ivfpq 类型粗排候选数相对于topK的倍数
+     */
+    @Value("${rag.vectorstore.ivfpq.rescore-factor:4}")
+    private int ivfPqRescoreFactor;
+
+    /**
+     * 每次写入预写日志后是否刷盘
+     */
+    @Value("${rag.vectorstore.wal.fsync:true}")
+    private boolean walFsync;
+
+    /**
+     * 后台检查点的间隔(秒)
+     */
+    @Value("${rag.vectorstore.wal.checkpoint-interval-seconds:300}")
+    private long checkpointIntervalSeconds;
+
+    /**
+     * 预写日志达到该大小(MB)时立即触发检查点
+     */
+    @Value("${rag.vectorstore.wal.checkpoint-size-mb:64}")
+    private long checkpointSizeMb;
+
+    /**
+     * 段合并: 同一层的段达到该数量时合并为一个
+     */
+    @Value("${rag.vectorstore.merge.factor:10}")
+    private int mergeFactor;
+
+    /**
+     * 段合并: 有效文档块数不超过该值的段都视为最小的一层
+     */
+    @Value("${rag.vectorstore.merge.min-segment-chunks:1000}")
+    private int mergeMinSegmentChunks;
+
+    /**
+     * 段合并: 墓碑占比超过该值的段被单独重写
+     */
+    @Value("${rag.vectorstore.merge.max-deleted-ratio:0.3}")
+    private double mergeMaxDeletedRatio;
+
+    /**
+     * 分片数, 大于1时使用分片向量存储, 各分片并行检索
+     */
+    @Value("${rag.vectorstore.shards.count:1}")
+    private int shardCount;
+
+    /**
+     * 分片路由规则: hash(按文档ID) / source(按来源文件)
+     */
+    @Value("${rag.vectorstore.shards.routing:hash}")
+    private String shardRouting;
+
+    /**
+     * 分片检索的线程数, 不大于0时取CPU核数
+     */
+    @Value("${rag.vectorstore.shards.search-threads:0}")
+    private int shardSearchThreads;
+
+    /**
+     * Embedding缓存文件
+     */
+    @Value("${rag.embedding.cache.path:data/embedding-cache/embeddings.bin}")
+    private String embeddingCachePath;
+
+    /**
+     * 提取文本缓存目录
+     */
+    @Value("${rag.indexing.text-cache.path:data/text-cache}")
+    private String textCachePath;
+
+    /**
+     * 后台索引任务记录目录
+     */
+    @Value("${rag.indexing.jobs.path:data/index-jobs}")
+    private String indexJobsPath;
+
+    /**
+     * 同时执行的后台索引任务数
+     */
+    @Value("${rag.indexing.jobs.max-concurrent:1}")
+    private int indexJobsMaxConcurrent;
+
+    /**
+     * 排队等待执行的后台索引任务数上限
+     */
+    @Value("${rag.indexing.jobs.queue-capacity:16}")
+    private int indexJobsQueueCapacity;
+
+    /**
+     * 已结束的后台索引任务记录保留天数
+     */
+    @Value("${rag.indexing.jobs.retention-days:7}")
+    private int indexJobsRetentionDays;
+
+    /**
+     * 文档目录监听的防抖时长(毫秒)
+     */
+    @Value("${rag.indexing.watch.debounce-ms:2000}")
+    private long watchDebounceMs;
+
+    /**
+     * 开始监听时是否先完整同步一次文档目录
+     */
+    @Value("${rag.indexing.watch.initial-scan:true}")
+    private boolean watchInitialScan;
+
+    /**
+     * Embedding缓存在内存中的容量上限(MB), 超过后淘汰最久未使用的条目
+     */
+    @Value("${rag.embedding.cache.max-size-mb:256}")
+    private long embeddingCacheMaxSizeMb;
+
+    @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-small}")
+    private String embeddingModelName;
+
+    /**
+     * 查询向量缓存的最大条目数
+     */
+    @Value("${rag.retrieval.query-cache.max-entries:1000}")
+    private int queryCacheMaxEntries;
+
+    /**
+     * 查询向量缓存条目的存活时间(秒)
+     */
+    @Value("${rag.retrieval.query-cache.ttl-seconds:600}")
+    private long queryCacheTtlSeconds;
+
+    /**
+     * 文档向量化(索引)每秒允许的Embedding请求数
+     */
+    @Value("${rag.ratelimit.permits-per-second:0.33}")
+    private double permitsPerSecond;
+
+    /**
+     * 查询向量化每秒允许的Embedding请求数, 与索引使用不同的令牌桶; 0表示不限流
+     */
+    @Value("${rag.ratelimit.query-permits-per-second:0}")
+    private double queryPermitsPerSecond;
+
     @Value("${rag.chunking.size:500}")
     private int chunkSize;
 
@@ -29,15 +283,166 @@ public class RagConfig {
     private int chunkOverlap;
 
     /**
-     * 配置SimpleVectorStore
-     * 使用内存存储,支持持久化到JSON文件
+     * 配置Embedding缓存
+     * 以 (模型名, 文本SHA-256) 为键持久化已计算的向量, 重复索引相同文本时跳过Embedding API调用
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "rag.embedding.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public EmbeddingCache embeddingCache() throws IOException {
+        return new EmbeddingCache(Paths.get(embeddingCachePath), embeddingCacheMaxSizeMb * 1024 * 1024);
+    }
+
+    /**
+     * 配置提取文本缓存
+     * 以源文件内容SHA-256为键保存解析出的原始文档, 调整分块参数或重建索引时不再解析源文件
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "rag.indexing.text-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ExtractedTextCache extractedTextCache() {
+        return new ExtractedTextCache(Paths.get(textCachePath), new ObjectMapper());
+    }
+
+    /**
+     * 配置后台索引任务
+     * 目录索引在有界线程池中后台执行, 任务记录保存在磁盘上, 启动时恢复未完成的任务
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.indexing.jobs", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public IndexJobService indexJobService(DocumentIndexingService indexingService) throws IOException {
+        IndexJobService jobs = new IndexJobService(Paths.get(indexJobsPath), new ObjectMapper(),
+            indexingService::indexDirectory, indexJobsMaxConcurrent, indexJobsQueueCapacity,
+            Duration.ofDays(indexJobsRetentionDays));
+        int resumed = jobs.resume();
+        if (resumed > 0) {
+            System.out.println("ℹ 恢复未完成的索引任务: " + resumed + " 个");
+        }
+        return jobs;
+    }
+
+    /**
+     * 配置文档目录监听(默认关闭)
+     * 文档目录中新增、修改和删除的文件在防抖后自动同步到索引
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.indexing.watch", name = "enabled", havingValue = "true")
+    public DocumentWatcher documentWatcher(DocumentIndexingService indexingService, Path documentBasePath)
+        throws IOException {
+        Files.createDirectories(documentBasePath);
+        DocumentWatcher watcher = new DocumentWatcher(documentBasePath, indexingService::syncFiles,
+            Duration.ofMillis(watchDebounceMs));
+        watcher.start(watchInitialScan);
+        System.out.println("✓ 正在监听文档目录: " + documentBasePath.toAbsolutePath());
+        return watcher;
+    }
+
+    /**
+     * 配置Embedding请求合并
+     * 并发的相同文本只向Embedding API发出一次请求, 索引和检索共享
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "rag.embedding.coalescing", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public EmbeddingCoalescer embeddingCoalescer() {
+        return new EmbeddingCoalescer();
+    }
+
+    /**
+     * 配置查询向量缓存
+     * 以 (模型名, 规范化的查询文本) 为键在内存中缓存检索时的查询向量, 重复的问题跳过Embedding API调用
      */
     @Bean
-    public VectorStore vectorStore(EmbeddingModel embeddingModel) {
+    @ConditionalOnProperty(prefix = "rag.retrieval.query-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public QueryEmbeddingCache queryEmbeddingCache() {
+        return new QueryEmbeddingCache(queryCacheMaxEntries, Duration.ofSeconds(queryCacheTtlSeconds));
+    }
+
+    /**
+     * 配置索引的Embedding API限流器(令牌桶)
+     * 经由向量存储发出的文档向量化请求共享同一个限流器, 每次请求消耗一个许可; 查询不经过它(见 vectorStore)
+     */
+    @Bean
+    public RateLimiter embeddingRateLimiter() {
+        return RateLimiter.create(permitsPerSecond);
+    }
+
+    /**
+     * 配置向量存储
+     * 根据 rag.vectorstore.type 选择实现: simple 持久化为JSON文件, flat/hnsw/ivfpq 持久化为内存映射的二进制段文件
+     * 向量存储使用包装后的EmbeddingModel, 文档和查询分两条路径:
+     * - 文档(索引): 缓存 -> 请求合并 -> 限流 -> 实际模型
+     * - 查询: 查询缓存 -> 请求合并 -> [查询限流] -> 实际模型, 跳过持久化的Embedding缓存
+     * 查询不与索引共用令牌桶, 目录索引期间不会排在批量请求之后; 配置了 query-permits-per-second 时使用单独的令牌桶
+     * 未启用查询缓存时由 QueryRoutingEmbeddingModel 分流
+     * (包装类不注册为Bean, 避免EmbeddingModel注入冲突)
+     */
+    @Bean
+    public VectorStore vectorStore(
+        EmbeddingModel embeddingModel,
+        RateLimiter embeddingRateLimiter,
+        ObjectProvider<EmbeddingCache> embeddingCache,
+        ObjectProvider<EmbeddingCoalescer> embeddingCoalescer,
+        ObjectProvider<QueryEmbeddingCache> queryEmbeddingCache
+    ) {
+        File storeFile = new File(vectorStorePath);
+        EmbeddingModel queryModel = queryPermitsPerSecond > 0
+            ? new RateLimitedEmbeddingModel(embeddingModel, RateLimiter.create(queryPermitsPerSecond))
+            : embeddingModel;
+        embeddingModel = new RateLimitedEmbeddingModel(embeddingModel, embeddingRateLimiter);
+        EmbeddingCoalescer coalescer = embeddingCoalescer.getIfAvailable();
+        if (coalescer != null) {
+            embeddingModel = new CoalescingEmbeddingModel(embeddingModel, coalescer, embeddingModelName);
+            queryModel = new CoalescingEmbeddingModel(queryModel, coalescer, embeddingModelName);
+        }
+        EmbeddingCache cache = embeddingCache.getIfAvailable();
+        if (cache != null) {
+            embeddingModel = new CachingEmbeddingModel(embeddingModel, cache, embeddingModelName);
+        }
+        QueryEmbeddingCache queryCache = queryEmbeddingCache.getIfAvailable();
+        if (queryCache != null) {
+            embeddingModel = new QueryCachingEmbeddingModel(embeddingModel, queryModel, queryCache,
+                embeddingModelName);
+        } else {
+            embeddingModel = new QueryRoutingEmbeddingModel(embeddingModel, queryModel);
+        }
+        System.out.println("ℹ Embedding限流: 索引 " + permitsPerSecond + " 次/秒, 查询 "
+            + (queryPermitsPerSecond > 0 ? queryPermitsPerSecond + " 次/秒" : "不限流"));
+
+        return switch (vectorStoreType.toLowerCase()) {
+            case "simple" -> createSimpleVectorStore(embeddingModel, storeFile);
+            case "flat" -> createIndexedVectorStore(embeddingModel, flatIndexFactory(), storeFile);
+            case "hnsw" -> createIndexedVectorStore(
+                embeddingModel,
+                storage -> new HnswVectorIndex(storage, hnswM, hnswEfConstruction, hnswEfSearch),
+                storeFile
+            );
+            case "ivfpq" -> createIndexedVectorStore(
+                embeddingModel,
+                storage -> new IvfPqVectorIndex(storage, ivfPqNlist, ivfPqNprobe, ivfPqSubvectors, ivfPqTrainingSize,
+                    ivfPqRescoreFactor),
+                storeFile
+            );
+            default -> throw new IllegalArgumentException("不支持的向量存储类型: " + vectorStoreType);
+        };
+    }
+
+    /**
+     * flat 类型的索引: 未配置量化时为精确的暴力检索, 否则在量化编码上粗排、全精度向量上精排
+     */
+    private Function<VectorStorage, VectorIndex> flatIndexFactory() {
+        if ("none".equalsIgnoreCase(quantizationType)) {
+            return FlatVectorIndex::new;
+        }
+        QuantizedVectorIndex.Type type = QuantizedVectorIndex.Type.valueOf(quantizationType.toUpperCase());
+        System.out.println("ℹ 向量量化: " + type + ", 精排倍数 " + quantizationRescoreFactor);
+        return storage -> new QuantizedVectorIndex(storage, type, quantizationRescoreFactor, quantizationTrainingSize);
+    }
+
+    /**
+     * SimpleVectorStore: 内存存储, 每次查询暴力扫描全部向量
+     */
+    private VectorStore createSimpleVectorStore(EmbeddingModel embeddingModel, File storeFile) {
         SimpleVectorStore vectorStore = SimpleVectorStore.builder(embeddingModel).build();
 
         // 尝试从文件加载已有的向量数据
-        File storeFile = new File(vectorStorePath);
         if (storeFile.exists()) {
             try {
                 vectorStore.load(storeFile);
@@ -54,6 +459,142 @@ public class RagConfig {
         return vectorStore;
     }
 
+    /**
+     * IndexedVectorStore: 基于可插拔索引的向量存储
+     * 二进制段文件不存在而旧的JSON文件存在时, 先执行一次性转换
+     * 写入记录到预写日志, 由后台检查点写为不可变的段文件, 再按合并策略在后台合并小段;
+     * 容器关闭时调用 close() 完成最后一次检查点
+     * 配置的分片数大于1时改为创建分片向量存储
+     */
+    private VectorStore createIndexedVectorStore(
+        EmbeddingModel embeddingModel,
+        Function<VectorStorage, VectorIndex> indexFactory,
+        File jsonFile
+    ) {
+        if (shardCount > 1) {
+            return createShardedVectorStore(embeddingModel, indexFactory);
+        }
+        Path directory = Paths.get(vectorStoreDir);
+        MergePolicy mergePolicy = new MergePolicy(mergeFactor, mergeMinSegmentChunks, mergeMaxDeletedRatio);
+        IndexedVectorStore vectorStore = new IndexedVectorStore(embeddingModel, directory, indexFactory, walFsync,
+            mergePolicy);
+
+        try {
+            if (SegmentFiles.currentGeneration(directory) < 0 && jsonFile.exists()) {
+                long count = JsonStoreConverter.convert(jsonFile, directory, new ObjectMapper());
+                System.out.println("✓ 已将JSON向量存储转换为二进制格式: " + count + " 个文档块");
+            }
+            if (vectorStore.open()) {
+                System.out.println("✓ 成功加载向量存储(" + vectorStoreType + "): " + vectorStoreDir);
+            } else {
+                System.out.println("ℹ 向量存储文件不存在,将创建新的存储: " + vectorStoreDir);
+            }
+            vectorStore.startCheckpointer(Duration.ofSeconds(checkpointIntervalSeconds),
+                checkpointSizeMb * 1024 * 1024);
+        } catch (Exception e) {
+            System.err.println("✗ 加载向量存储失败: " + e.getMessage());
+        }
+
+        return vectorStore;
+    }
+
+    /**
+     * ShardedVectorStore: 文档块按路由规则分散到多个 IndexedVectorStore 分片, 检索时各分片并行执行后合并 top-K
+     * 每个分片有独立的预写日志、段文件和后台合并; 不从旧的JSON文件转换, 启用分片后需要重新索引
+     */
+    private VectorStore createShardedVectorStore(
+        EmbeddingModel embeddingModel,
+        Function<VectorStorage, VectorIndex> indexFactory
+    ) {
+        MergePolicy mergePolicy = new MergePolicy(mergeFactor, mergeMinSegmentChunks, mergeMaxDeletedRatio);
+        ShardedVectorStore.Routing routing = ShardedVectorStore.Routing.valueOf(shardRouting.toUpperCase());
+        ShardedVectorStore vectorStore = new ShardedVectorStore(embeddingModel, Paths.get(vectorStoreDir), shardCount,
+            routing, shardSearchThreads,
+            shardDirectory -> new IndexedVectorStore(embeddingModel, shardDirectory, indexFactory, walFsync,
+                mergePolicy));
+
+        try {
+            if (vectorStore.open()) {
+                System.out.println("✓ 成功加载分片向量存储(" + vectorStoreType + ", " + shardCount + " 个分片): "
+                    + vectorStoreDir);
+            } else {
+                System.out.println("ℹ 向量存储文件不存在,将创建新的分片存储(" + shardCount + " 个分片): " + vectorStoreDir);
+            }
+            vectorStore.startCheckpointer(Duration.ofSeconds(checkpointIntervalSeconds),
+                checkpointSizeMb * 1024 * 1024);
+        } catch (Exception e) {
+            System.err.println("✗ 加载向量存储失败: " + e.getMessage());
+        }
+
+        return vectorStore;
+    }
+
+    /**
+     * 配置词法(BM25)索引
+     * 段式/分片存储: 只在堆内保存倒排列表、文档长度和ID, 检索结果从向量存储取回; 倒排列表关闭时保存在存储目录中,
+     * 启动时加载后按存储中的ID核对差异, 文件不存在或无效时才从全部文档块重建
+     * SimpleVectorStore: 在内存中同时保存文本和元数据, 每次启动从JSON文件重建
+     * 之后由 DocumentIndexingService 与向量存储同步写入和删除
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.retrieval.lexical", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public LexicalIndex lexicalIndex(VectorStore vectorStore) {
+        long startTime = System.currentTimeMillis();
+        Path file = Paths.get(vectorStoreDir, LEXICAL_INDEX_FILE);
+        LexicalIndex index;
+        if (vectorStore instanceof IndexedVectorStore indexedStore) {
+            index = new LexicalIndex(indexedStore::get, file);
+        } else if (vectorStore instanceof ShardedVectorStore shardedStore) {
+            index = new LexicalIndex(shardedStore::get, file);
+        } else {
+            index = new LexicalIndex();
+        }
+        List<Document> batch = new ArrayList<>(LEXICAL_REBUILD_BATCH);
+        Consumer<Document> collector = document -> {
+            batch.add(document);
+            if (batch.size() == LEXICAL_REBUILD_BATCH) {
+                index.add(batch);
+                batch.clear();
+            }
+        };
+        try {
+            if (vectorStore instanceof IndexedVectorStore indexedStore) {
+                if (index.load()) {
+                    index.sync(indexedStore.ids());
+                } else {
+                    indexedStore.forEachDocument(collector);
+                }
+            } else if (vectorStore instanceof ShardedVectorStore shardedStore) {
+                if (index.load()) {
+                    index.sync(shardedStore.ids());
+                } else {
+                    shardedStore.forEachDocument(collector);
+                }
+            } else {
+                File storeFile = new File(vectorStorePath);
+                if (storeFile.exists()) {
+                    JsonStoreConverter.forEachDocument(storeFile, new ObjectMapper(), collector);
+                }
+            }
+            index.add(batch);
+            System.out.println("✓ 词法索引就绪: " + index.size() + " 个文档块, 耗时 "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (Exception e) {
+            System.err.println("✗ 构建词法索引失败: " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * 配置文件指纹清单, 用于增量索引
+     * 与向量存储放在同一目录; simple 与 flat/hnsw 的数据互不相通, 使用不同的清单文件
+     */
+    @Bean
+    public IndexManifest indexManifest() throws IOException {
+        String filename = "simple".equalsIgnoreCase(vectorStoreType) ? "manifest-simple.json" : "manifest.json";
+        return new IndexManifest(Paths.get(vectorStoreDir, filename), new ObjectMapper());
+    }
+
     /**
      * 配置文本分块器
      * 使用TokenTextSplitter进行智能分块
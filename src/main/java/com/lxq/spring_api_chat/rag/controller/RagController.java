@@ -1,25 +1,38 @@
 package com.lxq.spring_api_chat.rag.controller;
 
+import com.lxq.spring_api_chat.rag.dto.IndexJob;
+import com.lxq.spring_api_chat.rag.dto.IndexJobEvent;
 import com.lxq.spring_api_chat.rag.dto.IndexResponse;
 import com.lxq.spring_api_chat.rag.dto.QueryRequest;
 import com.lxq.spring_api_chat.rag.dto.QueryResponse;
 import com.lxq.spring_api_chat.rag.dto.StatsResponse;
+import com.lxq.spring_api_chat.rag.embedding.EmbeddingCache;
+import com.lxq.spring_api_chat.rag.embedding.EmbeddingCoalescer;
+import com.lxq.spring_api_chat.rag.embedding.QueryEmbeddingCache;
+import com.lxq.spring_api_chat.rag.lexical.LexicalIndex;
 import com.lxq.spring_api_chat.rag.service.DocumentIndexingService;
 import com.lxq.spring_api_chat.rag.service.DocumentRetrievalService;
+import com.lxq.spring_api_chat.rag.service.IndexJobService;
+import com.lxq.spring_api_chat.rag.store.ShardStats;
+import com.lxq.spring_api_chat.rag.store.StoreStats;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * RAG功能REST API控制器
@@ -31,11 +44,18 @@ public class RagController {
 
     private final DocumentIndexingService indexingService;
     private final DocumentRetrievalService retrievalService;
-    private final VectorStore vectorStore;
+    private final ObjectProvider<EmbeddingCache> embeddingCache;
+    private final ObjectProvider<QueryEmbeddingCache> queryEmbeddingCache;
+    private final ObjectProvider<EmbeddingCoalescer> embeddingCoalescer;
+    private final ObjectProvider<LexicalIndex> lexicalIndex;
+    private final ObjectProvider<IndexJobService> indexJobs;
 
     @Value("${rag.vectorstore.path:data/vectorstore/simple-vector-store.json}")
     private String vectorStorePath;
 
+    @Value("${rag.vectorstore.type:flat}")
+    private String vectorStoreType;
+
     @Value("${rag.chunking.size:500}")
     private int chunkSize;
 
@@ -48,11 +68,19 @@ public class RagController {
     public RagController(
         DocumentIndexingService indexingService,
         DocumentRetrievalService retrievalService,
-        VectorStore vectorStore
+        ObjectProvider<EmbeddingCache> embeddingCache,
+        ObjectProvider<QueryEmbeddingCache> queryEmbeddingCache,
+        ObjectProvider<EmbeddingCoalescer> embeddingCoalescer,
+        ObjectProvider<LexicalIndex> lexicalIndex,
+        ObjectProvider<IndexJobService> indexJobs
     ) {
         this.indexingService = indexingService;
         this.retrievalService = retrievalService;
-        this.vectorStore = vectorStore;
+        this.embeddingCache = embeddingCache;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.embeddingCoalescer = embeddingCoalescer;
+        this.lexicalIndex = lexicalIndex;
+        this.indexJobs = indexJobs;
     }
 
     /**
@@ -168,6 +196,111 @@ public class RagController {
         }
     }
 
+    /**
+     * 提交后台目录索引任务, 立即返回任务ID
+     * 同一目录已有未结束的任务时返回该任务
+     *
+     * @param directoryPath 目录路径（支持绝对路径或相对于data/documents的相对路径）
+     * @return 202 及任务状态; 任务队列已满时返回429
+     */
+    @PostMapping("/index-jobs")
+    public ResponseEntity<?> submitIndexJob(@RequestParam String directoryPath) {
+        IndexJobService jobs = indexJobs.getIfAvailable();
+        if (jobs == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(IndexResponse.failure(directoryPath, "后台索引任务未启用", 0));
+        }
+
+        File directory = resolveFilePath(directoryPath);
+        if (!directory.isDirectory()) {
+            return ResponseEntity.badRequest()
+                .body(IndexResponse.failure(
+                    directoryPath,
+                    "不是有效的目录: " + directory.getAbsolutePath(),
+                    0
+                ));
+        }
+
+        // 安全检查
+        if (!isPathSafe(directory.toPath())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(IndexResponse.failure(
+                    directoryPath,
+                    "访问被拒绝：目录路径不安全",
+                    0
+                ));
+        }
+
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobs.submit(directory.toPath()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(IndexResponse.failure(directoryPath, "索引任务队列已满, 请稍后重试", 0));
+        }
+    }
+
+    /**
+     * 查询全部后台索引任务, 最近提交的在前
+     */
+    @GetMapping("/index-jobs")
+    public ResponseEntity<List<IndexJob>> listIndexJobs() {
+        IndexJobService jobs = indexJobs.getIfAvailable();
+        return ResponseEntity.ok(jobs == null ? List.of() : jobs.list());
+    }
+
+    /**
+     * 查询后台索引任务的状态和已完成文件的结果
+     */
+    @GetMapping("/index-jobs/{id}")
+    public ResponseEntity<IndexJob> getIndexJob(@PathVariable String id) {
+        IndexJobService jobs = indexJobs.getIfAvailable();
+        IndexJob job = jobs == null ? null : jobs.get(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    /**
+     * 取消后台索引任务: 排队中的任务立即结束, 执行中的任务在当前文件停止后结束
+     * 已完成的文件保留在索引中
+     */
+    @DeleteMapping("/index-jobs/{id}")
+    public ResponseEntity<IndexJob> cancelIndexJob(@PathVariable String id) {
+        IndexJobService jobs = indexJobs.getIfAvailable();
+        IndexJob job = jobs == null ? null : jobs.cancel(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    /**
+     * 订阅后台索引任务的进度 - Server-Sent Events (SSE)
+     * 先补发已完成文件的事件, 再逐个文件推送; 任务结束后发送 done 事件并关闭连接
+     *
+     * 事件类型:
+     * - file: 一个文件处理完成, 数据中的 file 为该文件的 IndexResponse
+     * - done: 任务结束, 数据中的 job 为任务的最终状态
+     */
+    @GetMapping(value = "/index-jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<IndexJobEvent>>> streamIndexJobEvents(@PathVariable String id) {
+        IndexJobService jobs = indexJobs.getIfAvailable();
+        Flux<IndexJobEvent> events = jobs == null ? null : jobs.events(id);
+        if (events == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(events.map(event -> ServerSentEvent.<IndexJobEvent>builder()
+            .id(String.valueOf(System.currentTimeMillis()))
+            .event(event.type())
+            .data(event)
+            .build()));
+    }
+
+    /**
+     * 订阅后台索引任务的进度 - NDJSON(每行一个 IndexJobEvent), 适合 curl 等非浏览器客户端
+     */
+    @GetMapping(value = "/index-jobs/{id}/events", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<IndexJobEvent>> streamIndexJobEventsNdjson(@PathVariable String id) {
+        IndexJobService jobs = indexJobs.getIfAvailable();
+        Flux<IndexJobEvent> events = jobs == null ? null : jobs.events(id);
+        return events == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(events);
+    }
+
     /**
      * RAG查询 - 检索相关文档
      *
@@ -177,21 +310,22 @@ public class RagController {
     @PostMapping("/query")
     public ResponseEntity<QueryResponse> query(@RequestBody QueryRequest request) {
         try {
-            // 构建搜索请求
-            SearchRequest searchRequest = SearchRequest.builder()
-                .query(request.query())
-                .topK(request.topK())
-                .similarityThreshold(request.similarityThreshold())
-                .build();
-
-            // 执行相似度检索
-            List<Document> documents = vectorStore.similaritySearch(searchRequest);
+            // 按配置的检索方式(向量/词法/混合)检索, 过滤条件在计算相似度之前缩小候选范围
+            List<Document> documents = retrievalService.search(
+                request.query(),
+                request.topK(),
+                request.similarityThreshold(),
+                request.filter()
+            );
 
             // 构建响应
             QueryResponse response = QueryResponse.from(request.query(), documents);
 
             return ResponseEntity.ok(response);
 
+        } catch (IllegalArgumentException e) {
+            // 过滤表达式无效
+            return ResponseEntity.badRequest().body(null);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(null);
@@ -205,42 +339,37 @@ public class RagController {
      */
     @GetMapping("/stats")
     public ResponseEntity<StatsResponse> getStats() {
+        // 统计信息来自增量维护的计数器, 不执行检索, 也不调用Embedding模型
+        StoreStats storeStats;
+        List<ShardStats> shardStats = null;
         try {
-            // 获取向量存储大小
-            // 注意：SimpleVectorStore没有直接的size()方法，需要通过查询来估算
-            // 这里使用一个技巧：执行一个空查询并设置很大的topK
-            List<Document> allDocs = vectorStore.similaritySearch(
-                SearchRequest.builder()
-                    .query("")
-                    .topK(10000)
-                    .similarityThreshold(0.0)
-                    .build()
-            );
-
-            int vectorStoreSize = allDocs.size();
-
-            // 构建统计响应
-            StatsResponse response = StatsResponse.of(
-                vectorStoreSize,
-                vectorStorePath,
-                embeddingModel,
-                chunkSize,
-                chunkOverlap
-            );
-
-            return ResponseEntity.ok(response);
-
+            storeStats = indexingService.stats();
+            shardStats = indexingService.shardStats();
         } catch (Exception e) {
             // 如果获取失败，返回默认值
-            StatsResponse response = StatsResponse.of(
-                0,
-                vectorStorePath,
-                embeddingModel,
-                chunkSize,
-                chunkOverlap
-            );
-            return ResponseEntity.ok(response);
+            storeStats = new StoreStats(0, 0, Map.of(), Map.of(), 0, 0, 0);
         }
+        EmbeddingCache cache = embeddingCache.getIfAvailable();
+        QueryEmbeddingCache queryCache = queryEmbeddingCache.getIfAvailable();
+        EmbeddingCoalescer coalescer = embeddingCoalescer.getIfAvailable();
+        LexicalIndex lexical = lexicalIndex.getIfAvailable();
+
+        // 构建统计响应
+        StatsResponse response = StatsResponse.of(
+            storeStats,
+            shardStats,
+            vectorStorePath,
+            vectorStoreType,
+            embeddingModel,
+            chunkSize,
+            chunkOverlap,
+            cache == null ? null : cache.stats(),
+            queryCache == null ? null : queryCache.stats(),
+            coalescer == null ? null : coalescer.stats(),
+            lexical == null ? null : lexical.stats(),
+            indexingService.parseStats()
+        );
+        return ResponseEntity.ok(response);
     }
 
     /**
@@ -0,0 +1,47 @@
+package com.lxq.spring_api_chat.rag.dto;
+
+import java.util.List;
+
+/**
+ * 后台目录索引任务, 同时是任务记录的持久化格式
+ *
+ * @param id 任务ID
+ * @param directory 索引的目录(规范化的绝对路径)
+ * @param status 任务状态
+ * @param fileCount 待处理的文件数, 开始遍历目录前为0
+ * @param completedFiles 已完成的文件数
+ * @param failedFiles 索引失败(包括被取消)的文件数
+ * @param results 已完成文件的结果, 按完成顺序
+ * @param attempts 执行次数, 节点重启后恢复执行时加1
+ * @param errorMessage 任务失败的原因
+ * @param submittedAt 提交时间(毫秒)
+ * @param startedAt 最近一次开始执行的时间(毫秒), 未开始时为null
+ * @param finishedAt 结束时间(毫秒), 未结束时为null
+ */
+public record IndexJob(
+    String id,
+    String directory,
+    Status status,
+    int fileCount,
+    int completedFiles,
+    int failedFiles,
+    List<IndexResponse> results,
+    int attempts,
+    String errorMessage,
+    long submittedAt,
+    Long startedAt,
+    Long finishedAt
+) {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED;
+
+        public boolean finished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.lxq.spring_api_chat.rag.dto;
+
+/**
+ * 索引任务的进度事件(SSE / NDJSON)
+ *
+ * 事件类型:
+ * - file: 一个文件处理完成, file 为该文件的结果
+ * - done: 任务结束(完成、失败或取消), job 为任务的最终状态
+ *
+ * @param type 事件类型
+ * @param jobId 任务ID
+ * @param file 文件结果, 仅 file 事件
+ * @param job 任务状态, 仅 done 事件
+ */
+public record IndexJobEvent(
+    String type,
+    String jobId,
+    IndexResponse file,
+    IndexJob job
+) {
+    public static IndexJobEvent file(String jobId, IndexResponse file) {
+        return new IndexJobEvent("file", jobId, file, null);
+    }
+
+    public static IndexJobEvent done(IndexJob job) {
+        return new IndexJobEvent("done", job.id(), null, job);
+    }
+}
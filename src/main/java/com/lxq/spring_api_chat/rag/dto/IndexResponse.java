@@ -9,7 +9,8 @@ public record IndexResponse(
     int chunkCount,           // 分块数
     long duration,            // 耗时(ms)
     boolean success,          // 是否成功
-    String errorMessage       // 错误信息
+    String errorMessage,      // 错误信息
+    boolean skipped           // 文件未修改, 跳过索引
 ) {
     public static IndexResponse success(
         String filename,
@@ -23,7 +24,28 @@ public record IndexResponse(
             chunkCount,
             duration,
             true,
-            null
+            null,
+            false
+        );
+    }
+
+    /**
+     * 文件与上次索引时相同, 未重新索引
+     *
+     * @param chunkCount 上次索引时的分块数
+     */
+    public static IndexResponse skipped(
+        String filename,
+        int chunkCount
+    ) {
+        return new IndexResponse(
+            filename,
+            0,
+            chunkCount,
+            0,
+            true,
+            null,
+            true
         );
     }
 
@@ -38,7 +60,8 @@ public record IndexResponse(
             0,
             duration,
             false,
-            errorMessage
+            errorMessage,
+            false
         );
     }
 }
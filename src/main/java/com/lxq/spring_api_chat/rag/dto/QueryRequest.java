@@ -6,11 +6,14 @@ package com.lxq.spring_api_chat.rag.dto;
  * @param query 用户查询文本
  * @param topK 返回最相关的K个文档块，默认5
  * @param similarityThreshold 相似度阈值，0-1之间，默认0.7
+ * @param filter 元数据过滤表达式（可选），如 source == 'manual.pdf' && docType in ['PDF', 'MARKDOWN']；
+ *               docType 取值为加载器的格式名(PDF、MARKDOWN、TEXT、DOCX、HTML、PPTX)，按原样区分大小写匹配
  */
 public record QueryRequest(
     String query,
     Integer topK,
-    Double similarityThreshold
+    Double similarityThreshold,
+    String filter
 ) {
     /**
      * 构造器，提供默认值
@@ -39,6 +42,13 @@ public record QueryRequest(
      * 简化构造器 - 只提供查询文本，使用默认参数
      */
     public QueryRequest(String query) {
-        this(query, 5, 0.7);
+        this(query, 5, 0.7, null);
+    }
+
+    /**
+     * 不带过滤条件的构造器
+     */
+    public QueryRequest(String query, Integer topK, Double similarityThreshold) {
+        this(query, topK, similarityThreshold, null);
     }
 }
@@ -23,7 +23,7 @@ public record QueryResponse(
      *
      * @param content 文档内容
      * @param source 文档来源
-     * @param score 相似度分数
+     * @param score 相关性分数, 含义取决于检索方式: 向量检索为余弦相似度, 词法检索为BM25分数, 混合检索为RRF融合分数
      * @param metadata 元数据
      */
     public record DocumentInfo(
@@ -39,7 +39,7 @@ public record QueryResponse(
             return new DocumentInfo(
                 document.getText(),
                 (String) document.getMetadata().get("source"),
-                (Double) document.getMetadata().get("distance"),
+                document.getScore(),
                 document.getMetadata()
             );
         }
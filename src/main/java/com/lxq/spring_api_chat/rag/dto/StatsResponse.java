@@ -1,41 +1,97 @@
 package com.lxq.spring_api_chat.rag.dto;
 
+import com.lxq.spring_api_chat.rag.embedding.EmbeddingCache;
+import com.lxq.spring_api_chat.rag.embedding.EmbeddingCoalescer;
+import com.lxq.spring_api_chat.rag.embedding.QueryEmbeddingCache;
+import com.lxq.spring_api_chat.rag.lexical.LexicalIndex;
+import com.lxq.spring_api_chat.rag.loader.DocumentLoaderFactory;
+import com.lxq.spring_api_chat.rag.store.ShardStats;
+import com.lxq.spring_api_chat.rag.store.StoreStats;
+
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 /**
  * RAG统计信息响应
  *
  * @param vectorStoreSize 向量存储中的文档块数量
  * @param vectorStorePath 向量存储路径
+ * @param vectorStoreType 向量存储类型(simple/flat/hnsw)
+ * @param dimension 向量维度, 未知或尚无数据时为0
+ * @param sourceCounts 按来源文件统计的文档块数
+ * @param docTypeCounts 按文档类型统计的文档块数
+ * @param diskBytes 向量存储的磁盘占用(字节)
+ * @param heapBytes 向量存储估算的堆内存占用(字节), 未知时为0
+ * @param offHeapBytes 向量存储追加区占用的本地内存(字节), simple 类型为0
+ * @param shards 每个分片的统计信息(文档块数、段数、检索次数和平均耗时等), 未启用分片时为null
  * @param embeddingModel 使用的Embedding模型
  * @param chunkSize 文档分块大小
  * @param chunkOverlap 分块重叠大小
+ * @param embeddingCache Embedding缓存统计(命中/未命中次数等), 未启用缓存时为null
+ * @param queryCache 查询向量缓存统计, 未启用时为null
+ * @param coalescing 并发相同Embedding请求的合并统计(省去的请求数等), 未启用时为null
+ * @param lexicalIndex 词法(BM25)索引统计(文档块数、词数、倒排列表字节数), 未启用时为null
+ * @param parseStats 按文件格式统计的解析指标(文件数、失败数、文档数、解析耗时), 自启动以来累计
  * @param timestamp 统计时间戳
  */
 public record StatsResponse(
     int vectorStoreSize,
     String vectorStorePath,
+    String vectorStoreType,
+    int dimension,
+    Map<String, Integer> sourceCounts,
+    Map<String, Integer> docTypeCounts,
+    long diskBytes,
+    long heapBytes,
+    long offHeapBytes,
+    List<ShardStats> shards,
     String embeddingModel,
     int chunkSize,
     int chunkOverlap,
+    EmbeddingCache.Stats embeddingCache,
+    QueryEmbeddingCache.Stats queryCache,
+    EmbeddingCoalescer.Stats coalescing,
+    LexicalIndex.Stats lexicalIndex,
+    Map<String, DocumentLoaderFactory.ParseStats> parseStats,
     LocalDateTime timestamp
 ) {
     /**
      * 创建统计响应的工厂方法
      */
     public static StatsResponse of(
-        int vectorStoreSize,
+        StoreStats storeStats,
+        List<ShardStats> shards,
         String vectorStorePath,
+        String vectorStoreType,
         String embeddingModel,
         int chunkSize,
-        int chunkOverlap
+        int chunkOverlap,
+        EmbeddingCache.Stats embeddingCache,
+        QueryEmbeddingCache.Stats queryCache,
+        EmbeddingCoalescer.Stats coalescing,
+        LexicalIndex.Stats lexicalIndex,
+        Map<String, DocumentLoaderFactory.ParseStats> parseStats
     ) {
         return new StatsResponse(
-            vectorStoreSize,
+            storeStats.chunkCount(),
             vectorStorePath,
+            vectorStoreType,
+            storeStats.dimension(),
+            storeStats.sourceCounts(),
+            storeStats.docTypeCounts(),
+            storeStats.diskBytes(),
+            storeStats.heapBytes(),
+            storeStats.offHeapBytes(),
+            shards,
             embeddingModel,
             chunkSize,
             chunkOverlap,
+            embeddingCache,
+            queryCache,
+            coalescing,
+            lexicalIndex,
+            parseStats,
             LocalDateTime.now()
         );
     }
@@ -0,0 +1,103 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带缓存的EmbeddingModel装饰器
+ * 请求中已缓存的文本直接返回, 只把未命中的文本(去重后)发送给实际的模型
+ *
+ * 注意: 不要注册为Spring Bean, 否则容器中会出现两个 EmbeddingModel 导致按类型注入冲突,
+ * 由 RagConfig 在创建向量存储时包装使用
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String defaultModelName;
+
+    /**
+     * @param defaultModelName 请求未指定模型时使用的模型名, 作为缓存键的一部分
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String defaultModelName) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.defaultModelName = defaultModelName;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String model = request.getOptions() != null && request.getOptions().getModel() != null
+            ? request.getOptions().getModel()
+            : defaultModelName;
+
+        float[][] vectors = new float[texts.size()][];
+        // 未命中的文本 -> 在请求中的位置, 相同文本只请求一次
+        Map<String, List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            List<Integer> positions = misses.get(text);
+            if (positions != null) {
+                positions.add(i);
+                continue;
+            }
+            vectors[i] = cache.get(model, text);
+            if (vectors[i] == null) {
+                positions = new ArrayList<>();
+                positions.add(i);
+                misses.put(text, positions);
+            }
+        }
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!misses.isEmpty()) {
+            List<String> missTexts = new ArrayList<>(misses.keySet());
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missTexts, request.getOptions()));
+            List<float[]> missVectors = new ArrayList<>(missTexts.size());
+            for (Embedding embedding : response.getResults()) {
+                missVectors.add(embedding.getOutput());
+            }
+            for (int i = 0; i < missTexts.size(); i++) {
+                for (int position : misses.get(missTexts.get(i))) {
+                    vectors[position] = missVectors.get(i);
+                }
+            }
+            cache.putAll(model, missTexts, missVectors);
+            metadata = response.getMetadata();
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    /**
+     * 单个Document的向量由实际模型按其自身的元数据格式化规则生成, 不经过缓存
+     * 项目中的向量存储都通过 call() 按文本批量请求
+     */
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,127 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 合并并发相同请求的EmbeddingModel装饰器
+ * 热门问题同时到达时, 多个线程对同一文本的请求只发出一次, 其余线程等待该请求的结果
+ *
+ * 请求中的每条文本分别判断: 已有进行中请求的文本等待其结果, 其余文本作为一次请求发出;
+ * 发起者先完成自己的请求再等待他人的结果, 因此不会互相等待形成死锁
+ *
+ * 位于 CachingEmbeddingModel 之后、限流之前: 命中缓存的文本不参与合并, 省去的请求也不消耗限流许可
+ * 与其他装饰器一样不注册为Spring Bean
+ */
+public class CoalescingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCoalescer coalescer;
+    private final String defaultModelName;
+
+    /**
+     * @param defaultModelName 请求未指定模型时使用的模型名, 不同模型的相同文本不会合并
+     */
+    public CoalescingEmbeddingModel(EmbeddingModel delegate, EmbeddingCoalescer coalescer, String defaultModelName) {
+        this.delegate = delegate;
+        this.coalescer = coalescer;
+        this.defaultModelName = defaultModelName;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String model = request.getOptions() != null && request.getOptions().getModel() != null
+            ? request.getOptions().getModel()
+            : defaultModelName;
+
+        Map<String, CompletableFuture<float[]>> futures = new LinkedHashMap<>();
+        // 由本线程发出请求的文本
+        Map<String, CompletableFuture<float[]>> owned = new LinkedHashMap<>();
+        for (String text : texts) {
+            if (futures.containsKey(text)) {
+                continue;
+            }
+            CompletableFuture<float[]> future = new CompletableFuture<>();
+            CompletableFuture<float[]> existing = coalescer.join(model, text, future);
+            if (existing == null) {
+                owned.put(text, future);
+                futures.put(text, future);
+            } else {
+                futures.put(text, existing);
+            }
+        }
+
+        coalescer.recordCall(!owned.isEmpty());
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!owned.isEmpty()) {
+            metadata = send(model, owned, request);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(await(futures.get(texts.get(i))), i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * 发出本线程负责的文本, 完成对应的future后移除登记; 失败时等待者收到同样的异常
+     */
+    private EmbeddingResponseMetadata send(
+        String model,
+        Map<String, CompletableFuture<float[]>> owned,
+        EmbeddingRequest request
+    ) {
+        List<String> ownedTexts = new ArrayList<>(owned.keySet());
+        try {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(ownedTexts, request.getOptions()));
+            List<Embedding> results = response.getResults();
+            for (int i = 0; i < ownedTexts.size(); i++) {
+                owned.get(ownedTexts.get(i)).complete(results.get(i).getOutput());
+            }
+            return response.getMetadata();
+        } catch (RuntimeException e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            owned.forEach((text, future) -> coalescer.release(model, text, future));
+        }
+    }
+
+    private static float[] await(CompletableFuture<float[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 持久化的Embedding缓存
+ * 以 (Embedding模型名, 文本的SHA-256) 为键, 重新索引或调整分块参数时, 相同文本无需再次调用Embedding API
+ *
+ * - 内存中按LRU顺序保存, 向量总字节数超过上限时淘汰最久未使用的条目
+ * - 新条目追加写入磁盘文件, 启动时按写入顺序重放; 文件中的记录数超过内存条目数的2倍时重写文件, 清理已淘汰的记录
+ *
+ * <pre>
+ * 文件头(8字节): magic(int) version(int)
+ * 记录: length(int) crc32(int) modelLen(int) model sha256(32字节) dimension(int) float32 * dimension
+ * </pre>
+ */
+public class EmbeddingCache implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingCache.class);
+
+    private static final int MAGIC = 0x4C585145;   // "LXQE"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int HASH_BYTES = 32;
+
+    /**
+     * 每个条目除向量外的估算开销(键对象、哈希表节点)
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final Path file;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, float[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long bytes;
+    private long fileRecords;
+    private long evictions;
+    private FileChannel channel;
+
+    /**
+     * @param file 缓存文件, 为null时只缓存在内存中
+     * @param maxBytes 内存中向量总字节数的上限
+     */
+    public EmbeddingCache(Path file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * 查询缓存, 同时计入命中/未命中次数
+     *
+     * @return 缓存的向量, 未命中时为null
+     */
+    public synchronized float[] get(String model, String text) {
+        float[] vector = entries.get(new Key(model, sha256(text)));
+        if (vector == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return vector;
+    }
+
+    /**
+     * 写入一批同一模型的向量
+     */
+    public synchronized void putAll(String model, List<String> texts, List<float[]> vectors) {
+        List<Key> added = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            Key key = new Key(model, sha256(texts.get(i)));
+            float[] vector = vectors.get(i);
+            float[] previous = entries.put(key, vector);
+            if (previous != null) {
+                bytes -= entryBytes(previous);
+            }
+            bytes += entryBytes(vector);
+            added.add(key);
+        }
+        evict();
+        if (channel != null) {
+            try {
+                append(added);
+            } catch (IOException e) {
+                // 缓存写入失败不影响索引流程, 只是下次无法命中
+                log.warn("写入Embedding缓存文件失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, entries.size(), bytes, evictions);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, float[]>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= entryBytes(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private void append(List<Key> keys) throws IOException {
+        List<ByteBuffer> records = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            float[] vector = entries.get(key);
+            if (vector != null) {
+                records.add(encode(key, vector));
+            }
+        }
+        for (ByteBuffer record : records) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        }
+        fileRecords += records.size();
+        if (fileRecords > 2L * Math.max(entries.size(), 1024)) {
+            rewrite();
+        }
+    }
+
+    /**
+     * 按当前内存中的条目重写缓存文件, 从旧到新写出以保持LRU顺序
+     */
+    private void rewrite() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel writer = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writer.write(header);
+            for (Map.Entry<Key, float[]> entry : entries.entrySet()) {
+                ByteBuffer record = encode(entry.getKey(), entry.getValue());
+                while (record.hasRemaining()) {
+                    writer.write(record);
+                }
+            }
+            writer.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        fileRecords = entries.size();
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            rewrite();
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        long validBytes = HEADER_BYTES;
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = reader.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(reader, header, 0) < HEADER_BYTES || header.getInt() != MAGIC
+                || header.getInt() != VERSION) {
+                log.warn("Embedding缓存文件格式无效, 将重建: {}", file);
+                rewrite();
+                return;
+            }
+            ByteBuffer recordHeader = ByteBuffer.allocate(Integer.BYTES * 2).order(ByteOrder.LITTLE_ENDIAN);
+            while (validBytes + recordHeader.capacity() <= size) {
+                recordHeader.clear();
+                readFully(reader, recordHeader, validBytes);
+                int length = recordHeader.getInt();
+                int crc = recordHeader.getInt();
+                if (length <= 0 || validBytes + recordHeader.capacity() + length > size) {
+                    break;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(reader, body, validBytes + recordHeader.capacity());
+                if (crc32(body.array(), 0, length) != crc) {
+                    break;
+                }
+                decodeInto(body);
+                validBytes += recordHeader.capacity() + length;
+                fileRecords++;
+            }
+            if (validBytes < size) {
+                log.warn("Embedding缓存文件末尾存在不完整的记录, 已忽略 {} 字节", size - validBytes);
+            }
+        }
+        evict();
+        // 截掉不完整的尾部, 淘汰过多时顺便压缩
+        if (fileRecords > 2L * Math.max(entries.size(), 1024) || validBytes < Files.size(file)) {
+            rewrite();
+        } else {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.position(validBytes);
+        }
+        log.info("Embedding缓存加载完成: {} 条, {} MB, 耗时 {}ms", entries.size(), bytes / 1024 / 1024,
+            System.currentTimeMillis() - startTime);
+    }
+
+    private void decodeInto(ByteBuffer body) {
+        byte[] model = new byte[body.getInt()];
+        body.get(model);
+        byte[] hash = new byte[HASH_BYTES];
+        body.get(hash);
+        float[] vector = new float[body.getInt()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = body.getFloat();
+        }
+        float[] previous = entries.put(new Key(new String(model, StandardCharsets.UTF_8), hash), vector);
+        if (previous != null) {
+            bytes -= entryBytes(previous);
+        }
+        bytes += entryBytes(vector);
+    }
+
+    private static ByteBuffer encode(Key key, float[] vector) {
+        byte[] model = key.model().getBytes(StandardCharsets.UTF_8);
+        int length = Integer.BYTES + model.length + HASH_BYTES + Integer.BYTES + vector.length * Float.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(length).putInt(0);
+        buffer.putInt(model.length).put(model).put(key.hash()).putInt(vector.length);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        buffer.putInt(Integer.BYTES, crc32(buffer.array(), Integer.BYTES * 2, length));
+        return buffer.flip();
+    }
+
+    private static long entryBytes(float[] vector) {
+        return (long) vector.length * Float.BYTES + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private static byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    private static int crc32(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        buffer.flip();
+        return total;
+    }
+
+    /**
+     * 缓存键: 模型名 + 文本的SHA-256
+     */
+    private record Key(String model, byte[] hash) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && model.equals(key.model) && Arrays.equals(hash, key.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * model.hashCode() + Arrays.hashCode(hash);
+        }
+    }
+
+    /**
+     * 缓存统计
+     *
+     * @param hits 命中次数
+     * @param misses 未命中次数
+     * @param entries 当前条目数
+     * @param bytes 当前占用的估算字节数
+     * @param evictions 累计淘汰的条目数
+     */
+    public record Stats(long hits, long misses, int entries, long bytes, long evictions) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进行中的Embedding请求登记表(single-flight)
+ * 同一 (模型名, 文本) 同时只有一个请求发往Embedding API, 其他线程等待同一个 CompletableFuture
+ *
+ * 由 CoalescingEmbeddingModel 使用; 单独作为Bean注册, 以便统计接口读取计数
+ */
+public class EmbeddingCoalescer {
+
+    private final ConcurrentMap<Key, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong savedCalls = new AtomicLong();
+    private final AtomicLong coalescedTexts = new AtomicLong();
+
+    /**
+     * 登记一个即将发出的请求
+     *
+     * @param future 调用方负责完成的future
+     * @return 已在进行中的同一文本的future; 返回null表示调用方成为该文本的发起者
+     */
+    CompletableFuture<float[]> join(String model, String text, CompletableFuture<float[]> future) {
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(new Key(model, text), future);
+        if (existing != null) {
+            coalescedTexts.incrementAndGet();
+        }
+        return existing;
+    }
+
+    /**
+     * 发起者完成请求后移除登记, 之后的请求重新发起(或命中缓存)
+     */
+    void release(String model, String text, CompletableFuture<float[]> future) {
+        inFlight.remove(new Key(model, text), future);
+    }
+
+    /**
+     * 记录一次请求: sent 表示是否实际发往了Embedding API, 为false表示全部文本都等待了其他请求的结果
+     */
+    void recordCall(boolean sent) {
+        (sent ? calls : savedCalls).incrementAndGet();
+    }
+
+    public Stats stats() {
+        return new Stats(calls.get(), savedCalls.get(), coalescedTexts.get(), inFlight.size());
+    }
+
+    private record Key(String model, String text) {
+    }
+
+    /**
+     * 合并统计
+     *
+     * @param calls 实际发往Embedding API的请求数
+     * @param savedCalls 完全由其他进行中的请求满足, 因而省去的请求数
+     * @param coalescedTexts 等待其他请求结果的文本数
+     * @param inFlight 当前进行中的文本数
+     */
+    public record Stats(long calls, long savedCalls, long coalescedTexts, int inFlight) {
+    }
+}
@@ -0,0 +1,73 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * 缓存查询向量的EmbeddingModel装饰器
+ * 向量存储检索时通过 embed(String) 向量化查询文本, 该方法先查 QueryEmbeddingCache; 批量请求(索引)直接交给下游
+ *
+ * 查询和文档走不同的下游:
+ * - 查询(embed(String))未命中时交给 queryDelegate(请求合并 -> [查询限流] -> 实际模型), 不经过持久化的
+ *   EmbeddingCache 和索引的限流器; 零散的查询文本不会写入磁盘, 也不会挤掉缓存中的文档向量,
+ *   目录索引期间也不会排在等待限流的批次之后
+ * - 文档和批量请求交给 delegate(通常包含 CachingEmbeddingModel)
+ * 规范化的查询文本只用作缓存键, 发给模型的仍是原始查询文本
+ *
+ * 所有检索入口(DocumentRetrievalService、RagController.query、ChatService的RAG对话、Agent的SearchTool)
+ * 都经由同一个向量存储检索, 因此共享同一个查询缓存
+ *
+ * 与 CachingEmbeddingModel 一样不注册为Spring Bean, 由 RagConfig 包装在最外层
+ */
+public class QueryCachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingModel queryDelegate;
+    private final QueryEmbeddingCache cache;
+    private final String modelName;
+
+    public QueryCachingEmbeddingModel(EmbeddingModel delegate, QueryEmbeddingCache cache, String modelName) {
+        this(delegate, delegate, cache, modelName);
+    }
+
+    /**
+     * @param delegate 处理文档和批量请求
+     * @param queryDelegate 处理未命中缓存的查询, 不应包含持久化的 EmbeddingCache
+     */
+    public QueryCachingEmbeddingModel(EmbeddingModel delegate, EmbeddingModel queryDelegate, QueryEmbeddingCache cache,
+                                      String modelName) {
+        this.delegate = delegate;
+        this.queryDelegate = queryDelegate;
+        this.cache = cache;
+        this.modelName = modelName;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String key = QueryEmbeddingCache.normalize(text);
+        float[] vector = cache.get(modelName, key);
+        if (vector == null) {
+            vector = queryDelegate.embed(text);
+            cache.put(modelName, key, vector);
+        }
+        // 缓存中的数组被多个请求共享, 返回副本以防调用方修改
+        return vector.clone();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,126 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * 查询向量缓存
+ * 以 (Embedding模型名, 规范化后的查询文本) 为键, 在内存中缓存最近查询的向量, 热门问题重复出现时无需再请求Embedding API
+ *
+ * - 条目数超过上限时淘汰最久未使用的条目
+ * - 条目写入后超过存活时间即失效, 避免长期运行时保留早已不再出现的查询
+ * - 查询文本规范化: Unicode NFKC, 去除首尾空白, 连续空白合并为一个空格
+ *
+ * 与持久化的 EmbeddingCache 不同, 查询文本多而零散, 只缓存在内存中
+ */
+public class QueryEmbeddingCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long expirations;
+    private long evictions;
+
+    /**
+     * @param maxEntries 最多缓存的查询数
+     * @param ttl 条目存活时间
+     */
+    public QueryEmbeddingCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, System::nanoTime);
+    }
+
+    /**
+     * @param ticker 纳秒时钟, 测试时可替换
+     */
+    QueryEmbeddingCache(int maxEntries, Duration ttl, LongSupplier ticker) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("查询缓存的容量必须为正数");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+    }
+
+    /**
+     * 查询文本规范化, 只在空白和Unicode兼容字符上不同的查询共享同一条目
+     */
+    public static String normalize(String query) {
+        return WHITESPACE.matcher(Normalizer.normalize(query, Normalizer.Form.NFKC).strip()).replaceAll(" ");
+    }
+
+    /**
+     * 查询缓存, 同时计入命中/未命中次数
+     *
+     * @param query 已规范化的查询文本
+     * @return 缓存的向量, 未命中或已过期时为null
+     */
+    public synchronized float[] get(String model, String query) {
+        Key key = new Key(model, query);
+        Entry entry = entries.get(key);
+        if (entry != null && ticker.getAsLong() - entry.createdAt >= ttlNanos) {
+            entries.remove(key);
+            expirations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.vector;
+    }
+
+    /**
+     * @param query 已规范化的查询文本
+     */
+    public synchronized void put(String model, String query, float[] vector) {
+        entries.put(new Key(model, query), new Entry(vector, ticker.getAsLong()));
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, entries.size(), expirations, evictions);
+    }
+
+    private record Key(String model, String query) {
+    }
+
+    private record Entry(float[] vector, long createdAt) {
+    }
+
+    /**
+     * 缓存统计
+     *
+     * @param hits 命中次数
+     * @param misses 未命中次数(包括已过期)
+     * @param entries 当前条目数
+     * @param expirations 因过期移除的条目数
+     * @param evictions 因容量淘汰的条目数
+     */
+    public record Stats(long hits, long misses, int entries, long expirations, long evictions) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
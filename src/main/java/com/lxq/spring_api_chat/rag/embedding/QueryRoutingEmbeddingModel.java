@@ -0,0 +1,50 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * 按请求类型分流的EmbeddingModel装饰器
+ * 向量存储检索时通过 embed(String) 向量化查询文本, 交给 queryDelegate; 文档和批量请求(索引)交给 delegate
+ *
+ * 用于让查询不经过索引的限流器: 目录索引期间批量请求在限流器前排队, 查询若共用同一个令牌桶会排在这些批次之后
+ * 启用查询缓存时由 QueryCachingEmbeddingModel 完成同样的分流, 不需要本类
+ *
+ * 与其他装饰器一样不注册为Spring Bean, 由 RagConfig 包装在最外层
+ */
+public class QueryRoutingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingModel queryDelegate;
+
+    /**
+     * @param delegate 处理文档和批量请求
+     * @param queryDelegate 处理查询
+     */
+    public QueryRoutingEmbeddingModel(EmbeddingModel delegate, EmbeddingModel queryDelegate) {
+        this.delegate = delegate;
+        this.queryDelegate = queryDelegate;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return queryDelegate.embed(text);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,42 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * 限流的EmbeddingModel装饰器
+ * 每次实际的Embedding API请求(无论包含多少条文本)先从令牌桶获取一个许可
+ * RagConfig 为索引和查询分别包装: 索引线程共享一个令牌桶, 查询使用独立的令牌桶(可选), 互不排队
+ *
+ * 与 CachingEmbeddingModel 一样不注册为Spring Bean; 位于缓存之后, 命中缓存的请求不消耗许可
+ */
+public class RateLimitedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final RateLimiter rateLimiter;
+
+    public RateLimitedEmbeddingModel(EmbeddingModel delegate, RateLimiter rateLimiter) {
+        this.delegate = delegate;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        rateLimiter.acquire();
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        rateLimiter.acquire();
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
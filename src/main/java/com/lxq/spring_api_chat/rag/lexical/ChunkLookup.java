@@ -0,0 +1,18 @@
+package com.lxq.spring_api_chat.rag.lexical;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 按ID读取文档块的文本和元数据, 通常为 IndexedVectorStore::get 或 ShardedVectorStore::get
+ * 词法索引只保存倒排列表、文档长度和ID, 选出 top-K 之后才通过它取回检索结果
+ */
+@FunctionalInterface
+public interface ChunkLookup {
+
+    /**
+     * @return 与 ids 一一对应, 不存在的ID对应null
+     */
+    List<Document> get(List<String> ids);
+}
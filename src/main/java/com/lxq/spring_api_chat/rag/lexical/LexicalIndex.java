@@ -0,0 +1,589 @@
+package com.lxq.spring_api_chat.rag.lexical;
+
+import com.lxq.spring_api_chat.rag.store.ScoredOrdinal;
+import com.lxq.spring_api_chat.rag.store.TopKHeap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 内存中的倒排索引, 按 BM25 对文档块打分
+ * 与向量存储保存相同的文档块(由 DocumentIndexingService 同步写入和删除), 用于精确的标识符、API名称和中文关键词检索,
+ * 检索不调用Embedding模型
+ *
+ * - 文档块按写入顺序分配内部文档号, 每个词的倒排列表按文档号递增追加, 编码为变长整数(见 PostingList)
+ * - 删除只设置墓碑; 墓碑数超过有效文档数时重写全部倒排列表, 回收空间并重新分配文档号
+ * - 同一ID重复写入时先删除旧的文档块, 与向量存储的覆盖写入语义一致
+ * - 堆内只保存倒排列表、文档长度和ID; 文本和元数据留在向量存储中, 选出 top-K 后通过 ChunkLookup 取回.
+ *   带过滤条件时按倍数多取候选, 取回后判断元数据, 不足 topK 时加倍候选数重新选择
+ * - 倒排列表可以保存到文件(见 save / load), 启动时加载后按向量存储的ID集合核对, 不再从全部文档块重建
+ *
+ * 读写锁保护: 检索之间并行, 写入互斥
+ */
+public class LexicalIndex implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LexicalIndex.class);
+
+    /**
+     * BM25 词频饱和参数
+     */
+    private static final float K1 = 1.2f;
+
+    /**
+     * BM25 文档长度归一化参数
+     */
+    private static final float B = 0.75f;
+
+    /**
+     * 墓碑数达到该值且超过有效文档数时压缩
+     */
+    private static final int MIN_COMPACT_DELETED = 1024;
+
+    /**
+     * 带过滤条件检索时, 第一轮选出的候选数为 topK 的倍数
+     */
+    private static final int FILTER_CANDIDATE_FACTOR = 4;
+
+    /**
+     * 核对时从向量存储补充文档块的批大小
+     */
+    private static final int SYNC_BATCH = 1024;
+
+    private static final int MAGIC = 0x4C58514C;   // "LXQL"
+    private static final int VERSION = 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<String, Integer> docsById = new HashMap<>();
+    /**
+     * 文档号 -> 文档块ID, 已删除的为null
+     */
+    private final List<String> ids = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private int[] lengths = new int[1024];
+    private int liveCount;
+    private long totalLength;
+
+    private final ChunkLookup lookup;
+
+    /**
+     * 没有可供取回的向量存储时在内存中保存的文档块, 否则为null
+     */
+    private final Map<String, Document> stored;
+
+    /**
+     * 持久化文件, null表示不保存
+     */
+    private final Path file;
+
+    /**
+     * 在内存中同时保存文档块的文本和元数据, 不持久化; 用于 SimpleVectorStore(没有按ID读取的接口)和测试
+     */
+    public LexicalIndex() {
+        this.stored = new ConcurrentHashMap<>();
+        this.lookup = chunkIds -> chunkIds.stream().map(stored::get).toList();
+        this.file = null;
+    }
+
+    /**
+     * 只保存倒排列表、文档长度和ID, 检索结果通过 lookup 从向量存储取回
+     *
+     * @param file 持久化文件, 关闭时写入; null表示不保存
+     */
+    public LexicalIndex(ChunkLookup lookup, Path file) {
+        this.stored = null;
+        this.lookup = lookup;
+        this.file = file;
+    }
+
+    /**
+     * 写入文档块, 已存在的ID被覆盖
+     */
+    public void add(List<Document> chunks) {
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Document chunk : chunks) {
+                Integer previous = docsById.get(chunk.getId());
+                if (previous != null) {
+                    markDeleted(previous);
+                }
+                append(chunk);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按ID删除文档块, 不存在的ID被忽略
+     */
+    public void delete(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer doc = docsById.get(id);
+                if (doc != null) {
+                    markDeleted(doc);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 检索
+     * 查询分词后去重, 每个词的分数为 idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * dl / avgdl))
+     *
+     * @return 按分数从高到低排列, 不超过 topK 条; 分数写入 Document 的 score 和 bm25Score 元数据
+     */
+    public List<Document> search(String query, int topK) {
+        return search(query, topK, null);
+    }
+
+    /**
+     * 带元数据过滤的 BM25 检索, 不满足条件的文档块不计入 topK
+     * 选出的候选在锁外取回, 取回时已被删除的文档块同样跳过
+     *
+     * @param filter 元数据过滤条件, null表示不过滤
+     */
+    public List<Document> search(String query, int topK, Predicate<Map<String, Object>> filter) {
+        Set<String> terms = new LinkedHashSet<>(LexicalTokenizer.tokenize(query));
+        if (terms.isEmpty() || topK <= 0) {
+            return List.of();
+        }
+        int candidates = filter == null
+            ? topK
+            : (int) Math.min((long) topK * FILTER_CANDIDATE_FACTOR, Integer.MAX_VALUE);
+        while (true) {
+            Candidates top = select(terms, candidates);
+            List<Document> chunks = lookup.get(top.ids());
+            List<Document> results = new ArrayList<>(Math.min(topK, chunks.size()));
+            for (int i = 0; i < chunks.size() && results.size() < topK; i++) {
+                Document chunk = chunks.get(i);
+                if (chunk != null && (filter == null || filter.test(chunk.getMetadata()))) {
+                    results.add(toDocument(chunk, top.scores()[i]));
+                }
+            }
+            if (results.size() == topK || top.exhausted()) {
+                return results;
+            }
+            candidates = (int) Math.min((long) candidates * 2, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 在读锁内选出分数最高的 count 个文档块的ID
+     */
+    private Candidates select(Set<String> terms, int count) {
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0) {
+                return new Candidates(List.of(), new float[0], true);
+            }
+            TopKHeap heap = new TopKHeap(Math.min(count, liveCount));
+            score(terms, heap);
+            boolean exhausted = heap.size() < count;
+            List<ScoredOrdinal> hits = heap.drainSorted();
+            List<String> chunkIds = new ArrayList<>(hits.size());
+            float[] scores = new float[hits.size()];
+            for (int i = 0; i < hits.size(); i++) {
+                chunkIds.add(ids.get(hits.get(i).ordinal()));
+                scores[i] = hits.get(i).score();
+            }
+            return new Candidates(chunkIds, scores, exhausted);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按文档号逐个合并查询词的倒排列表(document-at-a-time), 每个文档的分数累加完成后直接交给 top-K 堆
+     * 倒排列表按文档号递增, 各游标停在各自的当前文档上, 每轮处理其中最小的文档号; 不为候选分配对象,
+     * 内存只与查询词数和K有关
+     */
+    private void score(Set<String> terms, TopKHeap heap) {
+        float avgLength = (float) totalLength / liveCount;
+        PostingList.Cursor[] cursors = new PostingList.Cursor[terms.size()];
+        float[] idfs = new float[terms.size()];
+        int active = 0;
+        for (String term : terms) {
+            PostingList list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            PostingList.Cursor cursor = list.cursor();
+            if (cursor.next()) {
+                cursors[active] = cursor;
+                idfs[active] = idf(list.docCount());
+                active++;
+            }
+        }
+
+        while (active > 0) {
+            int doc = cursors[0].doc();
+            for (int i = 1; i < active; i++) {
+                doc = Math.min(doc, cursors[i].doc());
+            }
+            boolean live = !deleted.get(doc);
+            float norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+            float score = 0;
+            int i = 0;
+            while (i < active) {
+                PostingList.Cursor cursor = cursors[i];
+                if (cursor.doc() == doc) {
+                    if (live) {
+                        float tf = cursor.frequency();
+                        score += idfs[i] * tf * (K1 + 1) / (tf + norm);
+                    }
+                    if (!cursor.next()) {
+                        // 列表已读完, 用最后一个游标填补空位
+                        active--;
+                        cursors[i] = cursors[active];
+                        idfs[i] = idfs[active];
+                        continue;
+                    }
+                }
+                i++;
+            }
+            if (live) {
+                heap.offer(doc, score);
+            }
+        }
+    }
+
+    /**
+     * 与向量存储的ID集合对齐: 删除向量存储中已不存在的文档块, 通过 lookup 补充索引中缺少的文档块
+     * 文档块ID由内容哈希生成(见 IndexManifest.chunkId), ID相同即内容相同, 只需比较ID
+     *
+     * @param storeIds 向量存储中全部有效文档块的ID
+     */
+    public void sync(Collection<String> storeIds) {
+        Set<String> expected = new HashSet<>(storeIds);
+        List<String> stale = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String id : docsById.keySet()) {
+                if (!expected.contains(id)) {
+                    stale.add(id);
+                }
+            }
+            for (String id : expected) {
+                if (!docsById.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        delete(stale);
+        for (int start = 0; start < missing.size(); start += SYNC_BATCH) {
+            List<Document> chunks = new ArrayList<>(lookup.get(missing.subList(start,
+                Math.min(start + SYNC_BATCH, missing.size()))));
+            chunks.removeIf(chunk -> chunk == null);
+            add(chunks);
+        }
+        log.info("词法索引已与向量存储核对: 删除 {} 个、补充 {} 个文档块", stale.size(), missing.size());
+    }
+
+    /**
+     * 把倒排列表、文档长度和ID写入持久化文件, 先写临时文件再原子替换; 写出前先压缩掉已删除的文档
+     *
+     * <pre>
+     * magic(int) version(int) docCount(int)
+     * 文档 * docCount: id(UTF) length(int)
+     * termCount(int) 倒排列表 * termCount: term(UTF) 见 PostingList.writeTo
+     * </pre>
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("词法索引未配置持久化文件");
+        }
+        lock.writeLock().lock();
+        try {
+            if (ids.size() > liveCount) {
+                compact();
+            }
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                for (int doc = 0; doc < ids.size(); doc++) {
+                    out.writeUTF(ids.get(doc));
+                    out.writeInt(lengths[doc]);
+                }
+                out.writeInt(postings.size());
+                for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从 save 写出的文件加载, 只能在空索引上调用; 加载后应调用 sync 与向量存储核对
+     *
+     * @return 未配置持久化文件、文件不存在或格式不匹配时返回false, 索引保持为空
+     */
+    public boolean load() throws IOException {
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!ids.isEmpty()) {
+                throw new IllegalStateException("只能在空索引上加载");
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    log.warn("词法索引文件格式不匹配, 将重建: {}", file);
+                    return false;
+                }
+                int docCount = in.readInt();
+                int[] loadedLengths = new int[Math.max(docCount, 1024)];
+                for (int doc = 0; doc < docCount; doc++) {
+                    String id = in.readUTF();
+                    loadedLengths[doc] = in.readInt();
+                    ids.add(id);
+                    docsById.put(id, doc);
+                    totalLength += loadedLengths[doc];
+                }
+                int termCount = in.readInt();
+                for (int i = 0; i < termCount; i++) {
+                    postings.put(in.readUTF(), PostingList.readFrom(in));
+                }
+                lengths = loadedLengths;
+                liveCount = docCount;
+                return true;
+            } catch (IOException e) {
+                log.warn("读取词法索引文件失败, 将重建: {}", file, e);
+                clear();
+                return false;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 配置了持久化文件时写入文件, 下次启动加载后只需核对差异
+     * 作为Spring Bean时在容器关闭时自动调用
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            save();
+        }
+    }
+
+    /**
+     * 有效(未删除)的文档块数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 统计信息: 文档块数、词数和倒排列表占用的字节数
+     */
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            long postingBytes = 0;
+            for (PostingList list : postings.values()) {
+                postingBytes += list.sizeInBytes();
+            }
+            return new Stats(liveCount, postings.size(), postingBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(Document chunk) {
+        int doc = ids.size();
+        ids.add(chunk.getId());
+        docsById.put(chunk.getId(), doc);
+        if (stored != null) {
+            stored.put(chunk.getId(), chunk);
+        }
+
+        List<String> tokens = LexicalTokenizer.tokenize(chunk.getText());
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, key -> new PostingList())
+            .add(doc, frequency));
+
+        if (doc >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(lengths.length * 2, doc + 1));
+        }
+        lengths[doc] = tokens.size();
+        totalLength += tokens.size();
+        liveCount++;
+    }
+
+    private void markDeleted(int doc) {
+        if (deleted.get(doc)) {
+            return;
+        }
+        deleted.set(doc);
+        String id = ids.get(doc);
+        docsById.remove(id);
+        if (stored != null) {
+            stored.remove(id);
+        }
+        // 文档号在压缩前保持占用
+        ids.set(doc, null);
+        totalLength -= lengths[doc];
+        liveCount--;
+    }
+
+    private void compactIfNeeded() {
+        int deletedCount = ids.size() - liveCount;
+        if (deletedCount >= MIN_COMPACT_DELETED && deletedCount > liveCount) {
+            compact();
+        }
+    }
+
+    /**
+     * 去掉已删除的文档, 按原顺序重新分配文档号并重写倒排列表
+     */
+    private void compact() {
+        long startTime = System.currentTimeMillis();
+        int[] remap = new int[ids.size()];
+        List<String> live = new ArrayList<>(liveCount);
+        int[] liveLengths = new int[Math.max(liveCount, 1024)];
+        for (int doc = 0; doc < ids.size(); doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = live.size();
+            liveLengths[live.size()] = lengths[doc];
+            live.add(ids.get(doc));
+        }
+
+        int removedTerms = 0;
+        Iterator<Map.Entry<String, PostingList>> iterator = postings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PostingList> entry = iterator.next();
+            PostingList rewritten = new PostingList();
+            PostingList.Cursor cursor = entry.getValue().cursor();
+            while (cursor.next()) {
+                int doc = remap[cursor.doc()];
+                if (doc >= 0) {
+                    rewritten.add(doc, cursor.frequency());
+                }
+            }
+            if (rewritten.docCount() == 0) {
+                iterator.remove();
+                removedTerms++;
+            } else {
+                entry.setValue(rewritten);
+            }
+        }
+
+        int removedDocs = ids.size() - live.size();
+        ids.clear();
+        ids.addAll(live);
+        docsById.clear();
+        for (int doc = 0; doc < ids.size(); doc++) {
+            docsById.put(ids.get(doc), doc);
+        }
+        deleted.clear();
+        lengths = liveLengths;
+        log.info("词法索引压缩完成: 移除 {} 个已删除文档块、{} 个词, 耗时 {}ms", removedDocs, removedTerms,
+            System.currentTimeMillis() - startTime);
+    }
+
+    private void clear() {
+        postings.clear();
+        docsById.clear();
+        ids.clear();
+        deleted.clear();
+        lengths = new int[1024];
+        liveCount = 0;
+        totalLength = 0;
+    }
+
+    /**
+     * 倒排列表的文档数包含尚未压缩掉的已删除文档, 不超过有效文档数
+     */
+    private float idf(int docFrequency) {
+        docFrequency = Math.min(docFrequency, liveCount);
+        return (float) Math.log(1 + (liveCount - docFrequency + 0.5) / (docFrequency + 0.5));
+    }
+
+    private static Document toDocument(Document chunk, float score) {
+        Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+        metadata.put("bm25Score", (double) score);
+        return Document.builder()
+            .id(chunk.getId())
+            .text(chunk.getText())
+            .metadata(metadata)
+            .score((double) score)
+            .build();
+    }
+
+    /**
+     * 一次 top-K 选择的结果, 按分数从高到低排列
+     *
+     * @param exhausted 命中的文档块已全部选出, 加大候选数不会得到更多结果
+     */
+    private record Candidates(List<String> ids, float[] scores, boolean exhausted) {
+    }
+
+    /**
+     * 词法索引统计
+     *
+     * @param chunkCount 有效文档块数量
+     * @param termCount 不同的词数
+     * @param postingBytes 倒排列表占用的字节数
+     */
+    public record Stats(int chunkCount, int termCount, long postingBytes) {
+    }
+}
@@ -0,0 +1,169 @@
+package com.lxq.spring_api_chat.rag.lexical;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 词法检索的分词器, 索引和查询使用同一套规则
+ *
+ * - 拉丁字母/数字/下划线组成的词: 转为小写整体输出; 标识符(驼峰、下划线)额外输出各组成部分,
+ *   如 similaritySearch -> similaritysearch, similarity, search
+ * - 中日韩文字: 连续的一段输出相邻两字组成的二元组(bigram), 只有一个字时输出该字
+ * - 其他字符(空白、标点)作为分隔符
+ */
+public final class LexicalTokenizer {
+
+    /**
+     * 超过该长度的词(如base64、哈希值)截断后再索引
+     */
+    private static final int MAX_WORD_LENGTH = 64;
+
+    /**
+     * 关键词查询最多包含的词数
+     */
+    private static final int MAX_KEYWORD_TERMS = 3;
+
+    private LexicalTokenizer() {
+    }
+
+    /**
+     * 分词, 保留重复的词(用于统计词频)
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isWordChar(codePoint)) {
+                int start = i;
+                while (i < length && isWordChar(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                emitWord(text.substring(start, i), tokens);
+            } else if (isCjk(codePoint)) {
+                int start = i;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                emitCjk(text.substring(start, i), tokens);
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 是否为关键词查询: 用引号/反引号括起来, 或者由不超过3个标识符形式的词组成
+     * (含下划线、点、括号等代码符号, 驼峰, 字母数字混合或全大写缩写, 如 HnswVectorIndex、rag.vectorstore.type、HTTP_429)
+     * 关键词查询的结果主要取决于字面匹配, 混合检索时可以只走词法检索, 不调用Embedding模型
+     */
+    public static boolean isKeywordQuery(String query) {
+        if (query == null) {
+            return false;
+        }
+        String trimmed = query.strip();
+        if (trimmed.length() >= 2 && isQuote(trimmed.charAt(0)) && isQuote(trimmed.charAt(trimmed.length() - 1))) {
+            return true;
+        }
+        String[] parts = trimmed.split("\\s+");
+        if (trimmed.isEmpty() || parts.length > MAX_KEYWORD_TERMS) {
+            return false;
+        }
+        for (String part : parts) {
+            if (!isIdentifier(part)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void emitWord(String word, List<String> tokens) {
+        if (word.length() > MAX_WORD_LENGTH) {
+            word = word.substring(0, MAX_WORD_LENGTH);
+        }
+        tokens.add(word.toLowerCase(Locale.ROOT));
+
+        // 标识符的组成部分: 在下划线、大小写切换(小写->大写)、字母数字切换处拆分
+        int partStart = -1;
+        int parts = 0;
+        int firstPartIndex = tokens.size();
+        for (int i = 0; i <= word.length(); i++) {
+            char c = i < word.length() ? word.charAt(i) : '_';
+            boolean boundary = c == '_'
+                || (partStart >= 0 && i > partStart && Character.isUpperCase(c)
+                    && Character.isLowerCase(word.charAt(i - 1)))
+                || (partStart >= 0 && i > partStart && Character.isDigit(c) != Character.isDigit(word.charAt(i - 1)));
+            if (boundary && partStart >= 0) {
+                tokens.add(word.substring(partStart, i).toLowerCase(Locale.ROOT));
+                parts++;
+                partStart = -1;
+            }
+            if (c != '_' && partStart < 0) {
+                partStart = i;
+            }
+        }
+        if (parts == 1) {
+            // 没有拆分出多个部分时, 唯一的部分与整个词相同或只差下划线, 不重复输出
+            tokens.remove(firstPartIndex);
+        }
+    }
+
+    private static void emitCjk(String run, List<String> tokens) {
+        int[] codePoints = run.codePoints().toArray();
+        if (codePoints.length == 1) {
+            tokens.add(run);
+            return;
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            tokens.add(new String(codePoints, i, 2));
+        }
+    }
+
+    private static boolean isIdentifier(String part) {
+        boolean letter = false;
+        boolean digit = false;
+        boolean symbol = false;
+        boolean camel = false;
+        boolean lower = false;
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c < 128 && Character.isLetter(c)) {
+                letter = true;
+                if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(part.charAt(i - 1))) {
+                    camel = true;
+                }
+                lower |= Character.isLowerCase(c);
+            } else if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if ("_.:/#()-".indexOf(c) >= 0) {
+                symbol = true;
+            } else {
+                return false;
+            }
+        }
+        boolean acronym = letter && !lower && part.length() >= 2;
+        return (letter || digit) && (symbol || camel || acronym || (letter && digit));
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '"' || c == '`' || c == '\'' || c == '“' || c == '”' || c == '「' || c == '」';
+    }
+
+    private static boolean isWordChar(int codePoint) {
+        return codePoint == '_' || (Character.isLetterOrDigit(codePoint) && !isCjk(codePoint));
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,131 @@
+package com.lxq.spring_api_chat.rag.lexical;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 压缩的倒排列表: 按文档号递增追加, 每个条目编码为 (文档号差值, 词频) 两个变长整数(varint)
+ * 文档号差值通常只有1~2个字节, 每个条目平均2~3个字节, 约为 int[] + int[] 的1/3
+ *
+ * 不是线程安全的, 由 LexicalIndex 加锁
+ */
+final class PostingList {
+
+    private byte[] data = new byte[8];
+    private int length;
+    private int lastDoc = -1;
+    private int docCount;
+
+    /**
+     * 追加一个文档
+     *
+     * @param doc 文档号, 必须大于已追加的文档号
+     * @param frequency 词频, 至少为1
+     */
+    void add(int doc, int frequency) {
+        if (doc <= lastDoc) {
+            throw new IllegalArgumentException("文档号必须递增: " + lastDoc + " -> " + doc);
+        }
+        ensureCapacity(10);
+        writeVarint(doc - lastDoc);
+        writeVarint(frequency);
+        lastDoc = doc;
+        docCount++;
+    }
+
+    /**
+     * 包含该词的文档数, 包括已删除但尚未压缩掉的文档
+     */
+    int docCount() {
+        return docCount;
+    }
+
+    /**
+     * 编码后的字节数
+     */
+    int sizeInBytes() {
+        return data.length;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 写出编码后的列表: docCount(int) lastDoc(int) length(int) 字节 * length
+     */
+    void writeTo(DataOutput output) throws IOException {
+        output.writeInt(docCount);
+        output.writeInt(lastDoc);
+        output.writeInt(length);
+        output.write(data, 0, length);
+    }
+
+    /**
+     * 读取 writeTo 写出的列表, 不重新编码
+     */
+    static PostingList readFrom(DataInput input) throws IOException {
+        PostingList list = new PostingList();
+        list.docCount = input.readInt();
+        list.lastDoc = input.readInt();
+        list.length = input.readInt();
+        list.data = new byte[Math.max(list.length, 8)];
+        input.readFully(list.data, 0, list.length);
+        return list;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * 顺序解码的游标, 用法: while (cursor.next()) { cursor.doc(); cursor.frequency(); }
+     */
+    final class Cursor {
+
+        private int position;
+        private int doc = -1;
+        private int frequency;
+
+        boolean next() {
+            if (position >= length) {
+                return false;
+            }
+            doc += readVarint();
+            frequency = readVarint();
+            return true;
+        }
+
+        int doc() {
+            return doc;
+        }
+
+        int frequency() {
+            return frequency;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
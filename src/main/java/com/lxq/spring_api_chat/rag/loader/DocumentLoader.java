@@ -0,0 +1,30 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.Resource;
+
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 一种文件格式的文档加载器, 由 DocumentLoaderFactory 按扩展名选择
+ * 注册为Spring Bean即可加入注册表, 扩展名与内置加载器相同时覆盖内置加载器
+ */
+public interface DocumentLoader {
+
+    /**
+     * 格式名, 写入文档块的 docType 元数据, 同时作为解析耗时统计的维度, 如 PDF、MARKDOWN、DOCX
+     */
+    String format();
+
+    /**
+     * 支持的扩展名, 小写且不含点, 如 pdf、md
+     */
+    Set<String> extensions();
+
+    /**
+     * 以惰性流加载文档, 调用方必须关闭流
+     * 能逐步读取的格式(如PDF按页)应在消费时才解析后续内容, 其余格式可以一次解析完
+     */
+    Stream<Document> load(Resource resource);
+}
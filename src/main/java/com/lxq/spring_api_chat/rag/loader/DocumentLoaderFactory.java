@@ -1,66 +1,239 @@
 package com.lxq.spring_api_chat.rag.loader;
 
 import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.TextReader;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
-import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 文档加载器工厂
- * 根据文件类型选择合适的加载器
+ * 按扩展名从加载器注册表中选择加载器(见 DocumentLoader)
+ *
+ * - 内置: PDF(按页流式读取)、Markdown、TXT, 以及基于Tika的 Word(docx)、HTML、PowerPoint(pptx)
+ * - 注册为Spring Bean的 DocumentLoader 在内置加载器之后加入, 相同扩展名时覆盖内置加载器
+ *
+ * 按格式统计解析耗时: 只计算加载器提取文档所用的时间(消费流时逐个文档累计), 不包括调用方分块和向量化的时间
+ * 线程安全, 目录索引的多个解析线程共享同一个实例
  */
 @Component
 public class DocumentLoaderFactory {
 
+    /**
+     * 扩展名 -> 加载器
+     */
+    private final Map<String, DocumentLoader> loaders = new ConcurrentHashMap<>();
+    private final Map<String, FormatMetrics> metrics = new ConcurrentHashMap<>();
+
+    public DocumentLoaderFactory() {
+        register(new PdfDocumentLoader());
+        register(new TextDocumentLoader("MARKDOWN", Set.of("md")));
+        register(new TextDocumentLoader("TEXT", Set.of("txt")));
+        register(new TikaDocumentLoader("DOCX", Set.of("docx")));
+        register(new TikaDocumentLoader("HTML", Set.of("html", "htm")));
+        register(new TikaDocumentLoader("PPTX", Set.of("pptx")));
+    }
+
+    @Autowired
+    public DocumentLoaderFactory(ObjectProvider<DocumentLoader> customLoaders) {
+        this();
+        customLoaders.orderedStream().forEach(this::register);
+    }
+
+    /**
+     * 注册加载器, 覆盖相同扩展名的已有加载器
+     */
+    public void register(DocumentLoader loader) {
+        for (String extension : loader.extensions()) {
+            loaders.put(extension.toLowerCase(Locale.ROOT), loader);
+        }
+    }
+
+    /**
+     * 是否有可以加载该文件的加载器
+     */
+    public boolean supports(String filename) {
+        return loader(filename) != null;
+    }
+
+    /**
+     * 文件格式名(写入 docType 元数据), 不支持的文件返回 UNKNOWN
+     */
+    public String docType(String filename) {
+        DocumentLoader loader = loader(filename);
+        return loader == null ? "UNKNOWN" : loader.format();
+    }
+
     /**
      * 加载文档
      * @param resource 文档资源
      * @return 文档列表
      */
     public List<Document> loadDocument(Resource resource) {
+        try (Stream<Document> documents = streamDocument(resource)) {
+            return documents.toList();
+        }
+    }
+
+    /**
+     * 以惰性流加载文档: PDF每页一个文档, 消费完一页才提取下一页; 其他格式整个文件一个文档
+     * 调用方必须关闭流(try-with-resources), 以释放打开的文件; 关闭时记录该文件的解析耗时
+     *
+     * @param resource 文档资源
+     * @return 文档流
+     */
+    public Stream<Document> streamDocument(Resource resource) {
         String filename = resource.getFilename();
         if (filename == null) {
             throw new IllegalArgumentException("无法获取文件名");
         }
-
-        if (filename.toLowerCase().endsWith(".pdf")) {
-            return loadPdfDocument(resource);
-        } else if (filename.toLowerCase().endsWith(".md") ||
-                   filename.toLowerCase().endsWith(".txt")) {
-            return loadTextDocument(resource);
-        } else {
+        DocumentLoader loader = loader(filename);
+        if (loader == null) {
             throw new IllegalArgumentException("不支持的文件类型: " + filename);
         }
+
+        FormatMetrics formatMetrics = metrics.computeIfAbsent(loader.format(), format -> new FormatMetrics());
+        FileTimer timer = new FileTimer(formatMetrics);
+        Stream<Document> documents;
+        long start = System.nanoTime();
+        try {
+            documents = loader.load(resource);
+        } catch (RuntimeException e) {
+            timer.elapsed(System.nanoTime() - start);
+            timer.finish(true);
+            throw e;
+        }
+        timer.elapsed(System.nanoTime() - start);
+
+        Spliterator<Document> source = documents.spliterator();
+        Spliterator<Document> timed = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Document> action) {
+                Document[] next = new Document[1];
+                long begin = System.nanoTime();
+                boolean advanced;
+                try {
+                    advanced = source.tryAdvance(document -> next[0] = document);
+                } catch (RuntimeException e) {
+                    timer.elapsed(System.nanoTime() - begin);
+                    timer.failed();
+                    throw e;
+                }
+                timer.elapsed(System.nanoTime() - begin);
+                if (advanced) {
+                    timer.document();
+                    action.accept(next[0]);
+                }
+                return advanced;
+            }
+        };
+        return StreamSupport.stream(timed, false).onClose(() -> {
+            try {
+                documents.close();
+            } finally {
+                timer.finish(false);
+            }
+        });
     }
 
     /**
-     * 加载PDF文档
+     * 按格式统计的解析指标, 按格式名排序
      */
-    private List<Document> loadPdfDocument(Resource resource) {
-        var config = PdfDocumentReaderConfig.builder()
-            .withPageTopMargin(0)
-            .withPageBottomMargin(0)
-            .withPageExtractedTextFormatter(
-                ExtractedTextFormatter.builder()
-                    .withNumberOfTopTextLinesToDelete(0)
-                    .build()
-            )
-            .build();
-
-        var reader = new PagePdfDocumentReader(resource, config);
-        return reader.get();
+    public Map<String, ParseStats> parseStats() {
+        Map<String, ParseStats> result = new TreeMap<>();
+        metrics.forEach((format, formatMetrics) -> result.put(format, formatMetrics.snapshot()));
+        return result;
+    }
+
+    private DocumentLoader loader(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        return loaders.get(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 某种格式的解析统计
+     *
+     * @param files 已解析的文件数(包括失败的)
+     * @param failures 解析失败的文件数
+     * @param documents 提取出的文档数(PDF为页数)
+     * @param parseMillis 累计解析耗时(毫秒)
+     * @param maxFileMillis 单个文件的最长解析耗时(毫秒)
+     */
+    public record ParseStats(long files, long failures, long documents, long parseMillis, long maxFileMillis) {
+    }
+
+    private static class FormatMetrics {
+        private final LongAdder files = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder documents = new LongAdder();
+        private final LongAdder parseNanos = new LongAdder();
+        private volatile long maxFileNanos;
+
+        private synchronized void updateMax(long fileNanos) {
+            if (fileNanos > maxFileNanos) {
+                maxFileNanos = fileNanos;
+            }
+        }
+
+        private ParseStats snapshot() {
+            return new ParseStats(files.sum(), failures.sum(), documents.sum(), parseNanos.sum() / 1_000_000,
+                maxFileNanos / 1_000_000);
+        }
     }
 
     /**
-     * 加载文本文档(Markdown/TXT)
+     * 一个文件的解析计时, 流由单个线程消费
      */
-    private List<Document> loadTextDocument(Resource resource) {
-        var reader = new TextReader(resource);
-        return reader.get();
+    private static class FileTimer {
+        private final FormatMetrics metrics;
+        private long nanos;
+        private boolean failed;
+        private boolean finished;
+
+        private FileTimer(FormatMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        private void elapsed(long elapsedNanos) {
+            nanos += elapsedNanos;
+        }
+
+        private void document() {
+            metrics.documents.increment();
+        }
+
+        private void failed() {
+            failed = true;
+        }
+
+        private void finish(boolean failure) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            metrics.files.increment();
+            if (failure || failed) {
+                metrics.failures.increment();
+            }
+            metrics.parseNanos.add(nanos);
+            metrics.updateMax(nanos);
+        }
     }
 }
@@ -0,0 +1,269 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 提取文本缓存
+ * 以源文件内容的SHA-256为键, 保存文档加载器提取出的原始文档(PDF每页一个)的文本和元数据
+ * 调整分块参数或重建索引时从缓存重新分块, 不再解析源文件(PDF解析是重建索引的主要CPU开销)
+ *
+ * - 每个源文件一个GZIP压缩的文件, 按哈希的前两位分目录存放
+ * - 写入与首次解析同时进行: 文档流被完整读取后才原子地替换为正式文件, 解析失败或中途关闭时丢弃
+ * - 读取同样是逐个文档的惰性流, 内存占用与文档大小无关
+ * - 文本提取方式变化时提高 VERSION, 旧版本的缓存被视为未命中
+ *
+ * <pre>
+ * magic(int) version(int)
+ * 每个文档: 1(byte) textLen(int) text(UTF-8) metadataLen(int) metadata(JSON, UTF-8)
+ * 结束标记: 0(byte)
+ * </pre>
+ */
+public class ExtractedTextCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractedTextCache.class);
+
+    private static final int MAGIC = 0x4C585154;   // "LXQT"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ExtractedTextCache(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 读取缓存的文档, 同时计入命中/未命中次数
+     * 调用方必须关闭返回的流
+     *
+     * @param hash 源文件内容的SHA-256
+     * @return 未命中(不存在、版本不符或无法读取)时返回null
+     */
+    public Stream<Document> open(String hash) {
+        Path file = file(hash);
+        if (!Files.exists(file)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                in.close();
+                misses.incrementAndGet();
+                return null;
+            }
+        } catch (IOException e) {
+            closeQuietly(in);
+            log.warn("读取提取文本缓存失败, 重新解析: {}", file, e);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        DataInputStream input = in;
+        Spliterator<Document> documents = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Document> action) {
+                try {
+                    if (input.readByte() == 0) {
+                        return false;
+                    }
+                    String text = readString(input);
+                    Map<String, Object> metadata = objectMapper.readValue(readString(input), METADATA_TYPE);
+                    action.accept(new Document(text, metadata));
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("读取提取文本缓存失败: " + file, e);
+                }
+            }
+        };
+        return StreamSupport.stream(documents, false).onClose(() -> closeQuietly(input));
+    }
+
+    /**
+     * 在文档流被读取的同时写入缓存
+     * 流被完整读取后缓存才生效; 中途关闭或读取失败时丢弃已写入的部分
+     * 调用方必须关闭返回的流, 关闭时同时关闭原来的流
+     *
+     * @param hash 源文件内容的SHA-256
+     * @param documents 文档加载器返回的文档流
+     */
+    public Stream<Document> cache(String hash, Stream<Document> documents) {
+        Path file = file(hash);
+        Writer writer;
+        try {
+            writer = new Writer(file);
+        } catch (IOException e) {
+            log.warn("创建提取文本缓存失败, 不缓存: {}", file, e);
+            return documents;
+        }
+        Spliterator<Document> source = documents.spliterator();
+        Spliterator<Document> teed = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Document> action) {
+                boolean advanced = source.tryAdvance(document -> {
+                    writer.write(document);
+                    action.accept(document);
+                });
+                if (!advanced) {
+                    writer.commit();
+                }
+                return advanced;
+            }
+        };
+        return StreamSupport.stream(teed, false).onClose(() -> {
+            writer.discard();
+            documents.close();
+        });
+    }
+
+    /**
+     * 删除一个源文件的缓存, 如文件内容已变化或已被删除
+     */
+    public void remove(String hash) {
+        try {
+            Files.deleteIfExists(file(hash));
+        } catch (IOException e) {
+            log.warn("删除提取文本缓存失败: {}", hash, e);
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    private Path file(String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash + SUFFIX);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // 只读的缓存文件, 关闭失败不影响结果
+        }
+    }
+
+    /**
+     * 写入临时文件, 提交时原子替换为正式文件
+     * 写入失败后不再写入, 提交时丢弃, 不影响文档流本身
+     */
+    private class Writer {
+
+        private final Path file;
+        private final Path temp;
+        private DataOutputStream out;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            Files.createDirectories(file.getParent());
+            this.temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        void write(Document document) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeByte(1);
+                writeString(out, document.getText() == null ? "" : document.getText());
+                writeString(out, objectMapper.writeValueAsString(document.getMetadata()));
+            } catch (IOException e) {
+                log.warn("写入提取文本缓存失败, 不缓存: {}", file, e);
+                discard();
+            }
+        }
+
+        void commit() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeByte(0);
+                out.close();
+                out = null;
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.warn("提交提取文本缓存失败, 不缓存: {}", file, e);
+                discard();
+            }
+        }
+
+        /**
+         * 未提交时关闭并删除临时文件, 已提交时不做任何事
+         */
+        void discard() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // 临时文件随后删除
+                }
+                out = null;
+            }
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("删除临时文件失败: {}", temp, e);
+            }
+        }
+    }
+}
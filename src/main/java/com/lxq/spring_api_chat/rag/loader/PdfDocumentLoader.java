@@ -0,0 +1,39 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * PDF加载器: 逐页读取(见 PdfPageReader), 每页一个文档
+ */
+public class PdfDocumentLoader implements DocumentLoader {
+
+    private final ExtractedTextFormatter formatter = ExtractedTextFormatter.builder()
+        .withNumberOfTopTextLinesToDelete(0)
+        .build();
+
+    @Override
+    public String format() {
+        return "PDF";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("pdf");
+    }
+
+    @Override
+    public Stream<Document> load(Resource resource) {
+        try {
+            return new PdfPageReader(resource, formatter).stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开PDF文档失败: " + resource.getFilename(), e);
+        }
+    }
+}
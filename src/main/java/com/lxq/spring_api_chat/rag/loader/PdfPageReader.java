@@ -0,0 +1,135 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.ai.reader.pdf.layout.PDFLayoutTextStripperByArea;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 逐页读取PDF文档
+ * PagePdfDocumentReader.get() 一次提取全部页面, 大文档的全部文本同时在堆中; 这里每次只提取一页, 由调用方处理完再读下一页,
+ * 内存占用与页数无关
+ *
+ * 文本提取方式和元数据(page_number、file_name)与 PagePdfDocumentReader 每页一个文档时一致, 没有文本的页面被跳过
+ * 本地文件通过带缓冲的随机读取打开, 不把整个文件读入内存
+ */
+public class PdfPageReader implements Closeable {
+
+    private static final String REGION = "pdfPageRegion";
+
+    private final PDDocument document;
+    private final String filename;
+    private final ExtractedTextFormatter formatter;
+    private final PDFLayoutTextStripperByArea stripper;
+    private int nextPage;
+
+    public PdfPageReader(Resource resource, ExtractedTextFormatter formatter) throws IOException {
+        this.document = Loader.loadPDF(open(resource));
+        this.filename = resource.getFilename();
+        this.formatter = formatter;
+        this.stripper = new PDFLayoutTextStripperByArea();
+        this.stripper.setSortByPosition(true);
+    }
+
+    /**
+     * 总页数, 包括没有文本的页面
+     */
+    public int pageCount() {
+        return document.getNumberOfPages();
+    }
+
+    /**
+     * 读取下一个有文本的页面
+     *
+     * @return 已读完时返回null
+     */
+    public Document nextPage() throws IOException {
+        while (nextPage < document.getNumberOfPages()) {
+            PDPage page = document.getPage(nextPage);
+            int pageNumber = ++nextPage;
+
+            int x0 = (int) page.getMediaBox().getLowerLeftX();
+            int y0 = (int) page.getMediaBox().getLowerLeftY();
+            int width = (int) page.getMediaBox().getWidth();
+            int height = (int) page.getMediaBox().getHeight();
+            stripper.addRegion(REGION, new Rectangle(x0, y0, width, height));
+            try {
+                stripper.extractRegions(page);
+                String text = stripper.getTextForRegion(REGION);
+                if (StringUtils.hasText(text)) {
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER, pageNumber);
+                    if (filename != null) {
+                        metadata.put(PagePdfDocumentReader.METADATA_FILE_NAME, filename);
+                    }
+                    return new Document(formatter.format(text, pageNumber), metadata);
+                }
+            } finally {
+                stripper.removeRegion(REGION);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按页顺序的惰性流, 关闭流时关闭文档
+     */
+    public Stream<Document> stream() {
+        Spliterator<Document> pages = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Document> action) {
+                Document page;
+                try {
+                    page = nextPage();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("读取PDF页面失败: " + filename + " 第 " + nextPage + " 页", e);
+                }
+                if (page == null) {
+                    return false;
+                }
+                action.accept(page);
+                return true;
+            }
+        };
+        return StreamSupport.stream(pages, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        document.close();
+    }
+
+    private static RandomAccessRead open(Resource resource) throws IOException {
+        if (resource.isFile()) {
+            return new RandomAccessReadBufferedFile(resource.getFile());
+        }
+        return new RandomAccessReadBuffer(resource.getInputStream());
+    }
+}
@@ -0,0 +1,37 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.TextReader;
+import org.springframework.core.io.Resource;
+
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 纯文本加载器(Markdown/TXT): 整个文件一个文档
+ */
+public class TextDocumentLoader implements DocumentLoader {
+
+    private final String format;
+    private final Set<String> extensions;
+
+    public TextDocumentLoader(String format, Set<String> extensions) {
+        this.format = format;
+        this.extensions = extensions;
+    }
+
+    @Override
+    public String format() {
+        return format;
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return extensions;
+    }
+
+    @Override
+    public Stream<Document> load(Resource resource) {
+        return new TextReader(resource).get().stream();
+    }
+}
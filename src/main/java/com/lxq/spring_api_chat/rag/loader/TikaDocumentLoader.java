@@ -0,0 +1,38 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.core.io.Resource;
+
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 基于 Apache Tika 的加载器(Word、HTML、PowerPoint等): 由Tika自动识别格式并提取全文, 整个文件一个文档
+ * Tika一次提取全部文本, 不能按页流式读取; 这类文件通常远小于大型PDF手册
+ */
+public class TikaDocumentLoader implements DocumentLoader {
+
+    private final String format;
+    private final Set<String> extensions;
+
+    public TikaDocumentLoader(String format, Set<String> extensions) {
+        this.format = format;
+        this.extensions = extensions;
+    }
+
+    @Override
+    public String format() {
+        return format;
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return extensions;
+    }
+
+    @Override
+    public Stream<Document> load(Resource resource) {
+        return new TikaDocumentReader(resource).get().stream();
+    }
+}
@@ -1,11 +1,18 @@
 package com.lxq.spring_api_chat.rag.service;
 
 import com.lxq.spring_api_chat.rag.dto.IndexResponse;
+import com.lxq.spring_api_chat.rag.lexical.LexicalIndex;
 import com.lxq.spring_api_chat.rag.loader.DocumentLoaderFactory;
+import com.lxq.spring_api_chat.rag.loader.ExtractedTextCache;
+import com.lxq.spring_api_chat.rag.store.IndexedVectorStore;
+import com.lxq.spring_api_chat.rag.store.ShardStats;
+import com.lxq.spring_api_chat.rag.store.ShardedVectorStore;
+import com.lxq.spring_api_chat.rag.store.StoreStats;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
@@ -13,73 +20,166 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Stream;
 
 /**
  * 文档索引服务
  * 负责加载、分块、向量化和存储文档
+ *
+ * 解析线程池和Embedding线程池在第一次索引时按配置的线程数创建, 单个文档索引、目录索引和文件同步共用,
+ * 同时进行的多次索引(后台任务和目录监听)不会各自再创建线程; 服务关闭时停止(Spring容器关闭时调用 close())
  */
 @Service
-public class DocumentIndexingService {
+public class DocumentIndexingService implements AutoCloseable {
+
+    /**
+     * 目录索引过程中保存清单的最短间隔(毫秒), 见 saveManifestPeriodically()
+     */
+    private static final long MANIFEST_SAVE_INTERVAL_MS = 30_000;
+
+    private static final BooleanSupplier NOT_CANCELLED = () -> false;
 
     private final VectorStore vectorStore;
     private final TokenTextSplitter textSplitter;
     private final DocumentLoaderFactory loaderFactory;
+    private final IndexManifest manifest;
+
+    /**
+     * 词法索引, 与向量存储同步写入和删除; 未启用时为null
+     */
+    private final LexicalIndex lexicalIndex;
+
+    /**
+     * 提取文本缓存, 未启用时为null
+     */
+    private final ExtractedTextCache textCache;
+
+    @Value("${rag.chunking.size:500}")
+    private int chunkSize;
+
+    @Value("${rag.chunking.overlap:100}")
+    private int chunkOverlap;
 
     @Value("${rag.vectorstore.path:data/vectorstore/simple-vector-store.json}")
     private String vectorStorePath;
 
+    /**
+     * 解析(加载+分块)线程数
+     */
+    @Value("${rag.indexing.parse-threads:2}")
+    private int parseThreads;
+
+    /**
+     * 向量化线程数, 即同时进行的Embedding请求数上限(实际速率由限流器决定)
+     */
+    @Value("${rag.indexing.embed-threads:4}")
+    private int embedThreads;
+
+    /**
+     * 每批最多的文档块数(可来自多个文档), 每批对应一次Embedding请求和一次向量存储写入
+     */
+    @Value("${rag.indexing.batch-size:64}")
+    private int batchSize;
+
+    /**
+     * 每批文档块的估算Token数上限
+     */
+    @Value("${rag.indexing.batch-max-tokens:50000}")
+    private int batchMaxTokens;
+
+    /**
+     * 批次未满时的最长等待时间(毫秒), 到期后即发送
+     */
+    @Value("${rag.indexing.batch-max-wait-ms:200}")
+    private long batchMaxWaitMs;
+
+    /**
+     * 已解析、等待向量化的文档块数上限, 达到后解析线程等待; 0表示 batch-size * embed-threads * 4
+     */
+    @Value("${rag.indexing.max-pending-chunks:0}")
+    private int maxPendingChunks;
+
+    /**
+     * 解析线程池和Embedding线程池, 第一次使用时创建, 见 parseExecutor() 和 embedExecutor()
+     */
+    private ExecutorService parseExecutor;
+    private ExecutorService embedExecutor;
+    private boolean closed;
+
     public DocumentIndexingService(
         VectorStore vectorStore,
         TokenTextSplitter textSplitter,
-        DocumentLoaderFactory loaderFactory
+        DocumentLoaderFactory loaderFactory,
+        IndexManifest manifest,
+        ObjectProvider<LexicalIndex> lexicalIndex,
+        ObjectProvider<ExtractedTextCache> textCache
     ) {
         this.vectorStore = vectorStore;
         this.textSplitter = textSplitter;
         this.loaderFactory = loaderFactory;
+        this.manifest = manifest;
+        this.lexicalIndex = lexicalIndex.getIfAvailable();
+        this.textCache = textCache.getIfAvailable();
     }
 
     /**
      * 索引单个文档
+     * 本地文件与清单中的指纹一致(未修改)时跳过; 修改过的文件重新索引后删除旧的文档块
+     * 与目录索引相同, 逐页解析并分批向量化, 大文档的内存占用与页数无关
      */
     public IndexResponse indexDocument(Resource resource) {
         long startTime = System.currentTimeMillis();
+        EmbeddingBatcher batcher = newBatcher();
 
         try {
-            // 1. 加载文档
-            List<Document> documents = loaderFactory.loadDocument(resource);
-
-            // 2. 分块
-            List<Document> chunks = textSplitter.apply(documents);
-
-            // 3. 添加元数据
-            String filename = resource.getFilename();
-            for (Document chunk : chunks) {
-                Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
-                metadata.put("source", filename);
-                metadata.put("indexedAt", LocalDateTime.now().toString());
-                metadata.put("docType", getDocType(filename));
-                chunk.getMetadata().putAll(metadata);
+            // 1. 检查指纹
+            FileState state = resource.isFile() ? inspect(resource.getFile().toPath()) : null;
+            if (state != null && state.unchanged()) {
+                saveManifest();
+                return IndexResponse.skipped(resource.getFilename(), state.previous().chunkIds().size());
             }
 
-            // 4. 向量化并存储
-            vectorStore.add(chunks);
+            // 2~4. 逐页加载、分块、添加元数据, 分批向量化并存储, 然后清理旧的文档块
+            CompletableFuture<IngestedDocument> future = ingest(resource, state, batcher,
+                new Semaphore(maxPendingChunks()), NOT_CANCELLED);
+            batcher.flush();
+            IngestedDocument ingested = future.join();
+            recordIndexed(ingested);
 
-            // 5. 持久化到JSON文件
-            persistVectorStore();
+            // 5. 持久化: SimpleVectorStore 需要整体写出JSON文件;
+            //    IndexedVectorStore 在 add 时已写入预写日志, 由后台检查点合并, 无需每个文件全量重写
+            if (vectorStore instanceof SimpleVectorStore) {
+                persistVectorStore();
+            }
+            saveManifest();
 
             long duration = System.currentTimeMillis() - startTime;
             return IndexResponse.success(
-                filename,
-                documents.size(),
-                chunks.size(),
+                ingested.filename(),
+                ingested.documentCount(),
+                ingested.chunkIds().size(),
                 duration
             );
 
@@ -87,44 +187,175 @@ public class DocumentIndexingService {
             long duration = System.currentTimeMillis() - startTime;
             return IndexResponse.failure(
                 resource.getFilename(),
-                e.getMessage(),
+                rootCause(e).getMessage(),
                 duration
             );
+        } finally {
+            batcher.close();
         }
     }
 
     /**
-     * 批量索引目录下的所有文档
+     * 批量索引目录下的所有文档(增量)
+     * 根据文件指纹清单只处理新增或修改的文件, 并删除已修改或已删除文件的旧文档块
+     *
+     * 分阶段并行处理:
+     * 1. 解析线程池: 检查指纹, 逐页加载、分块、添加元数据, 每页的文档块立即提交
+     * 2. 批处理器: 合并多个文档(页面)的文档块, 达到数量/Token上限或等待超时后作为一批发送
+     * 3. Embedding线程池: 每批一次向量化(经过索引的限流器, 查询不使用它)并一次写入向量存储
+     * 等待写入的文档块数有上限, 解析快于Embedding时解析线程等待, 不会把整个目录或整个大文档的分块堆积在内存中
+     * 目录中可以混合任意已注册格式(见 DocumentLoaderFactory), 较大的文件先开始解析, 避免最后只剩一个大文件在解析
+     * 全部完成后持久化一次
      */
     public List<IndexResponse> indexDirectory(Path directory) {
-        List<IndexResponse> results = new ArrayList<>();
+        return indexDirectory(directory, DirectoryProgress.NONE, NOT_CANCELLED);
+    }
 
+    /**
+     * 批量索引目录, 逐个文件报告进度, 可以中途取消(后台索引任务使用, 见 IndexJobService)
+     *
+     * 取消后不再开始新的文件, 正在解析的文件在下一页之前停止并删除已写入的文档块; 这些文件的结果为失败("索引已取消"),
+     * 已完成的文件照常记录到清单并持久化, 再次索引该目录时跳过
+     * 使用预写日志的向量存储(flat/hnsw/ivfpq)写入即持久, 索引过程中每隔一段时间保存一次清单,
+     * 进程中途退出后重新索引只需处理剩余的文件
+     *
+     * @param progress 进度回调, 在完成文件的线程中调用, 按完成顺序
+     * @param cancelled 返回true表示已取消
+     * @return 与目录遍历顺序一致的结果
+     */
+    public List<IndexResponse> indexDirectory(Path directory, DirectoryProgress progress, BooleanSupplier cancelled) {
+        List<Path> files;
         try (Stream<Path> paths = Files.walk(directory)) {
-            paths.filter(Files::isRegularFile)
-                 .filter(this::isSupportedFile)
-                 .forEach(path -> {
-                     Resource resource = new FileSystemResource(path);
-                     IndexResponse response = indexDocument(resource);
-                     results.add(response);
-                 });
+            files = paths.filter(Files::isRegularFile)
+                         .filter(this::isSupportedFile)
+                         .toList();
         } catch (IOException e) {
             System.err.println("遍历目录失败: " + e.getMessage());
+            return new ArrayList<>();
         }
 
+        progress.started(files.size());
+        removeDeletedFiles(directory, files);
+        List<IndexResponse> results = indexFiles(files, progress, cancelled, "目录索引");
+
+        persistVectorStore();
+        saveManifest();
         return results;
     }
 
     /**
-     * 持久化向量存储到JSON文件
+     * 同步一组文件的变化(文档目录监听使用, 见 DocumentWatcher)
+     * 新增或修改的文件经过与目录索引相同的流水线, 未修改的文件按清单跳过; 已删除的文件删除其文档块
+     * 与单个文档索引相同, 只有 SimpleVectorStore 需要写出, 使用预写日志的存储由后台检查点持久化
+     *
+     * @param changed 新增或修改的文件, 已不存在或不支持的文件被忽略
+     * @param removed 已删除的文件或目录, 清单中位于其下、磁盘上已不存在的文件的文档块被删除
+     * @return 每个已处理文件的结果
      */
-    public void persistVectorStore() {
+    public List<IndexResponse> syncFiles(List<Path> changed, List<Path> removed) {
+        removed.forEach(this::removeMissingFiles);
+        List<Path> files = changed.stream()
+            .filter(Files::isRegularFile)
+            .filter(this::isSupportedFile)
+            .distinct()
+            .toList();
+        List<IndexResponse> results = files.isEmpty()
+            ? List.of()
+            : indexFiles(files, DirectoryProgress.NONE, NOT_CANCELLED, "文件同步");
+
+        if (vectorStore instanceof SimpleVectorStore) {
+            persistVectorStore();
+        }
+        saveManifest();
+        return results;
+    }
+
+    /**
+     * 通过并行流水线索引一组文件(增量), 不持久化, 由调用方决定持久化方式
+     *
+     * @param label 日志中的操作名称
+     * @return 与 files 顺序一致的结果
+     */
+    private List<IndexResponse> indexFiles(List<Path> files, DirectoryProgress progress, BooleanSupplier cancelled,
+                                           String label) {
+        long startTime = System.currentTimeMillis();
+        ExecutorService parser = parseExecutor();
+        Semaphore pendingChunks = new Semaphore(maxPendingChunks());
+        EmbeddingBatcher batcher = newBatcher();
+        List<IndexResponse> results = new ArrayList<>(files.size());
+        AtomicLong lastManifestSave = new AtomicLong(System.currentTimeMillis());
+
         try {
-            File storeFile = new File(vectorStorePath);
-            storeFile.getParentFile().mkdirs();
+            Map<Path, CompletableFuture<IndexResponse>> futures = new HashMap<>();
+            for (Path path : largestFirst(files)) {
+                Resource resource = new FileSystemResource(path);
+                long fileStartTime = System.currentTimeMillis();
+
+                // 解析全部在解析线程中进行, 返回的 future 在该文件的文档块全部写入后完成
+                CompletableFuture<IndexResponse> future = CompletableFuture
+                    .supplyAsync(() -> ingestIfChanged(resource, path, batcher, pendingChunks, cancelled),
+                        parser)
+                    .thenCompose(pending -> pending)
+                    .thenApply(ingested -> {
+                        if (ingested.skipped()) {
+                            return IndexResponse.skipped(
+                                ingested.filename(),
+                                ingested.state().previous().chunkIds().size()
+                            );
+                        }
+                        recordIndexed(ingested);
+                        saveManifestPeriodically(lastManifestSave);
+                        return IndexResponse.success(
+                            ingested.filename(),
+                            ingested.documentCount(),
+                            ingested.chunkIds().size(),
+                            System.currentTimeMillis() - fileStartTime
+                        );
+                    })
+                    .exceptionally(e -> IndexResponse.failure(
+                        resource.getFilename(),
+                        rootCause(e).getMessage(),
+                        System.currentTimeMillis() - fileStartTime
+                    ))
+                    .thenApply(response -> {
+                        progress.indexed(response);
+                        return response;
+                    });
+                futures.put(path, future);
+            }
+            files.forEach(path -> results.add(futures.get(path).join()));
+        } finally {
+            batcher.close();
+        }
 
+        long skipped = results.stream().filter(IndexResponse::skipped).count();
+        String outcome = cancelled.getAsBoolean() ? "ℹ " + label + "已取消: " : "✓ " + label + "完成: ";
+        System.out.println(outcome + files.size() + " 个文件, 未修改跳过 " + skipped + " 个("
+            + batcher.summary() + "), 耗时 " + (System.currentTimeMillis() - startTime) + "ms");
+        System.out.println("ℹ 按格式的解析统计: " + loaderFactory.parseStats());
+        return results;
+    }
+
+    /**
+     * 持久化向量存储
+     * SimpleVectorStore 保存为JSON文件, IndexedVectorStore 立即执行检查点(追加段写为新的二进制段文件),
+     * ShardedVectorStore 对每个分片执行检查点
+     */
+    public void persistVectorStore() {
+        try {
             if (vectorStore instanceof SimpleVectorStore simpleStore) {
+                File storeFile = new File(vectorStorePath);
+                storeFile.getParentFile().mkdirs();
                 simpleStore.save(storeFile);
                 System.out.println("✓ 向量存储已持久化: " + vectorStorePath);
+            } else if (vectorStore instanceof IndexedVectorStore indexedStore) {
+                if (indexedStore.checkpoint()) {
+                    System.out.println("✓ 向量存储已持久化: " + indexedStore.getDirectory());
+                }
+            } else if (vectorStore instanceof ShardedVectorStore shardedStore) {
+                if (shardedStore.checkpoint()) {
+                    System.out.println("✓ 向量存储已持久化: " + shardedStore.getDirectory());
+                }
             }
         } catch (Exception e) {
             System.err.println("✗ 持久化向量存储失败: " + e.getMessage());
@@ -132,22 +363,450 @@ public class DocumentIndexingService {
     }
 
     /**
-     * 判断是否为支持的文件类型
+     * 向量存储统计信息, 不执行检索
+     * IndexedVectorStore 直接读取增量维护的计数, ShardedVectorStore 汇总各分片的计数;
+     * SimpleVectorStore 没有计数接口, 按文件指纹清单统计, 只包含通过本服务索引的文件, 向量维度和内存占用未知(为0)
+     */
+    public StoreStats stats() {
+        if (vectorStore instanceof IndexedVectorStore indexedStore) {
+            return indexedStore.stats();
+        }
+        if (vectorStore instanceof ShardedVectorStore shardedStore) {
+            return shardedStore.stats();
+        }
+        Map<String, Integer> sourceCounts = new HashMap<>();
+        Map<String, Integer> docTypeCounts = new HashMap<>();
+        int chunkCount = 0;
+        for (Map.Entry<String, Integer> entry : manifest.chunkCounts().entrySet()) {
+            String filename = Path.of(entry.getKey()).getFileName().toString();
+            sourceCounts.merge(filename, entry.getValue(), Integer::sum);
+            docTypeCounts.merge(getDocType(filename), entry.getValue(), Integer::sum);
+            chunkCount += entry.getValue();
+        }
+        long diskBytes = 0;
+        try {
+            Path storeFile = Path.of(vectorStorePath);
+            diskBytes = Files.exists(storeFile) ? Files.size(storeFile) : 0;
+        } catch (IOException e) {
+            System.err.println("✗ 读取向量存储文件大小失败: " + e.getMessage());
+        }
+        return new StoreStats(chunkCount, 0, sourceCounts, docTypeCounts, diskBytes, 0, 0);
+    }
+
+    /**
+     * 按文件格式统计的解析指标
+     */
+    public Map<String, DocumentLoaderFactory.ParseStats> parseStats() {
+        return loaderFactory.parseStats();
+    }
+
+    /**
+     * 每个分片的统计信息, 未启用分片时为null
+     */
+    public List<ShardStats> shardStats() {
+        return vectorStore instanceof ShardedVectorStore shardedStore ? shardedStore.shardStats() : null;
+    }
+
+    /**
+     * 停止解析线程池和Embedding线程池, 未完成的索引被中断; 关闭后不能再索引
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (parseExecutor != null) {
+            parseExecutor.shutdownNow();
+        }
+        if (embedExecutor != null) {
+            embedExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 检查文件指纹, 未修改时返回跳过标记, 否则流式索引
+     */
+    private CompletableFuture<IngestedDocument> ingestIfChanged(Resource resource, Path path,
+                                                                EmbeddingBatcher batcher, Semaphore pendingChunks,
+                                                                BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("索引已取消");
+        }
+        FileState state;
+        try {
+            state = inspect(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (state.unchanged()) {
+            return CompletableFuture.completedFuture(
+                new IngestedDocument(resource.getFilename(), 0, List.of(), state));
+        }
+        return ingest(resource, state, batcher, pendingChunks, cancelled);
+    }
+
+    /**
+     * 读取文件大小和修改时间, 与清单不一致时再计算内容哈希
+     * 只有修改时间变化而内容未变的文件(如 touch)同样视为未修改, 并更新清单中的修改时间
+     * 内容未变但分块参数变化的文件需要重新分块, 沿用清单中的内容哈希, 从提取文本缓存读取, 不读取源文件
+     */
+    private FileState inspect(Path path) throws IOException {
+        String key = IndexManifest.key(path);
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        IndexManifest.Entry previous = manifest.get(key);
+        String chunking = chunking();
+        if (previous != null && previous.sameStat(size, lastModified)) {
+            return new FileState(key, size, lastModified, previous.hash(), previous,
+                previous.sameChunking(chunking));
+        }
+
+        String hash = IndexManifest.hash(path);
+        if (previous != null && previous.hash().equals(hash) && previous.sameChunking(chunking)) {
+            manifest.put(key, new IndexManifest.Entry(size, lastModified, hash, previous.chunkIds(),
+                previous.chunking()));
+            return new FileState(key, size, lastModified, hash, previous, true);
+        }
+        return new FileState(key, size, lastModified, hash, previous, false);
+    }
+
+    /**
+     * 流式索引一个文档: 逐页加载、分块、添加元数据, 每页的文档块立即提交给批处理器向量化
+     * 提交前占用 pendingChunks 中与文档块数相同的许可, 写入完成后归还; 许可用完时在此等待(背压),
+     * 因此内存中只有少量页面的文本和文档块, 与文档大小无关, 前面页面的向量化与后面页面的解析同时进行
+     * 有文件指纹时, 文档块ID由 路径+内容哈希+序号 生成, 重复写入同一内容会覆盖而不是重复添加
+     * 每页之前检查是否已取消, 取消时等待已提交的文档块写入后将其删除, 不在存储中留下半个文件
+     *
+     * @param state 文件指纹, 非本地文件时为null
+     * @return 该文档的全部文档块写入完成时完成
+     * @throws CancellationException 已取消
+     */
+    private CompletableFuture<IngestedDocument> ingest(Resource resource, FileState state, EmbeddingBatcher batcher,
+                                                       Semaphore pendingChunks, BooleanSupplier cancelled) {
+        String filename = resource.getFilename();
+        String docType = getDocType(filename);
+        int maxPermits = maxPendingChunks();
+        List<String> chunkIds = new ArrayList<>();
+        List<CompletableFuture<Void>> written = new ArrayList<>();
+        int documentCount = 0;
+
+        // 1. 逐页加载文档, 提取文本缓存命中时不解析源文件
+        try (Stream<Document> documents = loadDocuments(resource, state)) {
+            Iterator<Document> pages = documents.iterator();
+            while (pages.hasNext()) {
+                if (cancelled.getAsBoolean()) {
+                    discardPartial(state, chunkIds, written);
+                    throw new CancellationException("索引已取消");
+                }
+                Document page = pages.next();
+                documentCount++;
+
+                // 2. 分块: 每页单独分块, 与整体分块的结果相同(分块器不跨文档合并)
+                List<Document> splits = textSplitter.apply(List.of(page));
+
+                // 3. 添加元数据
+                List<Document> chunks = new ArrayList<>(splits.size());
+                for (Document split : splits) {
+                    Map<String, Object> metadata = new HashMap<>(split.getMetadata());
+                    metadata.put("source", filename);
+                    metadata.put("indexedAt", LocalDateTime.now().toString());
+                    metadata.put("docType", docType);
+                    String id = state == null
+                        ? split.getId()
+                        : IndexManifest.chunkId(state.key(), state.hash(), chunkIds.size());
+                    chunkIds.add(id);
+                    chunks.add(Document.builder()
+                        .id(id)
+                        .text(split.getText())
+                        .metadata(metadata)
+                        .build());
+                }
+                if (chunks.isEmpty()) {
+                    continue;
+                }
+
+                // 4. 提交向量化, 等待写入的文档块过多时等待
+                int permits = Math.min(chunks.size(), maxPermits);
+                pendingChunks.acquireUninterruptibly(permits);
+                written.add(batcher.submit(chunks).whenComplete((ignored, e) -> pendingChunks.release(permits)));
+            }
+        }
+
+        int pages = documentCount;
+        return CompletableFuture.allOf(written.toArray(CompletableFuture[]::new))
+            .thenApply(ignored -> new IngestedDocument(filename, pages, List.copyOf(chunkIds), state));
+    }
+
+    /**
+     * 删除取消时已提交的文档块; 清单中上一次索引的文档块(内容未变、只改了分块参数时ID可能相同)仍然有效, 不删除
+     */
+    private void discardPartial(FileState state, List<String> chunkIds, List<CompletableFuture<Void>> written) {
+        try {
+            CompletableFuture.allOf(written.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            // 写入失败的批次没有留下文档块, 其余批次已完成
+        }
+        Set<String> previous = state == null || state.previous() == null
+            ? Set.of()
+            : new HashSet<>(state.previous().chunkIds());
+        List<String> partial = chunkIds.stream().filter(id -> !previous.contains(id)).toList();
+        if (!partial.isEmpty()) {
+            remove(partial);
+        }
+    }
+
+    /**
+     * 文档加载器的提取结果: 有文件指纹时优先读取提取文本缓存, 未命中时解析源文件, 并在读取过程中写入缓存
+     */
+    private Stream<Document> loadDocuments(Resource resource, FileState state) {
+        if (textCache == null || state == null) {
+            return loaderFactory.streamDocument(resource);
+        }
+        Stream<Document> cached = textCache.open(state.hash());
+        if (cached != null) {
+            return cached;
+        }
+        return textCache.cache(state.hash(), loaderFactory.streamDocument(resource));
+    }
+
+    /**
+     * 文件的文档块全部写入后: 删除该文件旧的文档块, 并更新清单
+     */
+    private void recordIndexed(IngestedDocument ingested) {
+        FileState state = ingested.state();
+        if (state == null) {
+            return;
+        }
+        List<String> chunkIds = ingested.chunkIds();
+        if (state.previous() != null) {
+            Set<String> current = new HashSet<>(chunkIds);
+            List<String> stale = state.previous().chunkIds().stream()
+                .filter(id -> !current.contains(id))
+                .toList();
+            if (!stale.isEmpty()) {
+                remove(stale);
+            }
+        }
+        if (textCache != null && state.previous() != null && !state.previous().hash().equals(state.hash())) {
+            // 内容已变化, 旧内容的提取文本不再需要
+            textCache.remove(state.previous().hash());
+        }
+        manifest.put(state.key(), new IndexManifest.Entry(state.size(), state.lastModified(), state.hash(), chunkIds,
+            chunking()));
+    }
+
+    /**
+     * 删除清单中位于该目录下、但磁盘上已不存在的文件的文档块
+     */
+    private void removeDeletedFiles(Path directory, List<Path> files) {
+        Set<String> existing = new HashSet<>();
+        files.forEach(path -> existing.add(IndexManifest.key(path)));
+        manifest.entriesUnder(directory).forEach((key, entry) -> {
+            if (existing.contains(key)) {
+                return;
+            }
+            if (!entry.chunkIds().isEmpty()) {
+                remove(entry.chunkIds());
+            }
+            if (textCache != null) {
+                textCache.remove(entry.hash());
+            }
+            manifest.remove(key);
+            System.out.println("ℹ 文件已删除, 移除 " + entry.chunkIds().size() + " 个文档块: " + key);
+        });
+    }
+
+    /**
+     * 删除清单中位于该路径下(或就是该文件)、但磁盘上已不存在的文件的文档块
+     */
+    private void removeMissingFiles(Path path) {
+        List<Path> existing = manifest.entriesUnder(path).keySet().stream()
+            .map(Path::of)
+            .filter(Files::exists)
+            .toList();
+        removeDeletedFiles(path, existing);
+    }
+
+    /**
+     * 写入向量存储(向量化), 成功后写入词法索引
+     */
+    private void store(List<Document> chunks) {
+        vectorStore.add(chunks);
+        if (lexicalIndex != null) {
+            lexicalIndex.add(chunks);
+        }
+    }
+
+    /**
+     * 从向量存储和词法索引中删除文档块
+     */
+    private void remove(List<String> chunkIds) {
+        vectorStore.delete(chunkIds);
+        if (lexicalIndex != null) {
+            lexicalIndex.delete(chunkIds);
+        }
+    }
+
+    private void saveManifest() {
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            System.err.println("✗ 保存索引清单失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 距上次保存超过 MANIFEST_SAVE_INTERVAL_MS 时保存清单
+     * 只用于写入即持久的向量存储: SimpleVectorStore 在目录索引结束时才写出, 提前保存的清单会把尚未持久化的文件记为已索引
+     */
+    private void saveManifestPeriodically(AtomicLong lastSave) {
+        if (vectorStore instanceof SimpleVectorStore) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastSave.get();
+        if (now - last >= MANIFEST_SAVE_INTERVAL_MS && lastSave.compareAndSet(last, now)) {
+            saveManifest();
+        }
+    }
+
+    /**
+     * 按文件大小从大到小排列, 无法读取大小的文件排在最后
+     */
+    private static List<Path> largestFirst(List<Path> files) {
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path path : files) {
+            try {
+                sizes.put(path, Files.size(path));
+            } catch (IOException e) {
+                sizes.put(path, -1L);
+            }
+        }
+        List<Path> sorted = new ArrayList<>(files);
+        sorted.sort((a, b) -> Long.compare(sizes.get(b), sizes.get(a)));
+        return sorted;
+    }
+
+    private EmbeddingBatcher newBatcher() {
+        return new EmbeddingBatcher(this::store, batchSize, batchMaxTokens, Duration.ofMillis(batchMaxWaitMs),
+            embedExecutor());
+    }
+
+    private synchronized ExecutorService parseExecutor() {
+        checkOpen();
+        if (parseExecutor == null) {
+            parseExecutor = Executors.newFixedThreadPool(parseThreads, namedThreads("index-parse"));
+        }
+        return parseExecutor;
+    }
+
+    private synchronized ExecutorService embedExecutor() {
+        checkOpen();
+        if (embedExecutor == null) {
+            embedExecutor = Executors.newFixedThreadPool(embedThreads, namedThreads("index-embed"));
+        }
+        return embedExecutor;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("索引服务已关闭");
+        }
+    }
+
+    /**
+     * 分块参数, 记录在清单中; 变化后内容未变的文件也需要重新分块
+     */
+    private String chunking() {
+        return "size=" + chunkSize + ",overlap=" + chunkOverlap;
+    }
+
+    private int maxPendingChunks() {
+        return maxPendingChunks > 0 ? maxPendingChunks : batchSize * embedThreads * 4;
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 判断是否为支持的文件类型: 加载器注册表中有对应扩展名的加载器
      */
     private boolean isSupportedFile(Path path) {
-        String filename = path.getFileName().toString().toLowerCase();
-        return filename.endsWith(".pdf") ||
-               filename.endsWith(".md") ||
-               filename.endsWith(".txt");
+        return loaderFactory.supports(path.getFileName().toString());
     }
 
     /**
-     * 获取文档类型
+     * 获取文档类型: 加载器的格式名
      */
     private String getDocType(String filename) {
-        if (filename.endsWith(".pdf")) return "PDF";
-        if (filename.endsWith(".md")) return "MARKDOWN";
-        if (filename.endsWith(".txt")) return "TEXT";
-        return "UNKNOWN";
+        return loaderFactory.docType(filename);
+    }
+
+    /**
+     * 目录索引的进度回调
+     */
+    public interface DirectoryProgress {
+
+        DirectoryProgress NONE = new DirectoryProgress() {
+            @Override
+            public void started(int fileCount) {
+            }
+
+            @Override
+            public void indexed(IndexResponse response) {
+            }
+        };
+
+        /**
+         * 遍历目录后、开始索引前调用
+         *
+         * @param fileCount 待处理的文件数(包括未修改、将被跳过的文件)
+         */
+        void started(int fileCount);
+
+        /**
+         * 一个文件处理完成(成功、跳过或失败)
+         */
+        void indexed(IndexResponse response);
+    }
+
+    /**
+     * 一个文档的索引结果: 只保留文档块ID(用于清理旧文档块和更新清单), 文本和向量写入后不再持有
+     *
+     * @param documentCount 加载得到的文档数(PDF为有文本的页数)
+     * @param state 文件指纹, 非本地文件时为null
+     */
+    private record IngestedDocument(String filename, int documentCount, List<String> chunkIds, FileState state) {
+
+        boolean skipped() {
+            return state != null && state.unchanged();
+        }
+    }
+
+    /**
+     * 文件当前的指纹, 以及清单中的上一次记录
+     *
+     * @param previous 清单中的记录, 新文件为null
+     * @param unchanged 是否无需重新索引: 内容和分块参数都与上一次索引时相同
+     */
+    private record FileState(
+        String key,
+        long size,
+        long lastModified,
+        String hash,
+        IndexManifest.Entry previous,
+        boolean unchanged
+    ) {
     }
 }
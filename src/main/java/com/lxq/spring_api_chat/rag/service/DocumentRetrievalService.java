@@ -1,32 +1,89 @@
 package com.lxq.spring_api_chat.rag.service;
 
 import com.lxq.spring_api_chat.rag.dto.RetrievalResult;
+import com.lxq.spring_api_chat.rag.lexical.LexicalIndex;
+import com.lxq.spring_api_chat.rag.lexical.LexicalTokenizer;
+import com.lxq.spring_api_chat.rag.store.MetadataFilter;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * 文档检索服务
- * 负责向量相似度检索
+ * 根据 rag.retrieval.mode 选择检索方式:
+ * - vector: 向量相似度检索
+ * - lexical: 词法(BM25)检索, 不调用Embedding模型
+ * - hybrid: 向量与词法检索结果按排名倒数融合(Reciprocal Rank Fusion);
+ *   关键词查询(标识符、API名称、引号括起的词)词法检索有结果时只融合词法一路, 不调用Embedding模型
+ * 未启用词法索引时都按 vector 处理, 默认为 vector
+ *
+ * 返回文档的 score 随检索方式不同:
+ * - vector: 余弦相似度, 低于 similarityThreshold 的结果被过滤
+ * - lexical: BM25分数, 没有上界, similarityThreshold 不起作用
+ * - hybrid: RRF融合分数 sum(1 / (k + 排名)); similarityThreshold 只过滤向量一路的候选,
+ *   词法命中不受阈值限制. 各路的原始分数保留在 vectorScore / bm25Score 元数据中
  */
 @Service
 public class DocumentRetrievalService {
 
+    /**
+     * 检索方式
+     */
+    public enum Mode {
+        VECTOR,
+        LEXICAL,
+        HYBRID
+    }
+
+    /**
+     * 混合检索结果中各路原始分数和融合分数的元数据键
+     */
+    static final String VECTOR_SCORE = "vectorScore";
+    static final String BM25_SCORE = "bm25Score";
+    static final String RRF_SCORE = "rrfScore";
+
     private final VectorStore vectorStore;
 
+    /**
+     * 词法索引, 未启用时为null
+     */
+    private final LexicalIndex lexicalIndex;
+
     @Value("${rag.retrieval.topK:5}")
     private int defaultTopK;
 
     @Value("${rag.retrieval.similarityThreshold:0.7}")
     private double defaultSimilarityThreshold;
 
-    public DocumentRetrievalService(VectorStore vectorStore) {
+    @Value("${rag.retrieval.mode:vector}")
+    private String mode;
+
+    /**
+     * RRF 平滑常数: 文档得分为 sum(1 / (k + 排名))
+     */
+    @Value("${rag.retrieval.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    /**
+     * 混合检索时每一路召回的候选数(不少于topK)
+     */
+    @Value("${rag.retrieval.hybrid.candidates:20}")
+    private int hybridCandidates;
+
+    public DocumentRetrievalService(VectorStore vectorStore, ObjectProvider<LexicalIndex> lexicalIndex) {
         this.vectorStore = vectorStore;
+        this.lexicalIndex = lexicalIndex.getIfAvailable();
     }
 
     /**
@@ -46,17 +103,22 @@ public class DocumentRetrievalService {
      * @return 检索结果
      */
     public RetrievalResult retrieve(String query, int topK, double similarityThreshold) {
+        return retrieve(query, topK, similarityThreshold, null);
+    }
+
+    /**
+     * 在满足元数据过滤条件的文档块中检索
+     * @param query 查询文本
+     * @param topK 返回结果数量
+     * @param similarityThreshold 相似度阈值
+     * @param filter 过滤表达式, 如 source == 'manual.pdf'; null表示不过滤
+     * @return 检索结果
+     */
+    public RetrievalResult retrieve(String query, int topK, double similarityThreshold, String filter) {
         long startTime = System.currentTimeMillis();
 
         try {
-            // 执行向量检索
-            List<Document> documents = vectorStore.similaritySearch(
-                SearchRequest.builder()
-                    .query(query)
-                    .topK(topK)
-                    .similarityThreshold(similarityThreshold)
-                    .build()
-            );
+            List<Document> documents = search(query, topK, similarityThreshold, filter);
 
             long duration = System.currentTimeMillis() - startTime;
 
@@ -82,6 +144,106 @@ public class DocumentRetrievalService {
         }
     }
 
+    /**
+     * 按配置的检索方式检索, 失败时抛出异常
+     *
+     * @param similarityThreshold 向量检索的相似度阈值, 不作用于词法检索的命中(见类注释)
+     * @return 按相关性从高到低排列, 不超过 topK 条
+     */
+    public List<Document> search(String query, int topK, double similarityThreshold) {
+        return search(query, topK, similarityThreshold, null);
+    }
+
+    /**
+     * 按配置的检索方式在满足元数据过滤条件的文档块中检索, 失败时抛出异常
+     * 过滤表达式使用 Spring AI 的文本语法, 如 source == 'manual.pdf' && docType in ['PDF', 'MARKDOWN'];
+     * 向量检索时来源文件和文档类型上的条件由存储的元数据位图在计算相似度之前缩小候选范围
+     *
+     * @param filter 过滤表达式, null或空白表示不过滤
+     * @throws IllegalArgumentException 过滤表达式无效
+     */
+    public List<Document> search(String query, int topK, double similarityThreshold, String filter) {
+        Filter.Expression filterExpression = MetadataFilter.parse(filter);
+        Mode effective = lexicalIndex == null ? Mode.VECTOR : Mode.valueOf(mode.toUpperCase());
+        return switch (effective) {
+            case VECTOR -> vectorSearch(query, topK, similarityThreshold, filterExpression);
+            case LEXICAL -> lexicalSearch(query, topK, filterExpression);
+            case HYBRID -> hybridSearch(query, topK, similarityThreshold, filterExpression);
+        };
+    }
+
+    /**
+     * 混合检索: 关键词查询优先只走词法检索, 否则两路召回后按 RRF 融合
+     * 两种情况都经过 fuse, 返回的 score 始终是RRF分数
+     */
+    private List<Document> hybridSearch(String query, int topK, double similarityThreshold,
+                                        Filter.Expression filterExpression) {
+        int candidates = Math.max(hybridCandidates, topK);
+        List<Document> lexical = lexicalSearch(query, candidates, filterExpression);
+        Map<String, List<Document>> rankings = new LinkedHashMap<>();
+        if (lexical.isEmpty() || !LexicalTokenizer.isKeywordQuery(query)) {
+            rankings.put(VECTOR_SCORE, vectorSearch(query, candidates, similarityThreshold, filterExpression));
+        }
+        rankings.put(BM25_SCORE, lexical);
+        return fuse(rankings, topK);
+    }
+
+    private List<Document> lexicalSearch(String query, int topK, Filter.Expression filterExpression) {
+        return lexicalIndex.search(query, topK,
+            filterExpression == null ? null : MetadataFilter.predicate(filterExpression));
+    }
+
+    private List<Document> vectorSearch(String query, int topK, double similarityThreshold,
+                                        Filter.Expression filterExpression) {
+        return vectorStore.similaritySearch(
+            SearchRequest.builder()
+                .query(query)
+                .topK(topK)
+                .similarityThreshold(similarityThreshold)
+                .filterExpression(filterExpression)
+                .build()
+        );
+    }
+
+    /**
+     * 排名倒数融合: 每一路结果中排名为 r(从1开始)的文档得分 1 / (k + r), 同一文档的得分累加
+     * 融合得分作为 Document 的 score, 同时写入 rrfScore 元数据; 每一路的原始分数写入以该路的键命名的元数据
+     * 同一文档的文本和元数据取最先出现的一路(向量检索的结果带有 distance 元数据)
+     *
+     * @param rankings 原始分数的元数据键 -> 该路按相关性排列的结果
+     */
+    List<Document> fuse(Map<String, List<Document>> rankings, int topK) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Map<String, Object>> metadata = new LinkedHashMap<>();
+        Map<String, Document> documents = new HashMap<>();
+        for (Map.Entry<String, List<Document>> entry : rankings.entrySet()) {
+            List<Document> ranking = entry.getValue();
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+                documents.putIfAbsent(document.getId(), document);
+                Map<String, Object> fields = metadata.computeIfAbsent(document.getId(),
+                    id -> new HashMap<>(document.getMetadata()));
+                if (document.getScore() != null) {
+                    fields.put(entry.getKey(), document.getScore());
+                }
+            }
+        }
+        List<Document> fused = new ArrayList<>(metadata.size());
+        for (Map.Entry<String, Map<String, Object>> entry : metadata.entrySet()) {
+            double score = scores.get(entry.getKey());
+            entry.getValue().put(RRF_SCORE, score);
+            fused.add(Document.builder()
+                .id(entry.getKey())
+                .text(documents.get(entry.getKey()).getText())
+                .metadata(entry.getValue())
+                .score(score)
+                .build());
+        }
+        fused.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return fused.size() > topK ? fused.subList(0, topK) : fused;
+    }
+
     /**
      * 格式化检索结果为上下文字符串
      */
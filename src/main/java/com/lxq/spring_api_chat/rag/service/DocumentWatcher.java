@@ -0,0 +1,261 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 文档目录监听
+ * 通过 WatchService 监听文档目录(包括子目录), 把新增、修改和删除的文件同步到索引, 不需要手动调用索引接口或定期遍历整个目录
+ *
+ * - 防抖: 一个路径最后一次事件之后 debounce 时长内没有新事件才处理, 复制大文件或编辑器保存时的连续事件只处理一次;
+ *   持续变化的文件最迟在第一次事件之后 debounce * MAX_DELAY_FACTOR 处理
+ * - 合并: 同一路径的多次事件合并为一条, 到期时按磁盘上的实际状态判断: 存在则索引(未修改的文件按清单跳过), 不存在则删除
+ *   因此"删除后重建"(编辑器的原子保存)按修改处理, "创建后删除"的临时文件不会被索引
+ * - 到期的路径合并为一批交给处理器, 多个文件共享同一条索引流水线
+ * - 新建的子目录立即注册监听, 并把其中已有的文件加入待处理; 事件溢出(OVERFLOW)时重新注册全部目录并完整同步一次
+ * - 监听和同步在同一个后台线程中执行, 同步期间的事件由 WatchService 暂存, 完成后继续处理
+ */
+public class DocumentWatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentWatcher.class);
+
+    /**
+     * 持续变化的路径最长等待 debounce 的倍数
+     */
+    private static final int MAX_DELAY_FACTOR = 10;
+
+    private final Path root;
+    private final ChangeHandler handler;
+    private final long debounceMs;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /**
+     * 待处理的路径 -> (第一次事件时间, 最后一次事件时间), 只由监听线程访问
+     */
+    private final Map<Path, long[]> pending = new LinkedHashMap<>();
+
+    /**
+     * 需要完整同步的时间(毫秒), 0表示不需要
+     */
+    private long rescanAt;
+
+    private volatile boolean closed;
+    private Thread thread;
+
+    /**
+     * @param root 监听的目录
+     * @param handler 处理一批变化, 通常为 indexingService::syncFiles
+     * @param debounce 防抖时长
+     */
+    public DocumentWatcher(Path root, ChangeHandler handler, Duration debounce) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.handler = handler;
+        this.debounceMs = debounce.toMillis();
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * 注册全部目录并启动监听线程
+     *
+     * @param initialScan 启动后先完整同步一次, 处理未运行期间的变化(增量, 未修改的文件按清单跳过)
+     */
+    public synchronized void start(boolean initialScan) throws IOException {
+        if (thread != null) {
+            return;
+        }
+        registerAll(root);
+        if (initialScan) {
+            rescanAt = System.currentTimeMillis();
+        }
+        thread = new Thread(this::run, "document-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止监听; 正在进行的同步执行完后线程退出
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                WatchKey key = poll();
+                while (key != null) {
+                    handle(key);
+                    key = watchService.poll();
+                }
+                flush(System.currentTimeMillis());
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() 关闭了 WatchService
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 等待下一个事件, 最长等到最早的待处理路径到期
+     */
+    private WatchKey poll() throws InterruptedException {
+        long next = nextDue();
+        if (next == Long.MAX_VALUE) {
+            return watchService.take();
+        }
+        long wait = next - System.currentTimeMillis();
+        return wait <= 0 ? watchService.poll() : watchService.poll(wait, TimeUnit.MILLISECONDS);
+    }
+
+    private void handle(WatchKey key) {
+        Path directory = directories.get(key);
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescanAt = now;
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // 注册之前已写入新目录的文件不会产生事件, 逐个加入待处理
+                try {
+                    registerAll(path);
+                    try (Stream<Path> files = Files.walk(path)) {
+                        files.filter(Files::isRegularFile).forEach(file -> mark(file, now));
+                    }
+                } catch (IOException e) {
+                    log.warn("监听新目录失败, 稍后完整同步: {}", path, e);
+                    rescanAt = now;
+                }
+                continue;
+            }
+            mark(path, now);
+        }
+        if (!key.reset()) {
+            // 目录已删除, 其中的文件由上级目录的删除事件处理
+            directories.remove(key);
+        }
+    }
+
+    private void mark(Path path, long now) {
+        long[] times = pending.get(path);
+        if (times == null) {
+            pending.put(path, new long[]{now, now});
+        } else {
+            times[1] = now;
+        }
+    }
+
+    private long nextDue() {
+        long next = rescanAt > 0 ? rescanAt + debounceMs : Long.MAX_VALUE;
+        for (long[] times : pending.values()) {
+            next = Math.min(next, due(times));
+        }
+        return next;
+    }
+
+    private long due(long[] times) {
+        return Math.min(times[1] + debounceMs, times[0] + debounceMs * MAX_DELAY_FACTOR);
+    }
+
+    /**
+     * 处理已到期的路径; 需要完整同步时遍历整个目录, 同时覆盖全部待处理路径
+     */
+    private void flush(long now) {
+        List<Path> changed = new ArrayList<>();
+        List<Path> removed = new ArrayList<>();
+        if (rescanAt > 0 && rescanAt + debounceMs <= now) {
+            rescanAt = 0;
+            pending.clear();
+            try {
+                registerAll(root);
+                try (Stream<Path> files = Files.walk(root)) {
+                    files.filter(Files::isRegularFile).forEach(changed::add);
+                }
+            } catch (IOException e) {
+                log.warn("遍历文档目录失败: {}", root, e);
+                return;
+            }
+            removed.add(root);
+        } else {
+            Iterator<Map.Entry<Path, long[]>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, long[]> entry = iterator.next();
+                if (due(entry.getValue()) > now) {
+                    continue;
+                }
+                iterator.remove();
+                Path path = entry.getKey();
+                if (Files.isRegularFile(path)) {
+                    changed.add(path);
+                } else if (!Files.exists(path)) {
+                    removed.add(path);
+                }
+            }
+        }
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        try {
+            handler.apply(changed, removed);
+        } catch (RuntimeException e) {
+            log.error("同步文档变化失败: 修改 {} 个, 删除 {} 个", changed.size(), removed.size(), e);
+        }
+    }
+
+    /**
+     * 注册目录及其全部子目录; 已注册的目录重复注册返回同一个 WatchKey
+     */
+    private void registerAll(Path start) throws IOException {
+        try (Stream<Path> paths = Files.walk(start)) {
+            for (Path directory : paths.filter(path -> Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)).toList()) {
+                WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, directory);
+            }
+        }
+    }
+
+    /**
+     * 处理一批文件变化, 见 DocumentIndexingService.syncFiles
+     */
+    @FunctionalInterface
+    public interface ChangeHandler {
+
+        /**
+         * @param changed 新增或修改的文件
+         * @param removed 已删除的文件或目录
+         */
+        void apply(List<Path> changed, List<Path> removed);
+    }
+}
@@ -0,0 +1,183 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 跨文档的Embedding批处理器
+ * 收集多个文档的文档块, 达到数量上限、Token上限或最长等待时间后, 合并为一批交给下游(一次Embedding请求 + 一次存储写入),
+ * 完成后再按文档通知结果
+ *
+ * 大量小文件时, 每个文件单独请求会产生大量HTTP往返; 合并后请求次数约为 总文档块数 / maxChunks
+ * 单个文档的文档块超过一批时会被拆到多批, 全部批次完成后该文档才算完成, 任一批次失败则该文档失败
+ */
+public class EmbeddingBatcher implements AutoCloseable {
+
+    private final Consumer<List<Document>> sink;
+    private final int maxChunks;
+    private final int maxTokens;
+    private final Duration maxWait;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+
+    private Batch current = new Batch();
+    private int batchCount;
+    private int chunkCount;
+    private int documentCount;
+
+    /**
+     * @param sink 处理一批文档块, 通常为 vectorStore::add
+     * @param maxChunks 每批最多的文档块数
+     * @param maxTokens 每批最多的估算Token数
+     * @param maxWait 第一个文档块进入批次后最长等待时间, 到期后即使未满也发送
+     * @param executor 执行 sink 的线程池
+     */
+    public EmbeddingBatcher(
+        Consumer<List<Document>> sink,
+        int maxChunks,
+        int maxTokens,
+        Duration maxWait,
+        Executor executor
+    ) {
+        this.sink = sink;
+        this.maxChunks = maxChunks;
+        this.maxTokens = maxTokens;
+        this.maxWait = maxWait;
+        this.executor = executor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交一个文档的全部文档块
+     *
+     * @return 该文档的全部文档块写入完成时完成
+     */
+    public synchronized CompletableFuture<Void> submit(List<Document> chunks) {
+        Owner owner = new Owner();
+        documentCount++;
+        for (Document chunk : chunks) {
+            int tokens = estimateTokens(chunk.getText());
+            if (!current.documents.isEmpty() && current.tokens + tokens > maxTokens) {
+                dispatch();
+            }
+            if (current.documents.isEmpty()) {
+                Batch batch = current;
+                timer.schedule(() -> flushIfPending(batch), maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            current.documents.add(chunk);
+            current.tokens += tokens;
+            if (current.owners.add(owner)) {
+                owner.pendingBatches.incrementAndGet();
+            }
+            if (current.documents.size() >= maxChunks) {
+                dispatch();
+            }
+        }
+        // 提交过程本身占用一个计数, 避免批次在提交未结束时就把文档标记为完成
+        owner.batchDone();
+        return owner.future;
+    }
+
+    /**
+     * 立即发送当前未满的批次
+     */
+    public synchronized void flush() {
+        if (!current.documents.isEmpty()) {
+            dispatch();
+        }
+    }
+
+    /**
+     * 发送剩余的文档块并停止定时器, 不等待批次完成
+     */
+    @Override
+    public void close() {
+        flush();
+        timer.shutdownNow();
+    }
+
+    /**
+     * @return 已发送的批次数、文档块数和文档数
+     */
+    public synchronized String summary() {
+        return documentCount + " 个文档, " + chunkCount + " 个文档块, 合并为 " + batchCount + " 批";
+    }
+
+    private synchronized void flushIfPending(Batch batch) {
+        if (current == batch && !batch.documents.isEmpty()) {
+            dispatch();
+        }
+    }
+
+    private void dispatch() {
+        Batch batch = current;
+        current = new Batch();
+        batchCount++;
+        chunkCount += batch.documents.size();
+        try {
+            executor.execute(() -> {
+                try {
+                    sink.accept(batch.documents);
+                    batch.owners.forEach(Owner::batchDone);
+                } catch (Throwable e) {
+                    batch.owners.forEach(owner -> owner.future.completeExceptionally(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batch.owners.forEach(owner -> owner.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 估算文本的Token数: ASCII字符约4个一个Token, 其他字符(如中文)按每字一个Token计算
+     */
+    static int estimateTokens(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+
+    private static class Batch {
+        private final List<Document> documents = new ArrayList<>();
+        private final Set<Owner> owners = new LinkedHashSet<>();
+        private int tokens;
+    }
+
+    private static class Owner {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger pendingBatches = new AtomicInteger(1);
+
+        private void batchDone() {
+            if (pendingBatches.decrementAndGet() == 0) {
+                future.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lxq.spring_api_chat.rag.dto.IndexJob;
+import com.lxq.spring_api_chat.rag.dto.IndexJobEvent;
+import com.lxq.spring_api_chat.rag.dto.IndexResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * 后台目录索引任务
+ * 提交后立即返回任务ID, 由有界的线程池在后台执行目录索引(见 DocumentIndexingService.indexDirectory),
+ * 可以查询状态、订阅逐个文件的进度(SSE / NDJSON)或取消
+ *
+ * - 同时执行的任务数和排队的任务数都有上限, 队列已满时拒绝提交
+ * - 同一目录已有未结束的任务时返回该任务, 不再提交新任务(同时索引同一目录会相互覆盖清单)
+ * - 每个任务一个JSON记录文件, 状态变化时原子写入; 进度只在内存中累积, 任务结束时随结果一起写入
+ * - 启动时加载全部记录(resume), 排队中或执行中的任务按提交顺序重新排队;
+ *   增量索引保证重新执行是安全的, 清单中已记录的文件被跳过
+ * - 已结束的任务记录保留 retention 时长, 过期的记录在启动时删除
+ */
+public class IndexJobService implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexJobService.class);
+
+    private static final String SUFFIX = ".json";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final DirectoryIndexer indexer;
+    private final Duration retention;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory 任务记录目录
+     * @param indexer 执行目录索引, 通常为 indexingService::indexDirectory
+     * @param maxConcurrentJobs 同时执行的任务数
+     * @param queueCapacity 排队等待执行的任务数上限
+     * @param retention 已结束任务记录的保留时长
+     */
+    public IndexJobService(
+        Path directory,
+        ObjectMapper objectMapper,
+        DirectoryIndexer indexer,
+        int maxConcurrentJobs,
+        int queueCapacity,
+        Duration retention
+    ) throws IOException {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.indexer = indexer;
+        this.retention = retention;
+        Files.createDirectories(directory);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "index-job-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * 加载任务记录: 未结束的任务重新排队执行, 已结束的任务可以继续查询, 过期的记录被删除
+     *
+     * @return 重新排队的任务数
+     */
+    public int resume() throws IOException {
+        List<IndexJob> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                try {
+                    loaded.add(objectMapper.readValue(file.toFile(), IndexJob.class));
+                } catch (IOException e) {
+                    log.warn("读取索引任务记录失败, 忽略: {}", file, e);
+                }
+            }
+        }
+        loaded.sort(Comparator.comparingLong(IndexJob::submittedAt));
+
+        long expiredBefore = System.currentTimeMillis() - retention.toMillis();
+        int resumed = 0;
+        for (IndexJob job : loaded) {
+            if (job.status().finished()) {
+                if (job.finishedAt() != null && job.finishedAt() < expiredBefore) {
+                    Files.deleteIfExists(file(job.id()));
+                } else {
+                    jobs.put(job.id(), JobState.finished(job));
+                }
+                continue;
+            }
+            JobState state = JobState.resumed(job);
+            state.task = () -> run(state);
+            jobs.put(job.id(), state);
+            try {
+                executor.execute(state.task);
+                resumed++;
+            } catch (RejectedExecutionException e) {
+                state.finish(IndexJob.Status.FAILED, "恢复时任务队列已满");
+            }
+            persist(state);
+        }
+        return resumed;
+    }
+
+    /**
+     * 提交目录索引任务
+     *
+     * @param target 要索引的目录
+     * @return 新任务; 该目录已有未结束的任务时返回该任务
+     * @throws RejectedExecutionException 任务队列已满
+     */
+    public synchronized IndexJob submit(Path target) {
+        String key = IndexManifest.key(target);
+        for (JobState state : jobs.values()) {
+            if (state.directory.equals(key) && !state.status().finished()) {
+                return state.snapshot();
+            }
+        }
+
+        JobState state = new JobState(UUID.randomUUID().toString(), key, System.currentTimeMillis());
+        // 先写入排队记录再交给线程池, 任务开始执行前进程退出也能在重启后恢复
+        state.task = () -> run(state);
+        persist(state);
+        try {
+            executor.execute(state.task);
+        } catch (RejectedExecutionException e) {
+            delete(state.id);
+            throw e;
+        }
+        jobs.put(state.id, state);
+        return state.snapshot();
+    }
+
+    /**
+     * 任务的当前状态, 任务不存在时返回null
+     */
+    public IndexJob get(String id) {
+        JobState state = jobs.get(id);
+        return state == null ? null : state.snapshot();
+    }
+
+    /**
+     * 全部任务, 最近提交的在前
+     */
+    public List<IndexJob> list() {
+        return jobs.values().stream()
+            .map(JobState::snapshot)
+            .sorted(Comparator.comparingLong(IndexJob::submittedAt).reversed())
+            .toList();
+    }
+
+    /**
+     * 取消任务: 排队中的任务立即结束; 执行中的任务不再开始新的文件, 正在解析的文件停止后结束
+     *
+     * @return 任务的当前状态, 任务不存在时返回null
+     */
+    public IndexJob cancel(String id) {
+        JobState state = jobs.get(id);
+        if (state == null) {
+            return null;
+        }
+        state.cancelled.set(true);
+        if (state.cancelQueued()) {
+            executor.remove(state.task);
+            persist(state);
+        }
+        return state.snapshot();
+    }
+
+    /**
+     * 任务的进度事件: 先补发已完成文件的 file 事件, 再实时推送后续文件, 任务结束时发送 done 事件并结束
+     *
+     * @return 任务不存在时返回null
+     */
+    public Flux<IndexJobEvent> events(String id) {
+        JobState state = jobs.get(id);
+        if (state == null) {
+            return null;
+        }
+        return state.events.asFlux()
+            .map(file -> IndexJobEvent.file(id, file))
+            .concatWith(Mono.fromSupplier(() -> IndexJobEvent.done(state.snapshot())));
+    }
+
+    /**
+     * 停止接受任务; 执行中的任务随进程退出而中断, 其记录仍为执行中, 下次启动时恢复
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void run(JobState state) {
+        if (!state.start()) {
+            return;
+        }
+        persist(state);
+        try {
+            Path target = Path.of(state.directory);
+            if (!Files.isDirectory(target)) {
+                state.finish(IndexJob.Status.FAILED, "目录不存在: " + state.directory);
+            } else {
+                indexer.index(target, state, state.cancelled::get);
+                state.finish(state.cancelled.get() ? IndexJob.Status.CANCELLED : IndexJob.Status.COMPLETED, null);
+            }
+        } catch (RuntimeException e) {
+            log.error("索引任务失败: {}", state.id, e);
+            state.finish(IndexJob.Status.FAILED, e.getMessage());
+        }
+        persist(state);
+        IndexJob job = state.snapshot();
+        log.info("索引任务结束: {} {}, {} 个文件, 失败 {} 个", job.id(), job.status(), job.completedFiles(),
+            job.failedFiles());
+    }
+
+    /**
+     * 写入临时文件后原子替换; 持有任务的锁, 同一任务的记录按状态变化的顺序写入
+     * 写入失败只记录日志, 不影响任务执行(重启后按上一次成功写入的状态恢复)
+     */
+    private void persist(JobState state) {
+        synchronized (state) {
+            Path file = file(state.id);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), state.snapshot());
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.warn("写入索引任务记录失败: {}", file, e);
+            }
+        }
+    }
+
+    private void delete(String id) {
+        try {
+            Files.deleteIfExists(file(id));
+        } catch (IOException e) {
+            log.warn("删除索引任务记录失败: {}", id, e);
+        }
+    }
+
+    private Path file(String id) {
+        return directory.resolve(id + SUFFIX);
+    }
+
+    /**
+     * 执行目录索引, 见 DocumentIndexingService.indexDirectory(Path, DirectoryProgress, BooleanSupplier)
+     */
+    @FunctionalInterface
+    public interface DirectoryIndexer {
+        List<IndexResponse> index(Path directory, DocumentIndexingService.DirectoryProgress progress,
+                                  BooleanSupplier cancelled);
+    }
+
+    /**
+     * 一个任务的内存状态, 同时接收目录索引的进度回调
+     * 进度回调来自多个索引线程, 状态变化和进度事件的发送都持有该对象的锁
+     */
+    private static final class JobState implements DocumentIndexingService.DirectoryProgress {
+
+        private final String id;
+        private final String directory;
+        private final long submittedAt;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final List<IndexResponse> results = new ArrayList<>();
+
+        /**
+         * 已完成文件的结果, 新的订阅者先收到全部已有结果
+         */
+        private final Sinks.Many<IndexResponse> events = Sinks.many().replay().all();
+
+        private Runnable task;
+        private IndexJob.Status status = IndexJob.Status.QUEUED;
+        private int fileCount;
+        private int failedFiles;
+        private int attempts;
+        private String errorMessage;
+        private Long startedAt;
+        private Long finishedAt;
+
+        private JobState(String id, String directory, long submittedAt) {
+            this.id = id;
+            this.directory = directory;
+            this.submittedAt = submittedAt;
+        }
+
+        /**
+         * 从记录恢复已结束的任务, 事件流补发记录中的结果后结束
+         */
+        static JobState finished(IndexJob job) {
+            JobState state = new JobState(job.id(), job.directory(), job.submittedAt());
+            state.attempts = job.attempts();
+            state.startedAt = job.startedAt();
+            state.fileCount = job.fileCount();
+            job.results().forEach(state::indexed);
+            state.finish(job.status(), job.errorMessage());
+            state.finishedAt = job.finishedAt();
+            return state;
+        }
+
+        /**
+         * 从记录恢复未结束的任务, 重新排队并从头执行(上一次已完成的文件在清单中, 会被跳过)
+         */
+        static JobState resumed(IndexJob job) {
+            JobState state = new JobState(job.id(), job.directory(), job.submittedAt());
+            state.attempts = job.attempts();
+            return state;
+        }
+
+        synchronized IndexJob.Status status() {
+            return status;
+        }
+
+        /**
+         * 排队中的任务开始执行; 已被取消时返回false
+         */
+        synchronized boolean start() {
+            if (status != IndexJob.Status.QUEUED) {
+                return false;
+            }
+            status = IndexJob.Status.RUNNING;
+            attempts++;
+            startedAt = System.currentTimeMillis();
+            return true;
+        }
+
+        /**
+         * 排队中的任务直接结束为已取消; 已开始执行时返回false
+         */
+        synchronized boolean cancelQueued() {
+            if (status != IndexJob.Status.QUEUED) {
+                return false;
+            }
+            finish(IndexJob.Status.CANCELLED, null);
+            return true;
+        }
+
+        synchronized void finish(IndexJob.Status finalStatus, String error) {
+            status = finalStatus;
+            errorMessage = error;
+            finishedAt = System.currentTimeMillis();
+            events.tryEmitComplete();
+        }
+
+        @Override
+        public synchronized void started(int count) {
+            fileCount = count;
+        }
+
+        @Override
+        public synchronized void indexed(IndexResponse response) {
+            results.add(response);
+            if (!response.success()) {
+                failedFiles++;
+            }
+            events.tryEmitNext(response);
+        }
+
+        synchronized IndexJob snapshot() {
+            return new IndexJob(id, directory, status, fileCount, results.size(), failedFiles, List.copyOf(results),
+                attempts, errorMessage, submittedAt, startedAt, finishedAt);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 文件指纹清单
+ * 记录每个已索引文件的 路径 -> (大小, 修改时间, 内容SHA-256, 分块参数, 文档块ID), 与向量存储放在同一目录
+ *
+ * 重新索引时:
+ * - 大小和修改时间都未变化: 视为未修改, 直接跳过
+ * - 大小或修改时间变化但内容哈希相同(如 touch): 只更新清单
+ * - 内容变化: 重新索引并删除旧的文档块
+ * - 内容未变但分块参数变化: 重新分块(从提取文本缓存读取, 不解析源文件)并删除多余的文档块
+ * - 清单中存在而磁盘上已删除的文件: 删除其文档块
+ */
+public class IndexManifest {
+
+    private static final TypeReference<Map<String, Entry>> ENTRIES_TYPE = new TypeReference<>() {
+    };
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    public IndexManifest(Path file, ObjectMapper objectMapper) throws IOException {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        if (Files.exists(file)) {
+            entries.putAll(objectMapper.readValue(file.toFile(), ENTRIES_TYPE));
+        }
+    }
+
+    /**
+     * 清单中使用的文件键: 规范化的绝对路径
+     */
+    public static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    public synchronized Entry remove(String key) {
+        return entries.remove(key);
+    }
+
+    /**
+     * 位于指定目录下的全部条目
+     */
+    public synchronized Map<String, Entry> entriesUnder(Path directory) {
+        String prefix = key(directory);
+        Map<String, Entry> result = new LinkedHashMap<>();
+        entries.forEach((key, entry) -> {
+            if (Path.of(key).startsWith(prefix)) {
+                result.put(key, entry);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 每个文件当前的文档块数
+     */
+    public synchronized Map<String, Integer> chunkCounts() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        entries.forEach((key, entry) -> result.put(key, entry.chunkIds().size()));
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 写入临时文件后原子替换
+     */
+    public synchronized void save() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        objectMapper.writeValue(temp.toFile(), entries);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 流式计算文件内容的SHA-256
+     */
+    public static String hash(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 由文件键、内容哈希和序号生成稳定的文档块ID
+     * 同一文件内容重复索引时ID相同, 写入向量存储会覆盖而不是重复添加
+     */
+    public static String chunkId(String key, String hash, int index) {
+        return UUID.nameUUIDFromBytes((key + "#" + hash + "#" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 清单条目
+     *
+     * @param size 文件大小(字节)
+     * @param lastModified 修改时间(毫秒)
+     * @param hash 内容SHA-256
+     * @param chunkIds 该文件在向量存储中的文档块ID
+     * @param chunking 索引时的分块参数, 旧版本清单中没有该字段时为null
+     */
+    public record Entry(long size, long lastModified, String hash, List<String> chunkIds, String chunking) {
+
+        public Entry(long size, long lastModified, String hash, List<String> chunkIds) {
+            this(size, lastModified, hash, chunkIds, null);
+        }
+
+        public boolean sameStat(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        /**
+         * 分块参数是否相同; 没有记录分块参数的旧条目视为相同, 升级后不会触发全量重建
+         */
+        public boolean sameChunking(String chunking) {
+            return this.chunking == null || this.chunking.equals(chunking);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.lxq.spring_api_chat.rag.store;
+
+/**
+ * 段的数据源: 在向量之外按序号读取文档块记录
+ * 由内存映射的段文件(MappedSegment)和堆外追加区(OffHeapChunkArena)实现
+ */
+public interface ChunkSource extends VectorStorage {
+
+    /**
+     * 读取一条文档块记录
+     */
+    MappedSegment.Record record(int ordinal);
+}
@@ -0,0 +1,320 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 文档块存储: 管理一组段(Segment)
+ * 不可变段来自已提交的段文件, 新写入进入唯一的追加段; 刷盘时追加段被冻结并加入不可变段列表, 同时开始新的追加段
+ * 每个段有自己的索引, 检索时分别查询后合并 top-K
+ *
+ * 堆内常驻的只有各段的 文档ID -> 段内序号 映射和墓碑, 向量、文本和元数据都在段文件或堆外追加区中
+ * 按ID定位时从追加段开始由新到旧查找各段的映射, 同一ID至多在一个段中未被删除
+ * 覆盖写入和删除只在旧记录所在的段上设置墓碑, 不修改已写出的段文件
+ * 按来源文件(source)和文档类型(docType)统计的有效文档块数随写入和删除增量维护, 读取统计信息无需遍历存储
+ *
+ * 非线程安全, 由 IndexedVectorStore 的写锁保护; 检索和按ID读取不直接访问, 而是读取 snapshot() 发布的不可变快照
+ */
+public class ChunkStorage {
+
+    public static final String SOURCE_KEY = "source";
+    public static final String DOC_TYPE_KEY = "docType";
+
+    private static final int SOURCE_FIELD = MetadataBitmaps.FIELDS.indexOf(SOURCE_KEY);
+    private static final int DOC_TYPE_FIELD = MetadataBitmaps.FIELDS.indexOf(DOC_TYPE_KEY);
+
+    private final ObjectMapper objectMapper;
+    private final Function<VectorStorage, VectorIndex> indexFactory;
+    private final OffHeapChunkArena.BlockPool blockPool;
+
+    /**
+     * 不可变段(包括已冻结、正在刷盘的段), 按写入顺序排列
+     */
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Long, Segment> segmentsByGeneration = new HashMap<>();
+    private Segment tail;
+    private int liveCount;
+    private final Map<String, Integer> sourceCounts = new HashMap<>();
+    private final Map<String, Integer> docTypeCounts = new HashMap<>();
+    private int dimension;
+
+    public ChunkStorage(ObjectMapper objectMapper, Function<VectorStorage, VectorIndex> indexFactory) {
+        this(objectMapper, indexFactory, new OffHeapChunkArena.BlockPool());
+    }
+
+    ChunkStorage(ObjectMapper objectMapper, Function<VectorStorage, VectorIndex> indexFactory,
+                 OffHeapChunkArena.BlockPool blockPool) {
+        this.objectMapper = objectMapper;
+        this.indexFactory = indexFactory;
+        this.blockPool = blockPool;
+        this.tail = newTail(0);
+    }
+
+    /**
+     * 加入已提交的不可变段, 读取一遍记录的ID以建立ID映射; 计数所需的来源和类型来自段的元数据字段文件, 不解析元数据JSON
+     * 按写入顺序加入; 相同ID出现在多个段中时, 后加入的段覆盖之前的记录
+     */
+    public void addSegment(Segment segment) {
+        MappedSegment mapped = segment.mapped();
+        if (mapped == null) {
+            throw new IllegalArgumentException("只能加入已刷盘的段: " + segment.generation());
+        }
+        checkDimension(segment.dimension());
+        register(segment);
+        for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+            if (segment.isDeleted(ordinal)) {
+                continue;
+            }
+            String id = mapped.id(ordinal);
+            if (id == null) {
+                segment.delete(ordinal);
+                continue;
+            }
+            delete(id);
+            segment.putOrdinal(id, ordinal);
+            liveCount++;
+            count(segment.metadataValues(ordinal), 1);
+        }
+        segments.add(segment);
+    }
+
+    /**
+     * 以新的代号重新开始追加段, 只能在追加段为空时调用
+     */
+    public void resetTail(long generation) {
+        if (tail.size() > 0) {
+            throw new IllegalStateException("追加段不为空");
+        }
+        segmentsByGeneration.remove(tail.generation());
+        tail = newTail(generation);
+    }
+
+    /**
+     * 追加文档块, 相同ID的旧文档块被标记删除
+     *
+     * @param vector 归一化后的向量
+     */
+    public void add(String id, String text, Map<String, Object> metadata, float[] vector) {
+        checkDimension(vector.length);
+        delete(id);
+        tail.append(id, text, metadata, vector);
+        liveCount++;
+        count(MetadataBitmaps.values(metadata), 1);
+    }
+
+    public boolean contains(String id) {
+        if (tail.ordinal(id) >= 0) {
+            return true;
+        }
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (segments.get(i).ordinal(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按ID设置墓碑
+     *
+     * @return 是否存在该文档块
+     */
+    public boolean delete(String id) {
+        if (delete(tail, id)) {
+            return true;
+        }
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (delete(segments.get(i), id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 冻结当前追加段并开始新的追加段
+     * 冻结的段加入不可变段列表, 在刷盘完成前仍由追加区提供数据, 可以继续检索和设置墓碑
+     *
+     * @param generation 新追加段的代号
+     * @return 被冻结的段
+     */
+    public Segment freezeTail(long generation) {
+        Segment frozen = tail;
+        segments.add(frozen);
+        tail = newTail(generation);
+        return frozen;
+    }
+
+    /**
+     * 冻结的段刷盘后切换到映射的段文件
+     * 追加区可能仍被旧快照中的检索读取, 不立即释放, 由 Cleaner 在它不可达后把内存块归还空闲池
+     */
+    public void flushed(Segment segment, MappedSegment mapped) {
+        segment.switchTo(mapped);
+    }
+
+    /**
+     * 用合并产生的新段替换被合并的段
+     * 第 i 条新记录(ID为 ids[i])来自 sources[i] 的 ordinals[i]; 合并期间被删除或覆盖的记录在新段中设置墓碑
+     *
+     * @param merged 合并产生的新段, 所有记录都已删除时为null
+     */
+    public void replace(List<Segment> replaced, Segment merged, String[] ids, Segment[] sources, int[] ordinals) {
+        if (merged != null) {
+            register(merged);
+            for (int i = 0; i < merged.size(); i++) {
+                merged.putOrdinal(ids[i], i);
+                if (sources[i].isDeleted(ordinals[i])) {
+                    merged.delete(i);
+                }
+            }
+            segments.add(segments.indexOf(replaced.get(0)), merged);
+        }
+        for (Segment segment : replaced) {
+            segments.remove(segment);
+            segmentsByGeneration.remove(segment.generation());
+        }
+    }
+
+    /**
+     * 不可变段(包括正在刷盘的段), 按写入顺序排列
+     */
+    public List<Segment> segments() {
+        return List.copyOf(segments);
+    }
+
+    /**
+     * 参与检索的全部段: 不可变段和追加段
+     */
+    public List<Segment> searchableSegments() {
+        List<Segment> all = new ArrayList<>(segments.size() + 1);
+        all.addAll(segments);
+        all.add(tail);
+        return all;
+    }
+
+    public Segment tail() {
+        return tail;
+    }
+
+    /**
+     * 生成当前状态的不可变快照, 在写锁内调用
+     * 不可变段的索引不再修改, 直接供检索使用; 追加段只暴露当前的记录数, 由检索精确扫描
+     *
+     * @param version 快照版本号
+     * @param walGeneration 当前预写日志的代号
+     */
+    public StoreSnapshot snapshot(long version, long walGeneration) {
+        List<StoreSnapshot.SegmentView> views = new ArrayList<>(segments.size() + 1);
+        for (Segment segment : segments) {
+            views.add(segment.view(true));
+        }
+        views.add(tail.view(false));
+        return new StoreSnapshot(version, walGeneration, List.copyOf(views), liveCount(), dimension, sourceCounts(),
+            docTypeCounts(), estimatedHeapBytes(), offHeapBytes());
+    }
+
+    /**
+     * 有效(未删除)的文档块数量
+     */
+    public int liveCount() {
+        return liveCount;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 按来源文件统计的有效文档块数
+     */
+    public Map<String, Integer> sourceCounts() {
+        return Map.copyOf(sourceCounts);
+    }
+
+    /**
+     * 按文档类型统计的有效文档块数
+     */
+    public Map<String, Integer> docTypeCounts() {
+        return Map.copyOf(docTypeCounts);
+    }
+
+    /**
+     * 估算的堆内存占用(字节): 各段的ID映射、墓碑、索引结构和追加区记录位置, 文档块数据不在堆内
+     */
+    public long estimatedHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : searchableSegments()) {
+            bytes += segment.estimatedHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 追加区和空闲池占用的本地内存(字节)
+     */
+    public long offHeapBytes() {
+        long bytes = blockPool.pooledBytes();
+        for (Segment segment : searchableSegments()) {
+            OffHeapChunkArena arena = segment.arena();
+            if (arena != null) {
+                bytes += arena.nativeBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private Segment newTail(long generation) {
+        Segment segment = Segment.appendable(generation, new OffHeapChunkArena(objectMapper, blockPool), indexFactory);
+        segmentsByGeneration.put(generation, segment);
+        return segment;
+    }
+
+    private void register(Segment segment) {
+        if (segmentsByGeneration.putIfAbsent(segment.generation(), segment) != null) {
+            throw new IllegalStateException("段代号重复: " + segment.generation());
+        }
+    }
+
+    private void checkDimension(int vectorDimension) {
+        if (vectorDimension == 0) {
+            return;
+        }
+        if (dimension == 0) {
+            dimension = vectorDimension;
+        } else if (vectorDimension != dimension) {
+            throw new IllegalArgumentException("向量维度不一致: 期望 " + dimension + ", 实际 " + vectorDimension);
+        }
+    }
+
+    private boolean delete(Segment segment, String id) {
+        int ordinal = segment.ordinal(id);
+        if (ordinal < 0) {
+            return false;
+        }
+        segment.delete(ordinal);
+        liveCount--;
+        count(segment.metadataValues(ordinal), -1);
+        return true;
+    }
+
+    /**
+     * @param values 文档块在各索引字段上的取值, 见 MetadataBitmaps.values
+     */
+    private void count(String[] values, int delta) {
+        increment(sourceCounts, values[SOURCE_FIELD], delta);
+        increment(docTypeCounts, values[DOC_TYPE_FIELD], delta);
+    }
+
+    private static void increment(Map<String, Integer> counts, String key, int delta) {
+        if (key == null) {
+            return;
+        }
+        counts.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+}
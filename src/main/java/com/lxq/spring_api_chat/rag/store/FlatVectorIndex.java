@@ -0,0 +1,81 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * 暴力检索索引
+ * 逐个计算查询向量与全部向量的相似度, 结果精确, 耗时与向量数量成正比
+ * 适合小规模数据, 同时作为 HNSW 召回率评估的基准
+ */
+public class FlatVectorIndex implements VectorIndex {
+
+    private final VectorStorage storage;
+    private int size;
+
+    public FlatVectorIndex(VectorStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public void add(int ordinal) {
+        if (ordinal != size) {
+            throw new IllegalArgumentException("向量序号必须连续: 期望 " + size + ", 实际 " + ordinal);
+        }
+        size++;
+    }
+
+    @Override
+    public List<ScoredOrdinal> search(float[] query, int k, IntPredicate accept) {
+        return scan(storage, size, query, k, Float.NEGATIVE_INFINITY, accept);
+    }
+
+    @Override
+    public List<ScoredOrdinal> search(float[] query, int k, float minScore, IntPredicate accept) {
+        return scan(storage, size, query, k, minScore, accept);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 精确扫描数据源的前 size 个向量, 不依赖索引状态, 用于检索仍在追加的段
+     * 先计算分数, 只对能进入 top-K 且不低于 minScore 的候选执行过滤条件(删除标记、元数据过滤)
+     */
+    static List<ScoredOrdinal> scan(VectorStorage storage, int size, float[] query, int k, float minScore,
+        IntPredicate accept) {
+        if (k <= 0) {
+            return List.of();
+        }
+        TopKHeap heap = new TopKHeap(k, minScore);
+        for (int i = 0; i < size; i++) {
+            float score = storage.dot(query, i);
+            if (heap.competitive(score) && (accept == null || accept.test(i))) {
+                heap.offer(i, score);
+            }
+        }
+        return heap.drainSorted();
+    }
+
+    /**
+     * 只扫描候选序号中小于 size 的向量, 耗时与候选数成正比
+     */
+    static List<ScoredOrdinal> scan(VectorStorage storage, int size, OrdinalBitmap candidates, float[] query, int k,
+        float minScore, IntPredicate accept) {
+        if (k <= 0) {
+            return List.of();
+        }
+        TopKHeap heap = new TopKHeap(k, minScore);
+        candidates.forEach(i -> {
+            if (i < size) {
+                float score = storage.dot(query, i);
+                if (heap.competitive(score) && (accept == null || accept.test(i))) {
+                    heap.offer(i, score);
+                }
+            }
+        });
+        return heap.drainSorted();
+    }
+}
@@ -0,0 +1,275 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW(Hierarchical Navigable Small World)近似最近邻索引
+ * 多层小世界图: 上层稀疏, 用于快速定位入口; 第0层包含全部节点, 用于精细搜索
+ * 参考: Malkov &amp; Yashunin, "Efficient and robust approximate nearest neighbor search
+ * using Hierarchical Navigable Small World graphs"
+ *
+ * 参数说明:
+ * - M: 每个节点在上层的最大连接数, 第0层为 2*M; 越大召回率越高, 内存和构建耗时也越高
+ * - efConstruction: 构建时的候选集大小, 决定图的质量
+ * - efSearch: 查询时的候选集大小, 在召回率与查询延迟之间权衡(可运行时调整)
+ *
+ * 支持增量添加, 不支持物理删除(由上层通过过滤条件屏蔽已删除的节点)
+ * 图结构常驻堆内存, 向量通过 VectorStorage 读取(可以是内存映射文件)
+ */
+public class HnswVectorIndex implements VectorIndex {
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+    private final Random random;
+
+    private final VectorStorage storage;
+    private final List<Node> nodes = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private long neighborSlots;
+    private long layerCount;
+
+    public HnswVectorIndex(VectorStorage storage, int m, int efConstruction, int efSearch) {
+        this(storage, m, efConstruction, efSearch, 42L);
+    }
+
+    public HnswVectorIndex(VectorStorage storage, int m, int efConstruction, int efSearch, long seed) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW参数M必须大于等于2");
+        }
+        if (efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW参数ef必须为正数");
+        }
+        this.storage = storage;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1d / Math.log(m);
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void add(int ordinal) {
+        if (ordinal != nodes.size()) {
+            throw new IllegalArgumentException("向量序号必须连续: 期望 " + nodes.size() + ", 实际 " + ordinal);
+        }
+        float[] vector = storage.vector(ordinal);
+        int level = randomLevel();
+        nodes.add(new Node(level, m, maxM0));
+        neighborSlots += maxM0 + (long) level * m;
+        layerCount += level + 1;
+
+        if (entryPoint < 0) {
+            entryPoint = ordinal;
+            maxLevel = level;
+            return;
+        }
+
+        // 1. 在高于新节点层级的各层贪心下降, 找到最近的入口
+        int ep = entryPoint;
+        for (int layer = maxLevel; layer > level; layer--) {
+            ep = searchLayer(vector, ep, 1, layer, null).get(0).ordinal();
+        }
+
+        // 2. 在新节点所在的各层搜索候选邻居并双向连接
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<ScoredOrdinal> candidates = searchLayer(vector, ep, efConstruction, layer, null);
+            int[] selected = selectNeighbors(candidates, m);
+            nodes.get(ordinal).setNeighbors(layer, selected);
+            int maxConnections = layer == 0 ? maxM0 : m;
+            for (int neighbor : selected) {
+                connect(neighbor, ordinal, layer, maxConnections);
+            }
+            ep = candidates.get(0).ordinal();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = ordinal;
+        }
+    }
+
+    @Override
+    public List<ScoredOrdinal> search(float[] query, int k, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+        int ep = entryPoint;
+        for (int layer = maxLevel; layer > 0; layer--) {
+            ep = searchLayer(query, ep, 1, layer, null).get(0).ordinal();
+        }
+        List<ScoredOrdinal> results = searchLayer(query, ep, Math.max(efSearch, k), 0, accept);
+        return results.size() > k ? results.subList(0, k) : results;
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 邻接数组按最大连接数预分配: 按槽位数、每层的数组头和计数, 以及节点对象头估算
+     */
+    @Override
+    public long estimatedHeapBytes() {
+        return neighborSlots * Integer.BYTES + layerCount * 20 + nodes.size() * 56L;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * 运行时调整查询候选集大小
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("HNSW参数efSearch必须为正数");
+        }
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * 在指定层进行最佳优先搜索
+     * 未通过过滤条件的节点仍参与图遍历(保证连通性), 但不会进入结果集
+     *
+     * @return 按相似度降序排列的最多ef个结果
+     */
+    private List<ScoredOrdinal> searchLayer(float[] query, int entry, int ef, int layer, IntPredicate accept) {
+        BitSet visited = new BitSet(nodes.size());
+        // 候选集: 最大堆, 优先扩展最相似的节点
+        PriorityQueue<ScoredOrdinal> candidates = new PriorityQueue<>(ScoredOrdinal.BY_SCORE.reversed());
+        // 结果集: 最小堆, 堆顶为当前最差结果
+        PriorityQueue<ScoredOrdinal> results = new PriorityQueue<>(ef + 1, ScoredOrdinal.BY_SCORE);
+
+        ScoredOrdinal start = new ScoredOrdinal(entry, storage.dot(query, entry));
+        visited.set(entry);
+        candidates.add(start);
+        if (accept == null || accept.test(entry)) {
+            results.add(start);
+        }
+
+        while (!candidates.isEmpty()) {
+            ScoredOrdinal current = candidates.poll();
+            if (results.size() >= ef && current.score() < results.peek().score()) {
+                break;
+            }
+            Node node = nodes.get(current.ordinal());
+            int[] neighbors = node.neighbors[layer];
+            int count = node.counts[layer];
+            for (int i = 0; i < count; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float score = storage.dot(query, neighbor);
+                if (results.size() < ef || score > results.peek().score()) {
+                    ScoredOrdinal scored = new ScoredOrdinal(neighbor, score);
+                    candidates.add(scored);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.add(scored);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<ScoredOrdinal> sorted = new ArrayList<>(results);
+        sorted.sort(ScoredOrdinal.BY_SCORE.reversed());
+        return sorted;
+    }
+
+    /**
+     * 启发式邻居选择: 优先保留"离基准点比离已选邻居更近"的候选, 使连接方向更分散
+     * 不足M个时用被裁剪的候选补齐
+     *
+     * @param candidates 按与基准点相似度降序排列的候选
+     */
+    private int[] selectNeighbors(List<ScoredOrdinal> candidates, int maxCount) {
+        List<ScoredOrdinal> selected = new ArrayList<>(maxCount);
+        List<ScoredOrdinal> pruned = new ArrayList<>();
+        for (ScoredOrdinal candidate : candidates) {
+            if (selected.size() >= maxCount) {
+                break;
+            }
+            float[] candidateVector = storage.vector(candidate.ordinal());
+            boolean diverse = true;
+            for (ScoredOrdinal chosen : selected) {
+                if (storage.dot(candidateVector, chosen.ordinal()) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < maxCount; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected.stream().mapToInt(ScoredOrdinal::ordinal).toArray();
+    }
+
+    /**
+     * 为已有节点添加一条指向新节点的连接, 超出上限时重新选择邻居
+     */
+    private void connect(int ordinal, int newNeighbor, int layer, int maxConnections) {
+        Node node = nodes.get(ordinal);
+        int count = node.counts[layer];
+        if (count < maxConnections) {
+            node.neighbors[layer][count] = newNeighbor;
+            node.counts[layer] = count + 1;
+            return;
+        }
+
+        float[] base = storage.vector(ordinal);
+        List<ScoredOrdinal> candidates = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+            int neighbor = node.neighbors[layer][i];
+            candidates.add(new ScoredOrdinal(neighbor, storage.dot(base, neighbor)));
+        }
+        candidates.add(new ScoredOrdinal(newNeighbor, storage.dot(base, newNeighbor)));
+        candidates.sort(ScoredOrdinal.BY_SCORE.reversed());
+        node.setNeighbors(layer, selectNeighbors(candidates, maxConnections));
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1d - random.nextDouble()) * levelMultiplier);
+    }
+
+    /**
+     * 图节点: 每层一个定长的邻接数组
+     */
+    private static final class Node {
+
+        private final int[][] neighbors;
+        private final int[] counts;
+
+        private Node(int level, int m, int maxM0) {
+            this.neighbors = new int[level + 1][];
+            this.counts = new int[level + 1];
+            for (int layer = 0; layer <= level; layer++) {
+                neighbors[layer] = new int[layer == 0 ? maxM0 : m];
+            }
+        }
+
+        private void setNeighbors(int layer, int[] selected) {
+            System.arraycopy(selected, 0, neighbors[layer], 0, selected.length);
+            counts[layer] = selected.length;
+        }
+    }
+}
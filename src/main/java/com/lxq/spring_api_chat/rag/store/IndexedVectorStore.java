@@ -0,0 +1,813 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * 基于可插拔向量索引(VectorIndex)的向量存储
+ * 负责Embedding调用、元数据过滤和持久化, 文档块数据由 ChunkStorage 按段(Segment)管理, 相似度计算交给各段的索引
+ * 来源文件和文档类型上的过滤条件由各段的元数据位图预先求出候选(见 MetadataFilter), 不对范围外的记录计算相似度
+ *
+ * - 搭配 FlatVectorIndex: 精确的暴力检索
+ * - 搭配 HnswVectorIndex: 近似最近邻检索, 查询耗时随数据量近似对数增长
+ *
+ * 采用日志结构的段式存储:
+ * - 写入先追加到预写日志(见 WriteAheadLog)再进入堆外的追加段, 检查点把追加段冻结并写为不可变的段文件
+ * - 删除和覆盖写入只在旧记录所在的段上设置墓碑, 墓碑随提交点(见 SegmentCommit)持久化, 已写出的段文件不再修改
+ * - 检索分别查询每个段的索引, 再合并各段的 top-K
+ * - 后台按 MergePolicy 把小段和墓碑较多的段合并重写为新段, 回收已删除记录的空间
+ * 段文件在锁外写出, 检查点和合并只在切换段列表的瞬间持有写锁, 写入的耗时与新数据量成正比
+ *
+ * 读写隔离: 每次写入、删除、检查点和合并在写锁内修改段之后发布一个新版本的不可变快照(见 StoreSnapshot),
+ * 检索、按条件删除的扫描和统计只读取一次 volatile 的快照引用, 不加锁, 看到的是某次完整写入之后的状态;
+ * 一次 add() 的全部文档块在同一个版本中可见, 覆盖写入不会出现新旧记录同时可见或同时不可见的中间状态
+ */
+public class IndexedVectorStore implements VectorStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexedVectorStore.class);
+
+    /**
+     * 单次Embedding请求的最大文本数, 避免超出API的批量限制
+     */
+    private static final int EMBEDDING_BATCH_SIZE = 64;
+
+    private final EmbeddingModel embeddingModel;
+    private final Path directory;
+    private final boolean walFsync;
+    private final Function<VectorStorage, VectorIndex> indexFactory;
+    private final MergePolicy mergePolicy;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChunkStorage storage;
+    /**
+     * 串行化对 storage 的修改; 读取方使用 snapshot, 不获取该锁
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /**
+     * 保证提交点按快照的先后顺序写出
+     */
+    private final Object commitLock = new Object();
+    private final Object mergeLock = new Object();
+    /**
+     * 段、预写日志和提交点共用的代号序列
+     */
+    private final AtomicLong nextGeneration = new AtomicLong(1);
+
+    private WriteAheadLog wal;
+    /**
+     * 最近发布的快照, 只在持有写锁时替换
+     */
+    private volatile StoreSnapshot snapshot;
+    private ScheduledExecutorService checkpointExecutor;
+    private ExecutorService mergeExecutor;
+    private long checkpointWalBytes = Long.MAX_VALUE;
+    private final AtomicBoolean checkpointPending = new AtomicBoolean();
+    private final AtomicBoolean mergePending = new AtomicBoolean();
+
+    /**
+     * @param embeddingModel Embedding模型
+     * @param directory 段文件所在目录
+     * @param indexFactory 基于向量数据源创建索引, 每个段各创建一个
+     */
+    public IndexedVectorStore(
+        EmbeddingModel embeddingModel,
+        Path directory,
+        Function<VectorStorage, VectorIndex> indexFactory
+    ) {
+        this(embeddingModel, directory, indexFactory, true);
+    }
+
+    /**
+     * @param walFsync 每次写入预写日志后是否刷盘, 关闭后进程崩溃不丢数据, 但断电可能丢失最近的写入
+     */
+    public IndexedVectorStore(
+        EmbeddingModel embeddingModel,
+        Path directory,
+        Function<VectorStorage, VectorIndex> indexFactory,
+        boolean walFsync
+    ) {
+        this(embeddingModel, directory, indexFactory, walFsync, MergePolicy.DEFAULT);
+    }
+
+    /**
+     * @param mergePolicy 后台合并策略
+     */
+    public IndexedVectorStore(
+        EmbeddingModel embeddingModel,
+        Path directory,
+        Function<VectorStorage, VectorIndex> indexFactory,
+        boolean walFsync,
+        MergePolicy mergePolicy
+    ) {
+        this.embeddingModel = embeddingModel;
+        this.directory = directory;
+        this.walFsync = walFsync;
+        this.indexFactory = indexFactory;
+        this.mergePolicy = mergePolicy;
+        this.storage = new ChunkStorage(objectMapper, indexFactory);
+        this.snapshot = storage.snapshot(0, 0);
+    }
+
+    /**
+     * 打开目录中当前提交点列出的段并建立索引, 重放提交点之后的预写日志
+     * 重放到的记录立即写为新段, 之后追加段中的数据总是只来自当前的预写日志
+     * 未调用 open() 时存储只在内存中工作, 不写预写日志, 也不执行检查点和合并
+     *
+     * @return 是否加载到已有的数据
+     */
+    public boolean open() throws IOException {
+        long startTime = System.currentTimeMillis();
+        SegmentCommit commit = SegmentCommit.read(directory);
+        deleteUnreferencedSegments(commit);
+        List<Segment> segments = new ArrayList<>();
+        if (commit != null) {
+            for (SegmentCommit.Entry entry : commit.segments()) {
+                MappedSegment mapped = MappedSegment.open(directory, entry.generation(), objectMapper);
+                segments.add(Segment.open(mapped, indexFactory, entry.tombstones()));
+            }
+        }
+
+        int replayed = 0;
+        writeLock.lock();
+        try {
+            segments.forEach(storage::addSegment);
+            nextGeneration.set(lastGeneration() + 1);
+            long walGeneration = nextGeneration.getAndIncrement();
+            storage.resetTail(walGeneration);
+
+            long currentGeneration = Math.max(SegmentFiles.currentGeneration(directory), 0);
+            if (!Files.exists(SegmentFiles.commitFile(directory, currentGeneration))) {
+                replayed += WriteAheadLog.replay(directory.resolve(SegmentFiles.LEGACY_WAL_FILE), currentGeneration,
+                    objectMapper, this::apply);
+            }
+            long firstWalGeneration = commit == null ? 0 : commit.walGeneration();
+            for (long generation : SegmentFiles.walGenerations(directory)) {
+                if (generation >= firstWalGeneration) {
+                    replayed += WriteAheadLog.replay(SegmentFiles.walFile(directory, generation), generation,
+                        objectMapper, this::apply);
+                }
+            }
+            wal = WriteAheadLog.create(SegmentFiles.walFile(directory, walGeneration), walGeneration, objectMapper,
+                walFsync);
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+        if (replayed > 0) {
+            checkpoint(true);
+        }
+
+        StoreSnapshot loaded = snapshot;
+        if (loaded.liveCount() == 0) {
+            return false;
+        }
+        log.info("向量存储加载完成: {} 个段, {} 个文档块, 维度 {}, 耗时 {}ms", loaded.segments().size() - 1,
+            loaded.liveCount(), loaded.dimension(), System.currentTimeMillis() - startTime);
+        return true;
+    }
+
+    /**
+     * 启动后台检查点和段合并: 按固定间隔, 或预写日志超过指定大小时, 把追加段写为新的段文件;
+     * 每次检查点之后按合并策略在单独的线程中合并段
+     *
+     * @param interval 检查间隔, 日志为空时跳过
+     * @param maxWalBytes 日志达到该大小时立即触发检查点
+     */
+    public void startCheckpointer(Duration interval, long maxWalBytes) {
+        this.checkpointWalBytes = maxWalBytes;
+        this.checkpointExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vectorstore-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.mergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vectorstore-merge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointExecutor.scheduleWithFixedDelay(this::checkpointQuietly, interval.toMillis(), interval.toMillis(),
+            TimeUnit.MILLISECONDS);
+        requestMerge();
+    }
+
+    /**
+     * 检查点: 冻结追加段并写为新的不可变段, 切换到新的预写日志, 最后写出提交点
+     * 段文件在锁外写出, 期间冻结的段仍由堆外追加区提供检索, 新的写入进入新的追加段
+     * 冻结后冻结段的索引不再修改, 从下一个快照开始改用索引检索, 之前的快照仍精确扫描它已发布的记录
+     *
+     * @return 是否执行了检查点; 预写日志为空(自上次检查点以来没有修改)时跳过
+     */
+    public boolean checkpoint() throws IOException {
+        return checkpoint(false);
+    }
+
+    /**
+     * 执行一次段合并: 把合并策略选出的段中的有效记录重写为一个新段, 并替换原来的段
+     * 新段的文件和索引在锁外建立, 合并期间被删除或覆盖的记录在新段中设置墓碑
+     *
+     * @return 是否执行了合并; 没有需要合并的段时返回false
+     */
+    public boolean merge() throws IOException {
+        synchronized (mergeLock) {
+            if (wal == null) {
+                return false;
+            }
+            long startTime = System.currentTimeMillis();
+            // 候选段和它们的墓碑以当前快照为准, 不阻塞写入
+            List<StoreSnapshot.SegmentView> candidates = mergePolicy.select(snapshot.segments().stream()
+                .filter(StoreSnapshot.SegmentView::flushed)
+                .toList());
+            if (candidates.isEmpty()) {
+                return false;
+            }
+
+            int liveCount = 0;
+            for (StoreSnapshot.SegmentView candidate : candidates) {
+                liveCount += candidate.liveCount();
+            }
+            long generation = nextGeneration.getAndIncrement();
+            String[] ids = new String[liveCount];
+            Segment[] sources = new Segment[liveCount];
+            int[] ordinals = new int[liveCount];
+            Segment merged = null;
+            if (liveCount > 0) {
+                try (SegmentWriter writer = new SegmentWriter(directory, generation, objectMapper)) {
+                    int count = 0;
+                    for (StoreSnapshot.SegmentView source : candidates) {
+                        for (int ordinal = 0; ordinal < source.size(); ordinal++) {
+                            if (source.isDeleted(ordinal)) {
+                                continue;
+                            }
+                            MappedSegment.Record record = source.record(ordinal);
+                            writer.append(record.id(), record.text(), record.metadata(),
+                                source.source().vector(ordinal), false);
+                            ids[count] = record.id();
+                            sources[count] = source.segment();
+                            ordinals[count] = ordinal;
+                            count++;
+                        }
+                    }
+                    writer.commit();
+                }
+                merged = Segment.open(MappedSegment.open(directory, generation, objectMapper), indexFactory,
+                    new BitSet());
+                if (merged.index() instanceof PersistentVectorIndex persistent) {
+                    persistent.save(SegmentFiles.vectorIndexFile(directory, generation));
+                }
+            }
+
+            List<Segment> replaced = candidates.stream().map(StoreSnapshot.SegmentView::segment).toList();
+            writeLock.lock();
+            try {
+                storage.replace(replaced, merged, ids, sources, ordinals);
+                publish();
+            } finally {
+                writeLock.unlock();
+            }
+            commit(replaced);
+            log.info("段合并完成: {} 个段 -> 第 {} 代段, {} 个文档块, 耗时 {}ms", candidates.size(), generation,
+                liveCount, System.currentTimeMillis() - startTime);
+            return true;
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return;
+        }
+        // Embedding调用耗时较长, 在锁外完成
+        List<float[]> embeddings = embed(documents);
+        List<WriteAheadLog.Entry> entries = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            entries.add(WriteAheadLog.Entry.add(document.getId(), document.getText(), document.getMetadata(),
+                VectorMath.normalize(embeddings.get(i))));
+        }
+
+        writeLock.lock();
+        try {
+            if (wal != null) {
+                wal.appendAdds(entries);
+            }
+            entries.forEach(this::apply);
+            publish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入预写日志失败", e);
+        } finally {
+            writeLock.unlock();
+        }
+        requestCheckpointIfNeeded();
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            // 不存在的ID不写日志, 分片存储向所有分片广播删除时不会在每个分片的日志中重复记录
+            List<String> present = idList.stream().filter(storage::contains).toList();
+            if (present.isEmpty()) {
+                return;
+            }
+            if (wal != null) {
+                wal.appendDeletes(present);
+            }
+            present.forEach(storage::delete);
+            publish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入预写日志失败", e);
+        } finally {
+            writeLock.unlock();
+        }
+        requestCheckpointIfNeeded();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> predicate = MetadataFilter.indexed(filterExpression)
+            ? null
+            : MetadataFilter.predicate(filterExpression);
+        List<String> ids = new ArrayList<>();
+        for (StoreSnapshot.SegmentView segment : snapshot.segments()) {
+            // 按来源文件删除时只读取该文件的记录
+            OrdinalBitmap candidates = MetadataFilter.candidates(filterExpression, segment.bitmaps());
+            IntConsumer collect = ordinal -> {
+                if (ordinal >= segment.size() || segment.isDeleted(ordinal)) {
+                    return;
+                }
+                MappedSegment.Record record = segment.record(ordinal);
+                if (predicate == null || predicate.test(record.metadata())) {
+                    ids.add(record.id());
+                }
+            };
+            if (candidates != null) {
+                candidates.forEach(collect);
+            } else {
+                for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                    collect.accept(ordinal);
+                }
+            }
+        }
+        delete(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return similaritySearch(VectorMath.normalize(embeddingModel.embed(request.getQuery())), request);
+    }
+
+    /**
+     * 用已归一化的查询向量检索, 忽略 request 中的查询文本
+     * 分片存储(见 ShardedVectorStore)只调用一次Embedding模型, 各分片复用同一个查询向量
+     *
+     * @return 按相似度从高到低排列, 不超过 topK 条, 都不低于相似度阈值
+     */
+    public List<Document> similaritySearch(float[] query, SearchRequest request) {
+        // 来源文件、文档类型上的条件先由各段的元数据位图求出候选, 只对候选计算相似度;
+        // 表达式中还有位图无法表示的条件时, 再对候选逐条判断元数据
+        Filter.Expression filterExpression = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        Predicate<Map<String, Object>> metadataFilter = filterExpression == null
+            || MetadataFilter.indexed(filterExpression) ? null : MetadataFilter.predicate(filterExpression);
+        int topK = request.getTopK();
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        // 相似度阈值下推到各段的扫描中, 低于阈值的候选不进入 top-K
+        float minScore = (float) request.getSimilarityThreshold();
+
+        // 整个检索使用同一个快照, 不受并发写入影响
+        StoreSnapshot current = snapshot;
+        // 每个段各自返回 top-K, 用最小堆合并为全局 top-K, 堆顶为当前第K好的结果
+        PriorityQueue<SegmentHit> heap = new PriorityQueue<>(topK + 1, SegmentHit.BY_SCORE);
+        for (StoreSnapshot.SegmentView segment : current.segments()) {
+            if (segment.liveCount() == 0) {
+                continue;
+            }
+            OrdinalBitmap candidates = filterExpression == null
+                ? null
+                : MetadataFilter.candidates(filterExpression, segment.bitmaps());
+            IntPredicate accept = ordinal -> !segment.isDeleted(ordinal)
+                && (metadataFilter == null || metadataFilter.test(segment.record(ordinal).metadata()));
+            for (ScoredOrdinal hit : segment.search(query, topK, minScore, candidates, accept)) {
+                heap.add(new SegmentHit(segment, hit));
+                if (heap.size() > topK) {
+                    heap.poll();
+                }
+            }
+        }
+        List<SegmentHit> hits = new ArrayList<>(heap);
+        hits.sort(SegmentHit.BY_SCORE.reversed());
+
+        List<Document> results = new ArrayList<>(hits.size());
+        for (SegmentHit hit : hits) {
+            results.add(toDocument(hit.segment().record(hit.hit().ordinal()), hit.hit().score()));
+        }
+        return results;
+    }
+
+    /**
+     * 当前有效(未删除)的文档块数量
+     */
+    public int size() {
+        return snapshot.liveCount();
+    }
+
+    /**
+     * 按ID读取文档块(不含向量和分数)
+     * 词法索引只保存ID, 选出 top-K 后用它取回文本和元数据; 与检索相同只读取一次快照, 不加锁, 不等待并发的写入,
+     * 只解析请求的记录
+     *
+     * @return 与 ids 一一对应, 不存在的ID对应null
+     */
+    public List<Document> get(List<String> ids) {
+        StoreSnapshot current = snapshot;
+        List<Document> documents = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            MappedSegment.Record record = current.record(id);
+            documents.add(record == null ? null : new Document(record.id(), record.text(), record.metadata()));
+        }
+        return documents;
+    }
+
+    /**
+     * 当前快照中全部有效文档块的ID, 用于启动时核对持久化的词法索引
+     */
+    public List<String> ids() {
+        return snapshot.ids();
+    }
+
+    /**
+     * 遍历当前快照中全部有效的文档块(不含向量和分数), 用于重建词法索引等派生数据
+     */
+    public void forEachDocument(Consumer<Document> action) {
+        for (StoreSnapshot.SegmentView segment : snapshot.segments()) {
+            for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                if (!segment.isDeleted(ordinal)) {
+                    MappedSegment.Record record = segment.record(ordinal);
+                    action.accept(new Document(record.id(), record.text(), record.metadata()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前发布的快照, 读取方应只读取一次并在整个操作中使用同一个快照
+     */
+    public StoreSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 统计信息: 文档块数、来源和类型分布、磁盘与内存占用
+     * 计数随写入增量维护, 不执行检索也不调用Embedding模型
+     */
+    public StoreStats stats() {
+        StoreSnapshot current = snapshot;
+        return new StoreStats(
+            current.liveCount(),
+            current.dimension(),
+            current.sourceCounts(),
+            current.docTypeCounts(),
+            diskBytes(current),
+            current.heapBytes(),
+            current.offHeapBytes()
+        );
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 停止后台检查点和合并, 把剩余的预写日志写为段文件后释放资源
+     * 作为Spring Bean时在容器关闭时自动调用
+     */
+    @Override
+    public void close() throws IOException {
+        for (ExecutorService executor : new ExecutorService[]{checkpointExecutor, mergeExecutor}) {
+            if (executor == null) {
+                continue;
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (wal == null) {
+            return;
+        }
+        checkpoint();
+        wal.close();
+        for (StoreSnapshot.SegmentView segment : snapshot.segments()) {
+            if (segment.source() instanceof MappedSegment mapped) {
+                mapped.close();
+            }
+        }
+    }
+
+    /**
+     * 将一条日志记录应用到内存中的段, 写入和重放共用
+     */
+    private void apply(WriteAheadLog.Entry entry) {
+        if (entry.isDelete()) {
+            storage.delete(entry.id());
+        } else {
+            storage.add(entry.id(), entry.text(), entry.metadata(), entry.vector());
+        }
+    }
+
+    /**
+     * 发布当前状态的新快照, 在写锁内调用
+     */
+    private void publish() {
+        snapshot = storage.snapshot(snapshot.version() + 1, wal == null ? 0 : wal.generation());
+    }
+
+    /**
+     * @param force 预写日志为空时也执行, 用于启动时把重放的记录写为段
+     */
+    private synchronized boolean checkpoint(boolean force) throws IOException {
+        if (wal == null) {
+            return false;
+        }
+        long startTime = System.currentTimeMillis();
+        List<Segment> unflushed;
+        writeLock.lock();
+        try {
+            if (!force && wal.recordBytes() == 0) {
+                return false;
+            }
+            // 先切换日志再冻结, 保证追加段的代号与它的预写日志一致
+            long generation = nextGeneration.getAndIncrement();
+            wal.roll(SegmentFiles.walFile(directory, generation), generation);
+            if (storage.tail().size() > 0) {
+                storage.freezeTail(generation);
+            } else {
+                storage.resetTail(generation);
+            }
+            // 包括之前写出失败而留下的冻结段
+            unflushed = storage.segments().stream().filter(segment -> !segment.flushed()).toList();
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+
+        int flushedCount = 0;
+        for (Segment segment : unflushed) {
+            MappedSegment mapped = writeSegment(segment);
+            writeLock.lock();
+            try {
+                storage.flushed(segment, mapped);
+                publish();
+            } finally {
+                writeLock.unlock();
+            }
+            flushedCount += segment.size();
+        }
+        commit(List.of());
+        log.info("检查点完成: {} 个新段, {} 个文档块, 耗时 {}ms", unflushed.size(), flushedCount,
+            System.currentTimeMillis() - startTime);
+        requestMerge();
+        return true;
+    }
+
+    /**
+     * 把冻结的段写为段文件(连同可持久化的索引)并映射
+     * 冻结的段不再追加, 可以在锁外读取; 期间设置的墓碑记录在提交点中, 段文件中的记录都不带删除标志
+     */
+    private MappedSegment writeSegment(Segment segment) throws IOException {
+        try (SegmentWriter writer = new SegmentWriter(directory, segment.generation(), objectMapper)) {
+            for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                MappedSegment.Record record = segment.record(ordinal);
+                writer.append(record.id(), record.text(), record.metadata(), segment.vector(ordinal), false);
+            }
+            // 索引文件须在提交点引用该段之前写好
+            if (segment.index() instanceof PersistentVectorIndex persistent) {
+                persistent.save(SegmentFiles.vectorIndexFile(directory, segment.generation()));
+            }
+            writer.commit();
+        }
+        return MappedSegment.open(directory, segment.generation(), objectMapper);
+    }
+
+    /**
+     * 写出记录当前快照的段列表和墓碑的提交点, 然后删除不再需要的文件
+     * 尚未写出的冻结段仍要从它的预写日志恢复, 提交点的 walGeneration 不超过其中最小的代号
+     * 快照的墓碑与 walGeneration 在同一次发布中生成, 提交点不会遗漏更早日志中的删除
+     *
+     * @param retired 已被替换的段, 提交后删除其文件
+     */
+    private void commit(List<Segment> retired) throws IOException {
+        synchronized (commitLock) {
+            StoreSnapshot current = snapshot;
+            long walGeneration = current.walGeneration();
+            List<SegmentCommit.Entry> entries = new ArrayList<>();
+            // 最后一个是追加段, 其数据在当前的预写日志中
+            for (StoreSnapshot.SegmentView segment : current.segments().subList(0, current.segments().size() - 1)) {
+                if (segment.flushed()) {
+                    entries.add(new SegmentCommit.Entry(segment.generation(), segment.tombstones()));
+                } else {
+                    walGeneration = Math.min(walGeneration, segment.generation());
+                }
+            }
+            SegmentCommit commit = new SegmentCommit(nextGeneration.getAndIncrement(), walGeneration, entries);
+            commit.write(directory);
+
+            // 旧快照中的检索可能仍在读取已替换的段: 已打开的映射和文件句柄在删除后仍然有效,
+            // 句柄由 Cleaner 在段不可达后关闭
+            for (Segment segment : retired) {
+                SegmentFiles.deleteGeneration(directory, segment.generation());
+            }
+            for (long generation : SegmentFiles.commitGenerations(directory)) {
+                if (generation != commit.generation()) {
+                    SegmentFiles.deleteQuietly(SegmentFiles.commitFile(directory, generation));
+                }
+            }
+            for (long generation : SegmentFiles.walGenerations(directory)) {
+                if (generation < commit.walGeneration()) {
+                    SegmentFiles.deleteQuietly(SegmentFiles.walFile(directory, generation));
+                }
+            }
+            SegmentFiles.deleteQuietly(directory.resolve(SegmentFiles.LEGACY_WAL_FILE));
+        }
+    }
+
+    /**
+     * 启动时删除提交点没有引用的段文件(写出后未提交, 或合并后未及删除)
+     */
+    private void deleteUnreferencedSegments(SegmentCommit commit) throws IOException {
+        Set<Long> referenced = new HashSet<>();
+        if (commit != null) {
+            commit.segments().forEach(entry -> referenced.add(entry.generation()));
+        }
+        for (long generation : SegmentFiles.segmentGenerations(directory)) {
+            if (!referenced.contains(generation)) {
+                log.info("删除未被提交点引用的第 {} 代段文件", generation);
+                SegmentFiles.deleteGeneration(directory, generation);
+            }
+        }
+    }
+
+    /**
+     * 目录中已使用的最大代号
+     */
+    private long lastGeneration() throws IOException {
+        long last = Math.max(SegmentFiles.currentGeneration(directory), 0);
+        for (List<Long> generations : List.of(SegmentFiles.segmentGenerations(directory),
+            SegmentFiles.commitGenerations(directory), SegmentFiles.walGenerations(directory))) {
+            if (!generations.isEmpty()) {
+                last = Math.max(last, generations.get(generations.size() - 1));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * 预写日志超过阈值时在后台线程触发检查点, 避免阻塞写入线程
+     */
+    private void requestCheckpointIfNeeded() {
+        if (checkpointExecutor == null || checkpointPending.get()) {
+            return;
+        }
+        try {
+            if (wal.recordBytes() >= checkpointWalBytes && checkpointPending.compareAndSet(false, true)) {
+                checkpointExecutor.execute(() -> {
+                    checkpointPending.set(false);
+                    checkpointQuietly();
+                });
+            }
+        } catch (IOException e) {
+            log.warn("读取预写日志大小失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在后台线程中合并段, 直到合并策略没有选出新的段
+     */
+    private void requestMerge() {
+        if (mergeExecutor == null || !mergePending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            mergeExecutor.execute(() -> {
+                mergePending.set(false);
+                try {
+                    while (!mergeExecutor.isShutdown() && merge()) {
+                        // 继续合并下一组
+                    }
+                } catch (Exception e) {
+                    log.error("向量存储段合并失败", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mergePending.set(false);
+        }
+    }
+
+    /**
+     * 已提交段的文件加上当前预写日志的大小, 未调用 open() 时为0
+     */
+    private long diskBytes(StoreSnapshot current) {
+        if (wal == null) {
+            return 0;
+        }
+        long bytes = 0;
+        try {
+            for (StoreSnapshot.SegmentView segment : current.segments()) {
+                if (!segment.flushed()) {
+                    continue;
+                }
+                long generation = segment.generation();
+                bytes += Files.size(SegmentFiles.vectorsFile(directory, generation))
+                    + Files.size(SegmentFiles.chunksFile(directory, generation))
+                    + Files.size(SegmentFiles.indexFile(directory, generation));
+                Path vectorIndex = SegmentFiles.vectorIndexFile(directory, generation);
+                if (Files.exists(vectorIndex)) {
+                    bytes += Files.size(vectorIndex);
+                }
+            }
+            bytes += wal.fileBytes();
+        } catch (IOException e) {
+            log.warn("读取向量存储文件大小失败: {}", e.getMessage());
+        }
+        return bytes;
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            log.error("向量存储检查点失败", e);
+        }
+    }
+
+    private List<float[]> embed(List<Document> documents) {
+        List<float[]> embeddings = new ArrayList<>(documents.size());
+        for (int from = 0; from < documents.size(); from += EMBEDDING_BATCH_SIZE) {
+            int to = Math.min(from + EMBEDDING_BATCH_SIZE, documents.size());
+            List<String> texts = documents.subList(from, to).stream()
+                .map(Document::getText)
+                .toList();
+            embeddings.addAll(embeddingModel.embed(texts));
+        }
+        return embeddings;
+    }
+
+    private static Document toDocument(MappedSegment.Record record, float score) {
+        Map<String, Object> metadata = new HashMap<>(record.metadata());
+        metadata.put("distance", 1.0 - score);
+        return Document.builder()
+            .id(record.id())
+            .text(record.text())
+            .metadata(metadata)
+            .score((double) score)
+            .build();
+    }
+
+    /**
+     * 某个段中的一条检索结果
+     */
+    private record SegmentHit(StoreSnapshot.SegmentView segment, ScoredOrdinal hit) {
+
+        static final Comparator<SegmentHit> BY_SCORE = Comparator.comparingDouble(h -> h.hit().score());
+    }
+}
@@ -0,0 +1,509 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * IVF-PQ(倒排文件 + 乘积量化)近似最近邻索引
+ * 参考: Jégou et al., "Product Quantization for Nearest Neighbor Search"
+ *
+ * 结构:
+ * - 粗量化: k-means 训练出 nlist 个聚类中心, 每个向量归入最近的中心, 同一中心的向量组成一个倒排列表
+ * - 乘积量化: 向量减去所属中心得到残差, 残差切分为 subvectors 段, 每段用256个码字的码本编码为1个字节
+ *   (1536维、96段时每个向量只占96字节, 为全精度的1/64)
+ *
+ * 检索:
+ * 1. 计算查询与全部中心的内积, 选出内积最大的 nprobe 个倒排列表
+ * 2. 每段预计算查询子向量与256个码字的内积表(非对称距离), 列表中每个向量的近似分数 = q·中心 + 各段查表之和
+ * 3. 取前 k * rescoreFactor 个候选, 用 VectorStorage 中的全精度向量精排
+ *
+ * 向量数达到 trainingSize 时用已有向量训练, 之前的检索使用全精度向量暴力扫描; 训练后新增的向量直接编码
+ * 码本和倒排列表通过 PersistentVectorIndex 随段文件持久化, 重启时无需重新训练
+ */
+public class IvfPqVectorIndex implements PersistentVectorIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(IvfPqVectorIndex.class);
+
+    private static final int MAGIC = 0x4C585150;   // "LXQP"
+    private static final int VERSION = 1;
+    private static final int CODEWORDS = 256;
+    private static final int KMEANS_ITERATIONS = 10;
+
+    private final VectorStorage storage;
+    private final int nlist;
+    private final int subvectors;
+    private final int trainingSize;
+    private final int rescoreFactor;
+    private volatile int nprobe;
+    private final Random random;
+
+    private int size;
+    private int dimension;
+    /**
+     * 聚类中心, 训练前为null; 训练样本不足 nlist 时中心数等于样本数
+     */
+    private float[][] centroids;
+    /**
+     * 各中心的 |c|^2 / 2, 用于按欧氏距离分配倒排列表
+     */
+    private float[] centroidHalfNorms;
+    /**
+     * 码本: [段][码字] -> 子向量
+     */
+    private float[][][] codebooks;
+    private PostingList[] lists;
+
+    /**
+     * @param nlist 聚类中心(倒排列表)数量, 通常取 sqrt(向量数) 的数倍
+     * @param nprobe 每次检索扫描的倒排列表数, 越大召回率越高、越慢(可运行时调整)
+     * @param subvectors 乘积量化的分段数, 必须整除向量维度
+     * @param trainingSize 训练样本数
+     * @param rescoreFactor 精排候选数相对于K的倍数
+     */
+    public IvfPqVectorIndex(
+        VectorStorage storage,
+        int nlist,
+        int nprobe,
+        int subvectors,
+        int trainingSize,
+        int rescoreFactor
+    ) {
+        if (nlist < 1 || nprobe < 1 || subvectors < 1 || rescoreFactor < 1) {
+            throw new IllegalArgumentException("IVF-PQ参数nlist、nprobe、subvectors、rescoreFactor必须为正数");
+        }
+        if (trainingSize < CODEWORDS) {
+            throw new IllegalArgumentException("IVF-PQ训练样本数不能少于 " + CODEWORDS);
+        }
+        this.storage = storage;
+        this.nlist = nlist;
+        this.nprobe = nprobe;
+        this.subvectors = subvectors;
+        this.trainingSize = trainingSize;
+        this.rescoreFactor = rescoreFactor;
+        this.random = new Random(42L);
+    }
+
+    @Override
+    public void add(int ordinal) {
+        if (ordinal != size) {
+            throw new IllegalArgumentException("向量序号必须连续: 期望 " + size + ", 实际 " + ordinal);
+        }
+        if (size == 0) {
+            dimension = storage.dimension();
+            if (dimension % subvectors != 0) {
+                throw new IllegalStateException("IVF-PQ分段数 " + subvectors + " 不能整除向量维度 " + dimension);
+            }
+        }
+        size++;
+        if (trained()) {
+            encode(ordinal);
+        } else if (size >= trainingSize) {
+            train();
+        }
+    }
+
+    @Override
+    public List<ScoredOrdinal> search(float[] query, int k, IntPredicate accept) {
+        return search(query, k, Float.NEGATIVE_INFINITY, accept);
+    }
+
+    /**
+     * 粗排的近似分数不与阈值比较, 相似度阈值只作用于精排的精确分数
+     */
+    @Override
+    public List<ScoredOrdinal> search(float[] query, int k, float minScore, IntPredicate accept) {
+        if (k <= 0 || size == 0) {
+            return List.of();
+        }
+        if (!trained()) {
+            return exactSearch(query, k, minScore, accept);
+        }
+
+        // 1. 选出与查询内积最大的 nprobe 个倒排列表
+        int probes = Math.min(nprobe, centroids.length);
+        TopKHeap probeHeap = new TopKHeap(probes);
+        for (int list = 0; list < centroids.length; list++) {
+            probeHeap.offer(list, VectorMath.dot(query, centroids[list]));
+        }
+
+        // 2. 查询子向量与各段码字的内积表
+        int subDimension = dimension / subvectors;
+        float[] table = new float[subvectors * CODEWORDS];
+        float[] querySub = new float[subDimension];
+        for (int segment = 0; segment < subvectors; segment++) {
+            System.arraycopy(query, segment * subDimension, querySub, 0, subDimension);
+            for (int code = 0; code < CODEWORDS; code++) {
+                table[segment * CODEWORDS + code] = VectorMath.dot(querySub, codebooks[segment][code]);
+            }
+        }
+
+        int candidates = (int) Math.min((long) k * rescoreFactor, size);
+        TopKHeap coarse = new TopKHeap(candidates);
+        for (int probe = 0; probe < probeHeap.size(); probe++) {
+            PostingList list = lists[probeHeap.ordinal(probe)];
+            for (int i = 0; i < list.count; i++) {
+                int ordinal = list.ordinals[i];
+                float score = probeHeap.score(probe);
+                int base = i * subvectors;
+                for (int segment = 0; segment < subvectors; segment++) {
+                    score += table[segment * CODEWORDS + (list.codes[base + segment] & 0xFF)];
+                }
+                if (coarse.competitive(score) && (accept == null || accept.test(ordinal))) {
+                    coarse.offer(ordinal, score);
+                }
+            }
+        }
+
+        // 3. 全精度向量精排
+        TopKHeap exact = new TopKHeap(k, minScore);
+        for (int i = 0; i < coarse.size(); i++) {
+            exact.offer(coarse.ordinal(i), storage.dot(query, coarse.ordinal(i)));
+        }
+        return exact.drainSorted();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long estimatedHeapBytes() {
+        if (!trained()) {
+            return 0;
+        }
+        long bytes = (long) centroids.length * dimension * Float.BYTES
+            + (long) subvectors * CODEWORDS * (dimension / subvectors) * Float.BYTES;
+        for (PostingList list : lists) {
+            bytes += (long) list.ordinals.length * Integer.BYTES + list.codes.length;
+        }
+        return bytes;
+    }
+
+    public boolean trained() {
+        return centroids != null;
+    }
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    /**
+     * 运行时调整每次检索扫描的倒排列表数
+     */
+    public void setNprobe(int nprobe) {
+        if (nprobe < 1) {
+            throw new IllegalArgumentException("IVF-PQ参数nprobe必须为正数");
+        }
+        this.nprobe = nprobe;
+    }
+
+    /**
+     * 文件格式(大端序):
+     * <pre>
+     * magic(int) version(int) dimension(int) nlist(int) subvectors(int) size(int) centroidCount(int)
+     * centroids: centroidCount * dimension 个 float
+     * codebooks: subvectors * 256 * (dimension / subvectors) 个 float
+     * 倒排列表 * centroidCount: count(int) ordinals(int * count) codes(byte * count * subvectors)
+     * </pre>
+     * 未训练时不写文件(重建代价很低)
+     */
+    @Override
+    public void save(Path file) throws IOException {
+        if (!trained()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(nlist);
+            out.writeInt(subvectors);
+            out.writeInt(size);
+            out.writeInt(centroids.length);
+            for (float[] centroid : centroids) {
+                writeFloats(out, centroid);
+            }
+            for (float[][] codebook : codebooks) {
+                for (float[] codeword : codebook) {
+                    writeFloats(out, codeword);
+                }
+            }
+            for (PostingList list : lists) {
+                out.writeInt(list.count);
+                for (int i = 0; i < list.count; i++) {
+                    out.writeInt(list.ordinals[i]);
+                }
+                out.write(list.codes, 0, list.count * subvectors);
+            }
+        }
+    }
+
+    @Override
+    public boolean load(Path file) throws IOException {
+        if (size > 0) {
+            throw new IllegalStateException("只能在空索引上加载");
+        }
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("IVF-PQ索引文件格式不匹配, 将重新训练: {}", file);
+                return false;
+            }
+            int savedDimension = in.readInt();
+            int savedNlist = in.readInt();
+            int savedSubvectors = in.readInt();
+            int savedSize = in.readInt();
+            if (savedDimension != storage.dimension() || savedNlist != nlist || savedSubvectors != subvectors
+                || savedSize > storage.size()) {
+                log.warn("IVF-PQ索引参数与当前配置不一致, 将重新训练: {}", file);
+                return false;
+            }
+            int centroidCount = in.readInt();
+            int subDimension = savedDimension / subvectors;
+            float[][] loadedCentroids = new float[centroidCount][];
+            for (int i = 0; i < centroidCount; i++) {
+                loadedCentroids[i] = readFloats(in, savedDimension);
+            }
+            float[][][] loadedCodebooks = new float[subvectors][CODEWORDS][];
+            for (int segment = 0; segment < subvectors; segment++) {
+                for (int code = 0; code < CODEWORDS; code++) {
+                    loadedCodebooks[segment][code] = readFloats(in, subDimension);
+                }
+            }
+            PostingList[] loadedLists = new PostingList[centroidCount];
+            for (int i = 0; i < centroidCount; i++) {
+                PostingList list = new PostingList(subvectors);
+                int count = in.readInt();
+                list.ensureCapacity(count);
+                for (int j = 0; j < count; j++) {
+                    list.ordinals[j] = in.readInt();
+                }
+                in.readFully(list.codes, 0, count * subvectors);
+                list.count = count;
+                loadedLists[i] = list;
+            }
+            this.dimension = savedDimension;
+            this.centroids = loadedCentroids;
+            this.centroidHalfNorms = halfNorms(loadedCentroids);
+            this.codebooks = loadedCodebooks;
+            this.lists = loadedLists;
+            this.size = savedSize;
+        }
+        log.info("IVF-PQ索引加载完成: {} 个向量, {} 个倒排列表", size, centroids.length);
+        return true;
+    }
+
+    /**
+     * 以当前全部向量(不超过 trainingSize 个)训练聚类中心和码本, 并为已有向量编码
+     */
+    private void train() {
+        long startTime = System.currentTimeMillis();
+        float[][] sample = new float[Math.min(size, trainingSize)][];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = storage.vector(i).clone();
+        }
+
+        float[][] trainedCentroids = kmeans(sample, Math.min(nlist, sample.length));
+        float[] trainedHalfNorms = halfNorms(trainedCentroids);
+
+        // 残差按段切分后分别训练码本
+        int subDimension = dimension / subvectors;
+        float[][][] residualSegments = new float[subvectors][sample.length][subDimension];
+        for (int i = 0; i < sample.length; i++) {
+            float[] centroid = trainedCentroids[nearest(sample[i], trainedCentroids, trainedHalfNorms)];
+            for (int d = 0; d < dimension; d++) {
+                residualSegments[d / subDimension][i][d % subDimension] = sample[i][d] - centroid[d];
+            }
+        }
+        float[][][] trainedCodebooks = new float[subvectors][][];
+        for (int segment = 0; segment < subvectors; segment++) {
+            float[][] codebook = kmeans(residualSegments[segment], Math.min(CODEWORDS, sample.length));
+            // 样本不足256个时补齐码本, 保证编码表长度固定
+            trainedCodebooks[segment] = Arrays.copyOf(codebook, CODEWORDS);
+            for (int code = codebook.length; code < CODEWORDS; code++) {
+                trainedCodebooks[segment][code] = codebook[code % codebook.length];
+            }
+        }
+
+        this.centroids = trainedCentroids;
+        this.centroidHalfNorms = trainedHalfNorms;
+        this.codebooks = trainedCodebooks;
+        this.lists = new PostingList[trainedCentroids.length];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new PostingList(subvectors);
+        }
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            encode(ordinal);
+        }
+        log.info("IVF-PQ索引训练完成: {} 个样本, {} 个倒排列表, {} 段, 耗时 {}ms", sample.length, lists.length, subvectors,
+            System.currentTimeMillis() - startTime);
+    }
+
+    private void encode(int ordinal) {
+        float[] vector = storage.vector(ordinal);
+        int listIndex = nearest(vector, centroids, centroidHalfNorms);
+        float[] centroid = centroids[listIndex];
+        int subDimension = dimension / subvectors;
+        float[] residual = new float[subDimension];
+        byte[] code = new byte[subvectors];
+        for (int segment = 0; segment < subvectors; segment++) {
+            int offset = segment * subDimension;
+            for (int d = 0; d < subDimension; d++) {
+                residual[d] = vector[offset + d] - centroid[offset + d];
+            }
+            code[segment] = (byte) nearest(residual, codebooks[segment], null);
+        }
+        lists[listIndex].add(ordinal, code);
+    }
+
+    /**
+     * Lloyd k-means, 以随机样本初始化; 空簇用随机样本重新初始化
+     */
+    private float[][] kmeans(float[][] data, int k) {
+        int dim = data[0].length;
+        float[][] centers = new float[k][];
+        int[] order = shuffledIndexes(data.length);
+        for (int i = 0; i < k; i++) {
+            centers[i] = data[order[i]].clone();
+        }
+        int[] assignment = new int[data.length];
+        for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+            float[] centerHalfNorms = halfNorms(centers);
+            for (int i = 0; i < data.length; i++) {
+                assignment[i] = nearest(data[i], centers, centerHalfNorms);
+            }
+            float[][] sums = new float[k][dim];
+            int[] counts = new int[k];
+            for (int i = 0; i < data.length; i++) {
+                float[] sum = sums[assignment[i]];
+                for (int d = 0; d < dim; d++) {
+                    sum[d] += data[i][d];
+                }
+                counts[assignment[i]]++;
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    centers[c] = data[random.nextInt(data.length)].clone();
+                    continue;
+                }
+                for (int d = 0; d < dim; d++) {
+                    sums[c][d] /= counts[c];
+                }
+                centers[c] = sums[c];
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * 欧氏距离最近的中心: argmin |x - c|^2 = argmax (x·c - |c|^2 / 2)
+     *
+     * @param halfNorms 各中心的 |c|^2 / 2, 为null时现算
+     */
+    private static int nearest(float[] x, float[][] centers, float[] halfNorms) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < centers.length; c++) {
+            float halfNorm = halfNorms != null ? halfNorms[c] : VectorMath.dot(centers[c], centers[c]) / 2;
+            float score = VectorMath.dot(x, centers[c]) - halfNorm;
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static float[] halfNorms(float[][] centers) {
+        float[] result = new float[centers.length];
+        for (int c = 0; c < centers.length; c++) {
+            result[c] = VectorMath.dot(centers[c], centers[c]) / 2;
+        }
+        return result;
+    }
+
+    private int[] shuffledIndexes(int n) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = tmp;
+        }
+        return indexes;
+    }
+
+    private List<ScoredOrdinal> exactSearch(float[] query, int k, float minScore, IntPredicate accept) {
+        TopKHeap heap = new TopKHeap(k, minScore);
+        for (int i = 0; i < size; i++) {
+            float score = storage.dot(query, i);
+            if (heap.competitive(score) && (accept == null || accept.test(i))) {
+                heap.offer(i, score);
+            }
+        }
+        return heap.drainSorted();
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in, int length) throws IOException {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+
+    /**
+     * 倒排列表: 向量序号和对应的乘积量化编码, 按加入顺序连续存放
+     */
+    private static final class PostingList {
+
+        private final int codeLength;
+        private int count;
+        private int[] ordinals = new int[0];
+        private byte[] codes = new byte[0];
+
+        private PostingList(int codeLength) {
+            this.codeLength = codeLength;
+        }
+
+        private void add(int ordinal, byte[] code) {
+            ensureCapacity(count + 1);
+            ordinals[count] = ordinal;
+            System.arraycopy(code, 0, codes, count * codeLength, codeLength);
+            count++;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > ordinals.length) {
+                int capacity = Math.max(required, Math.max(16, ordinals.length * 2));
+                ordinals = Arrays.copyOf(ordinals, capacity);
+                codes = Arrays.copyOf(codes, capacity * codeLength);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 一次性转换工具: SimpleVectorStore 的JSON文件 -> 二进制段文件
+ * 使用Jackson流式解析, 逐条写出记录, 不会把整个JSON文件读成对象树
+ */
+public final class JsonStoreConverter {
+
+    private static final Logger log = LoggerFactory.getLogger(JsonStoreConverter.class);
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private JsonStoreConverter() {
+    }
+
+    /**
+     * 转换JSON文件, 原文件保留不动
+     *
+     * @param jsonFile SimpleVectorStore.save() 生成的文件
+     * @param directory 段文件目录
+     * @return 转换的文档块数量
+     */
+    public static long convert(File jsonFile, Path directory, ObjectMapper objectMapper) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long generation = Math.max(SegmentFiles.currentGeneration(directory), 0) + 1;
+
+        try (SegmentWriter writer = new SegmentWriter(directory, generation, objectMapper)) {
+            read(jsonFile, objectMapper, true, (id, text, metadata, embedding) -> {
+                if (embedding == null) {
+                    throw new IOException("文档块缺少embedding字段: " + id);
+                }
+                writer.append(id, text, metadata, VectorMath.normalize(embedding), false);
+            });
+            writer.commit();
+            // 转换结果作为唯一的段写入提交点, 之后的预写日志从下一个代号开始
+            SegmentCommit.Entry segment = new SegmentCommit.Entry(generation, new BitSet());
+            new SegmentCommit(generation + 1, generation + 2, List.of(segment)).write(directory);
+            log.info("JSON向量存储转换完成: {} -> {}, {} 个文档块, 耗时 {}ms", jsonFile, directory, writer.count(),
+                System.currentTimeMillis() - startTime);
+            return writer.count();
+        }
+    }
+
+    /**
+     * 遍历JSON文件中的文档块(不读取向量), 用于从 SimpleVectorStore 的文件重建词法索引等派生数据
+     */
+    public static void forEachDocument(File jsonFile, ObjectMapper objectMapper, Consumer<Document> action)
+        throws IOException {
+        read(jsonFile, objectMapper, false,
+            (id, text, metadata, embedding) -> action.accept(new Document(id, text, metadata)));
+    }
+
+    /**
+     * 流式解析JSON文件, 逐条回调
+     *
+     * @param readEmbeddings 是否解析向量, 为false时跳过向量字段, 回调收到的向量为null
+     */
+    private static void read(File jsonFile, ObjectMapper objectMapper, boolean readEmbeddings, ChunkHandler handler)
+        throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(jsonFile)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                expect(parser.nextToken(), JsonToken.START_OBJECT);
+
+                String id = key;
+                String text = "";
+                Map<String, Object> metadata = Map.of();
+                float[] embedding = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    switch (field) {
+                        case "id" -> id = parser.getValueAsString();
+                        case "text", "content" -> text = parser.getValueAsString();
+                        case "metadata" -> metadata = objectMapper.readValue(parser, METADATA_TYPE);
+                        case "embedding" -> {
+                            if (readEmbeddings) {
+                                embedding = readFloats(parser, value);
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        default -> parser.skipChildren();
+                    }
+                }
+                handler.accept(id, text, metadata, embedding);
+            }
+        }
+    }
+
+    private static float[] readFloats(JsonParser parser, JsonToken token) throws IOException {
+        expect(token, JsonToken.START_ARRAY);
+        float[] values = new float[1024];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = parser.getFloatValue();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("JSON格式不正确: 期望 " + expected + ", 实际 " + actual);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkHandler {
+        void accept(String id, String text, Map<String, Object> metadata, float[] embedding) throws IOException;
+    }
+}
@@ -0,0 +1,281 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * 只读的内存映射段
+ * 向量文件通过 FileChannel.map 映射, 相似度计算直接读取映射区域, 由操作系统页缓存提供数据;
+ * 文档块文本和元数据按偏移索引按需读取, 不常驻堆内存;
+ * 建立位图索引的元数据字段(来源文件、文档类型)另有按记录存放的取值编号(fields-{gen}.bin), 同样映射读取, 无需解析JSON
+ *
+ * 单个 MappedByteBuffer 最大2GB, 向量文件按整数个向量切分为多个映射区域
+ * 段被合并替换后, 旧快照中的检索可能仍在读取, 文档块文件的句柄由 Cleaner 在段不可达后关闭
+ */
+public class MappedSegment implements ChunkSource, Closeable {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final Path directory;
+    private final long generation;
+    private final ObjectMapper objectMapper;
+    private final int dimension;
+    private final int count;
+    private final int vectorsPerRegion;
+    private final FloatBuffer[] regions;
+    private final LongBuffer offsets;
+    /**
+     * 每条记录在各元数据字段上的取值编号(count * fieldCount 个), 段没有元数据字段文件时为null
+     */
+    private final IntBuffer fieldRows;
+    /**
+     * 各元数据字段的取值字典, 与 MetadataBitmaps.FIELDS 的顺序一致
+     */
+    private final String[][] fieldValues;
+    private final FileChannel chunks;
+    private final Cleaner.Cleanable closer;
+
+    private MappedSegment(Path directory, long generation, ObjectMapper objectMapper) throws IOException {
+        this.directory = directory;
+        this.generation = generation;
+        this.objectMapper = objectMapper;
+
+        try (FileChannel vectors = FileChannel.open(SegmentFiles.vectorsFile(directory, generation),
+            StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SegmentFiles.VECTORS_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            vectors.read(header, 0);
+            header.flip();
+            if (header.getInt() != SegmentFiles.VECTORS_MAGIC || header.getInt() != SegmentFiles.VERSION) {
+                throw new IOException("向量文件格式不正确: " + SegmentFiles.vectorsFile(directory, generation));
+            }
+            this.dimension = header.getInt();
+            header.getInt();
+            this.count = Math.toIntExact(header.getLong());
+
+            long stride = (long) Math.max(dimension, 1) * Float.BYTES;
+            this.vectorsPerRegion = (int) Math.max(1, Integer.MAX_VALUE / stride);
+            int regionCount = count == 0 ? 0 : (count + vectorsPerRegion - 1) / vectorsPerRegion;
+            this.regions = new FloatBuffer[regionCount];
+            for (int r = 0; r < regionCount; r++) {
+                long first = (long) r * vectorsPerRegion;
+                long vectorCount = Math.min(vectorsPerRegion, count - first);
+                MappedByteBuffer mapped = vectors.map(FileChannel.MapMode.READ_ONLY,
+                    SegmentFiles.VECTORS_HEADER_BYTES + first * stride, vectorCount * stride);
+                regions[r] = mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+        }
+
+        try (FileChannel index = FileChannel.open(SegmentFiles.indexFile(directory, generation),
+            StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != SegmentFiles.INDEX_MAGIC || mapped.getInt() != SegmentFiles.VERSION
+                || mapped.getLong() != count) {
+                throw new IOException("偏移索引文件格式不正确: " + SegmentFiles.indexFile(directory, generation));
+            }
+            this.offsets = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        }
+
+        Path fieldsFile = SegmentFiles.fieldsFile(directory, generation);
+        if (Files.exists(fieldsFile)) {
+            try (FileChannel fields = FileChannel.open(fieldsFile, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = fields.map(FileChannel.MapMode.READ_ONLY, 0, fields.size());
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                int magic = mapped.getInt();
+                int version = mapped.getInt();
+                int fieldCount = mapped.getInt();
+                mapped.getInt();
+                long fieldRecords = mapped.getLong();
+                int dictionaryOffset = Math.toIntExact(mapped.getLong());
+                if (magic != SegmentFiles.FIELDS_MAGIC || version != SegmentFiles.VERSION
+                    || fieldCount != MetadataBitmaps.FIELDS.size() || fieldRecords != count) {
+                    throw new IOException("元数据字段文件格式不正确: " + fieldsFile);
+                }
+                this.fieldRows = mapped.slice(SegmentFiles.FIELDS_HEADER_BYTES,
+                        dictionaryOffset - SegmentFiles.FIELDS_HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                this.fieldValues = new String[fieldCount][];
+                mapped.position(dictionaryOffset);
+                for (int f = 0; f < fieldCount; f++) {
+                    if (!readString(mapped).equals(MetadataBitmaps.FIELDS.get(f))) {
+                        throw new IOException("元数据字段文件的字段与当前版本不一致: " + fieldsFile);
+                    }
+                    fieldValues[f] = new String[mapped.getInt()];
+                    for (int v = 0; v < fieldValues[f].length; v++) {
+                        fieldValues[f][v] = readString(mapped);
+                    }
+                }
+            }
+        } else {
+            this.fieldRows = null;
+            this.fieldValues = null;
+        }
+
+        FileChannel channel = FileChannel.open(SegmentFiles.chunksFile(directory, generation),
+            StandardOpenOption.READ);
+        this.chunks = channel;
+        this.closer = StoreSnapshot.RESOURCE_CLEANER.register(this, () -> {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // 只读句柄, 关闭失败不影响数据
+            }
+        });
+    }
+
+    /**
+     * 打开目录中指定代号的段, 生效的段列表由提交点(SegmentCommit)记录
+     */
+    public static MappedSegment open(Path directory, long generation, ObjectMapper objectMapper) throws IOException {
+        return new MappedSegment(directory, generation, objectMapper);
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 计算查询向量与映射区域中向量的点积
+     */
+    @Override
+    public float dot(float[] query, int ordinal) {
+        return VectorMath.dot(query, regions[ordinal / vectorsPerRegion], (ordinal % vectorsPerRegion) * dimension);
+    }
+
+    @Override
+    public float[] vector(int ordinal) {
+        FloatBuffer region = regions[ordinal / vectorsPerRegion];
+        float[] vector = new float[dimension];
+        region.get((ordinal % vectorsPerRegion) * dimension, vector);
+        return vector;
+    }
+
+    /**
+     * 读取一条文档块记录
+     */
+    @Override
+    public Record record(int ordinal) {
+        return decode(read(ordinal), objectMapper);
+    }
+
+    /**
+     * 解析一条记录, 格式见 SegmentFiles; 堆外追加区(OffHeapChunkArena)使用相同的格式
+     */
+    static Record decode(ByteBuffer buffer, ObjectMapper objectMapper) {
+        byte flags = buffer.get();
+        String id = readString(buffer);
+        String text = readString(buffer);
+        byte[] metadataBytes = new byte[buffer.getInt()];
+        buffer.get(metadataBytes);
+        try {
+            Map<String, Object> metadata = objectMapper.readValue(metadataBytes, METADATA_TYPE);
+            return new Record(id, text, metadata, (flags & SegmentFiles.FLAG_DELETED) != 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("解析文档块元数据失败: " + id, e);
+        }
+    }
+
+    /**
+     * 是否有元数据字段文件; 旧版本写出的段没有, 需要读取记录的元数据
+     */
+    public boolean hasMetadataFields() {
+        return fieldRows != null;
+    }
+
+    /**
+     * 记录在建立位图索引的元数据字段上的取值, 直接读取元数据字段文件, 不解析元数据JSON
+     * 只能在 hasMetadataFields() 为true时调用
+     *
+     * @param field 字段在 MetadataBitmaps.FIELDS 中的位置
+     * @return 取值, 记录没有该字段时为null
+     */
+    public String metadataValue(int field, int ordinal) {
+        int number = fieldRows.get(ordinal * fieldValues.length + field);
+        return number < 0 ? null : fieldValues[field][number];
+    }
+
+    /**
+     * 只读取记录的ID和删除标志, 用于启动时建立ID映射
+     */
+    public String id(int ordinal) {
+        ByteBuffer buffer = read(ordinal);
+        byte flags = buffer.get();
+        return (flags & SegmentFiles.FLAG_DELETED) != 0 ? null : readString(buffer);
+    }
+
+    /**
+     * 立即关闭文档块文件, 之后不能再读取记录; 未调用时由 Cleaner 在段不可达后关闭
+     */
+    @Override
+    public void close() {
+        closer.clean();
+    }
+
+    private ByteBuffer read(int ordinal) {
+        long start = offsets.get(ordinal);
+        int length = Math.toIntExact(offsets.get(ordinal + 1) - start);
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (buffer.hasRemaining()) {
+                if (chunks.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException("文档块文件被截断");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取文档块失败: ordinal=" + ordinal, e);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 文档块记录
+     */
+    public record Record(String id, String text, Map<String, Object> metadata, boolean deleted) {
+    }
+}
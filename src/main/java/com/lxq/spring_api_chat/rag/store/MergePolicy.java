@@ -0,0 +1,75 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 分层合并策略
+ * 按有效记录数把不可变段分层: 不超过 minSegmentChunks 的段在第0层, 之后每层的大小上限扩大 mergeFactor 倍;
+ * 同一层的段达到 mergeFactor 个时合并为一个(约进入上一层), 每条记录在其生命周期内只被重写 O(log N) 次
+ * 没有可合并的层时, 删除比例超过 maxDeletedRatio 的段被单独重写以回收空间
+ *
+ * @param mergeFactor 同一层触发合并的段数, 也是相邻两层的大小倍数
+ * @param minSegmentChunks 第0层的段大小上限, 小于它的段都视为同样大小
+ * @param maxDeletedRatio 墓碑占比超过该值的段被重写
+ */
+public record MergePolicy(int mergeFactor, int minSegmentChunks, double maxDeletedRatio) {
+
+    public static final MergePolicy DEFAULT = new MergePolicy(10, 1000, 0.3);
+
+    public MergePolicy {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("mergeFactor 必须不小于2");
+        }
+        if (minSegmentChunks < 1) {
+            throw new IllegalArgumentException("minSegmentChunks 必须为正数");
+        }
+    }
+
+    /**
+     * 选出下一次要合并的段
+     *
+     * @param segments 快照中已刷盘的不可变段
+     * @return 要合并的段, 无需合并时为空列表
+     */
+    public List<StoreSnapshot.SegmentView> select(List<StoreSnapshot.SegmentView> segments) {
+        Map<Integer, List<StoreSnapshot.SegmentView>> tiers = new TreeMap<>();
+        for (StoreSnapshot.SegmentView segment : segments) {
+            tiers.computeIfAbsent(tier(segment.liveCount()), key -> new ArrayList<>()).add(segment);
+        }
+        // 优先合并最低的层: 小段数量最多, 合并代价最小
+        for (List<StoreSnapshot.SegmentView> tier : tiers.values()) {
+            if (tier.size() >= mergeFactor) {
+                return tier.stream()
+                    .sorted(Comparator.comparingInt(StoreSnapshot.SegmentView::liveCount))
+                    .limit(mergeFactor)
+                    .toList();
+            }
+        }
+        return segments.stream()
+            .filter(segment -> segment.size() > 0 && deletedRatio(segment) > maxDeletedRatio)
+            .max(Comparator.comparingDouble(MergePolicy::deletedRatio))
+            .map(List::of)
+            .orElse(List.of());
+    }
+
+    /**
+     * 有效记录数所在的层
+     */
+    int tier(int liveCount) {
+        int tier = 0;
+        long limit = minSegmentChunks;
+        while (liveCount > limit) {
+            tier++;
+            limit *= mergeFactor;
+        }
+        return tier;
+    }
+
+    private static double deletedRatio(StoreSnapshot.SegmentView segment) {
+        return (double) segment.deletedCount() / segment.size();
+    }
+}
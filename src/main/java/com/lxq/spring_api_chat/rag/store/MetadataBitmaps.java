@@ -0,0 +1,129 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 段内的元数据位图索引: 对来源文件(source)和文档类型(docType)的每个取值记录包含它的段内序号
+ * 检索带有这两个字段的过滤条件时, 先由位图求出候选序号(见 MetadataFilter), 只对候选计算相似度
+ *
+ * 位图包含已设置墓碑的记录, 检索时仍需检查墓碑
+ * 不是线程安全的: 追加段的位图由写锁保护, 发布到快照的是只读版本(见 publish)
+ */
+public final class MetadataBitmaps {
+
+    /**
+     * 建立位图索引的元数据字段
+     */
+    public static final List<String> FIELDS = List.of(ChunkStorage.SOURCE_KEY, ChunkStorage.DOC_TYPE_KEY);
+
+    private static final OrdinalBitmap EMPTY = new OrdinalBitmap();
+
+    /**
+     * 字段 -> 取值 -> 序号位图
+     */
+    private final Map<String, Map<String, OrdinalBitmap>> bitmaps = new HashMap<>();
+
+    /**
+     * 上次发布以来有追加的取值, 与 FIELDS 的顺序一致
+     */
+    private final List<Set<String>> changed = new ArrayList<>();
+
+    /**
+     * 上次发布的只读版本, 尚未发布时为null
+     */
+    private MetadataBitmaps published;
+
+    public MetadataBitmaps() {
+        for (String field : FIELDS) {
+            bitmaps.put(field, new HashMap<>());
+            changed.add(new HashSet<>());
+        }
+    }
+
+    public static boolean indexed(String field) {
+        return FIELDS.contains(field);
+    }
+
+    /**
+     * 元数据在各索引字段上的取值, 与 FIELDS 的顺序一致, 没有该字段时为null
+     */
+    static String[] values(Map<String, Object> metadata) {
+        String[] values = new String[FIELDS.size()];
+        for (int f = 0; f < values.length; f++) {
+            Object value = metadata.get(FIELDS.get(f));
+            values[f] = value == null ? null : value.toString();
+        }
+        return values;
+    }
+
+    /**
+     * 记录一条文档块的元数据, 序号必须递增
+     */
+    void add(int ordinal, Map<String, Object> metadata) {
+        add(ordinal, values(metadata));
+    }
+
+    /**
+     * 记录一条文档块在各索引字段上的取值(见 values), 序号必须递增
+     */
+    void add(int ordinal, String[] values) {
+        for (int f = 0; f < values.length; f++) {
+            if (values[f] != null) {
+                bitmaps.get(FIELDS.get(f)).computeIfAbsent(values[f], key -> new OrdinalBitmap()).add(ordinal);
+                changed.get(f).add(values[f]);
+            }
+        }
+    }
+
+    /**
+     * 字段等于该取值的记录; 没有该取值时返回空位图
+     * 返回的位图是内部状态, 调用方不能修改
+     *
+     * @param field 已建立索引的字段, 见 FIELDS
+     */
+    public OrdinalBitmap get(String field, String value) {
+        OrdinalBitmap bitmap = bitmaps.get(field).get(value);
+        return bitmap == null ? EMPTY : bitmap;
+    }
+
+    /**
+     * 发布当前状态的只读版本, 用于把追加段的位图发布到快照
+     * 上次发布以来没有追加的取值直接共享上一版本的位图, 有追加的取值生成位图的只读副本(只复制最后一个容器, 见
+     * OrdinalBitmap.snapshot); 每次发布的开销与取值数量和本次追加涉及的容器数有关, 与追加段的记录数无关
+     */
+    MetadataBitmaps publish() {
+        MetadataBitmaps next = new MetadataBitmaps();
+        for (int f = 0; f < FIELDS.size(); f++) {
+            String field = FIELDS.get(f);
+            Map<String, OrdinalBitmap> target = next.bitmaps.get(field);
+            if (published != null) {
+                target.putAll(published.bitmaps.get(field));
+            }
+            Map<String, OrdinalBitmap> current = bitmaps.get(field);
+            for (String value : changed.get(f)) {
+                target.put(value, current.get(value).snapshot());
+            }
+            changed.get(f).clear();
+        }
+        published = next;
+        return next;
+    }
+
+    /**
+     * 估算的堆内存占用(字节): 位图和取值字符串
+     */
+    public long heapBytes() {
+        long bytes = 0;
+        for (Map<String, OrdinalBitmap> values : bitmaps.values()) {
+            for (Map.Entry<String, OrdinalBitmap> entry : values.entrySet()) {
+                bytes += 64 + entry.getKey().length() * 2L + entry.getValue().heapBytes();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,140 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 元数据过滤表达式(Spring AI Filter.Expression)的求值
+ *
+ * - 元数据断言: 逐条判断, 语义与 SimpleVectorStore 一致(基于SpEL), 支持全部运算符
+ * - 候选位图: 由段的元数据位图(见 MetadataBitmaps)求出可能满足条件的序号, 在计算相似度之前缩小候选范围
+ *   已索引字段上的 ==、IN 取对应取值的位图, AND 取交集, OR 取并集; 其他条件无法用位图表示, 不缩小范围
+ *   表达式只由这些条件组成时, 候选位图就是精确结果, 不再需要逐条判断元数据
+ */
+public final class MetadataFilter {
+
+    private static final ExpressionParser EXPRESSION_PARSER = new SpelExpressionParser();
+    private static final SimpleVectorStoreFilterExpressionConverter CONVERTER =
+        new SimpleVectorStoreFilterExpressionConverter();
+
+    private MetadataFilter() {
+    }
+
+    /**
+     * 解析文本形式的过滤表达式, 如 source == 'manual.pdf' && docType in ['PDF', 'MARKDOWN']
+     *
+     * @return 空白文本返回null
+     * @throws IllegalArgumentException 表达式无效
+     */
+    public static Filter.Expression parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        try {
+            return new FilterExpressionTextParser().parse(text);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("过滤表达式无效: " + text, e);
+        }
+    }
+
+    /**
+     * 将过滤表达式转换为元数据断言
+     */
+    public static Predicate<Map<String, Object>> predicate(Filter.Expression filterExpression) {
+        Expression expression = EXPRESSION_PARSER.parseExpression(CONVERTER.convertExpression(filterExpression));
+        return metadata -> {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    /**
+     * 表达式能否完全由元数据位图求值; 能求值时 candidates() 的结果就是满足条件的全部记录
+     */
+    public static boolean indexed(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return indexed(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            return false;
+        }
+        return switch (expression.type()) {
+            case AND, OR -> indexed(expression.left()) && indexed(expression.right());
+            case EQ, IN -> indexedKey(expression.left()) != null;
+            default -> false;
+        };
+    }
+
+    /**
+     * 由段的元数据位图求候选序号, 结果包含全部满足条件的记录(可能还包含不满足的, 见 indexed())
+     *
+     * @return 无法缩小范围时返回null; 返回的位图可能是 bitmaps 的内部状态, 调用方不能修改
+     */
+    public static OrdinalBitmap candidates(Filter.Operand operand, MetadataBitmaps bitmaps) {
+        if (operand instanceof Filter.Group group) {
+            return candidates(group.content(), bitmaps);
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            return null;
+        }
+        switch (expression.type()) {
+            case AND -> {
+                OrdinalBitmap left = candidates(expression.left(), bitmaps);
+                OrdinalBitmap right = candidates(expression.right(), bitmaps);
+                if (left == null || right == null) {
+                    // 只有一侧可用位图表示时, 该侧仍是结果的超集
+                    return left == null ? right : left;
+                }
+                return OrdinalBitmap.and(left, right);
+            }
+            case OR -> {
+                OrdinalBitmap left = candidates(expression.left(), bitmaps);
+                OrdinalBitmap right = candidates(expression.right(), bitmaps);
+                return left == null || right == null ? null : OrdinalBitmap.or(left, right);
+            }
+            case EQ, IN -> {
+                String field = indexedKey(expression.left());
+                if (field == null || !(expression.right() instanceof Filter.Value value)) {
+                    return null;
+                }
+                if (!(value.value() instanceof List<?> values)) {
+                    return bitmaps.get(field, String.valueOf(value.value()));
+                }
+                OrdinalBitmap union = new OrdinalBitmap();
+                for (Object item : values) {
+                    union = OrdinalBitmap.or(union, bitmaps.get(field, String.valueOf(item)));
+                }
+                return union;
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 已建立位图索引的字段名, 其他字段返回null
+     * 文本表达式中的字段名可以带引号, 比较前去掉
+     */
+    private static String indexedKey(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Key key)) {
+            return null;
+        }
+        String name = key.key();
+        if (name.length() >= 2 && (name.charAt(0) == '"' || name.charAt(0) == '\'')
+            && name.charAt(name.length() - 1) == name.charAt(0)) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return MetadataBitmaps.indexed(name) ? name : null;
+    }
+}
@@ -0,0 +1,294 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 堆外文档块存储区
+ * 追加段的向量和文档块记录(ID、文本、元数据JSON)写入 ByteBuffer.allocateDirect 分配的本地内存块,
+ * 堆内只保留每条记录的位置(long)和长度(int); 相似度计算由内核直接读取本地内存中的向量, 不为每次计算创建堆内数组
+ * (标量内核逐个读取, SIMD内核分块复制到线程本地的小数组, 见 SimdVectorKernel)
+ *
+ * 内存块大小固定, 存储区不再被引用后由 Cleaner 把块归还到共享的空闲池(BlockPool)供下一个追加段复用:
+ * 直接缓冲区的本地内存要等缓冲区对象被GC回收后才释放, 复用可避免每次刷盘前后反复分配;
+ * 刷盘后仍在使用旧快照的检索线程可以继续读取, 不会读到被下一个追加段复用的块
+ *
+ * 记录格式与段文件的 chunks-{gen}.bin 相同, 由 MappedSegment.decode 解析
+ * 写入非线程安全, 由 IndexedVectorStore 的写锁保护; 写入的同时可被多个线程并发读取已发布的记录:
+ * 块列表和位置数组扩容时整体替换为新数组并通过 volatile 字段发布, 已写入的记录和向量不再修改
+ */
+public class OffHeapChunkArena implements ChunkSource {
+
+    public static final int DEFAULT_BLOCK_BYTES = 16 << 20;
+
+    private final ObjectMapper objectMapper;
+    private final BlockPool pool;
+    private final Blocks blocks;
+    private final Cleaner.Cleanable cleanable;
+    /**
+     * 向量维度, 首次写入时确定
+     */
+    private int dimension;
+    private int vectorsPerBlock;
+
+    /**
+     * 记录位置: 高32位为内存块序号, 低32位为块内偏移
+     */
+    private volatile long[] recordPositions = new long[0];
+    private volatile int[] recordLengths = new int[0];
+    private int count;
+
+    public OffHeapChunkArena(ObjectMapper objectMapper, BlockPool pool) {
+        this.objectMapper = objectMapper;
+        this.pool = pool;
+        this.blocks = new Blocks(pool);
+        this.cleanable = StoreSnapshot.RESOURCE_CLEANER.register(this, blocks);
+    }
+
+    /**
+     * 追加一条文档块
+     *
+     * @return 在存储区中的序号
+     */
+    public int append(String id, String text, Map<String, Object> metadata, float[] vector) {
+        if (dimension == 0) {
+            dimension = vector.length;
+            vectorsPerBlock = Math.max(1, pool.blockBytes() / (dimension * Float.BYTES));
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不一致: 期望 " + dimension + ", 实际 " + vector.length);
+        }
+        return appendRaw(encode(id, text, metadata), vector);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float dot(float[] query, int index) {
+        // 读取期间保持存储区可达, 避免内存块被 Cleaner 提前归还并复用
+        try {
+            return VectorMath.dot(query, blocks.vectorViews[index / vectorsPerBlock],
+                (index % vectorsPerBlock) * dimension);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    @Override
+    public float[] vector(int index) {
+        float[] vector = new float[dimension];
+        try {
+            blocks.vectorViews[index / vectorsPerBlock].get((index % vectorsPerBlock) * dimension, vector);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+        return vector;
+    }
+
+    @Override
+    public MappedSegment.Record record(int index) {
+        try {
+            return MappedSegment.decode(recordBuffer(index), objectMapper);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * 立即把全部内存块归还空闲池, 之后不能再读取; 只能在确认没有检索线程引用该存储区时调用
+     * 未调用时由 Cleaner 在存储区不可达后归还
+     */
+    public void release() {
+        cleanable.clean();
+        recordPositions = new long[0];
+        recordLengths = new int[0];
+        count = 0;
+    }
+
+    /**
+     * 占用的本地内存(字节), 不含空闲池中的块
+     */
+    public long nativeBytes() {
+        long bytes = 0;
+        for (ByteBuffer block : blocks.vectorBlocks) {
+            bytes += block.capacity();
+        }
+        for (ByteBuffer block : blocks.recordBlocks) {
+            bytes += block.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * 堆内的记录位置和长度数组占用的字节数
+     */
+    public long heapBytes() {
+        return (long) recordPositions.length * Long.BYTES + (long) recordLengths.length * Integer.BYTES;
+    }
+
+    private int appendRaw(byte[] record, float[] vector) {
+        int index = count;
+        int vectorBlock = index / vectorsPerBlock;
+        if (vectorBlock == blocks.vectorViews.length) {
+            ByteBuffer block = pool.allocate(dimension * Float.BYTES);
+            blocks.vectorBlocks = append(blocks.vectorBlocks, block);
+            blocks.vectorViews = append(blocks.vectorViews, block.asFloatBuffer());
+        }
+        blocks.vectorViews[vectorBlock].put((index % vectorsPerBlock) * dimension, vector);
+
+        ByteBuffer[] recordBlocks = blocks.recordBlocks;
+        ByteBuffer recordBlock = recordBlocks.length == 0 ? null : recordBlocks[recordBlocks.length - 1];
+        if (recordBlock == null || recordBlock.remaining() < record.length) {
+            recordBlock = pool.allocate(record.length);
+            recordBlocks = append(recordBlocks, recordBlock);
+            blocks.recordBlocks = recordBlocks;
+        }
+        int offset = recordBlock.position();
+        recordBlock.put(record);
+
+        long[] positions = recordPositions;
+        int[] lengths = recordLengths;
+        if (index == positions.length) {
+            int capacity = Math.max(16, positions.length * 2);
+            positions = Arrays.copyOf(positions, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        positions[index] = ((long) (recordBlocks.length - 1) << 32) | offset;
+        lengths[index] = record.length;
+        recordPositions = positions;
+        recordLengths = lengths;
+        count++;
+        return index;
+    }
+
+    private ByteBuffer recordBuffer(int index) {
+        ByteBuffer block = blocks.recordBlocks[(int) (recordPositions[index] >>> 32)];
+        int offset = (int) recordPositions[index];
+        // slice(index, length) 不读写 position, 可与追加并发执行
+        return block.slice(offset, recordLengths[index]).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static <T> T[] append(T[] array, T element) {
+        T[] grown = Arrays.copyOf(array, array.length + 1);
+        grown[array.length] = element;
+        return grown;
+    }
+
+    /**
+     * 按段文件的记录格式编码: flags(byte) idLen(int) id textLen(int) text metaLen(int) metadataJson
+     */
+    private byte[] encode(String id, String text, Map<String, Object> metadata) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        byte[] metadataBytes;
+        try {
+            metadataBytes = objectMapper.writeValueAsBytes(metadata == null ? Map.of() : metadata);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("序列化文档块元数据失败: " + id, e);
+        }
+        ByteBuffer record = ByteBuffer.allocate(1 + Integer.BYTES * 3 + idBytes.length + textBytes.length
+            + metadataBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.put((byte) 0);
+        record.putInt(idBytes.length).put(idBytes);
+        record.putInt(textBytes.length).put(textBytes);
+        record.putInt(metadataBytes.length).put(metadataBytes);
+        return record.array();
+    }
+
+    /**
+     * 存储区持有的内存块, 同时作为 Cleaner 的回收动作, 不能引用存储区本身
+     */
+    private static final class Blocks implements Runnable {
+
+        private final BlockPool pool;
+        private volatile ByteBuffer[] vectorBlocks = new ByteBuffer[0];
+        private volatile FloatBuffer[] vectorViews = new FloatBuffer[0];
+        private volatile ByteBuffer[] recordBlocks = new ByteBuffer[0];
+
+        private Blocks(BlockPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            for (ByteBuffer block : vectorBlocks) {
+                pool.release(block);
+            }
+            for (ByteBuffer block : recordBlocks) {
+                pool.release(block);
+            }
+            vectorBlocks = new ByteBuffer[0];
+            vectorViews = new FloatBuffer[0];
+            recordBlocks = new ByteBuffer[0];
+        }
+    }
+
+    /**
+     * 固定大小内存块的空闲池, 由同一存储的所有追加段共享
+     */
+    public static class BlockPool {
+
+        /**
+         * 空闲池最多保留的内存块数
+         */
+        private static final int MAX_POOLED_BLOCKS = 4;
+
+        private final int blockBytes;
+        private final ArrayDeque<ByteBuffer> freeBlocks = new ArrayDeque<>();
+
+        public BlockPool() {
+            this(DEFAULT_BLOCK_BYTES);
+        }
+
+        /**
+         * @param blockBytes 每个内存块的大小; 单个向量或记录超过该大小时单独分配, 不进入空闲池
+         */
+        BlockPool(int blockBytes) {
+            this.blockBytes = blockBytes;
+        }
+
+        public int blockBytes() {
+            return blockBytes;
+        }
+
+        /**
+         * 空闲池中的块占用的本地内存(字节)
+         */
+        public synchronized long pooledBytes() {
+            return (long) freeBlocks.size() * blockBytes;
+        }
+
+        synchronized ByteBuffer allocate(int minBytes) {
+            ByteBuffer block = minBytes <= blockBytes ? freeBlocks.poll() : null;
+            if (block == null) {
+                block = ByteBuffer.allocateDirect(Math.max(blockBytes, minBytes));
+            }
+            block.clear();
+            return block.order(ByteOrder.nativeOrder());
+        }
+
+        synchronized void release(ByteBuffer block) {
+            if (block.capacity() == blockBytes && freeBlocks.size() < MAX_POOLED_BLOCKS) {
+                freeBlocks.add(block);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 段内序号的压缩位图(Roaring 风格)
+ * 序号按高16位分成若干容器, 每个容器保存低16位:
+ * - 数组容器: 元素不超过 4096 个时为有序的 char[], 每个元素2个字节
+ * - 位图容器: 超过 4096 个时为 long[1024](8KB), 每个元素1位
+ * 同一来源文件的文档块在段内序号连续, 一个取值通常只占一两个容器; 取值很多的段也不会为每个取值分配整段长度的位图
+ *
+ * 只支持按递增顺序追加, 与段内序号的分配方式一致
+ * 不是线程安全的: 追加段的位图由写锁保护, 发布到快照的是只读副本(见 snapshot), 之后不再修改
+ */
+public final class OrdinalBitmap {
+
+    /**
+     * 数组容器的最大元素数, 超过后转为位图容器(两者都是8KB)
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    private static final int WORDS = 1 << 10;
+
+    private char[] keys = new char[2];
+    /**
+     * char[] 数组容器或 long[] 位图容器
+     */
+    private Object[] containers = new Object[2];
+    private int[] cardinalities = new int[2];
+    private int containerCount;
+    private int last = -1;
+
+    /**
+     * 追加一个序号
+     *
+     * @param ordinal 段内序号, 必须大于已追加的序号
+     */
+    public void add(int ordinal) {
+        if (ordinal <= last) {
+            throw new IllegalArgumentException("序号必须递增: " + last + " -> " + ordinal);
+        }
+        last = ordinal;
+        char key = (char) (ordinal >>> 16);
+        char low = (char) ordinal;
+        if (containerCount == 0 || keys[containerCount - 1] != key) {
+            ensureCapacity();
+            keys[containerCount] = key;
+            containers[containerCount] = new char[4];
+            containerCount++;
+        }
+        int i = containerCount - 1;
+        int cardinality = cardinalities[i];
+        if (containers[i] instanceof char[] array) {
+            if (cardinality < ARRAY_MAX) {
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.min(array.length * 2, ARRAY_MAX));
+                    containers[i] = array;
+                }
+                array[cardinality] = low;
+                cardinalities[i]++;
+                return;
+            }
+            containers[i] = toWords(array, cardinality);
+        }
+        long[] words = (long[]) containers[i];
+        words[low >>> 6] |= 1L << low;
+        cardinalities[i]++;
+    }
+
+    public boolean contains(int ordinal) {
+        int i = Arrays.binarySearch(keys, 0, containerCount, (char) (ordinal >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) ordinal;
+        if (containers[i] instanceof char[] array) {
+            return Arrays.binarySearch(array, 0, cardinalities[i], low) >= 0;
+        }
+        return (((long[]) containers[i])[low >>> 6] & (1L << low)) != 0;
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < containerCount; i++) {
+            total += cardinalities[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return containerCount == 0;
+    }
+
+    /**
+     * 按递增顺序遍历全部序号
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < containerCount; i++) {
+            int high = keys[i] << 16;
+            if (containers[i] instanceof char[] array) {
+                for (int j = 0; j < cardinalities[i]; j++) {
+                    action.accept(high | array[j]);
+                }
+            } else {
+                long[] words = (long[]) containers[i];
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 交集, 不修改参数
+     */
+    public static OrdinalBitmap and(OrdinalBitmap a, OrdinalBitmap b) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount && j < b.containerCount) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                long[] words = a.words(i);
+                long[] other = b.words(j);
+                for (int w = 0; w < WORDS; w++) {
+                    words[w] &= other[w];
+                }
+                result.appendContainer(a.keys[i], words);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 并集, 不修改参数
+     */
+    public static OrdinalBitmap or(OrdinalBitmap a, OrdinalBitmap b) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount || j < b.containerCount) {
+            if (j == b.containerCount || (i < a.containerCount && a.keys[i] < b.keys[j])) {
+                result.appendContainer(a.keys[i], a.words(i));
+                i++;
+            } else if (i == a.containerCount || a.keys[i] > b.keys[j]) {
+                result.appendContainer(b.keys[j], b.words(j));
+                j++;
+            } else {
+                long[] words = a.words(i);
+                long[] other = b.words(j);
+                for (int w = 0; w < WORDS; w++) {
+                    words[w] |= other[w];
+                }
+                result.appendContainer(a.keys[i], words);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 只读副本, 用于把追加段的位图发布到快照
+     * 序号只按递增顺序追加, 之后只有最后一个容器会被修改(或被替换), 因此其余容器与副本共享, 只复制最后一个容器;
+     * 副本本身不能再追加
+     */
+    public OrdinalBitmap snapshot() {
+        OrdinalBitmap copy = new OrdinalBitmap();
+        copy.keys = Arrays.copyOf(keys, Math.max(containerCount, 2));
+        copy.containers = Arrays.copyOf(containers, copy.keys.length);
+        if (containerCount > 0) {
+            int i = containerCount - 1;
+            copy.containers[i] = containers[i] instanceof char[] array
+                ? Arrays.copyOf(array, cardinalities[i])
+                : ((long[]) containers[i]).clone();
+        }
+        copy.cardinalities = Arrays.copyOf(cardinalities, copy.keys.length);
+        copy.containerCount = containerCount;
+        copy.last = last;
+        return copy;
+    }
+
+    /**
+     * 估算的堆内存占用(字节)
+     */
+    public long heapBytes() {
+        long bytes = 16 + keys.length * 2L + cardinalities.length * 4L + containers.length * 4L;
+        for (int i = 0; i < containerCount; i++) {
+            bytes += 16 + (containers[i] instanceof char[] array ? array.length * 2L : WORDS * 8L);
+        }
+        return bytes;
+    }
+
+    /**
+     * 第 i 个容器展开为位图(新数组, 调用方可以修改)
+     */
+    private long[] words(int i) {
+        if (containers[i] instanceof char[] array) {
+            return toWords(array, cardinalities[i]);
+        }
+        return ((long[]) containers[i]).clone();
+    }
+
+    /**
+     * 追加一个运算结果的容器, 空容器被丢弃, 元素不多时转回数组容器
+     */
+    private void appendContainer(char key, long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality == 0) {
+            return;
+        }
+        ensureCapacity();
+        keys[containerCount] = key;
+        cardinalities[containerCount] = cardinality;
+        if (cardinality <= ARRAY_MAX) {
+            char[] array = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    array[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            containers[containerCount] = array;
+        } else {
+            containers[containerCount] = words;
+        }
+        containerCount++;
+        last = (key << 16) | 0xFFFF;
+    }
+
+    private void ensureCapacity() {
+        if (containerCount == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+    }
+
+    private static long[] toWords(char[] array, int cardinality) {
+        long[] words = new long[WORDS];
+        for (int j = 0; j < cardinality; j++) {
+            words[array[j] >>> 6] |= 1L << array[j];
+        }
+        return words;
+    }
+}
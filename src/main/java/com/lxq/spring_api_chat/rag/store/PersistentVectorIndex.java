@@ -0,0 +1,24 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 可持久化的向量索引
+ * 构建代价高(如需要训练)的索引实现此接口, 由 IndexedVectorStore 在检查点时随段文件一起保存,
+ * 启动时加载后只需为预写日志中的新向量增量建索引
+ */
+public interface PersistentVectorIndex extends VectorIndex {
+
+    /**
+     * 保存当前索引, 调用方保证期间没有写入
+     */
+    void save(Path file) throws IOException;
+
+    /**
+     * 从文件加载索引, 只能在空索引上调用
+     *
+     * @return 是否加载成功; 文件不存在或参数与当前配置不一致时返回false, 调用方应重新构建
+     */
+    boolean load(Path file) throws IOException;
+}
@@ -0,0 +1,259 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * 标量量化的暴力检索索引
+ * 在堆内保存每个向量的量化编码, 检索分两步:
+ * 1. 粗排: 在量化编码上扫描全部向量, 取前 k * rescoreFactor 个候选
+ * 2. 精排: 用 VectorStorage 中的全精度向量(通常是内存映射的段文件)重新计算候选的相似度, 取前K个
+ *
+ * 暴力扫描只读取量化编码(int8为全精度的1/4, fp16为1/2), 全精度向量只在精排时按需读取少量页,
+ * 常驻内存随之下降; 精排保证最终分数是精确值, 召回率损失只来自粗排漏掉的候选
+ *
+ * 量化方式:
+ * - INT8: 每个维度独立的偏移和缩放(按该维度的最小/最大值映射到256级), 参数在向量数达到 trainingSize 时
+ *   由已有向量统计得到, 之前的检索直接使用全精度向量; 之后超出范围的分量被截断
+ * - FP16: IEEE半精度浮点, 无需训练
+ */
+public class QuantizedVectorIndex implements VectorIndex {
+
+    public enum Type {
+        INT8,
+        FP16
+    }
+
+    /**
+     * 编码保存在单个数组中, 总分量数受数组长度限制(如1536维约140万个向量)
+     */
+    private static final int MAX_CODES = Integer.MAX_VALUE - 8;
+
+    private final VectorStorage storage;
+    private final Type type;
+    private final int rescoreFactor;
+    private final int trainingSize;
+
+    private int size;
+    private int dimension;
+    private byte[] int8Codes = new byte[0];
+    private short[] fp16Codes = new short[0];
+    /**
+     * INT8 反量化参数: value = offsets[i] + scales[i] * code, 训练前为null
+     */
+    private float[] offsets;
+    private float[] scales;
+
+    /**
+     * @param rescoreFactor 粗排候选数相对于K的倍数, 越大召回率越高、精排读取的全精度向量越多
+     * @param trainingSize INT8量化参数的训练样本数
+     */
+    public QuantizedVectorIndex(VectorStorage storage, Type type, int rescoreFactor, int trainingSize) {
+        if (rescoreFactor < 1) {
+            throw new IllegalArgumentException("精排倍数必须为正数");
+        }
+        if (trainingSize < 1) {
+            throw new IllegalArgumentException("训练样本数必须为正数");
+        }
+        this.storage = storage;
+        this.type = type;
+        this.rescoreFactor = rescoreFactor;
+        this.trainingSize = trainingSize;
+    }
+
+    @Override
+    public void add(int ordinal) {
+        if (ordinal != size) {
+            throw new IllegalArgumentException("向量序号必须连续: 期望 " + size + ", 实际 " + ordinal);
+        }
+        if (size == 0) {
+            dimension = storage.dimension();
+        }
+        size++;
+        if (type == Type.FP16) {
+            encode(ordinal);
+        } else if (offsets != null) {
+            encode(ordinal);
+        } else if (size >= trainingSize) {
+            train();
+        }
+    }
+
+    @Override
+    public List<ScoredOrdinal> search(float[] query, int k, IntPredicate accept) {
+        return search(query, k, Float.NEGATIVE_INFINITY, accept);
+    }
+
+    /**
+     * 粗排的近似分数不与阈值比较, 相似度阈值只作用于精排的精确分数
+     */
+    @Override
+    public List<ScoredOrdinal> search(float[] query, int k, float minScore, IntPredicate accept) {
+        if (k <= 0 || size == 0) {
+            return List.of();
+        }
+        if (!quantized()) {
+            return exactSearch(query, k, minScore, accept);
+        }
+
+        // 粗排: 量化编码上的近似分数
+        int candidates = (int) Math.min((long) k * rescoreFactor, size);
+        TopKHeap coarse = new TopKHeap(candidates);
+        Scorer scorer = scorer(query);
+        for (int i = 0; i < size; i++) {
+            float score = scorer.score(i);
+            if (coarse.competitive(score) && (accept == null || accept.test(i))) {
+                coarse.offer(i, score);
+            }
+        }
+
+        // 精排: 全精度向量上的精确分数
+        TopKHeap exact = new TopKHeap(k, minScore);
+        for (int i = 0; i < coarse.size(); i++) {
+            exact.offer(coarse.ordinal(i), storage.dot(query, coarse.ordinal(i)));
+        }
+        return exact.drainSorted();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 量化编码和反量化参数占用的堆内存
+     */
+    @Override
+    public long estimatedHeapBytes() {
+        long params = offsets == null ? 0 : (long) dimension * 2 * Float.BYTES;
+        return (long) int8Codes.length + (long) fp16Codes.length * Short.BYTES + params;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 是否已建立量化编码; INT8在训练前为false, 此时检索使用全精度向量
+     */
+    public boolean quantized() {
+        return type == Type.FP16 || offsets != null;
+    }
+
+    /**
+     * 以当前全部向量统计每个维度的取值范围, 并为已有向量编码
+     */
+    private void train() {
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            float[] vector = storage.vector(ordinal);
+            for (int i = 0; i < dimension; i++) {
+                min[i] = Math.min(min[i], vector[i]);
+                max[i] = Math.max(max[i], vector[i]);
+            }
+        }
+        float[] trainedScales = new float[dimension];
+        float[] trainedOffsets = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            // 编码 -128..127 对应 [min, max]
+            trainedScales[i] = max[i] > min[i] ? (max[i] - min[i]) / 255f : 1e-6f;
+            trainedOffsets[i] = min[i] + 128 * trainedScales[i];
+        }
+        this.scales = trainedScales;
+        this.offsets = trainedOffsets;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            encode(ordinal);
+        }
+    }
+
+    private void encode(int ordinal) {
+        if ((long) (ordinal + 1) * dimension > MAX_CODES) {
+            throw new IllegalStateException("量化编码超出单个数组的容量: " + (ordinal + 1) + " 个 " + dimension + " 维向量");
+        }
+        float[] vector = storage.vector(ordinal);
+        int base = ordinal * dimension;
+        if (type == Type.FP16) {
+            fp16Codes = ensureCapacity(fp16Codes, base + dimension);
+            for (int i = 0; i < dimension; i++) {
+                fp16Codes[base + i] = Float.floatToFloat16(vector[i]);
+            }
+            return;
+        }
+        int8Codes = ensureCapacity(int8Codes, base + dimension);
+        for (int i = 0; i < dimension; i++) {
+            int code = Math.round((vector[i] - offsets[i]) / scales[i]);
+            int8Codes[base + i] = (byte) Math.max(-128, Math.min(127, code));
+        }
+    }
+
+    /**
+     * 为查询预计算: INT8 时把缩放并入查询向量, 偏移部分对所有向量相同, 合并为常数项
+     */
+    private Scorer scorer(float[] query) {
+        if (type == Type.FP16) {
+            short[] codes = fp16Codes;
+            return ordinal -> {
+                int base = ordinal * dimension;
+                float sum = 0f;
+                for (int i = 0; i < dimension; i++) {
+                    sum += query[i] * Float.float16ToFloat(codes[base + i]);
+                }
+                return sum;
+            };
+        }
+        float[] scaledQuery = new float[dimension];
+        float constant = 0f;
+        for (int i = 0; i < dimension; i++) {
+            scaledQuery[i] = query[i] * scales[i];
+            constant += query[i] * offsets[i];
+        }
+        byte[] codes = int8Codes;
+        float bias = constant;
+        return ordinal -> {
+            int base = ordinal * dimension;
+            float s0 = 0f;
+            float s1 = 0f;
+            int i = 0;
+            for (; i + 1 < dimension; i += 2) {
+                s0 += scaledQuery[i] * codes[base + i];
+                s1 += scaledQuery[i + 1] * codes[base + i + 1];
+            }
+            if (i < dimension) {
+                s0 += scaledQuery[i] * codes[base + i];
+            }
+            return bias + s0 + s1;
+        };
+    }
+
+    private List<ScoredOrdinal> exactSearch(float[] query, int k, float minScore, IntPredicate accept) {
+        TopKHeap heap = new TopKHeap(k, minScore);
+        for (int i = 0; i < size; i++) {
+            float score = storage.dot(query, i);
+            if (heap.competitive(score) && (accept == null || accept.test(i))) {
+                heap.offer(i, score);
+            }
+        }
+        return heap.drainSorted();
+    }
+
+    private static byte[] ensureCapacity(byte[] array, int required) {
+        return required <= array.length ? array : Arrays.copyOf(array, grow(array.length, required));
+    }
+
+    private static short[] ensureCapacity(short[] array, int required) {
+        return required <= array.length ? array : Arrays.copyOf(array, grow(array.length, required));
+    }
+
+    private static int grow(int length, int required) {
+        return (int) Math.min(MAX_CODES, Math.max(required, (long) length * 2));
+    }
+
+    @FunctionalInterface
+    private interface Scorer {
+        float score(int ordinal);
+    }
+}
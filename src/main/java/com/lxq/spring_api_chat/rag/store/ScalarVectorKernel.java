@@ -0,0 +1,63 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 标量点积内核
+ * 使用4个独立的累加器, 打破单一累加器的加法依赖链, 便于CPU流水线并行执行
+ * 缓冲区中的向量逐个按绝对位置读取, 不复制到堆内数组
+ */
+final class ScalarVectorKernel implements VectorKernel {
+
+    static final ScalarVectorKernel INSTANCE = new ScalarVectorKernel();
+
+    private ScalarVectorKernel() {
+    }
+
+    @Override
+    public float dot(float[] a, float[] b, int offset) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int length = a.length;
+        int bound = length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += a[i] * b[offset + i];
+            s1 += a[i + 1] * b[offset + i + 1];
+            s2 += a[i + 2] * b[offset + i + 2];
+            s3 += a[i + 3] * b[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float dot(float[] a, FloatBuffer b, int offset) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int length = a.length;
+        int bound = length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += a[i] * b.get(offset + i);
+            s1 += a[i + 1] * b.get(offset + i + 1);
+            s2 += a[i + 2] * b.get(offset + i + 2);
+            s3 += a[i + 3] * b.get(offset + i + 3);
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b.get(offset + i);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,17 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.Comparator;
+
+/**
+ * 带相似度分数的向量序号
+ *
+ * @param ordinal 向量序号
+ * @param score 相似度分数(点积/余弦)
+ */
+public record ScoredOrdinal(int ordinal, float score) {
+
+    /**
+     * 按分数升序的比较器(用作最小堆时堆顶为最差结果)
+     */
+    public static final Comparator<ScoredOrdinal> BY_SCORE = Comparator.comparingDouble(ScoredOrdinal::score);
+}
@@ -0,0 +1,274 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 段: 一组序号从0开始连续的文档块, 带有自己的向量索引和删除标记(墓碑)
+ *
+ * - 追加段: 数据位于堆外追加区(OffHeapChunkArena), 接收新的写入
+ * - 不可变段: 数据位于内存映射的段文件; 追加段刷盘后切换为映射数据源, 序号不变, 索引无需重建
+ *
+ * 记录写入后不再修改, 删除只设置墓碑, 检索时由过滤条件屏蔽; 后台合并把多个段的有效记录重写为一个新段
+ * 每个段对来源文件和文档类型维护元数据位图(见 MetadataBitmaps), 带过滤条件的检索只对位图给出的候选计算相似度
+ * 每个段维护 文档ID -> 段内序号 的映射, 写入方按ID删除和读取方按ID取回都通过它定位, 条目只在段被合并替换时随段一起丢弃
+ * 修改非线程安全, 由 IndexedVectorStore 的写锁保护; 检索通过 view() 生成的只读视图进行, 不直接读取墓碑
+ */
+public class Segment implements ChunkSource {
+
+    /**
+     * 堆内存估算: 每个 文档ID -> 序号 映射条目(ConcurrentHashMap节点 + UUID字符串 + Integer)
+     */
+    private static final long ID_ENTRY_BYTES = 160;
+
+    private final long generation;
+    /**
+     * 刷盘后由追加区切换为映射的段文件, 两者数据相同; 冻结段的索引在切换前后都可能被检索线程读取
+     */
+    private volatile ChunkSource source;
+    private final VectorIndex index;
+    private final BitSet tombstones;
+    private int deletedCount;
+    /**
+     * 最近一次发布的墓碑副本, 墓碑变化后置空, 下次生成视图时重新复制
+     */
+    private BitSet publishedTombstones;
+    private final MetadataBitmaps bitmaps = new MetadataBitmaps();
+    /**
+     * 最近一次发布的元数据位图, 追加记录后置空
+     */
+    private MetadataBitmaps publishedBitmaps;
+    /**
+     * 文档ID -> 段内序号, 同一ID在段内重复写入时指向最后一次
+     * 删除只设置墓碑, 不移除条目, 读取方不加锁读取, 按快照的记录数和墓碑副本判断是否可见;
+     * 刷盘时移除已删除记录的条目(见 switchTo), 之后早于删除的快照按ID读取该记录返回null, 该记录在最新版本中已被删除或覆盖
+     */
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+
+    private Segment(long generation, ChunkSource source, Function<VectorStorage, VectorIndex> indexFactory,
+                    BitSet tombstones) {
+        this.generation = generation;
+        this.source = source;
+        this.index = indexFactory.apply(this);
+        this.tombstones = tombstones;
+        this.deletedCount = tombstones.cardinality();
+    }
+
+    /**
+     * 创建空的追加段
+     */
+    public static Segment appendable(long generation, OffHeapChunkArena arena,
+                                     Function<VectorStorage, VectorIndex> indexFactory) {
+        return new Segment(generation, arena, indexFactory, new BitSet());
+    }
+
+    /**
+     * 打开已提交的段并建立索引
+     * 可持久化的索引先加载保存的状态, 只为剩余的向量增量建索引; 段文件中带删除标志的记录计入墓碑
+     * 元数据位图由段的元数据字段文件(fields-{gen}.bin)重建, 不解析元数据JSON; 旧版本写出的段读取一遍记录的元数据
+     *
+     * @param tombstones 提交点中记录的删除标记
+     */
+    public static Segment open(MappedSegment mapped, Function<VectorStorage, VectorIndex> indexFactory,
+                               BitSet tombstones) throws IOException {
+        Segment segment = new Segment(mapped.generation(), mapped, indexFactory, (BitSet) tombstones.clone());
+        if (segment.index instanceof PersistentVectorIndex persistent) {
+            persistent.load(SegmentFiles.vectorIndexFile(mapped.directory(), mapped.generation()));
+        }
+        for (int ordinal = segment.index.size(); ordinal < mapped.count(); ordinal++) {
+            segment.index.add(ordinal);
+        }
+        for (int ordinal = 0; ordinal < mapped.count(); ordinal++) {
+            if (!segment.tombstones.get(ordinal)) {
+                segment.bitmaps.add(ordinal, segment.metadataValues(ordinal));
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * 追加一条文档块并加入索引, 只能在追加段上调用
+     *
+     * @return 段内序号
+     */
+    public int append(String id, String text, Map<String, Object> metadata, float[] vector) {
+        if (!(source instanceof OffHeapChunkArena arena)) {
+            throw new IllegalStateException("不可变段不能追加: " + generation);
+        }
+        int ordinal = arena.append(id, text, metadata, vector);
+        index.add(ordinal);
+        bitmaps.add(ordinal, metadata);
+        publishedBitmaps = null;
+        ordinals.put(id, ordinal);
+        return ordinal;
+    }
+
+    /**
+     * 记录已有记录的ID, 打开已提交的段或生成合并段时调用
+     */
+    public void putOrdinal(String id, int ordinal) {
+        ordinals.put(id, ordinal);
+    }
+
+    /**
+     * 按ID查找未删除的记录
+     *
+     * @return 段内序号, 不存在或已删除时返回-1
+     */
+    public int ordinal(String id) {
+        Integer ordinal = ordinals.get(id);
+        return ordinal == null || tombstones.get(ordinal) ? -1 : ordinal;
+    }
+
+    /**
+     * 追加段刷盘后切换到映射的段文件, 序号和索引保持不变
+     *
+     * @return 原来的追加区, 由调用方释放
+     */
+    public OffHeapChunkArena switchTo(MappedSegment mapped) {
+        if (!(source instanceof OffHeapChunkArena arena)) {
+            throw new IllegalStateException("段已是不可变段: " + generation);
+        }
+        if (mapped.count() != arena.size()) {
+            throw new IllegalStateException("段文件的记录数与追加区不一致: " + mapped.count() + " vs " + arena.size());
+        }
+        source = mapped;
+        ordinals.values().removeIf(tombstones::get);
+        return arena;
+    }
+
+    /**
+     * 设置墓碑
+     *
+     * @return 该记录此前是否有效
+     */
+    public boolean delete(int ordinal) {
+        if (tombstones.get(ordinal)) {
+            return false;
+        }
+        tombstones.set(ordinal);
+        deletedCount++;
+        publishedTombstones = null;
+        return true;
+    }
+
+    /**
+     * 生成当前状态的只读视图, 在写锁内调用
+     * 墓碑没有变化的段复用上次的副本, 每次发布只复制有删除的段; 元数据位图同理, 只有追加段需要重新发布,
+     * 且只复制有追加的取值的最后一个容器(见 MetadataBitmaps.publish)
+     *
+     * @param indexed 索引是否已不再修改; 追加段传false, 检索时精确扫描已发布的记录
+     */
+    public StoreSnapshot.SegmentView view(boolean indexed) {
+        if (publishedTombstones == null) {
+            publishedTombstones = (BitSet) tombstones.clone();
+        }
+        if (publishedBitmaps == null) {
+            // 不可变段不再追加, 直接发布位图本身; 追加段发布只读版本
+            publishedBitmaps = indexed ? bitmaps : bitmaps.publish();
+        }
+        return new StoreSnapshot.SegmentView(this, source, indexed ? index : null, publishedTombstones,
+            publishedBitmaps, ordinals, size(), deletedCount);
+    }
+
+    /**
+     * 记录在建立位图索引的元数据字段上的取值, 与 MetadataBitmaps.FIELDS 的顺序一致
+     * 映射段读取元数据字段文件; 追加区和没有该文件的旧段解析记录的元数据
+     */
+    public String[] metadataValues(int ordinal) {
+        MappedSegment mapped = mapped();
+        if (mapped == null || !mapped.hasMetadataFields()) {
+            return MetadataBitmaps.values(record(ordinal).metadata());
+        }
+        String[] values = new String[MetadataBitmaps.FIELDS.size()];
+        for (int f = 0; f < values.length; f++) {
+            values[f] = mapped.metadataValue(f, ordinal);
+        }
+        return values;
+    }
+
+    public boolean isDeleted(int ordinal) {
+        return tombstones.get(ordinal);
+    }
+
+    /**
+     * 墓碑的副本, 用于在锁外写段文件和提交点
+     */
+    public BitSet tombstones() {
+        return (BitSet) tombstones.clone();
+    }
+
+    public int liveCount() {
+        return size() - deletedCount;
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public VectorIndex index() {
+        return index;
+    }
+
+    /**
+     * 是否已刷盘为不可变段
+     */
+    public boolean flushed() {
+        return source instanceof MappedSegment;
+    }
+
+    /**
+     * 映射的段文件, 尚未刷盘时返回null
+     */
+    public MappedSegment mapped() {
+        return source instanceof MappedSegment mapped ? mapped : null;
+    }
+
+    /**
+     * 追加区, 已刷盘时返回null
+     */
+    public OffHeapChunkArena arena() {
+        return source instanceof OffHeapChunkArena arena ? arena : null;
+    }
+
+    /**
+     * 估算的堆内存占用(字节): ID映射、墓碑、元数据位图、索引结构和追加区的记录位置
+     */
+    public long estimatedHeapBytes() {
+        OffHeapChunkArena arena = arena();
+        return ordinals.size() * ID_ENTRY_BYTES + tombstones.size() / 8 + bitmaps.heapBytes()
+            + index.estimatedHeapBytes() + (arena == null ? 0 : arena.heapBytes());
+    }
+
+    @Override
+    public MappedSegment.Record record(int ordinal) {
+        return source.record(ordinal);
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    @Override
+    public int dimension() {
+        return source.dimension();
+    }
+
+    @Override
+    public float[] vector(int ordinal) {
+        return source.vector(ordinal);
+    }
+
+    @Override
+    public float dot(float[] query, int ordinal) {
+        return source.dot(query, ordinal);
+    }
+}
@@ -0,0 +1,116 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 提交点: 某一时刻生效的段列表及各段的删除标记(墓碑)
+ * 刷盘和后台合并都以写出新的提交点结束, CURRENT 切换后新的段列表整体生效
+ *
+ * <pre>
+ * segments-{gen}.bin: magic(int) version(int) walGeneration(long) segmentCount(int)
+ *   每个段: generation(long) tombstoneLen(int) tombstones(BitSet.toByteArray)
+ *   crc32(int) 覆盖之前的全部字节
+ * </pre>
+ *
+ * walGeneration 之前的预写日志内容都已包含在列出的段中, 启动时只重放代号不小于它的日志
+ *
+ * @param generation 提交点代号
+ * @param walGeneration 需要重放的第一个预写日志的代号
+ * @param segments 生效的段, 按写入顺序排列
+ */
+public record SegmentCommit(long generation, long walGeneration, List<Entry> segments) {
+
+    private static final int MAGIC = 0x4C585143;   // "LXQC"
+    private static final int VERSION = 1;
+
+    /**
+     * 读取当前生效的提交点, 目录为空时返回null
+     * 旧版本的单段目录(CURRENT 指向段而不是提交点)按只含该段的提交点处理
+     */
+    public static SegmentCommit read(Path directory) throws IOException {
+        long generation = SegmentFiles.currentGeneration(directory);
+        if (generation < 0) {
+            return null;
+        }
+        Path file = SegmentFiles.commitFile(directory, generation);
+        if (!Files.exists(file)) {
+            return new SegmentCommit(generation, generation, List.of(new Entry(generation, new BitSet())));
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < Integer.BYTES * 4 + Long.BYTES) {
+            throw new IOException("提交点文件被截断: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit() - Integer.BYTES);
+        if (buffer.getInt(buffer.limit() - Integer.BYTES) != (int) crc.getValue()) {
+            throw new IOException("提交点文件校验失败: " + file);
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("提交点文件格式不正确: " + file);
+        }
+        long walGeneration = buffer.getLong();
+        int segmentCount = buffer.getInt();
+        List<Entry> segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            long segmentGeneration = buffer.getLong();
+            byte[] tombstones = new byte[buffer.getInt()];
+            buffer.get(tombstones);
+            segments.add(new Entry(segmentGeneration, BitSet.valueOf(tombstones)));
+        }
+        return new SegmentCommit(generation, walGeneration, List.copyOf(segments));
+    }
+
+    /**
+     * 写出提交点文件并刷盘, 再原子切换 CURRENT
+     * 列出的段文件必须已经提交(SegmentWriter.commit)
+     */
+    public void write(Path directory) throws IOException {
+        List<byte[]> tombstones = segments.stream().map(entry -> entry.tombstones().toByteArray()).toList();
+        int bytes = Integer.BYTES * 3 + Long.BYTES + Integer.BYTES;
+        for (byte[] bits : tombstones) {
+            bytes += Long.BYTES + Integer.BYTES + bits.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(walGeneration).putInt(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            buffer.putLong(segments.get(i).generation()).putInt(tombstones.get(i).length).put(tombstones.get(i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue()).flip();
+
+        Files.createDirectories(directory);
+        Path file = SegmentFiles.commitFile(directory, generation);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        SegmentFiles.publish(directory, generation);
+    }
+
+    /**
+     * 提交点中的一个段
+     *
+     * @param generation 段代号
+     * @param tombstones 已删除记录的序号
+     */
+    public record Entry(long generation, BitSet tombstones) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 二进制段文件格式定义
+ *
+ * 段、预写日志和提交点共用一个递增的代号(generation)序列, 文件名中的代号互不重复
+ * 一个段(segment)由同一代号的三个文件组成:
+ * <pre>
+ * vectors-{gen}.bin  向量文件: 32字节文件头 + count * dimension 个 float32(小端序, 定长步长)
+ *                    文件头: magic(int) version(int) dimension(int) 保留(int) count(long) 保留(long)
+ * chunks-{gen}.idx   偏移索引: 16字节文件头 + (count + 1) 个 long, 第i条记录位于 [offset[i], offset[i+1])
+ *                    文件头: magic(int) version(int) count(long)
+ * chunks-{gen}.bin   文档块记录: flags(byte) idLen(int) id textLen(int) text metaLen(int) metadataJson
+ * fields-{gen}.bin   元数据字段: 32字节文件头 + count * fieldCount 个 int(每条记录在各字段上的取值编号, -1表示没有该字段)
+ *                    + 取值字典; 打开段时由它重建元数据位图和来源/类型计数, 不解析 chunks 中的元数据JSON
+ *                    文件头: magic(int) version(int) fieldCount(int) 保留(int) count(long) dictionaryOffset(long)
+ *                    字典: 按字段依次为 nameLen(int) name valueCount(int) 再接 valueCount 个 len(int) value
+ * vindex-{gen}.bin   (可选) 向量索引的持久化数据, 由实现 PersistentVectorIndex 的索引写出, 格式由索引自行定义
+ * segments-{gen}.bin 提交点: 生效的段列表及各段的删除标记, 格式见 SegmentCommit
+ * wal-{gen}.log      预写日志, 每次刷盘切换到新的日志文件, 格式见 WriteAheadLog
+ * CURRENT            当前生效的提交点代号, 通过原子重命名切换
+ * </pre>
+ *
+ * 旧版本的目录只有单个段和 wal.log, CURRENT 直接指向段的代号(没有对应的提交点文件), 打开时按单段处理;
+ * 旧版本写出的段没有 fields-{gen}.bin, 打开时读取记录的元数据重建位图和计数
+ */
+public final class SegmentFiles {
+
+    public static final int VECTORS_MAGIC = 0x4C585156;   // "LXQV"
+    public static final int INDEX_MAGIC = 0x4C585149;     // "LXQI"
+    public static final int FIELDS_MAGIC = 0x4C585146;    // "LXQF"
+    public static final int VERSION = 1;
+    public static final int VECTORS_HEADER_BYTES = 32;
+    public static final int INDEX_HEADER_BYTES = 16;
+    public static final int FIELDS_HEADER_BYTES = 32;
+
+    /**
+     * 记录标志位: 已删除
+     */
+    public static final byte FLAG_DELETED = 0x01;
+
+    /**
+     * 旧版本的预写日志文件名
+     */
+    public static final String LEGACY_WAL_FILE = "wal.log";
+
+    private static final String CURRENT = "CURRENT";
+    private static final Pattern WAL_PATTERN = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern COMMIT_PATTERN = Pattern.compile("segments-(\\d+)\\.bin");
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("(?:vectors|chunks|vindex|fields)-(\\d+)\\.(?:bin|idx)");
+
+    private SegmentFiles() {
+    }
+
+    public static Path vectorsFile(Path directory, long generation) {
+        return directory.resolve(String.format("vectors-%06d.bin", generation));
+    }
+
+    public static Path chunksFile(Path directory, long generation) {
+        return directory.resolve(String.format("chunks-%06d.bin", generation));
+    }
+
+    public static Path indexFile(Path directory, long generation) {
+        return directory.resolve(String.format("chunks-%06d.idx", generation));
+    }
+
+    public static Path fieldsFile(Path directory, long generation) {
+        return directory.resolve(String.format("fields-%06d.bin", generation));
+    }
+
+    public static Path vectorIndexFile(Path directory, long generation) {
+        return directory.resolve(String.format("vindex-%06d.bin", generation));
+    }
+
+    public static Path commitFile(Path directory, long generation) {
+        return directory.resolve(String.format("segments-%06d.bin", generation));
+    }
+
+    public static Path walFile(Path directory, long generation) {
+        return directory.resolve(String.format("wal-%06d.log", generation));
+    }
+
+    /**
+     * 目录中全部预写日志的代号, 升序
+     */
+    public static List<Long> walGenerations(Path directory) throws IOException {
+        return generations(directory, WAL_PATTERN);
+    }
+
+    /**
+     * 目录中全部提交点文件的代号, 升序
+     */
+    public static List<Long> commitGenerations(Path directory) throws IOException {
+        return generations(directory, COMMIT_PATTERN);
+    }
+
+    /**
+     * 目录中存在段文件的代号, 升序
+     */
+    public static List<Long> segmentGenerations(Path directory) throws IOException {
+        return generations(directory, SEGMENT_PATTERN);
+    }
+
+    /**
+     * 读取当前生效的代号, 不存在时返回-1
+     */
+    public static long currentGeneration(Path directory) throws IOException {
+        Path current = directory.resolve(CURRENT);
+        if (!Files.exists(current)) {
+            return -1;
+        }
+        return Long.parseLong(Files.readString(current, StandardCharsets.UTF_8).trim());
+    }
+
+    /**
+     * 原子切换当前代号
+     */
+    public static void publish(Path directory, long generation) throws IOException {
+        Path temp = directory.resolve(CURRENT + ".tmp");
+        Files.writeString(temp, Long.toString(generation), StandardCharsets.UTF_8);
+        Files.move(temp, directory.resolve(CURRENT),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 删除文件, 失败时留待进程退出或下次启动清理
+     */
+    public static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * 删除指定代号的段文件
+     * 文件仍被映射时(Windows)可能删除失败, 留待下次启动清理
+     */
+    public static void deleteGeneration(Path directory, long generation) {
+        for (Path file : new Path[]{
+            vectorsFile(directory, generation),
+            chunksFile(directory, generation),
+            indexFile(directory, generation),
+            fieldsFile(directory, generation),
+            vectorIndexFile(directory, generation)
+        }) {
+            deleteQuietly(file);
+        }
+    }
+
+    private static List<Long> generations(Path directory, Pattern pattern) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .map(file -> pattern.matcher(file.getFileName().toString()))
+                .filter(Matcher::matches)
+                .map(matcher -> Long.parseLong(matcher.group(1)))
+                .distinct()
+                .sorted()
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 段文件写入器
+ * 以流式方式顺序追加记录, 内存占用与数据量无关(元数据字段的取值字典除外, 与不同取值的数量成正比);
+ * commit() 补写文件头和取值字典并刷盘
+ * 写好的段要记录到提交点(SegmentCommit)后才生效; 未提交就关闭时删除已写入的文件
+ */
+public class SegmentWriter implements Closeable {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final long generation;
+    private final ObjectMapper objectMapper;
+
+    private final FileChannel vectors;
+    private final FileChannel chunks;
+    private final FileChannel index;
+    private final FileChannel fields;
+    private final ByteBuffer vectorBuffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer chunkBuffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer fieldBuffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * 每个元数据字段(见 MetadataBitmaps.FIELDS)的 取值 -> 编号, 编号按首次出现的顺序分配
+     */
+    private final List<Map<String, Integer>> fieldValues = new ArrayList<>();
+
+    private int dimension = -1;
+    private long count;
+    private long chunkOffset;
+    private boolean committed;
+
+    public SegmentWriter(Path directory, long generation, ObjectMapper objectMapper) throws IOException {
+        this.directory = directory;
+        this.generation = generation;
+        this.objectMapper = objectMapper;
+        Files.createDirectories(directory);
+        this.vectors = open(SegmentFiles.vectorsFile(directory, generation));
+        this.chunks = open(SegmentFiles.chunksFile(directory, generation));
+        this.index = open(SegmentFiles.indexFile(directory, generation));
+        this.fields = open(SegmentFiles.fieldsFile(directory, generation));
+        for (int f = 0; f < MetadataBitmaps.FIELDS.size(); f++) {
+            fieldValues.add(new HashMap<>());
+        }
+
+        // 文件头先占位, 提交时补写
+        vectorBuffer.put(new byte[SegmentFiles.VECTORS_HEADER_BYTES]);
+        indexBuffer.put(new byte[SegmentFiles.INDEX_HEADER_BYTES]);
+        indexBuffer.putLong(0L);
+        fieldBuffer.put(new byte[SegmentFiles.FIELDS_HEADER_BYTES]);
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param vector 归一化后的向量, 所有记录维度必须一致
+     */
+    public void append(String id, String text, Map<String, Object> metadata, float[] vector, boolean deleted)
+        throws IOException {
+        if (dimension < 0) {
+            dimension = vector.length;
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不一致: 期望 " + dimension + ", 实际 " + vector.length);
+        }
+
+        for (float value : vector) {
+            if (vectorBuffer.remaining() < Float.BYTES) {
+                flush(vectors, vectorBuffer);
+            }
+            vectorBuffer.putFloat(value);
+        }
+
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        byte[] metadataBytes = objectMapper.writeValueAsBytes(metadata == null ? Map.of() : metadata);
+        int recordBytes = 1 + Integer.BYTES * 3 + idBytes.length + textBytes.length + metadataBytes.length;
+
+        ByteBuffer record = recordBytes <= chunkBuffer.capacity()
+            ? reserve(chunks, chunkBuffer, recordBytes)
+            : ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        record.put(deleted ? SegmentFiles.FLAG_DELETED : 0);
+        record.putInt(idBytes.length).put(idBytes);
+        record.putInt(textBytes.length).put(textBytes);
+        record.putInt(metadataBytes.length).put(metadataBytes);
+        if (record != chunkBuffer) {
+            flush(chunks, chunkBuffer);
+            record.flip();
+            writeFully(chunks, record);
+        }
+
+        chunkOffset += recordBytes;
+        if (indexBuffer.remaining() < Long.BYTES) {
+            flush(index, indexBuffer);
+        }
+        indexBuffer.putLong(chunkOffset);
+
+        for (int f = 0; f < MetadataBitmaps.FIELDS.size(); f++) {
+            Object value = metadata == null ? null : metadata.get(MetadataBitmaps.FIELDS.get(f));
+            Map<String, Integer> values = fieldValues.get(f);
+            if (fieldBuffer.remaining() < Integer.BYTES) {
+                flush(fields, fieldBuffer);
+            }
+            fieldBuffer.putInt(value == null ? -1 : values.computeIfAbsent(value.toString(), key -> values.size()));
+        }
+        count++;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * 补写文件头并刷盘
+     */
+    public void commit() throws IOException {
+        flush(vectors, vectorBuffer);
+        flush(chunks, chunkBuffer);
+        flush(index, indexBuffer);
+        flush(fields, fieldBuffer);
+        writeFieldDictionary();
+
+        ByteBuffer vectorsHeader = ByteBuffer.allocate(SegmentFiles.VECTORS_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        vectorsHeader.putInt(SegmentFiles.VECTORS_MAGIC)
+            .putInt(SegmentFiles.VERSION)
+            .putInt(Math.max(dimension, 0))
+            .putInt(0)
+            .putLong(count)
+            .putLong(0L)
+            .flip();
+        vectors.write(vectorsHeader, 0);
+
+        ByteBuffer indexHeader = ByteBuffer.allocate(SegmentFiles.INDEX_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        indexHeader.putInt(SegmentFiles.INDEX_MAGIC)
+            .putInt(SegmentFiles.VERSION)
+            .putLong(count)
+            .flip();
+        index.write(indexHeader, 0);
+
+        vectors.force(true);
+        chunks.force(true);
+        index.force(true);
+        fields.force(true);
+        committed = true;
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        vectors.close();
+        chunks.close();
+        index.close();
+        fields.close();
+        if (!committed) {
+            SegmentFiles.deleteGeneration(directory, generation);
+        }
+    }
+
+    /**
+     * 在取值编号之后写出取值字典, 并补写元数据字段文件的文件头
+     */
+    private void writeFieldDictionary() throws IOException {
+        long dictionaryOffset = SegmentFiles.FIELDS_HEADER_BYTES
+            + count * MetadataBitmaps.FIELDS.size() * Integer.BYTES;
+        for (int f = 0; f < MetadataBitmaps.FIELDS.size(); f++) {
+            putString(MetadataBitmaps.FIELDS.get(f));
+            String[] values = new String[fieldValues.get(f).size()];
+            fieldValues.get(f).forEach((value, number) -> values[number] = value);
+            reserve(fields, fieldBuffer, Integer.BYTES).putInt(values.length);
+            for (String value : values) {
+                putString(value);
+            }
+        }
+        flush(fields, fieldBuffer);
+
+        ByteBuffer fieldsHeader = ByteBuffer.allocate(SegmentFiles.FIELDS_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        fieldsHeader.putInt(SegmentFiles.FIELDS_MAGIC)
+            .putInt(SegmentFiles.VERSION)
+            .putInt(MetadataBitmaps.FIELDS.size())
+            .putInt(0)
+            .putLong(count)
+            .putLong(dictionaryOffset)
+            .flip();
+        fields.write(fieldsHeader, 0);
+    }
+
+    private void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (Integer.BYTES + bytes.length > fieldBuffer.capacity()) {
+            flush(fields, fieldBuffer);
+            ByteBuffer large = ByteBuffer.allocate(Integer.BYTES + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            large.putInt(bytes.length).put(bytes).flip();
+            writeFully(fields, large);
+            return;
+        }
+        reserve(fields, fieldBuffer, Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer reserve(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
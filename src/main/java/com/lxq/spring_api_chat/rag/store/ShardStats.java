@@ -0,0 +1,25 @@
+package com.lxq.spring_api_chat.rag.store;
+
+/**
+ * 单个分片的统计信息, 用于观察分片之间的数据和负载是否均衡
+ *
+ * @param shard 分片序号
+ * @param chunkCount 有效(未删除)的文档块数量
+ * @param segmentCount 不可变段的数量, 不含追加段
+ * @param diskBytes 磁盘占用(字节)
+ * @param heapBytes 估算的堆内存占用(字节)
+ * @param offHeapBytes 追加段占用的本地内存(字节)
+ * @param searchCount 累计检索次数
+ * @param avgSearchMillis 平均检索耗时(毫秒), 不含查询的Embedding调用
+ */
+public record ShardStats(
+    int shard,
+    int chunkCount,
+    int segmentCount,
+    long diskBytes,
+    long heapBytes,
+    long offHeapBytes,
+    long searchCount,
+    double avgSearchMillis
+) {
+}
@@ -0,0 +1,422 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 分片向量存储
+ * 把文档块按路由规则分散到多个 IndexedVectorStore 分片, 每个分片有自己的目录、预写日志、段和后台合并
+ *
+ * - 检索: 查询只调用一次Embedding模型, 各分片在 ForkJoinPool 中并行检索各自的 top-K, 再用最小堆合并为全局 top-K;
+ *   单次检索的耗时约为最慢分片的耗时, 随分片数(不超过CPU核数)近似线性下降
+ * - 写入: 按路由规则分组后写入对应的分片
+ * - 删除: HASH 路由按ID直接定位分片; SOURCE 路由不知道ID所在的分片, 向所有分片广播, 不存在的ID不会写入日志
+ *
+ * 分片数和路由规则写在目录下的 shards.json 中, 打开时与配置不一致则拒绝打开, 避免文档块被路由到错误的分片
+ */
+public class ShardedVectorStore implements VectorStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedVectorStore.class);
+
+    static final String LAYOUT_FILE = "shards.json";
+
+    /**
+     * 路由规则
+     */
+    public enum Routing {
+        /**
+         * 按文档ID的哈希, 数据分布最均匀
+         */
+        HASH,
+        /**
+         * 按来源文件(source元数据)的哈希, 同一文件的文档块位于同一分片, 重新索引文件时只修改一个分片;
+         * 没有来源的文档块按ID路由
+         */
+        SOURCE
+    }
+
+    private final EmbeddingModel embeddingModel;
+    private final Path directory;
+    private final Routing routing;
+    private final List<IndexedVectorStore> shards;
+    private final ForkJoinPool searchPool;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LongAdder[] searchCounts;
+    private final LongAdder[] searchNanos;
+
+    /**
+     * @param embeddingModel Embedding模型, 只用于查询; 写入由各分片调用
+     * @param directory 根目录, 第 i 个分片位于其下的 shard-{i} 子目录
+     * @param shardCount 分片数
+     * @param routing 路由规则
+     * @param parallelism 检索线程数, 不大于0时取CPU核数
+     * @param shardFactory 在给定目录上创建分片
+     */
+    public ShardedVectorStore(
+        EmbeddingModel embeddingModel,
+        Path directory,
+        int shardCount,
+        Routing routing,
+        int parallelism,
+        Function<Path, IndexedVectorStore> shardFactory
+    ) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("分片数必须为正数: " + shardCount);
+        }
+        this.embeddingModel = embeddingModel;
+        this.directory = directory;
+        this.routing = routing;
+        List<IndexedVectorStore> created = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            created.add(shardFactory.apply(shardDirectory(directory, i)));
+        }
+        this.shards = List.copyOf(created);
+        this.searchCounts = new LongAdder[shardCount];
+        this.searchNanos = new LongAdder[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            searchCounts[i] = new LongAdder();
+            searchNanos[i] = new LongAdder();
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.searchPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("vectorstore-search-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+    }
+
+    /**
+     * 检查分片布局后并行打开全部分片
+     *
+     * @return 是否有分片加载到已有的数据
+     */
+    public boolean open() throws IOException {
+        checkLayout();
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(shards.size());
+        for (IndexedVectorStore shard : shards) {
+            tasks.add(searchPool.submit(shard::open));
+        }
+        boolean loaded = false;
+        for (ForkJoinTask<Boolean> task : tasks) {
+            loaded |= task.join();
+        }
+        return loaded;
+    }
+
+    /**
+     * 为每个分片启动后台检查点和段合并, 参数含义见 IndexedVectorStore.startCheckpointer
+     */
+    public void startCheckpointer(Duration interval, long maxWalBytes) {
+        shards.forEach(shard -> shard.startCheckpointer(interval, maxWalBytes));
+    }
+
+    /**
+     * 对每个分片执行检查点
+     *
+     * @return 是否有分片执行了检查点
+     */
+    public boolean checkpoint() throws IOException {
+        boolean checkpointed = false;
+        for (IndexedVectorStore shard : shards) {
+            checkpointed |= shard.checkpoint();
+        }
+        return checkpointed;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<Document>> byShard = new HashMap<>();
+        for (Document document : documents) {
+            byShard.computeIfAbsent(route(document), key -> new ArrayList<>()).add(document);
+        }
+        for (Map.Entry<Integer, List<Document>> entry : byShard.entrySet()) {
+            if (routing == Routing.SOURCE) {
+                // 同一ID的旧文档块可能来自其他来源而位于其他分片, 先从其他分片删除以保持覆盖写入的语义
+                List<String> ids = entry.getValue().stream().map(Document::getId).toList();
+                for (int i = 0; i < shards.size(); i++) {
+                    if (i != entry.getKey()) {
+                        shards.get(i).delete(ids);
+                    }
+                }
+            }
+            shards.get(entry.getKey()).add(entry.getValue());
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return;
+        }
+        if (routing == Routing.HASH) {
+            Map<Integer, List<String>> byShard = new HashMap<>();
+            for (String id : idList) {
+                byShard.computeIfAbsent(shardOf(id), key -> new ArrayList<>()).add(id);
+            }
+            byShard.forEach((shard, ids) -> shards.get(shard).delete(ids));
+        } else {
+            shards.forEach(shard -> shard.delete(idList));
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        shards.forEach(shard -> shard.delete(filterExpression));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        int topK = request.getTopK();
+        if (topK <= 0) {
+            return List.of();
+        }
+        float[] query = VectorMath.normalize(embeddingModel.embed(request.getQuery()));
+
+        // 第一个分片在调用线程上检索, 其余分片提交到检索线程池
+        List<ForkJoinTask<List<Document>>> tasks = new ArrayList<>(shards.size() - 1);
+        for (int i = 1; i < shards.size(); i++) {
+            int shard = i;
+            tasks.add(searchPool.submit(() -> searchShard(shard, query, request)));
+        }
+        List<List<Document>> shardResults = new ArrayList<>(shards.size());
+        shardResults.add(searchShard(0, query, request));
+        for (ForkJoinTask<List<Document>> task : tasks) {
+            shardResults.add(task.join());
+        }
+
+        // 最小堆合并各分片的 top-K, 堆顶为当前第K好的结果
+        Comparator<Document> byScore = Comparator.comparingDouble(Document::getScore);
+        PriorityQueue<Document> heap = new PriorityQueue<>(topK + 1, byScore);
+        for (List<Document> results : shardResults) {
+            for (Document document : results) {
+                heap.add(document);
+                if (heap.size() > topK) {
+                    heap.poll();
+                }
+            }
+        }
+        List<Document> merged = new ArrayList<>(heap);
+        merged.sort(byScore.reversed());
+        return merged;
+    }
+
+    /**
+     * 当前有效(未删除)的文档块数量
+     */
+    public int size() {
+        int size = 0;
+        for (IndexedVectorStore shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * 按ID读取文档块(不含向量和分数); 按ID哈希路由时只查询ID所在的分片, 按来源路由时依次查询各分片
+     *
+     * @return 与 ids 一一对应, 不存在的ID对应null
+     */
+    public List<Document> get(List<String> ids) {
+        List<Document> documents = new ArrayList<>(Collections.nCopies(ids.size(), null));
+        for (int shard = 0; shard < shards.size(); shard++) {
+            List<Integer> positions = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (documents.get(i) == null && (routing == Routing.SOURCE || shardOf(ids.get(i)) == shard)) {
+                    positions.add(i);
+                }
+            }
+            if (positions.isEmpty()) {
+                continue;
+            }
+            List<Document> found = shards.get(shard).get(positions.stream().map(ids::get).toList());
+            for (int i = 0; i < positions.size(); i++) {
+                if (found.get(i) != null) {
+                    documents.set(positions.get(i), found.get(i));
+                }
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * 全部分片中有效文档块的ID
+     */
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        shards.forEach(shard -> ids.addAll(shard.ids()));
+        return ids;
+    }
+
+    /**
+     * 依次遍历每个分片中全部有效的文档块
+     */
+    public void forEachDocument(Consumer<Document> action) {
+        shards.forEach(shard -> shard.forEachDocument(action));
+    }
+
+    /**
+     * 汇总全部分片的统计信息
+     */
+    public StoreStats stats() {
+        int chunkCount = 0;
+        int dimension = 0;
+        Map<String, Integer> sourceCounts = new HashMap<>();
+        Map<String, Integer> docTypeCounts = new HashMap<>();
+        long diskBytes = 0;
+        long heapBytes = 0;
+        long offHeapBytes = 0;
+        for (IndexedVectorStore shard : shards) {
+            StoreStats stats = shard.stats();
+            chunkCount += stats.chunkCount();
+            dimension = Math.max(dimension, stats.dimension());
+            stats.sourceCounts().forEach((key, count) -> sourceCounts.merge(key, count, Integer::sum));
+            stats.docTypeCounts().forEach((key, count) -> docTypeCounts.merge(key, count, Integer::sum));
+            diskBytes += stats.diskBytes();
+            heapBytes += stats.heapBytes();
+            offHeapBytes += stats.offHeapBytes();
+        }
+        return new StoreStats(chunkCount, dimension, sourceCounts, docTypeCounts, diskBytes, heapBytes, offHeapBytes);
+    }
+
+    /**
+     * 每个分片的统计信息, 按分片序号排列
+     */
+    public List<ShardStats> shardStats() {
+        List<ShardStats> result = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            IndexedVectorStore shard = shards.get(i);
+            StoreStats stats = shard.stats();
+            long searches = searchCounts[i].sum();
+            double avgMillis = searches == 0 ? 0 : searchNanos[i].sum() / 1e6 / searches;
+            result.add(new ShardStats(i, stats.chunkCount(), shard.snapshot().segments().size() - 1, stats.diskBytes(),
+                stats.heapBytes(), stats.offHeapBytes(), searches, avgMillis));
+        }
+        return result;
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 停止检索线程池, 然后关闭每个分片(完成最后一次检查点)
+     */
+    @Override
+    public void close() throws IOException {
+        searchPool.shutdown();
+        try {
+            searchPool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException failure = null;
+        for (IndexedVectorStore shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    static Path shardDirectory(Path directory, int shard) {
+        return directory.resolve(String.format("shard-%02d", shard));
+    }
+
+    private List<Document> searchShard(int shard, float[] query, SearchRequest request) {
+        long startTime = System.nanoTime();
+        List<Document> results = shards.get(shard).similaritySearch(query, request);
+        searchNanos[shard].add(System.nanoTime() - startTime);
+        searchCounts[shard].increment();
+        return results;
+    }
+
+    private int route(Document document) {
+        if (routing == Routing.SOURCE) {
+            Object source = document.getMetadata().get(ChunkStorage.SOURCE_KEY);
+            if (source != null) {
+                return Math.floorMod(source.toString().hashCode(), shards.size());
+            }
+        }
+        return shardOf(document.getId());
+    }
+
+    private int shardOf(String id) {
+        return Math.floorMod(id.hashCode(), shards.size());
+    }
+
+    /**
+     * 首次打开时记录分片布局, 之后要求配置与记录一致
+     */
+    private void checkLayout() throws IOException {
+        Path file = directory.resolve(LAYOUT_FILE);
+        Layout expected = new Layout(shards.size(), routing);
+        if (Files.exists(file)) {
+            Layout actual = objectMapper.readValue(file.toFile(), Layout.class);
+            if (!actual.equals(expected)) {
+                throw new IllegalStateException("分片配置与已有数据不一致: 已有 " + actual.shards() + " 个分片("
+                    + actual.routing() + "路由), 配置为 " + expected.shards() + " 个分片(" + expected.routing()
+                    + "路由); 修改分片配置需要清空 " + directory + " 后重新索引");
+            }
+            return;
+        }
+        if (SegmentFiles.currentGeneration(directory) >= 0) {
+            throw new IllegalStateException("目录中已有未分片的向量存储: " + directory + "; 启用分片需要使用新的目录或重新索引");
+        }
+        Files.createDirectories(directory);
+        objectMapper.writeValue(file.toFile(), expected);
+        log.info("创建分片向量存储: {} 个分片, {} 路由, 目录 {}", expected.shards(), expected.routing(), directory);
+    }
+
+    /**
+     * 分片布局, 保存在 shards.json 中
+     */
+    record Layout(int shards, Routing routing) {
+    }
+}
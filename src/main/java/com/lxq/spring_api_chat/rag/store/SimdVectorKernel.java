@@ -0,0 +1,80 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 基于JDK Vector API(jdk.incubator.vector)的SIMD点积内核
+ * 按CPU支持的最宽向量寄存器(AVX2为8个float, AVX-512为16个float)分块做乘加, 最后一次性归约, 尾部用标量补齐
+ *
+ * 只能在运行时加载了 jdk.incubator.vector 模块(--add-modules jdk.incubator.vector)时使用,
+ * 由 VectorKernels 检测后再加载本类
+ *
+ * Java 21 的 Vector API 只能通过 MemorySegment(预览API)从堆外内存加载向量, FloatVector.fromByteBuffer 已在JDK 20移除;
+ * 为了不启用预览特性, 缓冲区中的向量按 BLOCK 个float分块批量复制到线程本地的小数组(常驻L1缓存)后再做乘加
+ */
+final class SimdVectorKernel implements VectorKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * 缓冲区分块复制的大小(float个数), 为常见向量寄存器宽度的整数倍
+     */
+    private static final int BLOCK = 256;
+
+    private static final ThreadLocal<float[]> BLOCK_BUFFER = ThreadLocal.withInitial(() -> new float[BLOCK]);
+
+    static final SimdVectorKernel INSTANCE = new SimdVectorKernel();
+
+    private SimdVectorKernel() {
+    }
+
+    @Override
+    public float dot(float[] a, float[] b, int offset) {
+        int length = a.length;
+        int bound = SPECIES.loopBound(length);
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, offset + i);
+            sum = va.fma(vb, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[i] * b[offset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public float dot(float[] a, FloatBuffer b, int offset) {
+        float[] block = BLOCK_BUFFER.get();
+        int length = a.length;
+        FloatVector sum = FloatVector.zero(SPECIES);
+        float tail = 0f;
+        for (int start = 0; start < length; start += BLOCK) {
+            int size = Math.min(BLOCK, length - start);
+            b.get(offset + start, block, 0, size);
+            int bound = SPECIES.loopBound(size);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                FloatVector va = FloatVector.fromArray(SPECIES, a, start + i);
+                FloatVector vb = FloatVector.fromArray(SPECIES, block, i);
+                sum = va.fma(vb, sum);
+            }
+            for (; i < size; i++) {
+                tail += a[start + i] * block[i];
+            }
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + tail;
+    }
+
+    @Override
+    public String name() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+}
@@ -0,0 +1,188 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * 向量存储某个版本的不可变快照
+ * 写入方在写锁内修改段后生成新快照, 通过 volatile 字段整体发布; 检索只读取一次该字段, 之后全程使用同一个版本,
+ * 不会看到写到一半的批量写入, 也不会被并发的写入、检查点和合并阻塞
+ *
+ * 快照引用的数据在发布后不再变化:
+ * - 已冻结段的索引不再修改, 墓碑是发布时的副本
+ * - 追加段仍在接收写入, 快照只记录发布时的记录数, 检索时精确扫描这部分记录, 不读取正在修改的索引
+ * - 段刷盘或被合并替换后, 旧的数据源仍被快照引用, 由 Cleaner 在最后一个快照不可达后回收(见 RESOURCE_CLEANER)
+ * - 各段的 ID -> 序号 映射只增加条目, 按ID读取时以发布时的记录数和墓碑副本判断记录在该版本中是否可见
+ *
+ * @param version 版本号, 每次发布加1
+ * @param walGeneration 发布时预写日志的代号, 写出提交点时使用
+ * @param segments 参与检索的段, 按写入顺序排列, 最后一个是追加段
+ * @param heapBytes 估算的堆内存占用(字节)
+ * @param offHeapBytes 追加区和空闲池占用的本地内存(字节)
+ */
+public record StoreSnapshot(
+    long version,
+    long walGeneration,
+    List<SegmentView> segments,
+    int liveCount,
+    int dimension,
+    Map<String, Integer> sourceCounts,
+    Map<String, Integer> docTypeCounts,
+    long heapBytes,
+    long offHeapBytes
+) {
+
+    /**
+     * 回收快照不再引用的堆外资源: 追加区的内存块归还空闲池, 被替换段的文件句柄关闭
+     */
+    static final Cleaner RESOURCE_CLEANER = Cleaner.create();
+
+    /**
+     * 按ID读取该版本中的文档块记录, 由新到旧查找各段, 不加锁
+     *
+     * @return 不存在或已删除时返回null
+     */
+    public MappedSegment.Record record(String id) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            SegmentView segment = segments.get(i);
+            int ordinal = segment.ordinal(id);
+            if (ordinal >= 0) {
+                return segment.record(ordinal);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 该版本中全部有效文档块的ID
+     * 不可变段读取ID映射; 追加段映射中的条目可能晚于该版本, 按发布时的记录数逐条读取ID
+     */
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>(liveCount);
+        for (SegmentView segment : segments) {
+            if (segment.index() != null) {
+                segment.ordinals().forEach((id, ordinal) -> {
+                    if (ordinal < segment.size() && !segment.isDeleted(ordinal)) {
+                        ids.add(id);
+                    }
+                });
+                continue;
+            }
+            for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                if (!segment.isDeleted(ordinal)) {
+                    ids.add(segment.record(ordinal).id());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 一个段在快照中的只读视图
+     *
+     * @param segment 对应的段, 只供写入方(检查点、合并、提交点)识别段, 检索不读取它的可变状态
+     * @param source 发布时的数据源
+     * @param index 段的索引; 追加段为null, 检索时精确扫描
+     * @param tombstones 发布时的墓碑副本, 不可修改
+     * @param bitmaps 发布时的元数据位图, 不可修改
+     * @param ordinals 段的 ID -> 序号 映射, 写入方只增加条目; 追加段中的条目可能晚于该版本
+     * @param size 发布时的记录数
+     * @param deletedCount 发布时的墓碑数
+     */
+    public record SegmentView(
+        Segment segment,
+        ChunkSource source,
+        VectorIndex index,
+        BitSet tombstones,
+        MetadataBitmaps bitmaps,
+        Map<String, Integer> ordinals,
+        int size,
+        int deletedCount
+    ) {
+
+        /**
+         * 候选数不超过段记录数的该比例时, 不走近似索引, 直接精确计算候选的相似度
+         * 过滤条件很严格时, 图索引的遍历大部分落在被过滤掉的节点上, 召回率和耗时都不如直接扫描候选
+         */
+        private static final double EXACT_SCAN_RATIO = 0.1;
+
+        public long generation() {
+            return segment.generation();
+        }
+
+        public boolean flushed() {
+            return source instanceof MappedSegment;
+        }
+
+        public boolean isDeleted(int ordinal) {
+            return tombstones.get(ordinal);
+        }
+
+        public int liveCount() {
+            return size - deletedCount;
+        }
+
+        /**
+         * 按ID查找在该版本中可见的记录
+         * 映射中的序号不小于发布时的记录数, 说明发布之后该ID在追加段中又写入了一次, 该版本中可见的是更早的记录,
+         * 此时由后向前扫描已发布的记录; 只有并发覆盖写入同一ID时才会发生
+         *
+         * @return 段内序号, 不存在或在该版本中已删除时返回-1
+         */
+        public int ordinal(String id) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null) {
+                return -1;
+            }
+            if (ordinal < size) {
+                return tombstones.get(ordinal) ? -1 : ordinal;
+            }
+            for (int candidate = size - 1; candidate >= 0; candidate--) {
+                if (!tombstones.get(candidate) && id.equals(source.record(candidate).id())) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        public MappedSegment.Record record(int ordinal) {
+            return source.record(ordinal);
+        }
+
+        /**
+         * 在该段中检索相似度不低于 minScore 的 top-K
+         */
+        public List<ScoredOrdinal> search(float[] query, int k, float minScore, IntPredicate accept) {
+            if (index == null) {
+                return FlatVectorIndex.scan(source, size, query, k, minScore, accept);
+            }
+            return index.search(query, k, minScore, accept);
+        }
+
+        /**
+         * 只在候选序号中检索相似度不低于 minScore 的 top-K
+         * 候选较少、段没有索引或使用暴力检索索引时, 只对候选计算相似度; 否则由索引检索, 候选作为过滤条件
+         *
+         * @param candidates 元数据位图求出的候选序号(见 MetadataFilter), null表示不限制
+         */
+        public List<ScoredOrdinal> search(float[] query, int k, float minScore, OrdinalBitmap candidates,
+                                          IntPredicate accept) {
+            if (candidates == null) {
+                return search(query, k, minScore, accept);
+            }
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+            if (index == null || index instanceof FlatVectorIndex
+                || candidates.cardinality() <= size * EXACT_SCAN_RATIO) {
+                return FlatVectorIndex.scan(source, size, candidates, query, k, minScore, accept);
+            }
+            return index.search(query, k, minScore,
+                ordinal -> candidates.contains(ordinal) && (accept == null || accept.test(ordinal)));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.Map;
+
+/**
+ * 向量存储统计信息, 全部由增量维护的计数器得到, 读取耗时与数据量无关
+ *
+ * @param chunkCount 有效(未删除)的文档块数量
+ * @param dimension 向量维度, 尚无数据时为0
+ * @param sourceCounts 按来源文件统计的文档块数
+ * @param docTypeCounts 按文档类型统计的文档块数
+ * @param diskBytes 磁盘占用(字节): 已提交的段文件和当前预写日志
+ * @param heapBytes 估算的堆内存占用(字节): ID映射、各段的墓碑和索引结构
+ * @param offHeapBytes 追加段占用的本地内存(字节), 不含内存映射的段文件
+ */
+public record StoreStats(
+    int chunkCount,
+    int dimension,
+    Map<String, Integer> sourceCounts,
+    Map<String, Integer> docTypeCounts,
+    long diskBytes,
+    long heapBytes,
+    long offHeapBytes
+) {
+}
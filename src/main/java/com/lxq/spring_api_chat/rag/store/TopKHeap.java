@@ -0,0 +1,142 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 有界的 top-K 最小堆, 序号和分数分别存放在 int[] / float[] 中
+ * 堆顶为当前第K好的结果, 扫描时每个候选只与堆顶比较一次; 与 PriorityQueue&lt;ScoredOrdinal&gt; 相比,
+ * 扫描过程中不为候选分配对象, 每次检索的内存只与K有关, 与向量数量无关
+ *
+ * 可选的分数下限(相似度阈值)在扫描时直接生效, 低于下限的候选不进入堆
+ * 不是线程安全的, 每次检索使用一个实例; 词法索引(BM25)的 top-K 选择也使用它
+ */
+public final class TopKHeap {
+
+    private final int k;
+    private final float minScore;
+    private final int[] ordinals;
+    private final float[] scores;
+    private int size;
+
+    public TopKHeap(int k) {
+        this(k, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * @param k 保留的结果数
+     * @param minScore 分数下限, 低于该值的候选被丢弃
+     */
+    public TopKHeap(int k, float minScore) {
+        if (k < 0) {
+            throw new IllegalArgumentException("K不能为负数: " + k);
+        }
+        this.k = k;
+        this.minScore = minScore;
+        this.ordinals = new int[k];
+        this.scores = new float[k];
+    }
+
+    /**
+     * 该分数能否进入堆: 不低于分数下限, 且堆未满或高于当前第K好的分数
+     * 扫描时可以先用它判断, 再执行代价较高的过滤条件
+     */
+    public boolean competitive(float score) {
+        return score >= minScore && (size < k || (size > 0 && score > scores[0]));
+    }
+
+    /**
+     * 加入一个候选, 分数没有竞争力时忽略
+     *
+     * @return 是否进入了堆
+     */
+    public boolean offer(int ordinal, float score) {
+        if (!competitive(score)) {
+            return false;
+        }
+        if (size < k) {
+            ordinals[size] = ordinal;
+            scores[size] = score;
+            siftUp(size++);
+        } else {
+            ordinals[0] = ordinal;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 堆中第 i 个元素的序号, 按堆内顺序(非分数顺序)遍历
+     */
+    public int ordinal(int i) {
+        return ordinals[i];
+    }
+
+    /**
+     * 堆中第 i 个元素的分数, 按堆内顺序(非分数顺序)遍历
+     */
+    public float score(int i) {
+        return scores[i];
+    }
+
+    /**
+     * 按分数降序取出全部结果, 原地堆排序后清空堆
+     */
+    public List<ScoredOrdinal> drainSorted() {
+        // 堆顶(最小值)依次换到末尾, 完成后数组按分数降序排列
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        List<ScoredOrdinal> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(new ScoredOrdinal(ordinals[i], scores[i]));
+        }
+        size = 0;
+        return results;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[i] >= scores[parent]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int limit) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < limit && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < limit && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int ordinal = ordinals[a];
+        ordinals[a] = ordinals[b];
+        ordinals[b] = ordinal;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
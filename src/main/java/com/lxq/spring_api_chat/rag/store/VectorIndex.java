@@ -0,0 +1,60 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * 向量索引接口
+ * 以连续的序号(ordinal)标识向量, 向量本身保存在 VectorStorage 中, 文档ID与元数据由上层的 IndexedVectorStore 维护
+ *
+ * 约定:
+ * - 写入的向量已经归一化, 相似度即点积(等价于余弦相似度)
+ * - 实现类不保证线程安全, 由调用方负责加锁
+ */
+public interface VectorIndex {
+
+    /**
+     * 将已写入 VectorStorage 的向量加入索引
+     *
+     * @param ordinal 向量序号, 必须等于当前 size()
+     */
+    void add(int ordinal);
+
+    /**
+     * 检索与查询向量最相似的K个向量
+     *
+     * @param query 归一化后的查询向量
+     * @param k 返回数量
+     * @param accept 候选过滤条件(如排除已删除的序号), 为null表示不过滤
+     * @return 按相似度降序排列的结果
+     */
+    List<ScoredOrdinal> search(float[] query, int k, IntPredicate accept);
+
+    /**
+     * 检索与查询向量最相似、且相似度不低于 minScore 的K个向量
+     * 默认在检索结果上截断; 扫描全部候选的实现应覆盖此方法, 在扫描时直接丢弃低于阈值的候选
+     *
+     * @param minScore 相似度下限
+     * @return 按相似度降序排列的结果
+     */
+    default List<ScoredOrdinal> search(float[] query, int k, float minScore, IntPredicate accept) {
+        List<ScoredOrdinal> results = search(query, k, accept);
+        int end = 0;
+        while (end < results.size() && results.get(end).score() >= minScore) {
+            end++;
+        }
+        return end == results.size() ? results : results.subList(0, end);
+    }
+
+    /**
+     * 索引中的向量数量(包含已被上层标记删除的向量)
+     */
+    int size();
+
+    /**
+     * 索引结构自身估算的堆内存占用(字节), 不包括 VectorStorage 中的向量
+     */
+    default long estimatedHeapBytes() {
+        return 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 相似度计算内核
+ * 向量写入时已经归一化, 余弦相似度即点积, 内核只需实现点积
+ *
+ * 由 VectorKernels 在启动时选择实现: 运行时加载了 jdk.incubator.vector 模块时使用SIMD实现, 否则使用标量实现
+ */
+interface VectorKernel {
+
+    /**
+     * 计算 a 与 b[offset, offset + a.length) 的点积, 调用方保证长度合法
+     */
+    float dot(float[] a, float[] b, int offset);
+
+    /**
+     * 计算 a 与缓冲区(内存映射或直接内存) b[offset, offset + a.length) 的点积, 调用方保证长度合法
+     * 按绝对位置读取, 不修改缓冲区的 position, 可被多个线程并发调用
+     */
+    float dot(float[] a, FloatBuffer b, int offset);
+
+    /**
+     * 实现名称, 用于日志和基准测试
+     */
+    String name();
+}
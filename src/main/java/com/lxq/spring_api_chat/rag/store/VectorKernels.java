@@ -0,0 +1,55 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 选择相似度计算内核
+ *
+ * jdk.incubator.vector 是孵化模块, 只有启动参数包含 --add-modules jdk.incubator.vector 时才会被加载;
+ * 未加载时引用其中的类会失败, 因此先检查模块是否存在, 再加载 SimdVectorKernel
+ *
+ * 可通过系统属性 -Drag.vector.simd=false 强制使用标量实现
+ */
+final class VectorKernels {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorKernels.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final VectorKernel SIMD = loadSimd();
+
+    static final VectorKernel DEFAULT = Boolean.parseBoolean(System.getProperty("rag.vector.simd", "true")) && SIMD != null
+        ? SIMD
+        : ScalarVectorKernel.INSTANCE;
+
+    static {
+        log.info("向量相似度计算内核: {}", DEFAULT.name());
+    }
+
+    private VectorKernels() {
+    }
+
+    static VectorKernel scalar() {
+        return ScalarVectorKernel.INSTANCE;
+    }
+
+    /**
+     * @return SIMD内核, 运行时不可用时为null
+     */
+    static VectorKernel simd() {
+        return SIMD;
+    }
+
+    private static VectorKernel loadSimd() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return SimdVectorKernel.INSTANCE;
+        } catch (LinkageError e) {
+            log.warn("SIMD内核加载失败, 使用标量实现: {}", e.toString());
+            return null;
+        }
+    }
+}
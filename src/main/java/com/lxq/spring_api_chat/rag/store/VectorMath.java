@@ -0,0 +1,51 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 向量计算工具类
+ * 点积由 VectorKernels 选择的内核计算(SIMD或标量)
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * 点积
+     */
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("向量维度不一致: " + a.length + " vs " + b.length);
+        }
+        return VectorKernels.DEFAULT.dot(a, b, 0);
+    }
+
+    /**
+     * 查询向量与缓冲区(内存映射或直接内存)中从 offset 开始的向量的点积
+     * 由内核直接读取缓冲区, 不复制整个向量到堆内数组
+     */
+    public static float dot(float[] query, FloatBuffer buffer, int offset) {
+        return VectorKernels.DEFAULT.dot(query, buffer, offset);
+    }
+
+    /**
+     * 归一化为单位向量(返回新数组), 零向量原样返回副本
+     * 归一化后余弦相似度等价于点积
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0d;
+        for (float v : vector) {
+            norm += (double) v * v;
+        }
+        float[] result = vector.clone();
+        if (norm == 0d) {
+            return result;
+        }
+        float inv = (float) (1d / Math.sqrt(norm));
+        for (int i = 0; i < result.length; i++) {
+            result[i] *= inv;
+        }
+        return result;
+    }
+}
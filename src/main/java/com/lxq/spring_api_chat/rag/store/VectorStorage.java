@@ -0,0 +1,28 @@
+package com.lxq.spring_api_chat.rag.store;
+
+/**
+ * 向量数据源
+ * 以连续序号访问已归一化的向量, 索引实现通过它读取向量而不自行持有副本
+ */
+public interface VectorStorage {
+
+    /**
+     * 向量数量
+     */
+    int size();
+
+    /**
+     * 向量维度, 为空时返回0
+     */
+    int dimension();
+
+    /**
+     * 获取指定序号的向量(可能是副本, 调用方不应修改)
+     */
+    float[] vector(int ordinal);
+
+    /**
+     * 计算查询向量与指定序号向量的点积, 实现类可直接在底层存储上计算以避免复制
+     */
+    float dot(float[] query, int ordinal);
+}
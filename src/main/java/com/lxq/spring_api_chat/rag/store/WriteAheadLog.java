@@ -0,0 +1,334 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志(WAL)
+ * 每次 add/delete 先以紧凑的二进制记录追加到日志并刷盘, 再修改内存中的数据
+ * 每个日志文件对应一个追加段: 检查点冻结追加段时切换到新代号的日志文件(roll), 旧文件在提交点记录新段后删除;
+ * 启动时重放代号不小于提交点 walGeneration 的日志
+ *
+ * <pre>
+ * 文件头(16字节): magic(int) version(int) generation(long)
+ * 记录: length(int) crc32(int) type(byte) payload
+ *   ADD    payload: idLen(int) id textLen(int) text metaLen(int) metadataJson dimension(int) float32 * dimension
+ *   DELETE payload: idLen(int) id
+ * </pre>
+ *
+ * 文件头中的代号与文件名一致; 旧版本的单个 wal.log 中记录的是它所基于的段代号, 与 CURRENT 不一致时直接丢弃
+ * 重放遇到不完整或校验失败的记录(写入中途崩溃)时, 从该位置截断
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final int MAGIC = 0x4C58514C;   // "LXQL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2;
+    private static final byte TYPE_ADD = 1;
+    private static final byte TYPE_DELETE = 2;
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper;
+    private final boolean fsync;
+    private Path file;
+    private FileChannel channel;
+    private long generation;
+
+    private WriteAheadLog(ObjectMapper objectMapper, boolean fsync) {
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+    }
+
+    /**
+     * 创建只含文件头的新日志
+     *
+     * @param generation 日志代号, 写入文件头
+     */
+    public static WriteAheadLog create(Path file, long generation, ObjectMapper objectMapper, boolean fsync)
+        throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(objectMapper, fsync);
+        wal.roll(file, generation);
+        return wal;
+    }
+
+    /**
+     * 重放日志文件
+     *
+     * @param expectedGeneration 文件头中应有的代号, 不一致时不重放
+     * @param replay 接收重放的记录
+     * @return 重放的记录数
+     */
+    public static int replay(Path file, long expectedGeneration, ObjectMapper objectMapper, Consumer<Entry> replay)
+        throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return new WriteAheadLog(objectMapper, false).replay(file, expectedGeneration, replay);
+    }
+
+    /**
+     * 追加一批新增记录, 作为一次写入并刷盘
+     */
+    public synchronized void appendAdds(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        byte[][] payloads = new byte[entries.size()][];
+        int total = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            payloads[i] = encode(entries.get(i));
+            total += RECORD_HEADER_BYTES + 1 + payloads[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < entries.size(); i++) {
+            putRecord(buffer, entries.get(i).type(), payloads[i]);
+        }
+        write(buffer);
+    }
+
+    /**
+     * 追加删除记录
+     */
+    public synchronized void appendDeletes(List<String> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        int total = 0;
+        byte[][] payloads = new byte[ids.size()][];
+        for (int i = 0; i < ids.size(); i++) {
+            payloads[i] = encode(Entry.delete(ids.get(i)));
+            total += RECORD_HEADER_BYTES + 1 + payloads[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total).order(ByteOrder.LITTLE_ENDIAN);
+        for (byte[] payload : payloads) {
+            putRecord(buffer, TYPE_DELETE, payload);
+        }
+        write(buffer);
+    }
+
+    /**
+     * 切换到新的日志文件: 先写好只含文件头的临时文件, 再原子重命名; 原来的文件保留, 由调用方在提交后删除
+     *
+     * @param generation 新日志的代号
+     */
+    public synchronized void roll(Path file, long generation) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+            while (header.hasRemaining()) {
+                tempChannel.write(header);
+            }
+            tempChannel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (channel != null) {
+            channel.close();
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+        this.generation = generation;
+    }
+
+    /**
+     * 日志中记录部分的字节数(不含文件头)
+     */
+    public synchronized long recordBytes() throws IOException {
+        return channel.size() - HEADER_BYTES;
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * 当前日志文件的大小(字节)
+     */
+    public synchronized long fileBytes() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * 重放日志
+     *
+     * @return 重放的记录数; 文件头无效或代号不一致时为0
+     */
+    private int replay(Path file, long expectedGeneration, Consumer<Entry> consumer) throws IOException {
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(reader, header, 0) < HEADER_BYTES || header.getInt() != MAGIC
+                || header.getInt() != VERSION) {
+                log.warn("预写日志文件头无效, 跳过: {}", file);
+                return 0;
+            }
+            long generation = header.getLong();
+            if (generation != expectedGeneration) {
+                log.info("预写日志 {} 的代号为 {}, 期望 {}, 内容已包含在段文件中, 跳过", file, generation,
+                    expectedGeneration);
+                return 0;
+            }
+
+            long position = HEADER_BYTES;
+            long size = reader.size();
+            int count = 0;
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (position + RECORD_HEADER_BYTES <= size) {
+                recordHeader.clear();
+                readFully(reader, recordHeader, position);
+                int length = recordHeader.getInt();
+                int crc = recordHeader.getInt();
+                if (length <= 0 || position + RECORD_HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(reader, body, position + RECORD_HEADER_BYTES);
+                if (crc32(body.array()) != crc) {
+                    break;
+                }
+                consumer.accept(decode(body));
+                position += RECORD_HEADER_BYTES + length;
+                count++;
+            }
+
+            if (position < size) {
+                log.warn("预写日志末尾存在不完整的记录, 从位置 {} 截断 {} 字节", position, size - position);
+                reader.truncate(position);
+                reader.force(true);
+            }
+            log.info("预写日志重放完成: {}, {} 条记录", file.getFileName(), count);
+            return count;
+        }
+    }
+
+    private byte[] encode(Entry entry) throws IOException {
+        byte[] id = entry.id().getBytes(StandardCharsets.UTF_8);
+        if (entry.type() == TYPE_DELETE) {
+            return ByteBuffer.allocate(Integer.BYTES + id.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(id.length).put(id).array();
+        }
+        byte[] text = entry.text() == null ? new byte[0] : entry.text().getBytes(StandardCharsets.UTF_8);
+        byte[] metadata = objectMapper.writeValueAsBytes(entry.metadata() == null ? Map.of() : entry.metadata());
+        float[] vector = entry.vector();
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 4 + id.length + text.length + metadata.length
+            + vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(id.length).put(id);
+        buffer.putInt(text.length).put(text);
+        buffer.putInt(metadata.length).put(metadata);
+        buffer.putInt(vector.length);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        return buffer.array();
+    }
+
+    private Entry decode(ByteBuffer body) throws IOException {
+        byte type = body.get();
+        String id = readString(body);
+        if (type == TYPE_DELETE) {
+            return Entry.delete(id);
+        }
+        String text = readString(body);
+        byte[] metadataBytes = new byte[body.getInt()];
+        body.get(metadataBytes);
+        Map<String, Object> metadata = objectMapper.readValue(metadataBytes, METADATA_TYPE);
+        float[] vector = new float[body.getInt()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = body.getFloat();
+        }
+        return Entry.add(id, text, metadata, vector);
+    }
+
+    private static void putRecord(ByteBuffer buffer, byte type, byte[] payload) {
+        byte[] body = new byte[1 + payload.length];
+        body[0] = type;
+        System.arraycopy(payload, 0, body, 1, payload.length);
+        buffer.putInt(body.length).putInt(crc32(body)).put(body);
+    }
+
+    private static int crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        buffer.flip();
+        return total;
+    }
+
+    /**
+     * 日志记录
+     *
+     * @param vector 归一化后的向量, 删除记录为null
+     */
+    public record Entry(byte type, String id, String text, Map<String, Object> metadata, float[] vector) {
+
+        public static Entry add(String id, String text, Map<String, Object> metadata, float[] vector) {
+            return new Entry(TYPE_ADD, id, text, metadata, vector);
+        }
+
+        public static Entry delete(String id) {
+            return new Entry(TYPE_DELETE, id, null, null, null);
+        }
+
+        public boolean isDelete() {
+            return type == TYPE_DELETE;
+        }
+    }
+}
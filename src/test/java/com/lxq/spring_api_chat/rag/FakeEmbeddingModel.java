@@ -0,0 +1,83 @@
+package com.lxq.spring_api_chat.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的假Embedding模型, 不依赖Embedding API
+ * 按文本哈希生成分量均为正的向量: 相同文本得到相同向量, 任意两个向量的相似度都大于0
+ * 记录每次请求的文本(按请求到达的顺序)和请求次数, 线程安全
+ */
+public class FakeEmbeddingModel implements EmbeddingModel {
+
+    public static final int DEFAULT_DIMENSION = 8;
+
+    private final int dimension;
+    private final List<String> requestedTexts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    public FakeEmbeddingModel() {
+        this(DEFAULT_DIMENSION);
+    }
+
+    public FakeEmbeddingModel(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        calls.incrementAndGet();
+        requestedTexts.addAll(request.getInstructions());
+        beforeRespond(request);
+        List<Embedding> embeddings = new ArrayList<>();
+        for (String text : request.getInstructions()) {
+            embeddings.add(new Embedding(vector(text), embeddings.size()));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return vector(document.getText());
+    }
+
+    /**
+     * 请求的文本已记录、返回结果之前调用; 子类可以在此阻塞或抛出异常
+     */
+    protected void beforeRespond(EmbeddingRequest request) {
+    }
+
+    /**
+     * 文本对应的向量
+     */
+    public float[] vector(String text) {
+        float[] vector = new float[dimension];
+        int hash = text.hashCode();
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = 1 + ((hash >>> ((i * 4) % 32)) & 15);
+        }
+        return vector;
+    }
+
+    /**
+     * 发往模型的全部文本, 按请求到达的顺序
+     */
+    public List<String> requestedTexts() {
+        return List.copyOf(requestedTexts);
+    }
+
+    /**
+     * 模型被调用的次数(每次 call 一次, 不论包含多少文本)
+     */
+    public int calls() {
+        return calls.get();
+    }
+}
@@ -7,6 +7,8 @@ import com.lxq.spring_api_chat.rag.dto.IndexResponse;
 import com.lxq.spring_api_chat.rag.dto.QueryRequest;
 import com.lxq.spring_api_chat.rag.dto.QueryResponse;
 import com.lxq.spring_api_chat.rag.service.DocumentIndexingService;
+import com.lxq.spring_api_chat.rag.store.SegmentCommit;
+import com.lxq.spring_api_chat.rag.store.SegmentFiles;
 import org.junit.jupiter.api.*;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
@@ -282,16 +284,27 @@ public class RagIntegrationTest {
     @Test
     @Order(9)
     @DisplayName("测试向量存储持久化")
-    public void testVectorStorePersistence() {
+    public void testVectorStorePersistence() throws Exception {
         // 执行持久化
         indexingService.persistVectorStore();
 
-        // 验证持久化文件存在
-        File storeFile = new File("data/vectorstore/simple-vector-store.json");
-        assertTrue(storeFile.exists(), "持久化文件应该存在");
-        assertTrue(storeFile.length() > 0, "持久化文件不应为空");
-
-        System.out.println("持久化文件大小: " + storeFile.length() + " 字节");
+        // 验证持久化文件存在(默认的flat类型使用二进制段文件): CURRENT 指向提交点, 提交点列出生效的段
+        Path storeDir = Paths.get("data/vectorstore");
+        long generation = SegmentFiles.currentGeneration(storeDir);
+        assertTrue(generation > 0, "持久化文件应该存在");
+        assertTrue(SegmentFiles.commitFile(storeDir, generation).toFile().exists(), "CURRENT 指向的提交点文件应该存在");
+
+        SegmentCommit commit = SegmentCommit.read(storeDir);
+        assertNotNull(commit);
+        assertFalse(commit.segments().isEmpty(), "提交点应至少包含一个段");
+        long totalBytes = 0;
+        for (SegmentCommit.Entry entry : commit.segments()) {
+            File vectorsFile = SegmentFiles.vectorsFile(storeDir, entry.generation()).toFile();
+            assertTrue(vectorsFile.length() > 0, "段的向量文件不应为空: " + vectorsFile);
+            totalBytes += vectorsFile.length();
+        }
+
+        System.out.println("段数: " + commit.segments().size() + ", 向量文件大小: " + totalBytes + " 字节");
     }
 
     /**
@@ -0,0 +1,145 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Embedding请求合并测试
+ * 假模型在收到请求后阻塞, 使后续线程的相同请求一定与之并发
+ */
+public class CoalescingEmbeddingModelTest {
+
+    @Test
+    @DisplayName("并发的相同文本只应请求一次Embedding模型")
+    public void testConcurrentIdenticalRequests() throws Exception {
+        BlockingEmbeddingModel model = new BlockingEmbeddingModel();
+        EmbeddingCoalescer coalescer = new EmbeddingCoalescer();
+        CoalescingEmbeddingModel coalescing = new CoalescingEmbeddingModel(model, coalescer, "test-model");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<float[]> leader = executor.submit(() -> coalescing.embed("热门问题"));
+            assertTrue(model.started.await(5, TimeUnit.SECONDS));
+
+            List<Future<float[]>> followers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                followers.add(executor.submit(() -> coalescing.embed("热门问题")));
+            }
+            waitUntil(() -> coalescer.stats().savedCalls() == 3);
+            model.release.countDown();
+
+            float[] expected = leader.get(5, TimeUnit.SECONDS);
+            for (Future<float[]> follower : followers) {
+                assertArrayEquals(expected, follower.get(5, TimeUnit.SECONDS), 0f);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(List.of("热门问题"), model.requestedTexts());
+        EmbeddingCoalescer.Stats stats = coalescer.stats();
+        assertEquals(1, stats.calls());
+        assertEquals(3, stats.savedCalls());
+        assertEquals(3, stats.coalescedTexts());
+        assertEquals(0, stats.inFlight(), "请求完成后应移除登记");
+    }
+
+    @Test
+    @DisplayName("批量请求中只有进行中的文本等待, 其余文本照常发出")
+    public void testPartialOverlap() throws Exception {
+        BlockingEmbeddingModel model = new BlockingEmbeddingModel();
+        EmbeddingCoalescer coalescer = new EmbeddingCoalescer();
+        CoalescingEmbeddingModel coalescing = new CoalescingEmbeddingModel(model, coalescer, "test-model");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<float[]>> first = executor.submit(() -> coalescing.embed(List.of("a", "b")));
+            assertTrue(model.started.await(5, TimeUnit.SECONDS));
+            Future<List<float[]>> second = executor.submit(() -> coalescing.embed(List.of("b", "c")));
+            waitUntil(() -> model.requestedTexts().contains("c"));
+            model.release.countDown();
+
+            assertArrayEquals(first.get(5, TimeUnit.SECONDS).get(1), second.get(5, TimeUnit.SECONDS).get(0), 0f);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(List.of("a", "b", "c"), model.requestedTexts(), "进行中的文本b不应重复请求");
+        assertEquals(2, coalescer.stats().calls());
+        assertEquals(1, coalescer.stats().coalescedTexts());
+    }
+
+    @Test
+    @DisplayName("请求失败时等待者应收到同样的异常")
+    public void testFailurePropagation() throws Exception {
+        BlockingEmbeddingModel model = new BlockingEmbeddingModel();
+        model.failure = new IllegalStateException("Embedding API不可用");
+        EmbeddingCoalescer coalescer = new EmbeddingCoalescer();
+        CoalescingEmbeddingModel coalescing = new CoalescingEmbeddingModel(model, coalescer, "test-model");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<float[]> leader = executor.submit(() -> coalescing.embed("q"));
+            assertTrue(model.started.await(5, TimeUnit.SECONDS));
+            Future<float[]> follower = executor.submit(() -> coalescing.embed("q"));
+            waitUntil(() -> coalescer.stats().savedCalls() == 1);
+            model.release.countDown();
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertSame(model.failure, error.getCause());
+            assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, coalescer.stats().inFlight(), "失败后应移除登记, 以便重试");
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待超时");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * 第一个请求阻塞到 release 被触发, 之后的请求直接返回
+     */
+    private static class BlockingEmbeddingModel extends FakeEmbeddingModel {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile RuntimeException failure;
+
+        @Override
+        protected void beforeRespond(EmbeddingRequest request) {
+            if (started.getCount() > 0) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
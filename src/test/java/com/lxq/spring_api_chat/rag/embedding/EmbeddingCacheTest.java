@@ -0,0 +1,74 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Embedding缓存测试
+ * 使用计数的假模型验证命中、淘汰和持久化, 不依赖Embedding API
+ */
+public class EmbeddingCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("相同文本只应请求一次Embedding模型")
+    public void testCacheHit() throws Exception {
+        FakeEmbeddingModel model = new FakeEmbeddingModel();
+        try (EmbeddingCache cache = new EmbeddingCache(directory.resolve("cache.bin"), 1024 * 1024)) {
+            CachingEmbeddingModel cached = new CachingEmbeddingModel(model, cache, "test-model");
+
+            List<float[]> first = cached.embed(List.of("alpha", "beta", "alpha"));
+            assertEquals(List.of("alpha", "beta"), model.requestedTexts(), "请求内重复的文本应去重");
+            assertArrayEquals(first.get(0), first.get(2), 0f);
+
+            List<float[]> second = cached.embed(List.of("beta", "gamma"));
+            assertEquals(List.of("alpha", "beta", "gamma"), model.requestedTexts(), "已缓存的文本不应再次请求");
+            assertArrayEquals(first.get(1), second.get(0), 0f);
+
+            EmbeddingCache.Stats stats = cache.stats();
+            assertEquals(1, stats.hits());
+            assertEquals(3, stats.misses());
+            assertEquals(3, stats.entries());
+        }
+    }
+
+    @Test
+    @DisplayName("缓存应在重新打开后仍然有效, 且按模型名区分")
+    public void testPersistence() throws Exception {
+        Path file = directory.resolve("cache.bin");
+        try (EmbeddingCache cache = new EmbeddingCache(file, 1024 * 1024)) {
+            cache.putAll("model-a", List.of("文本"), List.of(new float[]{1, 2, 3}));
+        }
+
+        try (EmbeddingCache cache = new EmbeddingCache(file, 1024 * 1024)) {
+            assertArrayEquals(new float[]{1, 2, 3}, cache.get("model-a", "文本"), 0f);
+            assertNull(cache.get("model-b", "文本"), "不同模型的向量不应混用");
+        }
+    }
+
+    @Test
+    @DisplayName("超过容量上限时应淘汰最久未使用的条目")
+    public void testEviction() throws Exception {
+        // 每个条目为 4*4 字节向量加固定开销, 上限只能容纳两个条目
+        long entryBytes = 4 * Float.BYTES + 160;
+        try (EmbeddingCache cache = new EmbeddingCache(null, entryBytes * 2)) {
+            cache.putAll("m", List.of("a", "b"), List.of(new float[4], new float[4]));
+            assertNotNull(cache.get("m", "a"));
+            cache.putAll("m", List.of("c"), List.of(new float[4]));
+
+            assertNull(cache.get("m", "b"), "b 最久未使用, 应被淘汰");
+            assertNotNull(cache.get("m", "a"));
+            assertNotNull(cache.get("m", "c"));
+            assertEquals(1, cache.stats().evictions());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 查询向量缓存测试
+ * 使用可控的时钟验证过期, 使用计数的假模型验证命中, 不依赖Embedding API
+ */
+public class QueryEmbeddingCacheTest {
+
+    @Test
+    @DisplayName("规范化后相同的查询只应请求一次Embedding模型")
+    public void testNormalizedQueryHit() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel();
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(100, Duration.ofMinutes(10));
+        QueryCachingEmbeddingModel cached = new QueryCachingEmbeddingModel(model, cache, "test-model");
+
+        float[] first = cached.embed("什么是 RAG?");
+        float[] second = cached.embed("  什么是\t RAG？ ");
+        assertArrayEquals(first, second, 0f);
+        assertEquals(List.of("什么是 RAG?"), model.requestedTexts(), "全角问号经NFKC规范化后应命中");
+
+        first[0] = 0;
+        assertNotEquals(0f, cached.embed("什么是 RAG?")[0], "修改返回的数组不应影响缓存");
+
+        QueryEmbeddingCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(2.0 / 3, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("未命中时发送原始查询, 且不经过持久化的Embedding缓存")
+    public void testMissBypassesEmbeddingCache() throws Exception {
+        FakeEmbeddingModel model = new FakeEmbeddingModel();
+        EmbeddingCache embeddingCache = new EmbeddingCache(null, 1 << 20);
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(100, Duration.ofMinutes(10));
+        QueryCachingEmbeddingModel cached = new QueryCachingEmbeddingModel(
+            new CachingEmbeddingModel(model, embeddingCache, "test-model"), model, cache, "test-model");
+
+        float[] vector = cached.embed("  什么是\t RAG？ ");
+        assertArrayEquals(model.vector("  什么是\t RAG？ "), vector, 0f, "应对原始文本生成向量, 规范化只用于缓存键");
+        assertNotNull(cached.embed("什么是 RAG?"));
+        assertEquals(List.of("  什么是\t RAG？ "), model.requestedTexts());
+
+        EmbeddingCache.Stats stats = embeddingCache.stats();
+        assertEquals(0, stats.entries(), "查询向量不应写入持久化缓存");
+        assertEquals(0, stats.hits() + stats.misses());
+    }
+
+    @Test
+    @DisplayName("条目超过存活时间后应失效")
+    public void testExpiration() {
+        AtomicLong now = new AtomicLong();
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(100, Duration.ofSeconds(60), now::get);
+        cache.put("m", "q", new float[]{1});
+
+        now.set(Duration.ofSeconds(59).toNanos());
+        assertNotNull(cache.get("m", "q"));
+        now.set(Duration.ofSeconds(60).toNanos());
+        assertNull(cache.get("m", "q"));
+        assertEquals(1, cache.stats().expirations());
+        assertEquals(0, cache.stats().entries());
+    }
+
+    @Test
+    @DisplayName("超过容量时淘汰最久未使用的条目")
+    public void testEviction() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(2, Duration.ofMinutes(10));
+        cache.put("m", "a", new float[]{1});
+        cache.put("m", "b", new float[]{2});
+        cache.get("m", "a");
+        cache.put("m", "c", new float[]{3});
+
+        assertNull(cache.get("m", "b"));
+        assertNotNull(cache.get("m", "a"));
+        assertNotNull(cache.get("m", "c"));
+        assertNull(cache.get("other", "a"), "不同模型的向量不应混用");
+        assertEquals(1, cache.stats().evictions());
+    }
+}
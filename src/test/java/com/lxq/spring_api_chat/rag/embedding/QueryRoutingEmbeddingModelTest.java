@@ -0,0 +1,41 @@
+package com.lxq.spring_api_chat.rag.embedding;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 按请求类型分流测试
+ * 索引链路经过限流装饰器, 查询直接交给假模型, 验证查询不获取索引的限流许可
+ */
+public class QueryRoutingEmbeddingModelTest {
+
+    @Test
+    @DisplayName("查询交给查询链路, 文档和批量请求经过索引的限流器")
+    public void testQueriesBypassIndexLimiter() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel();
+        RateLimiter indexLimiter = spy(RateLimiter.create(1000));
+        QueryRoutingEmbeddingModel routing = new QueryRoutingEmbeddingModel(
+            new RateLimitedEmbeddingModel(model, indexLimiter), model);
+
+        assertArrayEquals(model.vector("什么是 RAG?"), routing.embed("什么是 RAG?"), 0f);
+        verify(indexLimiter, never()).acquire();
+
+        routing.embed(List.of("chunk-1", "chunk-2"));
+        routing.embed(new Document("chunk-3"));
+        verify(indexLimiter, times(2)).acquire();
+
+        assertEquals(List.of("什么是 RAG?", "chunk-1", "chunk-2"), model.requestedTexts());
+        assertEquals(FakeEmbeddingModel.DEFAULT_DIMENSION, routing.dimensions());
+    }
+}
@@ -0,0 +1,206 @@
+package com.lxq.spring_api_chat.rag.lexical;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 词法索引测试
+ * 验证分词规则(标识符拆分、中文二元组), BM25排序, 覆盖写入与删除, 墓碑压缩后的结果不变,
+ * 以及只保存ID时的取回、保存加载和与向量存储的核对
+ */
+public class LexicalIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("标识符输出整体和各组成部分, 中文输出二元组")
+    public void testTokenizer() {
+        assertEquals(List.of("similaritysearch", "similarity", "search"),
+            LexicalTokenizer.tokenize("similaritySearch"));
+        assertEquals(List.of("rate_limit", "rate", "limit", "http429", "http", "429"),
+            LexicalTokenizer.tokenize("rate_limit, HTTP429"));
+        assertEquals(List.of("向量", "量检", "检索", "hnsw", "索"), LexicalTokenizer.tokenize("向量检索HNSW索"));
+
+        assertTrue(LexicalTokenizer.isKeywordQuery("IndexedVectorStore"));
+        assertTrue(LexicalTokenizer.isKeywordQuery("rag.vectorstore.type"));
+        assertTrue(LexicalTokenizer.isKeywordQuery("\"预写日志\""));
+        assertFalse(LexicalTokenizer.isKeywordQuery("how does the checkpoint work"));
+        assertFalse(LexicalTokenizer.isKeywordQuery("向量存储是如何持久化的"));
+    }
+
+    @Test
+    @DisplayName("精确的标识符和中文关键词应排在最前")
+    public void testBm25Ranking() {
+        LexicalIndex index = new LexicalIndex();
+        index.add(List.of(
+            chunk("a", "The store uses an HNSW graph for approximate search."),
+            chunk("b", "Call similaritySearch on the IndexedVectorStore to query chunks."),
+            chunk("c", "写入先追加到预写日志, 由后台检查点写为段文件。"),
+            chunk("d", "检索时先计算查询向量, 再在段文件中查找相似的向量。")
+        ));
+
+        assertEquals("b", index.search("similaritySearch", 3).get(0).getId());
+        assertEquals("b", index.search("IndexedVectorStore", 3).get(0).getId());
+        List<Document> hits = index.search("预写日志", 3);
+        assertEquals(List.of("c"), ids(hits));
+        assertTrue(hits.get(0).getScore() > 0);
+        assertEquals(hits.get(0).getScore(), hits.get(0).getMetadata().get("bm25Score"));
+        assertEquals("c", index.search("段文件 检查点", 3).get(0).getId());
+        assertEquals(List.of(), index.search("kubernetes", 3));
+    }
+
+    @Test
+    @DisplayName("同一ID重复写入时覆盖旧的文档块, 删除后不再命中")
+    public void testOverwriteAndDelete() {
+        LexicalIndex index = new LexicalIndex();
+        index.add(List.of(chunk("a", "alpha beta"), chunk("b", "beta gamma")));
+        index.add(List.of(chunk("a", "delta")));
+
+        assertEquals(2, index.size());
+        assertEquals(List.of("b"), ids(index.search("alpha beta", 10)));
+        assertEquals(List.of("a"), ids(index.search("delta", 10)));
+
+        index.delete(List.of("b", "missing"));
+        assertEquals(1, index.size());
+        assertEquals(List.of(), index.search("beta", 10));
+    }
+
+    @Test
+    @DisplayName("多个查询词的分数按文档累加, 过滤条件不满足的文档不占用 top-K")
+    public void testMultiTermAndFilter() {
+        LexicalIndex index = new LexicalIndex();
+        index.add(List.of(
+            chunk("a", "alpha"), chunk("b", "alpha gamma"), chunk("c", "gamma"), chunk("d", "delta gamma alpha")));
+
+        List<Document> hits = index.search("alpha gamma", 10);
+        assertEquals(4, hits.size());
+        assertEquals(List.of("b", "d"), ids(hits.subList(0, 2)));
+        double single = index.search("alpha", 10).stream()
+            .filter(document -> document.getId().equals("b")).findFirst().orElseThrow().getScore()
+            + index.search("gamma", 10).stream()
+            .filter(document -> document.getId().equals("b")).findFirst().orElseThrow().getScore();
+        assertEquals(single, hits.get(0).getScore(), 1e-5, "两个词的分数应累加");
+
+        List<Document> filtered = index.search("alpha gamma", 1, metadata -> !"b.md".equals(metadata.get("source")));
+        assertEquals(List.of("d"), ids(filtered));
+        index.delete(List.of("d"));
+        assertEquals(List.of("a"), ids(index.search("alpha", 10, metadata -> !"b.md".equals(metadata.get("source")))));
+    }
+
+    @Test
+    @DisplayName("墓碑压缩后检索结果不变, 倒排列表变小")
+    public void testCompaction() {
+        LexicalIndex index = new LexicalIndex();
+        List<Document> chunks = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            chunks.add(chunk("c" + i, "common term" + (i % 10) + " chunk" + i));
+            if (i % 3 != 0) {
+                removed.add("c" + i);
+            }
+        }
+        index.add(chunks);
+        assertEquals("c300", index.search("chunk300", 1).get(0).getId());
+        long bytesBefore = index.stats().postingBytes();
+
+        index.delete(removed);
+        assertEquals(1000, index.size());
+        assertTrue(index.stats().postingBytes() < bytesBefore, "压缩后倒排列表应变小");
+        assertEquals("c300", index.search("chunk300", 1).get(0).getId());
+        assertEquals(List.of(), index.search("chunk301", 1).stream()
+            .filter(document -> document.getId().equals("c301"))
+            .toList(), "已删除的文档块不应命中");
+
+        // 有效文档中 i % 10 == 3 的共100个, 都应排在只匹配 term 的文档之前
+        List<String> top = ids(index.search("term3", 100));
+        assertEquals(100, top.size());
+        assertTrue(top.stream().map(id -> Integer.parseInt(id.substring(1))).allMatch(i -> i % 10 == 3 && i % 3 == 0));
+    }
+
+    @Test
+    @DisplayName("只保存ID时检索结果从存储取回, 过滤掉的候选过多时加大候选数重新选择")
+    public void testLookupAndFilterRetry() {
+        Map<String, Document> store = new HashMap<>();
+        AtomicInteger lookups = new AtomicInteger();
+        LexicalIndex index = new LexicalIndex(ids -> {
+            lookups.incrementAndGet();
+            return ids.stream().map(store::get).toList();
+        }, null);
+        List<Document> chunks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // 文本越短分数越高, 来源为 keep.md 的两个文档块排在最后
+            Document chunk = new Document("c" + i, "needle" + " filler".repeat(i),
+                Map.of("source", i >= 98 ? "keep.md" : "other.md"));
+            chunks.add(chunk);
+            store.put(chunk.getId(), chunk);
+        }
+        index.add(chunks);
+
+        List<Document> top = index.search("needle", 3);
+        assertEquals(List.of("c0", "c1", "c2"), ids(top));
+        assertEquals("needle", top.get(0).getText());
+        assertEquals(1, lookups.get(), "不带过滤条件时只取回一次");
+
+        lookups.set(0);
+        List<Document> filtered = index.search("needle", 2, metadata -> "keep.md".equals(metadata.get("source")));
+        assertEquals(List.of("c98", "c99"), ids(filtered));
+        assertTrue(lookups.get() > 1, "第一轮候选都被过滤时应加大候选数");
+
+        store.remove("c0");
+        assertEquals(List.of("c1", "c2"), ids(index.search("needle", 2)), "存储中已删除的文档块应跳过");
+    }
+
+    @Test
+    @DisplayName("保存后加载的索引检索结果不变, 核对时删除多余的、补充缺少的文档块")
+    public void testSaveLoadAndSync() throws Exception {
+        Map<String, Document> store = new HashMap<>();
+        for (String[] chunk : new String[][]{{"a", "alpha beta"}, {"b", "beta gamma"}, {"c", "gamma delta"}}) {
+            store.put(chunk[0], chunk(chunk[0], chunk[1]));
+        }
+        Path file = directory.resolve("lexical-index.bin");
+        LexicalIndex index = new LexicalIndex(ids -> ids.stream().map(store::get).toList(), file);
+        index.add(new ArrayList<>(store.values()));
+        index.delete(List.of("c"));
+        store.remove("c");
+        index.close();
+        // 保存前压缩掉已删除的文档块, 倒排列表的文档数随之变化, 保存后的分数才与加载后的一致
+        List<Document> expected = index.search("beta gamma", 10);
+
+        LexicalIndex loaded = new LexicalIndex(ids -> ids.stream().map(store::get).toList(), file);
+        assertTrue(loaded.load());
+        assertEquals(2, loaded.size());
+        assertEquals(ids(expected), ids(loaded.search("beta gamma", 10)));
+        assertEquals(expected.get(0).getScore(), loaded.search("beta gamma", 10).get(0).getScore());
+        assertEquals(index.stats().termCount(), loaded.stats().termCount());
+
+        // 保存之后存储中删除了 a、新增了 d
+        store.remove("a");
+        store.put("d", chunk("d", "alpha epsilon"));
+        loaded.sync(store.keySet());
+        assertEquals(2, loaded.size());
+        assertEquals(List.of("d"), ids(loaded.search("alpha", 10)));
+        assertEquals(List.of("b"), ids(loaded.search("beta", 10)));
+
+        assertFalse(new LexicalIndex(ids -> List.of(), directory.resolve("missing.bin")).load());
+    }
+
+    private static Document chunk(String id, String text) {
+        return new Document(id, text, Map.of("source", id + ".md"));
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,80 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 加载器注册表测试
+ * 验证按扩展名选择加载器、自定义加载器覆盖内置加载器, 以及按格式统计解析指标
+ */
+public class DocumentLoaderFactoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("按扩展名(不区分大小写)选择加载器, 格式名作为文档类型")
+    public void testRegistry() {
+        DocumentLoaderFactory factory = new DocumentLoaderFactory();
+        assertEquals("PDF", factory.docType("manual.PDF"));
+        assertEquals("MARKDOWN", factory.docType("notes.md"));
+        assertEquals("DOCX", factory.docType("spec.docx"));
+        assertEquals("HTML", factory.docType("index.htm"));
+        assertEquals("PPTX", factory.docType("slides.pptx"));
+        assertEquals("UNKNOWN", factory.docType("archive.zip"));
+        assertFalse(factory.supports("README"));
+
+        factory.register(new DocumentLoader() {
+            @Override
+            public String format() {
+                return "NOTES";
+            }
+
+            @Override
+            public Set<String> extensions() {
+                return Set.of("md");
+            }
+
+            @Override
+            public Stream<Document> load(Resource resource) {
+                return Stream.of(new Document("custom"));
+            }
+        });
+        assertEquals("NOTES", factory.docType("notes.md"), "相同扩展名时应覆盖内置加载器");
+    }
+
+    @Test
+    @DisplayName("Tika加载HTML, 解析指标按格式分别累计")
+    public void testLoadAndParseStats() throws Exception {
+        Path html = Files.writeString(directory.resolve("page.html"),
+            "<html><head><title>t</title></head><body><p>HnswVectorIndex 参数说明</p></body></html>");
+        Path markdown = Files.writeString(directory.resolve("notes.md"), "# 标题\n\n正文");
+        DocumentLoaderFactory factory = new DocumentLoaderFactory();
+
+        List<Document> documents = factory.loadDocument(new FileSystemResource(html));
+        assertEquals(1, documents.size());
+        assertTrue(documents.get(0).getText().contains("HnswVectorIndex"));
+        factory.loadDocument(new FileSystemResource(markdown));
+        factory.loadDocument(new FileSystemResource(markdown));
+
+        DocumentLoaderFactory.ParseStats htmlStats = factory.parseStats().get("HTML");
+        assertEquals(1, htmlStats.files());
+        assertEquals(1, htmlStats.documents());
+        assertEquals(0, htmlStats.failures());
+        assertEquals(2, factory.parseStats().get("MARKDOWN").files());
+        assertThrows(IllegalArgumentException.class,
+            () -> factory.loadDocument(new FileSystemResource(directory.resolve("archive.zip"))));
+    }
+}
@@ -0,0 +1,74 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 提取文本缓存测试
+ * 验证完整读取后缓存生效、读取结果与原文档一致, 以及中途关闭时不留下不完整的缓存
+ */
+public class ExtractedTextCacheTest {
+
+    private static final String HASH = "ab12cd34";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("文档流被完整读取后写入缓存, 再次读取得到相同的文本和元数据")
+    public void testCacheAndOpen() {
+        ExtractedTextCache cache = new ExtractedTextCache(directory, new ObjectMapper());
+        assertNull(cache.open(HASH));
+
+        List<Document> pages = pages(50);
+        try (Stream<Document> teed = cache.cache(HASH, pages.stream())) {
+            assertEquals(50, teed.count());
+        }
+
+        List<Document> cached;
+        try (Stream<Document> stream = cache.open(HASH)) {
+            assertNotNull(stream);
+            cached = stream.toList();
+        }
+        assertEquals(pages.size(), cached.size());
+        for (int i = 0; i < pages.size(); i++) {
+            assertEquals(pages.get(i).getText(), cached.get(i).getText());
+            assertEquals(pages.get(i).getMetadata(), cached.get(i).getMetadata());
+        }
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        cache.remove(HASH);
+        assertNull(cache.open(HASH));
+    }
+
+    @Test
+    @DisplayName("没有读完就关闭的文档流不写入缓存")
+    public void testPartialReadDiscarded() {
+        ExtractedTextCache cache = new ExtractedTextCache(directory, new ObjectMapper());
+        try (Stream<Document> teed = cache.cache(HASH, pages(10).stream())) {
+            assertEquals(3, teed.limit(3).count());
+        }
+        assertNull(cache.open(HASH), "不完整的提取结果不应被缓存");
+    }
+
+    private static List<Document> pages(int count) {
+        List<Document> pages = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            pages.add(new Document("第 " + i + " 页 page text " + "x".repeat(i * 100),
+                Map.of("page_number", i, "file_name", "manual.pdf")));
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,98 @@
+package com.lxq.spring_api_chat.rag.loader;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 逐页读取PDF测试
+ * 验证页面按顺序逐个提取、空白页被跳过、页码元数据与 PagePdfDocumentReader 一致
+ */
+public class PdfPageReaderTest {
+
+    private static final int PAGES = 30;
+
+    /**
+     * 没有文本的页码
+     */
+    private static final int BLANK_PAGE = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("逐页提取文本, 跳过空白页, 页码从1开始")
+    public void testNextPage() throws Exception {
+        FileSystemResource resource = new FileSystemResource(createPdf());
+        try (PdfPageReader reader = new PdfPageReader(resource, ExtractedTextFormatter.defaults())) {
+            assertEquals(PAGES, reader.pageCount());
+
+            Document first = reader.nextPage();
+            assertTrue(first.getText().contains("page 1 content"));
+            assertEquals(1, first.getMetadata().get(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER));
+            assertEquals("manual.pdf", first.getMetadata().get(PagePdfDocumentReader.METADATA_FILE_NAME));
+
+            int read = 1;
+            Document page;
+            while ((page = reader.nextPage()) != null) {
+                read++;
+                int pageNumber = (int) page.getMetadata().get(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER);
+                assertNotEquals(BLANK_PAGE, pageNumber, "空白页应被跳过");
+                assertTrue(page.getText().contains("page " + pageNumber + " content"));
+            }
+            assertEquals(PAGES - 1, read);
+        }
+    }
+
+    @Test
+    @DisplayName("DocumentLoaderFactory 的流按页惰性读取, 结果与一次加载相同")
+    public void testStreamDocument() throws Exception {
+        FileSystemResource resource = new FileSystemResource(createPdf());
+        DocumentLoaderFactory factory = new DocumentLoaderFactory();
+
+        try (Stream<Document> pages = factory.streamDocument(resource)) {
+            List<Document> firstTwo = pages.limit(2).toList();
+            assertEquals(2, firstTwo.size());
+            assertEquals(2, firstTwo.get(1).getMetadata().get(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER));
+        }
+        assertEquals(PAGES - 1, factory.loadDocument(resource).size());
+    }
+
+    private Path createPdf() throws Exception {
+        Path file = directory.resolve("manual.pdf");
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int i = 1; i <= PAGES; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                if (i == BLANK_PAGE) {
+                    continue;
+                }
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("page " + i + " content");
+                    content.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+}
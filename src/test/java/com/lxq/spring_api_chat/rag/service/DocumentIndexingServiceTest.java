@@ -0,0 +1,182 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.RateLimiter;
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import com.lxq.spring_api_chat.rag.dto.IndexResponse;
+import com.lxq.spring_api_chat.rag.embedding.RateLimitedEmbeddingModel;
+import com.lxq.spring_api_chat.rag.lexical.LexicalIndex;
+import com.lxq.spring_api_chat.rag.loader.DocumentLoader;
+import com.lxq.spring_api_chat.rag.loader.DocumentLoaderFactory;
+import com.lxq.spring_api_chat.rag.loader.ExtractedTextCache;
+import com.lxq.spring_api_chat.rag.store.FlatVectorIndex;
+import com.lxq.spring_api_chat.rag.store.IndexedVectorStore;
+import com.lxq.spring_api_chat.rag.store.MergePolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 文档索引服务测试
+ * 使用假Embedding模型(经过限流装饰器)和段式向量存储, 验证解析和向量化在各自的线程池中执行,
+ * 每批文档块一次Embedding请求、一次向量存储写入, 每次请求获取一次限流许可, 以及线程池在多次索引之间复用、关闭时停止
+ */
+public class DocumentIndexingServiceTest {
+
+    private static final int PARSE_THREADS = 2;
+    private static final int EMBED_THREADS = 2;
+    private static final int BATCH_SIZE = 4;
+    private static final int FILE_COUNT = 10;
+
+    @TempDir
+    Path directory;
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+
+    /**
+     * Guava的限流器不能继承, 用 spy 记录获取许可的次数; 速率足够高, 不影响测试耗时
+     */
+    private final RateLimiter rateLimiter = spy(RateLimiter.create(1000));
+
+    private final Set<Thread> parseThreads = Collections.synchronizedSet(
+        Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final Set<Thread> embedThreads = Collections.synchronizedSet(
+        Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+    private Path documents;
+    private IndexedVectorStore vectorStore;
+    private DocumentIndexingService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        documents = Files.createDirectories(directory.resolve("docs"));
+        for (int i = 0; i < FILE_COUNT; i++) {
+            Files.writeString(documents.resolve("doc" + i + ".md"), "document " + i);
+        }
+
+        // 记录每次写入的线程和文档块数
+        vectorStore = new IndexedVectorStore(
+            new RateLimitedEmbeddingModel(embeddingModel, rateLimiter),
+            directory.resolve("store"), FlatVectorIndex::new, false, MergePolicy.DEFAULT) {
+            @Override
+            public void add(List<Document> chunks) {
+                embedThreads.add(Thread.currentThread());
+                batches.add(chunks.size());
+                super.add(chunks);
+            }
+        };
+        vectorStore.open();
+
+        // 记录加载文档的线程
+        DocumentLoaderFactory loaderFactory = new DocumentLoaderFactory();
+        loaderFactory.register(new DocumentLoader() {
+            @Override
+            public String format() {
+                return "MARKDOWN";
+            }
+
+            @Override
+            public Set<String> extensions() {
+                return Set.of("md");
+            }
+
+            @Override
+            public Stream<Document> load(Resource resource) {
+                parseThreads.add(Thread.currentThread());
+                try {
+                    return Stream.of(new Document(resource.getContentAsString(StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        service = new DocumentIndexingService(vectorStore, new TokenTextSplitter(), loaderFactory,
+            new IndexManifest(directory.resolve("manifest.json"), new ObjectMapper()),
+            beans.getBeanProvider(LexicalIndex.class), beans.getBeanProvider(ExtractedTextCache.class));
+        ReflectionTestUtils.setField(service, "parseThreads", PARSE_THREADS);
+        ReflectionTestUtils.setField(service, "embedThreads", EMBED_THREADS);
+        ReflectionTestUtils.setField(service, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(service, "batchMaxTokens", 50_000);
+        ReflectionTestUtils.setField(service, "batchMaxWaitMs", 200L);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        service.close();
+        vectorStore.close();
+    }
+
+    @Test
+    @DisplayName("解析和向量化在各自的线程池中执行, 每批一次Embedding请求和一次写入, 每次请求获取一次限流许可")
+    public void testPipeline() {
+        List<IndexResponse> results = service.indexDirectory(documents);
+        assertEquals(FILE_COUNT, results.size());
+        assertTrue(results.stream().allMatch(IndexResponse::success));
+
+        assertFalse(parseThreads.isEmpty());
+        assertTrue(parseThreads.stream().allMatch(thread -> thread.getName().startsWith("index-parse-")),
+            "文档应在解析线程中加载: " + parseThreads);
+        assertTrue(embedThreads.stream().allMatch(thread -> thread.getName().startsWith("index-embed-")),
+            "向量化和写入应在Embedding线程中执行: " + embedThreads);
+
+        assertEquals(FILE_COUNT, batches.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batches.stream().allMatch(size -> size <= BATCH_SIZE));
+        assertTrue(batches.size() < FILE_COUNT, "多个文档的文档块应合并为一批: " + batches);
+        assertEquals(batches.size(), embeddingModel.calls(), "每批应只有一次Embedding请求");
+        assertEquals(FILE_COUNT, embeddingModel.requestedTexts().size());
+        verify(rateLimiter, times(batches.size())).acquire();
+    }
+
+    @Test
+    @DisplayName("多次索引共用同一组线程, 关闭服务后线程停止且不能再索引")
+    public void testPoolsReusedAndClosed() throws Exception {
+        service.indexDirectory(documents);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            Files.writeString(documents.resolve("doc" + i + ".md"), "document " + i + " changed");
+        }
+        service.syncFiles(List.of(documents.resolve("doc0.md"), documents.resolve("doc1.md")), List.of());
+        List<IndexResponse> results = service.indexDirectory(documents);
+        assertEquals(FILE_COUNT - 2, results.stream().filter(response -> !response.skipped()).count());
+
+        assertTrue(parseThreads.size() <= PARSE_THREADS, "解析线程应在多次索引之间复用: " + parseThreads);
+        assertTrue(embedThreads.size() <= EMBED_THREADS, "Embedding线程应在多次索引之间复用: " + embedThreads);
+
+        service.close();
+        for (Thread thread : List.copyOf(embedThreads)) {
+            thread.join(5_000);
+            assertFalse(thread.isAlive(), "关闭服务后线程应停止");
+        }
+        for (Thread thread : List.copyOf(parseThreads)) {
+            thread.join(5_000);
+            assertFalse(thread.isAlive(), "关闭服务后线程应停止");
+        }
+        assertThrows(IllegalStateException.class, () -> service.indexDirectory(documents));
+    }
+}
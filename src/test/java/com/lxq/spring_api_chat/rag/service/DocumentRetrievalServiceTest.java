@@ -0,0 +1,136 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import com.lxq.spring_api_chat.rag.lexical.LexicalIndex;
+import com.lxq.spring_api_chat.rag.store.FlatVectorIndex;
+import com.lxq.spring_api_chat.rag.store.IndexedVectorStore;
+import com.lxq.spring_api_chat.rag.store.MergePolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文档检索服务测试
+ * 使用假Embedding模型和段式向量存储, 验证RRF融合的排序与分数、关键词查询不调用Embedding模型, 以及两路检索的元数据过滤
+ */
+public class DocumentRetrievalServiceTest {
+
+    private static final int RRF_K = 60;
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+    private LexicalIndex lexicalIndex;
+
+    @TempDir
+    Path directory;
+
+    private IndexedVectorStore vectorStore;
+    private DocumentRetrievalService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        vectorStore = new IndexedVectorStore(embeddingModel, directory, FlatVectorIndex::new, false,
+            MergePolicy.DEFAULT);
+        vectorStore.open();
+        List<Document> chunks = List.of(
+            chunk("a", "a.md", "Call similaritySearch on the IndexedVectorStore to query chunks."),
+            chunk("b", "a.md", "An HNSW graph gives approximate search."),
+            chunk("c", "b.md", "IndexedVectorStore writes segments at every checkpoint."),
+            chunk("d", "b.md", "Segments are merged in the background.")
+        );
+        vectorStore.add(chunks);
+        // 词法索引只保存ID, 检索结果从向量存储取回
+        lexicalIndex = new LexicalIndex(vectorStore::get, null);
+        lexicalIndex.add(chunks);
+
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("lexicalIndex", lexicalIndex));
+        service = new DocumentRetrievalService(vectorStore, beans.getBeanProvider(LexicalIndex.class));
+        ReflectionTestUtils.setField(service, "mode", "hybrid");
+        ReflectionTestUtils.setField(service, "rrfK", RRF_K);
+        ReflectionTestUtils.setField(service, "hybridCandidates", 20);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        vectorStore.close();
+    }
+
+    @Test
+    @DisplayName("RRF按排名倒数累加排序, 融合分数作为score, 各路原始分数保留在元数据中")
+    public void testFuseOrdering() {
+        Map<String, List<Document>> rankings = new LinkedHashMap<>();
+        rankings.put(DocumentRetrievalService.VECTOR_SCORE,
+            List.of(scored("a", 0.9), scored("b", 0.8), scored("c", 0.7)));
+        rankings.put(DocumentRetrievalService.BM25_SCORE, List.of(scored("c", 7.5), scored("a", 3.0)));
+
+        List<Document> fused = service.fuse(rankings, 3);
+        assertEquals(List.of("a", "c", "b"), ids(fused));
+        assertEquals(1.0 / (RRF_K + 1) + 1.0 / (RRF_K + 2), fused.get(0).getScore(), 1e-12);
+        assertEquals(1.0 / (RRF_K + 3) + 1.0 / (RRF_K + 1), fused.get(1).getScore(), 1e-12);
+        assertEquals(1.0 / (RRF_K + 2), fused.get(2).getScore(), 1e-12);
+
+        Map<String, Object> metadata = fused.get(1).getMetadata();
+        assertEquals(0.7, metadata.get(DocumentRetrievalService.VECTOR_SCORE));
+        assertEquals(7.5, metadata.get(DocumentRetrievalService.BM25_SCORE));
+        assertEquals(fused.get(1).getScore(), metadata.get(DocumentRetrievalService.RRF_SCORE));
+        assertFalse(fused.get(2).getMetadata().containsKey(DocumentRetrievalService.BM25_SCORE));
+
+        assertEquals(List.of("a", "c"), ids(service.fuse(rankings, 2)));
+    }
+
+    @Test
+    @DisplayName("关键词查询词法检索有结果时不调用Embedding模型, 自然语言查询两路融合")
+    public void testKeywordQuerySkipsEmbedding() {
+        int calls = embeddingModel.calls();
+        List<Document> keyword = service.search("IndexedVectorStore", 5, 0.0);
+        assertEquals(calls, embeddingModel.calls(), "关键词查询不应请求Embedding模型");
+        assertEquals(List.of("a", "c"), ids(keyword).stream().sorted().toList());
+        assertEquals(1.0 / (RRF_K + 1), keyword.get(0).getScore(), 1e-12, "关键词查询同样返回RRF分数");
+        assertNotNull(keyword.get(0).getMetadata().get(DocumentRetrievalService.BM25_SCORE));
+
+        List<Document> hybrid = service.search("how are segments merged", 5, 0.0);
+        assertEquals(calls + 1, embeddingModel.calls());
+        assertEquals(4, hybrid.size());
+        for (int i = 1; i < hybrid.size(); i++) {
+            assertTrue(hybrid.get(i - 1).getScore() >= hybrid.get(i).getScore());
+        }
+        Document merged = hybrid.stream().filter(document -> document.getId().equals("d")).findFirst().orElseThrow();
+        assertNotNull(merged.getMetadata().get(DocumentRetrievalService.VECTOR_SCORE), "两路都命中的文档保留两路的分数");
+        assertNotNull(merged.getMetadata().get(DocumentRetrievalService.BM25_SCORE));
+    }
+
+    @Test
+    @DisplayName("过滤条件同时作用于向量和词法两路检索")
+    public void testFilter() {
+        List<Document> keyword = service.search("IndexedVectorStore", 5, 0.0, "source == 'b.md'");
+        assertEquals(List.of("c"), ids(keyword));
+
+        List<Document> hybrid = service.search("how are segments merged", 5, 0.0, "source == 'a.md'");
+        assertEquals(List.of("a", "b"), ids(hybrid).stream().sorted().toList());
+
+        assertThrows(IllegalArgumentException.class, () -> service.search("segments", 5, 0.0, "source =="));
+    }
+
+    private static Document chunk(String id, String source, String text) {
+        return new Document(id, text, Map.of("source", source));
+    }
+
+    private static Document scored(String id, double score) {
+        return Document.builder().id(id).text(id).metadata(Map.of("source", id + ".md")).score(score).build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,87 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文档目录监听测试
+ * 处理器只记录每一批变化, 不执行索引
+ */
+public class DocumentWatcherTest {
+
+    private static final Duration DEBOUNCE = Duration.ofMillis(300);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("连续修改同一文件合并为一次, 删除按删除处理")
+    public void testDebounceAndDelete() throws Exception {
+        BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+        try (DocumentWatcher watcher = newWatcher(batches)) {
+            watcher.start(false);
+            Path file = directory.resolve("a.md");
+            for (int i = 0; i < 5; i++) {
+                Files.writeString(file, "版本 " + i);
+                Thread.sleep(30);
+            }
+
+            Batch batch = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            assertEquals(List.of(file), batch.changed());
+            assertTrue(batch.removed().isEmpty());
+            assertNull(batches.poll(DEBOUNCE.toMillis() * 2, TimeUnit.MILLISECONDS), "连续的修改应只处理一次");
+
+            Files.delete(file);
+            batch = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            assertTrue(batch.changed().isEmpty());
+            assertEquals(List.of(file), batch.removed());
+        }
+    }
+
+    @Test
+    @DisplayName("新建子目录中的文件被同步, 启动时完整同步一次")
+    public void testSubdirectoryAndInitialScan() throws Exception {
+        Path existing = Files.writeString(directory.resolve("old.md"), "启动前已存在");
+        BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+        try (DocumentWatcher watcher = newWatcher(batches)) {
+            watcher.start(true);
+            Batch initial = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(initial);
+            assertEquals(List.of(existing), initial.changed());
+            assertEquals(List.of(directory.toAbsolutePath().normalize()), initial.removed());
+
+            Path sub = Files.createDirectories(directory.resolve("sub"));
+            Path first = Files.writeString(sub.resolve("b.md"), "b");
+            Batch batch = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            assertEquals(List.of(first), batch.changed());
+
+            // 新目录已注册监听, 后续写入同样被同步
+            Path second = Files.writeString(sub.resolve("c.md"), "c");
+            batch = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            assertEquals(List.of(second), batch.changed());
+        }
+    }
+
+    private DocumentWatcher newWatcher(BlockingQueue<Batch> batches) throws Exception {
+        return new DocumentWatcher(directory, (changed, removed) -> batches.add(new Batch(changed, removed)),
+            DEBOUNCE);
+    }
+
+    private record Batch(List<Path> changed, List<Path> removed) {
+    }
+}
@@ -0,0 +1,101 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 跨文档Embedding批处理测试
+ * 下游用记录批次的函数代替向量存储, 不依赖Embedding API
+ */
+public class EmbeddingBatcherTest {
+
+    @Test
+    @DisplayName("多个小文档应合并为一批")
+    public void testMergeSmallDocuments() throws Exception {
+        List<List<Document>> batches = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (EmbeddingBatcher batcher = new EmbeddingBatcher(batches::add, 10, 100_000, Duration.ofSeconds(10),
+            executor)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(batcher.submit(chunks("doc" + i, 1)));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2, batches.size(), "20个单块文档应合并为2批");
+        assertEquals(10, batches.get(0).size());
+    }
+
+    @Test
+    @DisplayName("跨批次的文档应在全部批次完成后才完成")
+    public void testDocumentSpanningBatches() throws Exception {
+        List<List<Document>> batches = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (EmbeddingBatcher batcher = new EmbeddingBatcher(batches::add, 4, 100_000, Duration.ofMillis(50),
+            executor)) {
+            CompletableFuture<Void> large = batcher.submit(chunks("large", 10));
+            // 最后2个文档块在等待超时后发送
+            large.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(3, batches.size());
+        assertEquals(10, batches.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    @DisplayName("Token数达到上限时应提前发送")
+    public void testTokenLimit() throws Exception {
+        List<List<Document>> batches = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (EmbeddingBatcher batcher = new EmbeddingBatcher(batches::add, 100, 10, Duration.ofMillis(50),
+            executor)) {
+            // 每个文档块6个中文字符, 约6个Token
+            batcher.submit(List.of(new Document("一二三四五六"), new Document("一二三四五六"))).get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, batches.size());
+    }
+
+    @Test
+    @DisplayName("批次失败时其中的文档都应失败")
+    public void testFailurePropagation() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (EmbeddingBatcher batcher = new EmbeddingBatcher(batch -> {
+            throw new IllegalStateException("Embedding API不可用");
+        }, 10, 100_000, Duration.ofMillis(20), executor)) {
+            CompletableFuture<Void> first = batcher.submit(chunks("a", 1));
+            CompletableFuture<Void> second = batcher.submit(chunks("b", 1));
+            assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<Document> chunks(String name, int count) {
+        List<Document> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            chunks.add(new Document(name + " chunk " + i));
+        }
+        return chunks;
+    }
+}
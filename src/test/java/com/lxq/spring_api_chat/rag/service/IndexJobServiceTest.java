@@ -0,0 +1,150 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lxq.spring_api_chat.rag.dto.IndexJob;
+import com.lxq.spring_api_chat.rag.dto.IndexJobEvent;
+import com.lxq.spring_api_chat.rag.dto.IndexResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 后台索引任务测试
+ * 使用假的目录索引(每个文件直接返回成功), 不调用Embedding模型
+ */
+public class IndexJobServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("任务在后台完成, 进度事件按文件推送后以 done 结束")
+    public void testSubmitAndEvents() throws Exception {
+        Path docs = Files.createDirectories(directory.resolve("docs"));
+        try (IndexJobService jobs = newService(fakeIndexer(3, null), 1, 4)) {
+            IndexJob submitted = jobs.submit(docs);
+
+            List<IndexJobEvent> events = jobs.events(submitted.id()).collectList().block(Duration.ofSeconds(10));
+            assertNotNull(events);
+            assertEquals(4, events.size());
+            assertEquals("file", events.get(0).type());
+            assertEquals("a0.md", events.get(0).file().filename());
+            IndexJobEvent done = events.get(3);
+            assertEquals("done", done.type());
+            assertEquals(IndexJob.Status.COMPLETED, done.job().status());
+            assertEquals(3, done.job().fileCount());
+            assertEquals(3, done.job().completedFiles());
+
+            // 已结束的任务, 新的订阅者仍能收到全部事件
+            assertEquals(4, jobs.events(submitted.id()).collectList().block(Duration.ofSeconds(10)).size());
+        }
+    }
+
+    @Test
+    @DisplayName("取消执行中的任务, 同一目录的重复提交返回同一任务")
+    public void testCancel() throws Exception {
+        Path docs = Files.createDirectories(directory.resolve("docs"));
+        CountDownLatch running = new CountDownLatch(1);
+        try (IndexJobService jobs = newService(fakeIndexer(Integer.MAX_VALUE, running), 1, 4)) {
+            IndexJob submitted = jobs.submit(docs);
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            assertEquals(submitted.id(), jobs.submit(docs).id(), "未结束的任务应被复用");
+
+            jobs.cancel(submitted.id());
+            IndexJobEvent done = jobs.events(submitted.id()).last().block(Duration.ofSeconds(10));
+            assertEquals(IndexJob.Status.CANCELLED, done.job().status());
+            assertEquals(IndexJob.Status.CANCELLED, jobs.get(submitted.id()).status());
+        }
+    }
+
+    @Test
+    @DisplayName("队列已满时拒绝提交, 排队中的任务可以直接取消")
+    public void testQueueFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        try (IndexJobService jobs = newService(fakeIndexer(Integer.MAX_VALUE, running), 1, 1)) {
+            IndexJob first = jobs.submit(Files.createDirectories(directory.resolve("a")));
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            IndexJob queued = jobs.submit(Files.createDirectories(directory.resolve("b")));
+            assertEquals(IndexJob.Status.QUEUED, queued.status());
+            assertThrows(RejectedExecutionException.class,
+                () -> jobs.submit(Files.createDirectories(directory.resolve("c"))));
+
+            assertEquals(IndexJob.Status.CANCELLED, jobs.cancel(queued.id()).status());
+            jobs.cancel(first.id());
+        }
+    }
+
+    @Test
+    @DisplayName("重启后从任务记录恢复未完成的任务")
+    public void testResume() throws Exception {
+        Path docs = Files.createDirectories(directory.resolve("docs"));
+        Path records = directory.resolve("jobs");
+        Files.createDirectories(records);
+        IndexJob interrupted = new IndexJob("job-1", IndexManifest.key(docs), IndexJob.Status.RUNNING, 5, 2, 0,
+            List.of(), 1, null, System.currentTimeMillis(), System.currentTimeMillis(), null);
+        new ObjectMapper().writeValue(records.resolve("job-1.json").toFile(), interrupted);
+
+        try (IndexJobService jobs = new IndexJobService(records, new ObjectMapper(), fakeIndexer(2, null), 1, 4,
+            Duration.ofDays(7))) {
+            assertEquals(1, jobs.resume());
+            IndexJobEvent done = jobs.events("job-1").last().block(Duration.ofSeconds(10));
+            assertEquals(IndexJob.Status.COMPLETED, done.job().status());
+            assertEquals(2, done.job().attempts());
+            assertEquals(2, done.job().completedFiles());
+        }
+
+        // 结束状态已写入记录, 再次启动时不再执行
+        try (IndexJobService jobs = new IndexJobService(records, new ObjectMapper(), fakeIndexer(2, null), 1, 4,
+            Duration.ofDays(7))) {
+            assertEquals(0, jobs.resume());
+            assertEquals(IndexJob.Status.COMPLETED, jobs.get("job-1").status());
+            assertEquals(2, jobs.get("job-1").results().size());
+        }
+    }
+
+    private IndexJobService newService(IndexJobService.DirectoryIndexer indexer, int maxConcurrent,
+                                       int queueCapacity) throws Exception {
+        return new IndexJobService(directory.resolve("jobs"), new ObjectMapper(), indexer, maxConcurrent,
+            queueCapacity, Duration.ofDays(7));
+    }
+
+    /**
+     * 逐个"索引" fileCount 个文件, 直到取消
+     *
+     * @param running 开始后计数, 可以为null
+     */
+    private static IndexJobService.DirectoryIndexer fakeIndexer(int fileCount, CountDownLatch running) {
+        return (dir, progress, cancelled) -> {
+            progress.started(fileCount);
+            if (running != null) {
+                running.countDown();
+            }
+            List<IndexResponse> results = new ArrayList<>();
+            for (int i = 0; i < fileCount && !cancelled.getAsBoolean(); i++) {
+                IndexResponse response = IndexResponse.success("a" + i + ".md", 1, 1, 0);
+                results.add(response);
+                progress.indexed(response);
+                if (running != null) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            return results;
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.lxq.spring_api_chat.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文件指纹清单测试
+ */
+public class IndexManifestTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("内容哈希只随内容变化")
+    public void testHash() throws Exception {
+        Path file = directory.resolve("a.md");
+        Files.writeString(file, "# 标题\n内容");
+        String first = IndexManifest.hash(file);
+
+        Files.writeString(file, "# 标题\n内容");
+        assertEquals(first, IndexManifest.hash(file), "内容相同时哈希应相同");
+
+        Files.writeString(file, "# 标题\n新内容");
+        assertNotEquals(first, IndexManifest.hash(file));
+    }
+
+    @Test
+    @DisplayName("文档块ID应由路径、内容哈希和序号唯一确定")
+    public void testChunkId() {
+        assertEquals(IndexManifest.chunkId("/docs/a.md", "h1", 0), IndexManifest.chunkId("/docs/a.md", "h1", 0));
+        assertNotEquals(IndexManifest.chunkId("/docs/a.md", "h1", 0), IndexManifest.chunkId("/docs/a.md", "h1", 1));
+        assertNotEquals(IndexManifest.chunkId("/docs/a.md", "h1", 0), IndexManifest.chunkId("/docs/a.md", "h2", 0));
+    }
+
+    @Test
+    @DisplayName("只返回位于指定目录下的条目")
+    public void testEntriesUnder() throws Exception {
+        IndexManifest manifest = new IndexManifest(directory.resolve("manifest.json"), new ObjectMapper());
+        Path docs = directory.resolve("docs");
+        IndexManifest.Entry entry = new IndexManifest.Entry(1, 1, "h", List.of("id"));
+        manifest.put(IndexManifest.key(docs.resolve("a.md")), entry);
+        manifest.put(IndexManifest.key(docs.resolve("sub/b.md")), entry);
+        manifest.put(IndexManifest.key(directory.resolve("docs2/c.md")), entry);
+
+        Map<String, IndexManifest.Entry> under = manifest.entriesUnder(docs);
+        assertEquals(2, under.size(), "前缀相同的兄弟目录不应被包含");
+        assertTrue(entry.sameStat(1, 1));
+        assertFalse(entry.sameStat(1, 2));
+    }
+}
@@ -0,0 +1,146 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HNSW索引测试
+ * 以 FlatVectorIndex 的精确结果为基准, 验证召回率和过滤条件
+ * 不依赖Spring容器和Embedding API
+ */
+public class HnswVectorIndexTest {
+
+    private static final int DIMENSION = 64;
+    private static final int SIZE = 5000;
+    private static final int QUERIES = 100;
+    private static final int TOP_K = 10;
+
+    @Test
+    @DisplayName("HNSW召回率应接近暴力检索")
+    public void testRecallAgainstFlatIndex() {
+        Random random = new Random(7);
+        float[][] centers = randomCenters(random, 50);
+
+        ListVectorStorage storage = new ListVectorStorage();
+        FlatVectorIndex flat = new FlatVectorIndex(storage);
+        HnswVectorIndex hnsw = new HnswVectorIndex(storage, 16, 100, 64);
+        for (int i = 0; i < SIZE; i++) {
+            storage.vectors.add(sample(random, centers));
+            flat.add(i);
+            hnsw.add(i);
+        }
+
+        double recall = 0;
+        long flatNanos = 0;
+        long hnswNanos = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = sample(random, centers);
+
+            long start = System.nanoTime();
+            List<ScoredOrdinal> expected = flat.search(query, TOP_K, null);
+            flatNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<ScoredOrdinal> actual = hnsw.search(query, TOP_K, null);
+            hnswNanos += System.nanoTime() - start;
+
+            Set<Integer> truth = new HashSet<>();
+            expected.forEach(hit -> truth.add(hit.ordinal()));
+            recall += actual.stream().filter(hit -> truth.contains(hit.ordinal())).count() / (double) TOP_K;
+        }
+        recall /= QUERIES;
+
+        System.out.printf("recall@%d=%.3f, flat=%.3fms/query, hnsw=%.3fms/query%n",
+            TOP_K, recall, flatNanos / 1e6 / QUERIES, hnswNanos / 1e6 / QUERIES);
+        assertTrue(recall >= 0.95, "召回率应不低于0.95, 实际: " + recall);
+    }
+
+    @Test
+    @DisplayName("过滤条件应排除被屏蔽的序号")
+    public void testSearchWithFilter() {
+        Random random = new Random(11);
+        float[][] centers = randomCenters(random, 10);
+        ListVectorStorage storage = new ListVectorStorage();
+        HnswVectorIndex hnsw = new HnswVectorIndex(storage, 8, 50, 32);
+        for (int i = 0; i < 1000; i++) {
+            storage.vectors.add(sample(random, centers));
+            hnsw.add(i);
+        }
+
+        // 只允许偶数序号, 且查询向量本身(序号0)应排在第一位
+        List<ScoredOrdinal> hits = hnsw.search(storage.vector(0), TOP_K, ordinal -> ordinal % 2 == 0);
+
+        assertEquals(TOP_K, hits.size());
+        assertEquals(0, hits.get(0).ordinal());
+        assertTrue(hits.stream().allMatch(hit -> hit.ordinal() % 2 == 0), "结果中不应包含被过滤的序号");
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).score() >= hits.get(i).score(), "结果应按相似度降序排列");
+        }
+    }
+
+    @Test
+    @DisplayName("序号不连续时应拒绝添加")
+    public void testRejectNonSequentialOrdinal() {
+        ListVectorStorage storage = new ListVectorStorage();
+        storage.vectors.add(VectorMath.normalize(new float[]{1, 0}));
+        storage.vectors.add(VectorMath.normalize(new float[]{0, 1}));
+        HnswVectorIndex hnsw = new HnswVectorIndex(storage, 16, 100, 64);
+        hnsw.add(0);
+        assertThrows(IllegalArgumentException.class, () -> hnsw.add(2));
+    }
+
+    /**
+     * 基于List的简单向量数据源
+     */
+    private static class ListVectorStorage implements VectorStorage {
+
+        private final List<float[]> vectors = new ArrayList<>();
+
+        @Override
+        public int size() {
+            return vectors.size();
+        }
+
+        @Override
+        public int dimension() {
+            return vectors.isEmpty() ? 0 : vectors.get(0).length;
+        }
+
+        @Override
+        public float[] vector(int ordinal) {
+            return vectors.get(ordinal);
+        }
+
+        @Override
+        public float dot(float[] query, int ordinal) {
+            return VectorMath.dot(query, vectors.get(ordinal));
+        }
+    }
+
+    private static float[][] randomCenters(Random random, int count) {
+        float[][] centers = new float[count][DIMENSION];
+        for (float[] center : centers) {
+            for (int i = 0; i < DIMENSION; i++) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        return centers;
+    }
+
+    private static float[] sample(Random random, float[][] centers) {
+        float[] center = centers[random.nextInt(centers.length)];
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = center[i] + (float) random.nextGaussian() * 0.6f;
+        }
+        return VectorMath.normalize(vector);
+    }
+}
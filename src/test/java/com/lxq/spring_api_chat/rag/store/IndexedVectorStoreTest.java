@@ -0,0 +1,258 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 段式向量存储测试
+ * 验证检查点生成不可变段、墓碑的持久化、段合并, 未检查点的写入从预写日志恢复, 检索读取的快照隔离,
+ * 按元数据位图预过滤的检索和删除, 以及按ID读取文档块
+ */
+public class IndexedVectorStoreTest {
+
+    private static final int DIMENSION = 8;
+
+    private final EmbeddingModel embeddingModel = new FakeEmbeddingModel(DIMENSION);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("每次检查点生成一个新段, 删除只设置墓碑并在重新打开后保持")
+    public void testSegmentsAndTombstones() throws Exception {
+        try (IndexedVectorStore store = openStore(MergePolicy.DEFAULT)) {
+            store.add(List.of(chunk("a1", "a.md"), chunk("a2", "a.md")));
+            assertTrue(store.checkpoint());
+            store.add(List.of(chunk("b1", "b.md")));
+            assertTrue(store.checkpoint());
+            assertFalse(store.checkpoint(), "没有新的写入时应跳过检查点");
+
+            store.delete(List.of("a1"));
+            assertEquals(List.of("a2", "b1"), ids(store.similaritySearch(query("a1", 10))));
+            assertEquals(Map.of("a.md", 1, "b.md", 1), store.stats().sourceCounts());
+        }
+
+        try (IndexedVectorStore store = openStore(MergePolicy.DEFAULT)) {
+            assertEquals(2, store.size());
+            assertEquals("b1", store.similaritySearch(query("b1", 1)).get(0).getId());
+            assertFalse(ids(store.similaritySearch(query("a1", 10))).contains("a1"), "墓碑应随提交点持久化");
+        }
+    }
+
+    @Test
+    @DisplayName("按ID读取已刷盘段和追加段中的文档块, 已删除或不存在的ID返回null, 不等待写锁")
+    public void testGetByIds() throws Exception {
+        try (IndexedVectorStore store = openStore(MergePolicy.DEFAULT)) {
+            store.add(List.of(chunk("a1", "a.md"), chunk("a2", "a.md")));
+            store.checkpoint();
+            store.add(List.of(chunk("b1", "b.md")));
+            store.delete(List.of("a2"));
+
+            List<Document> documents = store.get(List.of("b1", "a2", "missing", "a1"));
+            assertEquals("b1", documents.get(0).getId());
+            assertEquals("b.md", documents.get(0).getMetadata().get(ChunkStorage.SOURCE_KEY));
+            assertNull(documents.get(1));
+            assertNull(documents.get(2));
+            assertEquals("a1", documents.get(3).getText());
+            assertEquals(Set.of("a1", "b1"), Set.copyOf(store.ids()));
+
+            // 按ID读取只读取快照, 写入方持有写锁(如等待预写日志刷盘)时不被阻塞
+            ReentrantLock writeLock = (ReentrantLock) ReflectionTestUtils.getField(store, "writeLock");
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread writer = new Thread(() -> {
+                writeLock.lock();
+                try {
+                    locked.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    writeLock.unlock();
+                }
+            });
+            writer.start();
+            try {
+                locked.await();
+                List<Document> unblocked = CompletableFuture.supplyAsync(() -> store.get(List.of("b1")))
+                    .get(5, TimeUnit.SECONDS);
+                assertEquals("b1", unblocked.get(0).getText());
+                assertEquals(2, CompletableFuture.supplyAsync(store::ids).get(5, TimeUnit.SECONDS).size());
+            } finally {
+                release.countDown();
+                writer.join();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("合并后只保留有效记录, 被合并的段文件应被删除")
+    public void testMerge() throws Exception {
+        try (IndexedVectorStore store = openStore(new MergePolicy(2, 100, 0.3))) {
+            store.add(List.of(chunk("a1", "a.md"), chunk("a2", "a.md")));
+            store.checkpoint();
+            store.add(List.of(chunk("b1", "b.md"), chunk("a2", "a.md")));
+            store.checkpoint();
+            store.delete(List.of("b1"));
+
+            assertTrue(store.merge());
+            assertFalse(store.merge(), "只剩一个段时不应继续合并");
+            assertEquals(2, store.size());
+            assertEquals("a2", store.similaritySearch(query("a2", 1)).get(0).getId());
+            assertEquals(1, SegmentFiles.segmentGenerations(directory).size(), "被合并的段文件应被删除");
+        }
+
+        try (IndexedVectorStore store = openStore(MergePolicy.DEFAULT)) {
+            assertEquals(2, store.size());
+            assertEquals(List.of("a1", "a2"), ids(store.similaritySearch(query("a1", 10))));
+        }
+    }
+
+    @Test
+    @DisplayName("未执行检查点的写入和删除应在重新打开时从预写日志恢复")
+    public void testRecoverFromWal() throws Exception {
+        IndexedVectorStore crashed = openStore(MergePolicy.DEFAULT);
+        crashed.add(List.of(chunk("a1", "a.md"), chunk("a2", "a.md")));
+        crashed.checkpoint();
+        crashed.add(List.of(chunk("b1", "b.md")));
+        crashed.delete(List.of("a1"));
+        // 不调用 close(), 模拟进程崩溃
+
+        try (IndexedVectorStore store = openStore(MergePolicy.DEFAULT)) {
+            assertEquals(2, store.size());
+            assertEquals(List.of("a2", "b1"), ids(store.similaritySearch(query("b1", 10))));
+            assertEquals(1, SegmentFiles.walGenerations(directory).size(), "重放过的预写日志应在检查点后删除");
+        }
+    }
+
+    @Test
+    @DisplayName("检索只看到完整的写入批次, 不受并发写入、检查点和合并影响")
+    public void testSnapshotIsolation() throws Exception {
+        List<String> ids = List.of("k0", "k1", "k2", "k3");
+        try (IndexedVectorStore store = openStore(new MergePolicy(2, 100, 0.3))) {
+            store.add(batch(ids, 0));
+            StoreSnapshot first = store.snapshot();
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int round = 1; round <= 200; round++) {
+                        store.add(batch(ids, round));
+                        if (round % 10 == 0) {
+                            store.checkpoint();
+                            store.merge();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                } finally {
+                    running.set(false);
+                }
+            });
+            writer.start();
+
+            int searches = 0;
+            while (running.get() || searches == 0) {
+                List<Document> results = store.similaritySearch(query("k0", 10));
+                assertEquals(ids, ids(results), "每个ID应恰好出现一次");
+                long batches = results.stream()
+                    .map(document -> document.getMetadata().get("batch"))
+                    .distinct()
+                    .count();
+                assertEquals(1, batches, "同一次检索只能看到同一批次的写入");
+                searches++;
+            }
+            writer.join();
+            assertNull(failure.get());
+
+            assertEquals(4, first.liveCount(), "已发布的快照不随后续写入变化");
+            assertTrue(store.snapshot().version() > first.version());
+            assertEquals(ids, ids(store.similaritySearch(query("k0", 10))));
+        }
+    }
+
+    @Test
+    @DisplayName("来源文件和文档类型上的过滤条件由元数据位图求出候选, 覆盖不可变段和追加段")
+    public void testMetadataFilter() throws Exception {
+        try (IndexedVectorStore store = openStore(MergePolicy.DEFAULT)) {
+            store.add(List.of(chunk("a1", "a.md", "MARKDOWN"), chunk("b1", "b.pdf", "PDF"),
+                chunk("a2", "a.md", "MARKDOWN")));
+            store.checkpoint();
+            store.add(List.of(chunk("c1", "c.pdf", "PDF"), chunk("a3", "a.md", "MARKDOWN")));
+            store.delete(List.of("a2"));
+
+            assertEquals(List.of("a1", "a3"), ids(store.similaritySearch(query("a1", 10, "source == 'a.md'"))));
+            assertEquals(List.of("b1", "c1"), ids(store.similaritySearch(query("a1", 10, "docType == 'PDF'"))));
+            assertEquals(List.of("a1", "a3", "c1"),
+                ids(store.similaritySearch(query("a1", 10, "source in ['a.md', 'c.pdf']"))));
+            assertEquals(List.of("c1"),
+                ids(store.similaritySearch(query("a1", 10, "docType == 'PDF' && source != 'b.pdf'"))),
+                "位图无法表示的条件应继续逐条判断");
+            assertEquals(List.of(), store.similaritySearch(query("a1", 10, "source == 'missing.md'")));
+
+            store.delete(MetadataFilter.parse("source == 'a.md'"));
+            assertEquals(Map.of("b.pdf", 1, "c.pdf", 1), store.stats().sourceCounts());
+        }
+
+        try (IndexedVectorStore store = openStore(MergePolicy.DEFAULT)) {
+            assertEquals(List.of("b1"), ids(store.similaritySearch(query("b1", 10, "source == 'b.pdf'"))),
+                "重新打开时应从段文件重建位图");
+        }
+    }
+
+    private IndexedVectorStore openStore(MergePolicy mergePolicy) throws Exception {
+        IndexedVectorStore store = new IndexedVectorStore(embeddingModel, directory, FlatVectorIndex::new, false,
+            mergePolicy);
+        store.open();
+        return store;
+    }
+
+    private static Document chunk(String id, String source) {
+        return new Document(id, id, Map.of(ChunkStorage.SOURCE_KEY, source));
+    }
+
+    private static Document chunk(String id, String source, String docType) {
+        return new Document(id, id, Map.of(ChunkStorage.SOURCE_KEY, source, ChunkStorage.DOC_TYPE_KEY, docType));
+    }
+
+    private static List<Document> batch(List<String> ids, int round) {
+        return ids.stream()
+            .map(id -> new Document(id, id, Map.of(ChunkStorage.SOURCE_KEY, "batch.md", "batch", round)))
+            .toList();
+    }
+
+    private static SearchRequest query(String text, int topK) {
+        return SearchRequest.builder().query(text).topK(topK).build();
+    }
+
+    private static SearchRequest query(String text, int topK, String filter) {
+        return SearchRequest.builder().query(text).topK(topK).filterExpression(MetadataFilter.parse(filter)).build();
+    }
+
+    /**
+     * 结果的ID, 按字典序排列
+     */
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).sorted().toList();
+    }
+}
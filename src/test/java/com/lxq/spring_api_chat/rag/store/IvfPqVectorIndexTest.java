@@ -0,0 +1,186 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IVF-PQ索引测试
+ * 以 FlatVectorIndex 的精确结果为基准测量召回率, 并验证码本和倒排列表的保存与加载
+ */
+public class IvfPqVectorIndexTest {
+
+    private static final int DIMENSION = 64;
+    private static final int SIZE = 5000;
+    private static final int QUERIES = 100;
+    private static final int TOP_K = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("IVF-PQ精排后的召回率应随nprobe提高")
+    public void testRecall() {
+        ListVectorStorage storage = new ListVectorStorage();
+        Random random = new Random(7);
+        float[][] centers = randomCenters(random, 50);
+        FlatVectorIndex flat = new FlatVectorIndex(storage);
+        IvfPqVectorIndex index = new IvfPqVectorIndex(storage, 64, 1, 16, 2000, 4);
+        for (int i = 0; i < SIZE; i++) {
+            storage.vectors.add(sample(random, centers));
+            flat.add(i);
+            index.add(i);
+        }
+        assertTrue(index.trained());
+
+        List<float[]> queries = new ArrayList<>();
+        for (int q = 0; q < QUERIES; q++) {
+            queries.add(sample(random, centers));
+        }
+        double low = measureRecall(flat, index, queries);
+        index.setNprobe(16);
+        double high = measureRecall(flat, index, queries);
+        System.out.printf("IVF-PQ recall@%d: nprobe=1 %.3f, nprobe=16 %.3f, 编码 %d KB / 全精度 %d KB%n",
+            TOP_K, low, high, index.estimatedHeapBytes() / 1024, (long) SIZE * DIMENSION * Float.BYTES / 1024);
+        assertTrue(high >= 0.95, "nprobe=16时召回率应不低于0.95, 实际: " + high);
+        assertTrue(high >= low, "扫描更多倒排列表不应降低召回率");
+        assertTrue(index.estimatedHeapBytes() < (long) SIZE * DIMENSION * Float.BYTES / 4, "编码应显著小于全精度向量");
+    }
+
+    @Test
+    @DisplayName("训练前应使用全精度向量检索")
+    public void testSearchBeforeTraining() {
+        ListVectorStorage storage = new ListVectorStorage();
+        Random random = new Random(3);
+        float[][] centers = randomCenters(random, 5);
+        IvfPqVectorIndex index = new IvfPqVectorIndex(storage, 16, 4, 8, 300, 4);
+        for (int i = 0; i < 100; i++) {
+            storage.vectors.add(sample(random, centers));
+            index.add(i);
+        }
+        assertFalse(index.trained());
+        assertEquals(0, index.estimatedHeapBytes());
+        assertEquals(7, index.search(storage.vector(7), 1, null).get(0).ordinal());
+
+        List<ScoredOrdinal> hits = index.search(storage.vector(7), 3, ordinal -> ordinal != 7);
+        assertEquals(3, hits.size());
+        assertTrue(hits.stream().noneMatch(hit -> hit.ordinal() == 7), "结果中不应包含被过滤的序号");
+    }
+
+    @Test
+    @DisplayName("分段数不能整除维度时应拒绝")
+    public void testInvalidSubvectors() {
+        ListVectorStorage storage = new ListVectorStorage();
+        storage.vectors.add(new float[DIMENSION]);
+        IvfPqVectorIndex index = new IvfPqVectorIndex(storage, 16, 4, 7, 300, 4);
+        assertThrows(IllegalStateException.class, () -> index.add(0));
+    }
+
+    @Test
+    @DisplayName("保存后加载的索引应返回相同结果, 并可继续增量添加")
+    public void testSaveAndLoad() throws Exception {
+        ListVectorStorage storage = new ListVectorStorage();
+        Random random = new Random(11);
+        float[][] centers = randomCenters(random, 20);
+        IvfPqVectorIndex index = new IvfPqVectorIndex(storage, 32, 8, 16, 1000, 4);
+        for (int i = 0; i < 1500; i++) {
+            storage.vectors.add(sample(random, centers));
+            index.add(i);
+        }
+        Path file = directory.resolve("vindex-000001.bin");
+        index.save(file);
+
+        // 保存之后新增的向量由加载方增量添加
+        for (int i = 1500; i < 1600; i++) {
+            storage.vectors.add(sample(random, centers));
+            index.add(i);
+        }
+        IvfPqVectorIndex loaded = new IvfPqVectorIndex(storage, 32, 8, 16, 1000, 4);
+        assertTrue(loaded.load(file));
+        assertTrue(loaded.trained());
+        assertEquals(1500, loaded.size());
+        for (int i = 1500; i < 1600; i++) {
+            loaded.add(i);
+        }
+
+        for (int q = 0; q < 20; q++) {
+            float[] query = sample(random, centers);
+            assertEquals(ordinals(index.search(query, TOP_K, null)), ordinals(loaded.search(query, TOP_K, null)));
+        }
+
+        IvfPqVectorIndex mismatched = new IvfPqVectorIndex(storage, 64, 8, 16, 1000, 4);
+        assertFalse(mismatched.load(file), "配置不一致时应拒绝加载");
+        assertFalse(mismatched.load(directory.resolve("missing.bin")));
+    }
+
+    private static double measureRecall(FlatVectorIndex flat, IvfPqVectorIndex index, List<float[]> queries) {
+        double recall = 0;
+        for (float[] query : queries) {
+            Set<Integer> truth = new HashSet<>(ordinals(flat.search(query, TOP_K, null)));
+            recall += index.search(query, TOP_K, null).stream()
+                .filter(hit -> truth.contains(hit.ordinal()))
+                .count() / (double) TOP_K;
+        }
+        return recall / queries.size();
+    }
+
+    private static List<Integer> ordinals(List<ScoredOrdinal> hits) {
+        return hits.stream().map(ScoredOrdinal::ordinal).toList();
+    }
+
+    /**
+     * 基于List的简单向量数据源
+     */
+    private static class ListVectorStorage implements VectorStorage {
+
+        private final List<float[]> vectors = new ArrayList<>();
+
+        @Override
+        public int size() {
+            return vectors.size();
+        }
+
+        @Override
+        public int dimension() {
+            return vectors.isEmpty() ? 0 : vectors.get(0).length;
+        }
+
+        @Override
+        public float[] vector(int ordinal) {
+            return vectors.get(ordinal);
+        }
+
+        @Override
+        public float dot(float[] query, int ordinal) {
+            return VectorMath.dot(query, vectors.get(ordinal));
+        }
+    }
+
+    private static float[][] randomCenters(Random random, int count) {
+        float[][] centers = new float[count][DIMENSION];
+        for (float[] center : centers) {
+            for (int i = 0; i < DIMENSION; i++) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        return centers;
+    }
+
+    private static float[] sample(Random random, float[][] centers) {
+        float[] center = centers[random.nextInt(centers.length)];
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = center[i] + (float) random.nextGaussian() * 0.6f;
+        }
+        return VectorMath.normalize(vector);
+    }
+}
@@ -0,0 +1,266 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 二进制段文件读写测试
+ * 验证 SegmentWriter 写出的文件能被 MappedSegment 正确映射读取, 以及 ChunkStorage 的段冻结、刷盘和合并
+ */
+public class MappedSegmentTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("写入的向量和文档块应能通过内存映射读回")
+    public void testWriteAndMap() throws Exception {
+        float[] first = VectorMath.normalize(new float[]{1, 2, 3, 4});
+        float[] second = VectorMath.normalize(new float[]{4, 3, 2, 1});
+
+        try (SegmentWriter writer = new SegmentWriter(directory, 1, objectMapper)) {
+            writer.append("a", "第一段文本", Map.of("source", "a.md"), first, false);
+            writer.append("b", "second", Map.of("source", "b.md"), second, true);
+            writer.commit();
+        }
+
+        try (MappedSegment segment = MappedSegment.open(directory, 1, objectMapper)) {
+            assertEquals(1L, segment.generation());
+            assertEquals(2, segment.count());
+            assertEquals(4, segment.dimension());
+            assertArrayEquals(second, segment.vector(1), 0f);
+            assertEquals(VectorMath.dot(first, second), segment.dot(first, 1), 1e-6f);
+
+            MappedSegment.Record record = segment.record(0);
+            assertEquals("a", record.id());
+            assertEquals("第一段文本", record.text());
+            assertEquals("a.md", record.metadata().get("source"));
+            assertFalse(record.deleted());
+
+            assertTrue(segment.record(1).deleted());
+            assertNull(segment.id(1), "已删除的记录不应返回ID");
+        }
+    }
+
+    @Test
+    @DisplayName("未提交的写入不应生效")
+    public void testUncommittedWriteIsDiscarded() throws Exception {
+        try (SegmentWriter writer = new SegmentWriter(directory, 1, objectMapper)) {
+            writer.append("a", "text", Map.of(), new float[]{1, 0}, false);
+        }
+
+        assertFalse(Files.exists(SegmentFiles.vectorsFile(directory, 1)));
+    }
+
+    @Test
+    @DisplayName("追加段刷盘后序号和索引保持不变, 墓碑随提交点恢复")
+    public void testFlushKeepsOrdinals() throws Exception {
+        ChunkStorage storage = new ChunkStorage(objectMapper, FlatVectorIndex::new);
+        storage.resetTail(1);
+        storage.add("a", "text-a", Map.of(), VectorMath.normalize(new float[]{1, 0}));
+        storage.add("b", "text-b", Map.of(), VectorMath.normalize(new float[]{0, 1}));
+        storage.delete("a");
+
+        Segment frozen = storage.freezeTail(2);
+        storage.add("c", "text-c", Map.of(), VectorMath.normalize(new float[]{1, 1}));
+        storage.flushed(frozen, write(frozen));
+
+        assertTrue(frozen.flushed());
+        assertEquals(2, storage.liveCount());
+        assertTrue(frozen.isDeleted(0));
+        assertEquals("text-b", frozen.record(1).text());
+        assertEquals(1f, frozen.dot(VectorMath.normalize(new float[]{0, 1}), 1), 1e-6f);
+        assertEquals(1, frozen.index().search(VectorMath.normalize(new float[]{0, 1}), 1, ordinal ->
+            !frozen.isDeleted(ordinal)).get(0).ordinal());
+        assertEquals("text-c", storage.tail().record(0).text());
+
+        // 删除刷盘后的记录只设置墓碑
+        storage.delete("b");
+        assertEquals(1, storage.liveCount());
+        assertEquals(0, frozen.liveCount());
+
+        // 重新打开时由提交点中的墓碑恢复删除状态
+        ChunkStorage reopened = new ChunkStorage(objectMapper, FlatVectorIndex::new);
+        reopened.addSegment(Segment.open(MappedSegment.open(directory, 1, objectMapper), FlatVectorIndex::new,
+            frozen.tombstones()));
+        assertEquals(0, reopened.liveCount());
+        assertEquals(2, reopened.segments().get(0).deletedCount());
+    }
+
+    @Test
+    @DisplayName("合并后有效记录移入新段, 合并期间删除的记录在新段中设置墓碑")
+    public void testReplaceMergedSegments() throws Exception {
+        ChunkStorage storage = new ChunkStorage(objectMapper, FlatVectorIndex::new);
+        storage.resetTail(1);
+        storage.add("a", "text-a", Map.of("source", "a.md"), new float[]{1, 0});
+        storage.add("b", "text-b", Map.of("source", "b.md"), new float[]{0, 1});
+        Segment first = storage.freezeTail(2);
+        storage.flushed(first, write(first));
+        storage.add("c", "text-c", Map.of("source", "c.md"), new float[]{1, 0});
+        storage.delete("a");
+        Segment second = storage.freezeTail(3);
+        storage.flushed(second, write(second));
+
+        // 按合并开始时的墓碑写出新段: b, c
+        try (SegmentWriter writer = new SegmentWriter(directory, 4, objectMapper)) {
+            writer.append("b", "text-b", Map.of("source", "b.md"), new float[]{0, 1}, false);
+            writer.append("c", "text-c", Map.of("source", "c.md"), new float[]{1, 0}, false);
+            writer.commit();
+        }
+        Segment merged = Segment.open(MappedSegment.open(directory, 4, objectMapper), FlatVectorIndex::new,
+            new BitSet());
+        // 合并期间 c 被删除
+        storage.delete("c");
+        storage.replace(List.of(first, second), merged, new String[]{"b", "c"}, new Segment[]{first, second},
+            new int[]{1, 0});
+
+        assertEquals(List.of(merged), storage.segments());
+        assertEquals(1, storage.liveCount());
+        assertTrue(merged.isDeleted(1));
+        assertEquals(Map.of("b.md", 1), storage.sourceCounts());
+
+        // 之后的删除应定位到新段
+        assertTrue(storage.delete("b"));
+        assertTrue(merged.isDeleted(0));
+        assertEquals(0, storage.liveCount());
+    }
+
+    @Test
+    @DisplayName("按ID读取使用发布的快照: 之后的覆盖写入和删除不影响已发布的版本, 刷盘和合并后仍能定位")
+    public void testSnapshotLookupById() throws Exception {
+        ChunkStorage storage = new ChunkStorage(objectMapper, FlatVectorIndex::new);
+        storage.resetTail(1);
+        storage.add("a", "text-a", Map.of(), new float[]{1, 0});
+        storage.add("b", "text-b", Map.of(), new float[]{0, 1});
+        Segment first = storage.freezeTail(2);
+        storage.flushed(first, write(first));
+        storage.add("c", "text-c", Map.of(), new float[]{1, 1});
+        StoreSnapshot before = storage.snapshot(1, 0);
+
+        // 发布之后: 覆盖已刷盘段中的 a, 在追加段中覆盖 c, 删除 b
+        storage.add("a", "text-a2", Map.of(), new float[]{1, 0});
+        storage.add("c", "text-c2", Map.of(), new float[]{1, 1});
+        storage.delete("b");
+        StoreSnapshot after = storage.snapshot(2, 0);
+
+        assertEquals("text-a", before.record("a").text());
+        assertEquals("text-b", before.record("b").text());
+        assertEquals("text-c", before.record("c").text(), "追加段中的覆盖写入不应影响已发布的版本");
+        assertEquals(List.of("a", "b", "c"), before.ids().stream().sorted().toList());
+
+        assertEquals("text-a2", after.record("a").text());
+        assertNull(after.record("b"));
+        assertEquals("text-c2", after.record("c").text());
+        assertNull(after.record("missing"));
+        assertEquals(List.of("a", "c"), after.ids().stream().sorted().toList());
+
+        Segment second = storage.freezeTail(3);
+        storage.flushed(second, write(second));
+        StoreSnapshot flushed = storage.snapshot(3, 0);
+        assertEquals("text-c2", flushed.record("c").text());
+        assertEquals(List.of("a", "c"), flushed.ids().stream().sorted().toList());
+        assertTrue(storage.contains("a"));
+        assertFalse(storage.contains("b"));
+    }
+
+    @Test
+    @DisplayName("来源和类型计数应随写入、覆盖和删除增量维护")
+    public void testCounts() throws Exception {
+        ChunkStorage storage = new ChunkStorage(objectMapper, FlatVectorIndex::new);
+        storage.resetTail(1);
+        storage.add("a1", "text", Map.of("source", "a.md", "docType", "MARKDOWN"), new float[]{1, 0});
+        storage.add("a2", "text", Map.of("source", "a.md", "docType", "MARKDOWN"), new float[]{1, 0});
+        storage.add("b1", "text", Map.of("source", "b.pdf", "docType", "PDF"), new float[]{0, 1});
+        long heapBytes = storage.estimatedHeapBytes();
+        assertTrue(heapBytes > 0);
+
+        // 覆盖时旧文档块的来源应被扣除
+        storage.add("a2", "text", Map.of("source", "c.txt", "docType", "TEXT"), new float[]{1, 0});
+        storage.delete("b1");
+        assertEquals(Map.of("a.md", 1, "c.txt", 1), storage.sourceCounts());
+        assertEquals(Map.of("MARKDOWN", 1, "TEXT", 1), storage.docTypeCounts());
+
+        Segment frozen = storage.freezeTail(2);
+        storage.flushed(frozen, write(frozen));
+        assertTrue(storage.estimatedHeapBytes() < heapBytes, "刷盘后追加区的堆内存应被释放");
+
+        // 重新打开时应从段中恢复计数
+        ChunkStorage reopened = new ChunkStorage(objectMapper, FlatVectorIndex::new);
+        reopened.addSegment(Segment.open(MappedSegment.open(directory, 1, objectMapper), FlatVectorIndex::new,
+            frozen.tombstones()));
+        assertEquals(storage.sourceCounts(), reopened.sourceCounts());
+        assertEquals(storage.docTypeCounts(), reopened.docTypeCounts());
+    }
+
+    @Test
+    @DisplayName("打开段时由元数据字段文件重建计数和位图, 不解析元数据JSON")
+    public void testOpenWithoutParsingMetadata() throws Exception {
+        try (SegmentWriter writer = new SegmentWriter(directory, 1, objectMapper)) {
+            writer.append("a1", "text", Map.of("source", "a.md", "docType", "MARKDOWN"), new float[]{1, 0}, false);
+            writer.append("b1", "text", Map.of("source", "b.pdf", "docType", "PDF"), new float[]{0, 1}, false);
+            writer.append("x", "text", Map.of("title", "无来源"), new float[]{1, 1}, false);
+            writer.append("a2", "text", Map.of("source", "a.md", "docType", "MARKDOWN"), new float[]{1, 0}, false);
+            writer.commit();
+        }
+        BitSet tombstones = new BitSet();
+        tombstones.set(3);
+
+        AtomicInteger parsed = new AtomicInteger();
+        ObjectMapper countingMapper = new ObjectMapper() {
+            @Override
+            public <T> T readValue(byte[] src, TypeReference<T> valueTypeRef) throws IOException {
+                parsed.incrementAndGet();
+                return super.readValue(src, valueTypeRef);
+            }
+        };
+        ChunkStorage storage = new ChunkStorage(countingMapper, FlatVectorIndex::new);
+        Segment segment = Segment.open(MappedSegment.open(directory, 1, countingMapper), FlatVectorIndex::new,
+            tombstones);
+        storage.addSegment(segment);
+        assertEquals(0, parsed.get());
+        assertEquals(Map.of("a.md", 1, "b.pdf", 1), storage.sourceCounts());
+        assertEquals(Map.of("MARKDOWN", 1, "PDF", 1), storage.docTypeCounts());
+        assertEquals(1, segment.view(true).bitmaps().get("source", "b.pdf").cardinality());
+        assertArrayEquals(new String[]{null, null}, segment.metadataValues(2));
+
+        // 删除时从元数据字段文件扣除计数
+        storage.delete("b1");
+        assertEquals(0, parsed.get());
+        assertEquals(Map.of("a.md", 1), storage.sourceCounts());
+
+        // 旧版本的段没有元数据字段文件, 读取记录的元数据得到相同的结果
+        Files.delete(SegmentFiles.fieldsFile(directory, 1));
+        ChunkStorage legacy = new ChunkStorage(objectMapper, FlatVectorIndex::new);
+        Segment legacySegment = Segment.open(MappedSegment.open(directory, 1, objectMapper), FlatVectorIndex::new,
+            tombstones);
+        legacy.addSegment(legacySegment);
+        assertEquals(Map.of("a.md", 1, "b.pdf", 1), legacy.sourceCounts());
+        assertEquals(1, legacySegment.view(true).bitmaps().get("source", "b.pdf").cardinality());
+    }
+
+    private MappedSegment write(Segment segment) throws Exception {
+        try (SegmentWriter writer = new SegmentWriter(directory, segment.generation(), objectMapper)) {
+            for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                MappedSegment.Record record = segment.record(ordinal);
+                writer.append(record.id(), record.text(), record.metadata(), segment.vector(ordinal), false);
+            }
+            writer.commit();
+        }
+        return MappedSegment.open(directory, segment.generation(), objectMapper);
+    }
+}
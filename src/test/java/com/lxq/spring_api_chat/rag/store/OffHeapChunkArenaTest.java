@@ -0,0 +1,91 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 堆外追加区测试
+ * 使用很小的内存块, 使向量和记录跨越多个块
+ */
+public class OffHeapChunkArenaTest {
+
+    private static final int DIMENSION = 8;
+    private static final int BLOCK_BYTES = 256;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OffHeapChunkArena.BlockPool pool = new OffHeapChunkArena.BlockPool(BLOCK_BYTES);
+
+    @Test
+    @DisplayName("写入的向量和记录应能从本地内存读回")
+    public void testAppendAndRead() {
+        OffHeapChunkArena arena = new OffHeapChunkArena(objectMapper, pool);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, arena.append("id-" + i, "文本-" + i, Map.of("source", "f" + i + ".md"), vector(i)));
+        }
+
+        assertEquals(50, arena.size());
+        assertEquals(DIMENSION, arena.dimension());
+        for (int i = 0; i < 50; i++) {
+            assertArrayEquals(vector(i), arena.vector(i), 0f);
+            assertEquals(VectorMath.dot(vector(3), vector(i)), arena.dot(vector(3), i), 1e-6f);
+            MappedSegment.Record record = arena.record(i);
+            assertEquals("id-" + i, record.id());
+            assertEquals("文本-" + i, record.text());
+            assertEquals("f" + i + ".md", record.metadata().get("source"));
+        }
+        assertTrue(arena.nativeBytes() > 50L * DIMENSION * Float.BYTES, "数据应位于本地内存");
+    }
+
+    @Test
+    @DisplayName("超过块大小的记录应单独分配")
+    public void testOversizedRecord() {
+        OffHeapChunkArena arena = new OffHeapChunkArena(objectMapper, pool);
+        String longText = "长".repeat(BLOCK_BYTES);
+        arena.append("a", "short", Map.of(), vector(1));
+        arena.append("b", longText, Map.of(), vector(2));
+        arena.append("c", "short", Map.of(), vector(3));
+
+        assertEquals(longText, arena.record(1).text());
+        assertEquals("c", arena.record(2).id());
+    }
+
+    @Test
+    @DisplayName("释放后的内存块应由下一个追加区复用")
+    public void testReleaseReusesBlocks() {
+        OffHeapChunkArena arena = new OffHeapChunkArena(objectMapper, pool);
+        for (int i = 0; i < 10; i++) {
+            arena.append("id-" + i, "text", Map.of(), vector(i));
+        }
+        long nativeBytes = arena.nativeBytes();
+        arena.release();
+        assertEquals(0, arena.size());
+        assertEquals(0, arena.nativeBytes());
+        assertTrue(pool.pooledBytes() > 0, "释放的块应放入空闲池");
+
+        // 反复写满再释放, 空闲池之外不应持续分配新的本地内存
+        for (int round = 0; round < 5; round++) {
+            OffHeapChunkArena next = new OffHeapChunkArena(objectMapper, pool);
+            for (int i = 0; i < 10; i++) {
+                next.append("r" + round + "-" + i, "text", Map.of(), vector(i));
+            }
+            assertEquals("r" + round + "-9", next.record(9).id());
+            assertArrayEquals(vector(9), next.vector(9), 0f);
+            assertEquals(nativeBytes, next.nativeBytes());
+            next.release();
+        }
+        assertTrue(pool.pooledBytes() <= 4L * BLOCK_BYTES);
+    }
+
+    private static float[] vector(int seed) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) Math.sin(seed * 31 + i);
+        }
+        return VectorMath.normalize(vector);
+    }
+}
@@ -0,0 +1,137 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 压缩位图测试
+ * 以 BitSet 为基准, 验证数组容器和位图容器的追加、查询、遍历以及交集和并集, 以及追加段元数据位图的发布
+ */
+public class OrdinalBitmapTest {
+
+    @Test
+    @DisplayName("追加的序号应能查询和按递增顺序遍历, 元素超过4096个的容器转为位图容器")
+    public void testAddAndContains() {
+        BitSet expected = new BitSet();
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        // 第一个容器稀疏, 第二个容器稠密, 第三个容器跨越较大的序号
+        for (int ordinal = 0; ordinal < 65536; ordinal += 97) {
+            add(bitmap, expected, ordinal);
+        }
+        for (int ordinal = 65536; ordinal < 65536 + 10000; ordinal++) {
+            add(bitmap, expected, ordinal);
+        }
+        add(bitmap, expected, 5_000_000);
+
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        assertEquals(expected, toBitSet(bitmap));
+        assertTrue(bitmap.contains(65536 + 4999));
+        assertFalse(bitmap.contains(96));
+        assertFalse(bitmap.contains(4_999_999));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(100), "序号必须递增");
+    }
+
+    @Test
+    @DisplayName("交集、并集和只读副本的结果应与 BitSet 一致")
+    public void testAndOr() {
+        Random random = new Random(42);
+        BitSet left = new BitSet();
+        BitSet right = new BitSet();
+        OrdinalBitmap a = new OrdinalBitmap();
+        OrdinalBitmap b = new OrdinalBitmap();
+        for (int ordinal = 0; ordinal < 300_000; ordinal++) {
+            // 前段稀疏, 后段稠密, 覆盖数组容器和位图容器的组合
+            double density = ordinal < 150_000 ? 0.02 : 0.5;
+            if (random.nextDouble() < density) {
+                add(a, left, ordinal);
+            }
+            if (random.nextDouble() < density) {
+                add(b, right, ordinal);
+            }
+        }
+
+        BitSet and = (BitSet) left.clone();
+        and.and(right);
+        BitSet or = (BitSet) left.clone();
+        or.or(right);
+        assertEquals(and, toBitSet(OrdinalBitmap.and(a, b)));
+        assertEquals(or, toBitSet(OrdinalBitmap.or(a, b)));
+        assertEquals(and.cardinality(), OrdinalBitmap.and(a, b).cardinality());
+        assertEquals(left, toBitSet(a), "运算不应修改参数");
+
+        OrdinalBitmap copy = a.snapshot();
+        a.add(400_000);
+        assertEquals(left, toBitSet(copy), "副本不应随原位图变化");
+        assertTrue(OrdinalBitmap.and(a, new OrdinalBitmap()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("只读副本共享之前的容器, 原位图继续追加(包括容器转换)不影响副本")
+    public void testSnapshotIsolation() {
+        BitSet expected = new BitSet();
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        for (int ordinal = 0; ordinal < 70000; ordinal += 2) {
+            add(bitmap, expected, ordinal);
+        }
+        // 最后一个容器为数组容器, 继续追加会转为位图容器
+        OrdinalBitmap arraySnapshot = bitmap.snapshot();
+        BitSet arrayExpected = (BitSet) expected.clone();
+        for (int ordinal = 70000; ordinal < 90000; ordinal++) {
+            add(bitmap, expected, ordinal);
+        }
+        // 最后一个容器为位图容器, 继续追加会修改其中的字
+        OrdinalBitmap wordsSnapshot = bitmap.snapshot();
+        BitSet wordsExpected = (BitSet) expected.clone();
+        for (int ordinal = 90000; ordinal < 90100; ordinal++) {
+            add(bitmap, expected, ordinal);
+        }
+        add(bitmap, expected, 200_000);
+
+        assertEquals(arrayExpected, toBitSet(arraySnapshot));
+        assertEquals(wordsExpected, toBitSet(wordsSnapshot));
+        assertEquals(wordsExpected.cardinality(), wordsSnapshot.cardinality());
+        assertFalse(wordsSnapshot.contains(90000));
+        assertEquals(expected, toBitSet(bitmap));
+    }
+
+    @Test
+    @DisplayName("发布元数据位图时只复制有追加的取值, 其余取值与上一版本共享")
+    public void testPublishSharesUnchangedBitmaps() {
+        MetadataBitmaps bitmaps = new MetadataBitmaps();
+        bitmaps.add(0, Map.of("source", "a.md", "docType", "MARKDOWN"));
+        bitmaps.add(1, Map.of("source", "b.md", "docType", "MARKDOWN"));
+        MetadataBitmaps first = bitmaps.publish();
+
+        bitmaps.add(2, Map.of("source", "b.md", "docType", "MARKDOWN"));
+        MetadataBitmaps second = bitmaps.publish();
+
+        assertSame(first.get("source", "a.md"), second.get("source", "a.md"), "没有追加的取值应共享");
+        assertNotSame(first.get("source", "b.md"), second.get("source", "b.md"));
+        assertEquals(1, first.get("source", "b.md").cardinality(), "已发布的版本不应随追加变化");
+        assertEquals(2, second.get("source", "b.md").cardinality());
+        assertEquals(3, second.get("docType", "MARKDOWN").cardinality());
+        assertSame(second.get("source", "b.md"), bitmaps.publish().get("source", "b.md"));
+    }
+
+    private static void add(OrdinalBitmap bitmap, BitSet expected, int ordinal) {
+        bitmap.add(ordinal);
+        expected.set(ordinal);
+    }
+
+    private static BitSet toBitSet(OrdinalBitmap bitmap) {
+        BitSet bits = new BitSet();
+        int[] previous = {-1};
+        bitmap.forEach(ordinal -> {
+            assertTrue(ordinal > previous[0], "应按递增顺序遍历");
+            previous[0] = ordinal;
+            bits.set(ordinal);
+        });
+        return bits;
+    }
+}
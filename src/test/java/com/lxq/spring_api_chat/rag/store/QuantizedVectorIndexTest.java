@@ -0,0 +1,143 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 量化索引测试
+ * 以 FlatVectorIndex 的精确结果为基准, 测量粗排 + 精排后的召回率, 以及量化编码的内存占用
+ */
+public class QuantizedVectorIndexTest {
+
+    private static final int DIMENSION = 256;
+    private static final int SIZE = 4000;
+    private static final int QUERIES = 100;
+    private static final int TOP_K = 10;
+
+    @Test
+    @DisplayName("INT8量化精排后的召回率应接近暴力检索")
+    public void testInt8Recall() {
+        double recall = measureRecall(QuantizedVectorIndex.Type.INT8, 4);
+        assertTrue(recall >= 0.98, "召回率应不低于0.98, 实际: " + recall);
+    }
+
+    @Test
+    @DisplayName("FP16量化精排后的召回率应接近暴力检索")
+    public void testFp16Recall() {
+        double recall = measureRecall(QuantizedVectorIndex.Type.FP16, 4);
+        assertTrue(recall >= 0.99, "召回率应不低于0.99, 实际: " + recall);
+    }
+
+    @Test
+    @DisplayName("INT8训练前应使用全精度向量检索")
+    public void testSearchBeforeTraining() {
+        Random random = new Random(3);
+        float[][] centers = randomCenters(random, 5);
+        ListVectorStorage storage = new ListVectorStorage();
+        QuantizedVectorIndex index = new QuantizedVectorIndex(storage, QuantizedVectorIndex.Type.INT8, 2, 100);
+        for (int i = 0; i < 50; i++) {
+            storage.vectors.add(sample(random, centers));
+            index.add(i);
+        }
+        assertFalse(index.quantized());
+        assertEquals(0, index.estimatedHeapBytes());
+        assertEquals(7, index.search(storage.vector(7), 1, null).get(0).ordinal());
+
+        for (int i = 50; i < 100; i++) {
+            storage.vectors.add(sample(random, centers));
+            index.add(i);
+        }
+        assertTrue(index.quantized(), "达到训练样本数后应建立量化编码");
+        List<ScoredOrdinal> hits = index.search(storage.vector(7), 3, ordinal -> ordinal != 7);
+        assertEquals(3, hits.size());
+        assertTrue(hits.stream().noneMatch(hit -> hit.ordinal() == 7), "结果中不应包含被过滤的序号");
+        assertEquals(VectorMath.dot(storage.vector(7), storage.vector(hits.get(0).ordinal())), hits.get(0).score(),
+            1e-6f, "返回的分数应为全精度向量上的精确值");
+    }
+
+    private static double measureRecall(QuantizedVectorIndex.Type type, int rescoreFactor) {
+        Random random = new Random(7);
+        float[][] centers = randomCenters(random, 50);
+        ListVectorStorage storage = new ListVectorStorage();
+        FlatVectorIndex flat = new FlatVectorIndex(storage);
+        QuantizedVectorIndex quantized = new QuantizedVectorIndex(storage, type, rescoreFactor, 1000);
+        for (int i = 0; i < SIZE; i++) {
+            storage.vectors.add(sample(random, centers));
+            flat.add(i);
+            quantized.add(i);
+        }
+
+        double recall = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = sample(random, centers);
+            Set<Integer> truth = new HashSet<>();
+            flat.search(query, TOP_K, null).forEach(hit -> truth.add(hit.ordinal()));
+            recall += quantized.search(query, TOP_K, null).stream()
+                .filter(hit -> truth.contains(hit.ordinal()))
+                .count() / (double) TOP_K;
+        }
+        recall /= QUERIES;
+
+        long fullBytes = (long) SIZE * DIMENSION * Float.BYTES;
+        System.out.printf("%s recall@%d=%.3f (rescore x%d), 编码 %d KB / 全精度 %d KB%n",
+            type, TOP_K, recall, rescoreFactor, quantized.estimatedHeapBytes() / 1024, fullBytes / 1024);
+        assertTrue(quantized.estimatedHeapBytes() <= fullBytes / (type == QuantizedVectorIndex.Type.INT8 ? 3 : 1.9),
+            "量化编码应显著小于全精度向量");
+        return recall;
+    }
+
+    /**
+     * 基于List的简单向量数据源
+     */
+    private static class ListVectorStorage implements VectorStorage {
+
+        private final List<float[]> vectors = new ArrayList<>();
+
+        @Override
+        public int size() {
+            return vectors.size();
+        }
+
+        @Override
+        public int dimension() {
+            return vectors.isEmpty() ? 0 : vectors.get(0).length;
+        }
+
+        @Override
+        public float[] vector(int ordinal) {
+            return vectors.get(ordinal);
+        }
+
+        @Override
+        public float dot(float[] query, int ordinal) {
+            return VectorMath.dot(query, vectors.get(ordinal));
+        }
+    }
+
+    private static float[][] randomCenters(Random random, int count) {
+        float[][] centers = new float[count][DIMENSION];
+        for (float[] center : centers) {
+            for (int i = 0; i < DIMENSION; i++) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        return centers;
+    }
+
+    private static float[] sample(Random random, float[][] centers) {
+        float[] center = centers[random.nextInt(centers.length)];
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = center[i] + (float) random.nextGaussian() * 0.6f;
+        }
+        return VectorMath.normalize(vector);
+    }
+}
@@ -0,0 +1,119 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.lxq.spring_api_chat.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片向量存储测试
+ * 验证并行检索合并后的结果与不分片时一致, 路由规则和覆盖写入语义, 以及分片布局的校验
+ */
+public class ShardedVectorStoreTest {
+
+    private static final int DIMENSION = 8;
+
+    private final EmbeddingModel embeddingModel = new FakeEmbeddingModel(DIMENSION);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("合并各分片的 top-K 后应与不分片的检索结果相同")
+    public void testMergedTopKMatchesSingleStore() throws Exception {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            documents.add(chunk("c" + i, "doc" + (i % 7) + ".md"));
+        }
+        try (IndexedVectorStore single = new IndexedVectorStore(embeddingModel, directory.resolve("single"),
+                FlatVectorIndex::new, false, MergePolicy.DEFAULT);
+             ShardedVectorStore sharded = openStore(directory.resolve("sharded"), 4, ShardedVectorStore.Routing.HASH)) {
+            single.open();
+            single.add(documents);
+            sharded.add(documents);
+
+            assertEquals(200, sharded.size());
+            for (String text : List.of("c3", "c42", "c150", "unrelated query")) {
+                List<Document> expected = single.similaritySearch(query(text, 10));
+                List<Document> actual = sharded.similaritySearch(query(text, 10));
+                assertEquals(ids(expected), ids(actual), "查询 " + text + " 的结果应与不分片时相同");
+            }
+
+            List<ShardStats> stats = sharded.shardStats();
+            assertEquals(4, stats.size());
+            assertEquals(200, stats.stream().mapToInt(ShardStats::chunkCount).sum());
+            assertTrue(stats.stream().allMatch(shard -> shard.chunkCount() > 0), "按ID哈希应把文档块分散到每个分片");
+            assertTrue(stats.stream().allMatch(shard -> shard.searchCount() == 4), "每次检索应访问全部分片");
+        }
+    }
+
+    @Test
+    @DisplayName("按来源路由时同一文件位于同一分片, 来源变化后旧分片中的同ID文档块应被删除")
+    public void testSourceRouting() throws Exception {
+        try (ShardedVectorStore store = openStore(directory, 4, ShardedVectorStore.Routing.SOURCE)) {
+            store.add(List.of(chunk("a1", "a.md"), chunk("a2", "a.md"), chunk("a3", "a.md")));
+            long populated = store.shardStats().stream().filter(shard -> shard.chunkCount() > 0).count();
+            assertEquals(1, populated, "同一来源的文档块应位于同一分片");
+
+            store.add(List.of(chunk("a1", "b.md")));
+            assertEquals(3, store.size(), "覆盖写入不应在其他分片留下重复的文档块");
+            assertEquals(Map.of("a.md", 2, "b.md", 1), store.stats().sourceCounts());
+
+            store.delete(List.of("a1", "a2"));
+            assertEquals(List.of("a3"), ids(store.similaritySearch(query("a1", 10))));
+        }
+
+        try (ShardedVectorStore store = openStore(directory, 4, ShardedVectorStore.Routing.SOURCE)) {
+            assertEquals(1, store.size(), "未执行检查点的写入应在重新打开时从各分片的预写日志恢复");
+        }
+    }
+
+    @Test
+    @DisplayName("分片数或路由规则与已有数据不一致时拒绝打开")
+    public void testLayoutMismatch() throws Exception {
+        try (ShardedVectorStore store = openStore(directory, 4, ShardedVectorStore.Routing.HASH)) {
+            store.add(List.of(chunk("a1", "a.md")));
+        }
+        assertThrows(IllegalStateException.class, () -> openStore(directory, 2, ShardedVectorStore.Routing.HASH));
+        assertThrows(IllegalStateException.class, () -> openStore(directory, 4, ShardedVectorStore.Routing.SOURCE));
+    }
+
+    private ShardedVectorStore openStore(Path root, int shardCount, ShardedVectorStore.Routing routing)
+        throws Exception {
+        ShardedVectorStore store = new ShardedVectorStore(embeddingModel, root, shardCount, routing, 2,
+            shardDirectory -> new IndexedVectorStore(embeddingModel, shardDirectory, FlatVectorIndex::new, false,
+                MergePolicy.DEFAULT));
+        try {
+            store.open();
+        } catch (RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private static Document chunk(String id, String source) {
+        return new Document(id, id, Map.of(ChunkStorage.SOURCE_KEY, source));
+    }
+
+    private static SearchRequest query(String text, int topK) {
+        return SearchRequest.builder().query(text).topK(topK).build();
+    }
+
+    /**
+     * 结果的ID, 按字典序排列
+     */
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).sorted().toList();
+    }
+}
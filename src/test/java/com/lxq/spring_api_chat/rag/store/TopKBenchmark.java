@@ -0,0 +1,126 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * top-K 选择的JMH基准测试: 全量排序后截断、PriorityQueue 与基于数组的 TopKHeap 对比
+ * 分数预先计算好, 只测量选择本身; 阈值取0, 约一半的候选低于阈值
+ * 输出每秒完成的选择次数(ops/s), 并使用GC分析器输出分配速率(gc.alloc.rate)和每次操作的分配量(gc.alloc.rate.norm),
+ * TopKHeap 的分配量只与K有关
+ *
+ * 运行(不属于单元测试, 需要先编译测试代码):
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.lxq.spring_api_chat.rag.store.TopKBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopKBenchmark {
+
+    private static final float THRESHOLD = 0;
+
+    @Param({"10000", "100000", "1000000"})
+    private int count;
+
+    /**
+     * QueryRequest 允许的 topK 上限为50
+     */
+    @Param({"10", "50"})
+    private int k;
+
+    private float[] scores;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        scores = new float[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = random.nextFloat() * 2 - 1;
+        }
+    }
+
+    /**
+     * 为每个候选创建结果对象, 全量排序后截断并过滤阈值
+     */
+    @Benchmark
+    public List<ScoredOrdinal> sortAll() {
+        List<ScoredOrdinal> all = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            all.add(new ScoredOrdinal(i, scores[i]));
+        }
+        all.sort(ScoredOrdinal.BY_SCORE.reversed());
+        List<ScoredOrdinal> results = new ArrayList<>(k);
+        for (ScoredOrdinal hit : all.subList(0, k)) {
+            if (hit.score() >= THRESHOLD) {
+                results.add(hit);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 大小为K的 PriorityQueue, 每个进入堆的候选创建一个结果对象, 阈值在选择后过滤
+     */
+    @Benchmark
+    public List<ScoredOrdinal> priorityQueue() {
+        PriorityQueue<ScoredOrdinal> heap = new PriorityQueue<>(k + 1, ScoredOrdinal.BY_SCORE);
+        for (int i = 0; i < count; i++) {
+            if (heap.size() < k) {
+                heap.add(new ScoredOrdinal(i, scores[i]));
+            } else if (scores[i] > heap.peek().score()) {
+                heap.poll();
+                heap.add(new ScoredOrdinal(i, scores[i]));
+            }
+        }
+        List<ScoredOrdinal> results = new ArrayList<>(heap);
+        results.sort(ScoredOrdinal.BY_SCORE.reversed());
+        results.removeIf(hit -> hit.score() < THRESHOLD);
+        return results;
+    }
+
+    /**
+     * 基于数组的 TopKHeap, 阈值在扫描时生效
+     */
+    @Benchmark
+    public List<ScoredOrdinal> topKHeap() {
+        TopKHeap heap = new TopKHeap(k, THRESHOLD);
+        for (int i = 0; i < count; i++) {
+            heap.offer(i, scores[i]);
+        }
+        return heap.drainSorted();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .include(TopKBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,59 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 有界 top-K 堆测试
+ * 以全量排序后截断的结果为基准, 验证结果与顺序, 以及分数下限在扫描时生效
+ */
+public class TopKHeapTest {
+
+    @Test
+    @DisplayName("结果应与全量排序后取前K个相同, 按分数降序排列")
+    public void testMatchesFullSort() {
+        Random random = new Random(11);
+        for (int k : new int[]{1, 10, 50, 1000}) {
+            float[] scores = new float[500];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextFloat() * 2 - 1;
+            }
+            TopKHeap heap = new TopKHeap(k);
+            for (int i = 0; i < scores.length; i++) {
+                heap.offer(i, scores[i]);
+            }
+            List<ScoredOrdinal> actual = heap.drainSorted();
+
+            List<ScoredOrdinal> expected = new ArrayList<>();
+            for (int i = 0; i < scores.length; i++) {
+                expected.add(new ScoredOrdinal(i, scores[i]));
+            }
+            expected.sort(Comparator.comparingDouble(ScoredOrdinal::score).reversed());
+            assertEquals(expected.subList(0, Math.min(k, scores.length)), actual, "K=" + k);
+            assertEquals(0, heap.size(), "取出结果后堆应为空");
+        }
+    }
+
+    @Test
+    @DisplayName("低于分数下限的候选不进入堆, 堆满后只接受高于堆顶的分数")
+    public void testMinScoreAndCompetitive() {
+        TopKHeap heap = new TopKHeap(2, 0.5f);
+        assertFalse(heap.offer(0, 0.4f), "低于下限的候选应被丢弃");
+        assertTrue(heap.offer(1, 0.5f), "等于下限的候选应被保留");
+        assertTrue(heap.offer(2, 0.9f));
+        assertFalse(heap.competitive(0.5f), "堆满后与堆顶相同的分数不应进入");
+        assertTrue(heap.offer(3, 0.7f));
+        assertEquals(List.of(new ScoredOrdinal(2, 0.9f), new ScoredOrdinal(3, 0.7f)), heap.drainSorted());
+
+        TopKHeap empty = new TopKHeap(0);
+        assertFalse(empty.offer(0, 1f), "K为0时不接受任何候选");
+        assertEquals(List.of(), empty.drainSorted());
+    }
+}
@@ -0,0 +1,127 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量相似度内核的JMH基准测试: 标量与SIMD实现对比
+ * 模拟暴力检索: 在连续存放的 count 个向量上逐个计算点积并取最大值
+ * *Scan 读取堆内数组; *BufferScan 读取直接内存缓冲区, 与内存映射段、堆外追加区的读取路径相同
+ *
+ * 运行(不属于单元测试, 需要先编译测试代码):
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.lxq.spring_api_chat.rag.store.VectorKernelBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorKernelBenchmark {
+
+    @Param({"768", "1536", "3072"})
+    private int dimension;
+
+    /**
+     * 向量数量; 3072维时 20000 个向量约 240MB, 堆内数组和直接内存缓冲区各一份
+     */
+    @Param({"20000"})
+    private int count;
+
+    private float[] query;
+    private float[] vectors;
+    private FloatBuffer buffer;
+    private VectorKernel scalar;
+    private VectorKernel simd;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        query = VectorMath.normalize(randomVector(random, dimension));
+        vectors = new float[count * dimension];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(VectorMath.normalize(randomVector(random, dimension)), 0, vectors, i * dimension,
+                dimension);
+        }
+        buffer = ByteBuffer.allocateDirect(vectors.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+            .asFloatBuffer().put(0, vectors);
+        scalar = VectorKernels.scalar();
+        simd = VectorKernels.simd();
+        if (simd == null) {
+            throw new IllegalStateException("未加载 jdk.incubator.vector 模块");
+        }
+    }
+
+    @Benchmark
+    public float scalarScan() {
+        return scan(scalar);
+    }
+
+    @Benchmark
+    public float simdScan() {
+        return scan(simd);
+    }
+
+    @Benchmark
+    public float scalarBufferScan() {
+        return bufferScan(scalar);
+    }
+
+    @Benchmark
+    public float simdBufferScan() {
+        return bufferScan(simd);
+    }
+
+    private float scan(VectorKernel kernel) {
+        float best = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            best = Math.max(best, kernel.dot(query, vectors, i * dimension));
+        }
+        return best;
+    }
+
+    private float bufferScan(VectorKernel kernel) {
+        float best = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            best = Math.max(best, kernel.dot(query, buffer, i * dimension));
+        }
+        return best;
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .include(VectorKernelBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
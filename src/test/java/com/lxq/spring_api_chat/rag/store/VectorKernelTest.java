@@ -0,0 +1,72 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 相似度计算内核测试
+ * SIMD与标量实现都应与双精度参考值一致, 覆盖不是向量寄存器宽度整数倍的维度(尾部处理)和偏移量,
+ * 以及从直接内存缓冲区读取的路径
+ */
+public class VectorKernelTest {
+
+    private static final int[] DIMENSIONS = {1, 7, 17, 300, 768, 1536, 3072};
+
+    @Test
+    @DisplayName("标量内核应与参考值一致")
+    public void testScalarKernel() {
+        verify(VectorKernels.scalar());
+    }
+
+    @Test
+    @DisplayName("SIMD内核应与参考值一致")
+    public void testSimdKernel() {
+        VectorKernel simd = VectorKernels.simd();
+        if (simd == null) {
+            System.out.println("未加载 jdk.incubator.vector 模块, 跳过SIMD内核测试");
+            return;
+        }
+        verify(simd);
+    }
+
+    @Test
+    @DisplayName("维度不一致时应拒绝计算")
+    public void testDimensionMismatch() {
+        assertThrows(IllegalArgumentException.class, () -> VectorMath.dot(new float[3], new float[4]));
+    }
+
+    private static void verify(VectorKernel kernel) {
+        Random random = new Random(42);
+        for (int dimension : DIMENSIONS) {
+            float[] a = VectorMath.normalize(randomVector(random, dimension));
+            float[] b = randomVector(random, dimension * 3);
+            FloatBuffer buffer = ByteBuffer.allocateDirect(b.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(b);
+            for (int offset : new int[]{0, dimension, dimension * 2}) {
+                double expected = 0d;
+                for (int i = 0; i < dimension; i++) {
+                    expected += (double) a[i] * b[offset + i];
+                }
+                assertEquals(expected, kernel.dot(a, b, offset), 1e-4,
+                    kernel.name() + " 维度 " + dimension + " 偏移 " + offset);
+                assertEquals(expected, kernel.dot(a, buffer, offset), 1e-4,
+                    kernel.name() + " 缓冲区 维度 " + dimension + " 偏移 " + offset);
+            }
+        }
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,97 @@
+package com.lxq.spring_api_chat.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预写日志测试
+ * 验证记录重放、写入中途崩溃后的截断, 以及代号不一致的日志被跳过
+ */
+public class WriteAheadLogTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("重放时应按顺序返回新增和删除记录")
+    public void testReplay() throws Exception {
+        Path file = SegmentFiles.walFile(directory, 1);
+        float[] vector = VectorMath.normalize(new float[]{1, 2, 3});
+        try (WriteAheadLog wal = WriteAheadLog.create(file, 1, objectMapper, false)) {
+            assertEquals(0, wal.recordBytes());
+            wal.appendAdds(List.of(
+                WriteAheadLog.Entry.add("a", "第一段", Map.of("source", "a.md"), vector),
+                WriteAheadLog.Entry.add("b", "second", Map.of(), vector)
+            ));
+            wal.appendDeletes(List.of("a"));
+            assertTrue(wal.recordBytes() > 0);
+        }
+
+        List<WriteAheadLog.Entry> replayed = new ArrayList<>();
+        assertEquals(3, WriteAheadLog.replay(file, 1, objectMapper, replayed::add));
+        assertEquals("a", replayed.get(0).id());
+        assertEquals("第一段", replayed.get(0).text());
+        assertEquals("a.md", replayed.get(0).metadata().get("source"));
+        assertArrayEquals(vector, replayed.get(0).vector(), 0f);
+        assertFalse(replayed.get(1).isDelete());
+        assertTrue(replayed.get(2).isDelete());
+        assertEquals("a", replayed.get(2).id());
+    }
+
+    @Test
+    @DisplayName("末尾不完整的记录应被截断, 之前的记录保留")
+    public void testTruncateTornRecord() throws Exception {
+        Path file = SegmentFiles.walFile(directory, 1);
+        try (WriteAheadLog wal = WriteAheadLog.create(file, 1, objectMapper, false)) {
+            wal.appendAdds(List.of(WriteAheadLog.Entry.add("a", "text", Map.of(), new float[]{1, 0})));
+            wal.appendAdds(List.of(WriteAheadLog.Entry.add("b", "text", Map.of(), new float[]{0, 1})));
+        }
+        // 模拟写入第二条记录时崩溃: 截掉最后几个字节
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        List<String> ids = new ArrayList<>();
+        assertEquals(1, WriteAheadLog.replay(file, 1, objectMapper, entry -> ids.add(entry.id())));
+        assertEquals(List.of("a"), ids);
+        assertTrue(Files.size(file) < size - 3, "不完整的记录应从文件中截掉");
+    }
+
+    @Test
+    @DisplayName("切换日志后新记录写入新文件, 代号不一致的日志不应被重放")
+    public void testRollAndGenerationCheck() throws Exception {
+        Path first = SegmentFiles.walFile(directory, 1);
+        Path second = SegmentFiles.walFile(directory, 2);
+        try (WriteAheadLog wal = WriteAheadLog.create(first, 1, objectMapper, false)) {
+            wal.appendDeletes(List.of("a"));
+            wal.roll(second, 2);
+            assertEquals(2, wal.generation());
+            assertEquals(0, wal.recordBytes());
+            wal.appendDeletes(List.of("b"));
+        }
+
+        List<String> ids = new ArrayList<>();
+        WriteAheadLog.replay(first, 1, objectMapper, entry -> ids.add(entry.id()));
+        WriteAheadLog.replay(second, 2, objectMapper, entry -> ids.add(entry.id()));
+        assertEquals(List.of("a", "b"), ids);
+
+        assertEquals(0, WriteAheadLog.replay(first, 3, objectMapper, entry -> fail("代号不一致的日志不应被重放")));
+        assertEquals(0, WriteAheadLog.replay(directory.resolve("missing.log"), 1, objectMapper, entry -> {
+        }));
+    }
+}